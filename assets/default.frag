@@ -1,11 +1,31 @@
 #ifdef GL_ES
+// fract() of block coordinates up to 64 needs more than mediump's 10 bits
+#ifdef GL_FRAGMENT_PRECISION_HIGH
+precision highp float;
+#else
 precision mediump float;
 #endif
+#endif
 
 varying vec2 v_tex;
+varying vec2 v_tile;
+varying vec2 v_light;
+varying vec2 v_offset;
+varying float v_occlusion;
 uniform sampler2D u_texture;
-uniform vec4 u_tint;
+uniform float u_atlasTiles;
+uniform float u_daylight;
+// horizontal distance where the fog starts and where it hides everything, and the sky colour it fades into
+uniform vec2 u_fog;
+uniform vec3 u_fogColor;
 
 void main(){
-    gl_FragColor = texture2D(u_texture, v_tex) * u_tint;
+    // v_tex counts blocks, or columns of distant terrain, so the tile repeats across merged faces
+    vec4 color = texture2D(u_texture, v_tile + fract(v_tex) / u_atlasTiles);
+    // sky light follows the time of day, block light does not
+    float level = max(v_light.x * u_daylight, v_light.y);
+    // ambient occlusion darkens inner corners down to half, whatever the light
+    float brightness = (0.06 + 0.94 * pow(0.8, 15.0 * (1.0 - level))) * v_occlusion;
+    float fog = clamp((length(v_offset) - u_fog.x) / (u_fog.y - u_fog.x), 0.0, 1.0);
+    gl_FragColor = vec4(mix(color.rgb * brightness, u_fogColor, fog), color.a);
 }
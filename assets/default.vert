@@ -1,12 +1,34 @@
-attribute vec3 a_position;
-attribute vec2 a_texCoord0;
+attribute vec4 a_position;
+attribute vec4 a_data;
 
 uniform mat4 u_projViewTrans;
 uniform mat4 u_model;
+uniform float u_atlasTiles;
+uniform vec3 u_cameraPosition;
 
 varying vec2 v_tex;
+varying vec2 v_tile;
+varying vec2 v_light;
+varying vec2 v_offset;
+varying float v_occlusion;
 
 void main(){
-    v_tex = a_texCoord0;
-    gl_Position = u_projViewTrans * u_model * vec4(a_position,1.0);
+    // a_position is x, y, z and the face: 0/1 west/east, 2/3 down/up, 4/5 north/south
+    vec3 position = a_position.xyz;
+    float axis = floor(a_position.w / 2.0);
+    if (axis < 0.5) {
+        v_tex = vec2(position.z, -position.y);
+    } else if (axis < 1.5) {
+        v_tex = position.xz;
+    } else {
+        v_tex = vec2(position.x, -position.y);
+    }
+    // a_data is light (sky * 16 + block), atlas tile, corner occlusion (0 darkest to 3 open) and a spare byte
+    v_tile = vec2(mod(a_data.y, u_atlasTiles), floor(a_data.y / u_atlasTiles)) / u_atlasTiles;
+    v_light = vec2(floor(a_data.x / 16.0), mod(a_data.x, 16.0)) / 15.0;
+    v_occlusion = 0.5 + a_data.z / 6.0;
+    vec4 world = u_model * vec4(position, 1.0);
+    // the fog distance is taken per fragment, large quads would bend it if it were interpolated
+    v_offset = world.xz - u_cameraPosition.xz;
+    gl_Position = u_projViewTrans * world;
 }
@@ -0,0 +1,83 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Worlds shared by the benchmark suites. Everything is seeded so every run and every release measures the same
+ * blocks.
+ */
+final class BenchmarkWorlds {
+
+    static final long SEED = 1L;
+
+    /** Block types a random fill picks from; solid and not light-emitting. */
+    static final int[] FILL_IDS = {
+        BlockType.STONE.id, BlockType.DIRT.id, BlockType.GRASS.id, BlockType.SAND.id
+    };
+
+    private BenchmarkWorlds() {
+    }
+
+    /** Builds the world named by a suite's {@code fill} parameter: {@code "terrain"} or a fill ratio. */
+    static World create(int size, String fill) {
+        return "terrain".equals(fill) ? generated(size) : randomFill(size, Double.parseDouble(fill));
+    }
+
+    /**
+     * A {@code size} x {@code size} block world, full height, where each cell is solid with probability
+     * {@code fill}. Random fill is the worst case for meshing and lighting; see {@link #generated} for terrain.
+     */
+    static World randomFill(int size, double fill) {
+        Random random = new Random(SEED);
+        World world = new World();
+        int chunks = size / Chunk.SIZE;
+        for (int chunkX = 0; chunkX < chunks; chunkX++) {
+            for (int chunkZ = 0; chunkZ < chunks; chunkZ++) {
+                Chunk chunk = new Chunk(chunkX, chunkZ);
+                for (int y = 0; y < Chunk.HEIGHT; y++) {
+                    for (int z = 0; z < Chunk.SIZE; z++) {
+                        for (int x = 0; x < Chunk.SIZE; x++) {
+                            if (random.nextDouble() < fill) {
+                                chunk.setBlock(x, y, z, FILL_IDS[random.nextInt(FILL_IDS.length)]);
+                            }
+                        }
+                    }
+                }
+                add(world, chunk);
+            }
+        }
+        clearDirty(world);
+        return world;
+    }
+
+    /** A {@code size} x {@code size} block world of generated terrain, lit and with decoration applied. */
+    static World generated(int size) {
+        World world = new World();
+        int chunks = size / Chunk.SIZE;
+        for (Chunk chunk : new TerrainGenerator(SEED).generateRegion(ForkJoinPool.commonPool(), 0, 0, chunks, chunks)) {
+            add(world, chunk);
+        }
+        clearDirty(world);
+        return world;
+    }
+
+    /**
+     * Forgets the chunks waiting to be meshed, the way {@link WorldServer} does, so that later edits list them
+     * again: a chunk whose {@link Chunk#meshDirty} is still set is never listed twice.
+     */
+    static void clearDirty(World world) {
+        Array<Chunk> dirty = world.getDirtyChunks();
+        for (int i = 0; i < dirty.size; i++) {
+            dirty.get(i).meshDirty = false;
+        }
+        dirty.clear();
+    }
+
+    private static void add(World world, Chunk chunk) {
+        LightEngine.lightChunk(chunk);
+        world.addChunk(chunk);
+    }
+}
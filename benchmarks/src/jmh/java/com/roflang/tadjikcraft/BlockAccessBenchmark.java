@@ -0,0 +1,111 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block reads and writes at random coordinates, through {@link World} and straight on {@link Chunk}. Writes
+ * swap a solid block for another solid type, so the fill ratio and the light stay as they were.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlockAccessBenchmark {
+
+    private static final int BATCH = 4096;
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    @Param({"terrain", "0.1", "0.5", "0.9"})
+    public String fill;
+
+    private World world;
+    private final int[] xs = new int[BATCH];
+    private final int[] ys = new int[BATCH];
+    private final int[] zs = new int[BATCH];
+    private final int[] solidXs = new int[BATCH];
+    private final int[] solidYs = new int[BATCH];
+    private final int[] solidZs = new int[BATCH];
+    private int solidCount;
+    private int writes;
+
+    @Setup
+    public void setUp() {
+        world = BenchmarkWorlds.create(worldSize, fill);
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < BATCH; i++) {
+            xs[i] = random.nextInt(worldSize);
+            ys[i] = random.nextInt(Chunk.HEIGHT);
+            zs[i] = random.nextInt(worldSize);
+        }
+        for (int attempt = 0; solidCount < BATCH && attempt < BATCH * 1000; attempt++) {
+            int x = random.nextInt(worldSize);
+            int y = random.nextInt(Chunk.HEIGHT);
+            int z = random.nextInt(worldSize);
+            if (world.isSolid(x, y, z)) {
+                solidXs[solidCount] = x;
+                solidYs[solidCount] = y;
+                solidZs[solidCount] = z;
+                solidCount++;
+            }
+        }
+        if (solidCount < BATCH) {
+            throw new IllegalStateException("Only " + solidCount + " solid blocks found");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int worldGetBlock() {
+        int sum = 0;
+        for (int i = 0; i < BATCH; i++) {
+            sum += world.getBlock(xs[i], ys[i], zs[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int chunkGetBlock() {
+        int sum = 0;
+        for (int i = 0; i < BATCH; i++) {
+            Chunk chunk = world.getChunk(xs[i] >> 4, zs[i] >> 4);
+            sum += chunk.getBlock(xs[i] & 15, ys[i], zs[i] & 15);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int worldSetBlock() {
+        int sum = 0;
+        int id = BenchmarkWorlds.FILL_IDS[writes++ & 3];
+        for (int i = 0; i < BATCH; i++) {
+            sum += world.setBlock(solidXs[i], solidYs[i], solidZs[i], id);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int chunkSetBlock() {
+        int sum = 0;
+        int id = BenchmarkWorlds.FILL_IDS[writes++ & 3];
+        for (int i = 0; i < BATCH; i++) {
+            Chunk chunk = world.getChunk(solidXs[i] >> 4, solidZs[i] >> 4);
+            sum += chunk.setBlock(solidXs[i] & 15, solidYs[i], solidZs[i] & 15, id);
+        }
+        return sum;
+    }
+}
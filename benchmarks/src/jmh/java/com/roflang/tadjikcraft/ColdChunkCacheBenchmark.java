@@ -0,0 +1,75 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * What a streaming worker pays to bring back a chunk of generated terrain: promoting it from the
+ * {@link ColdChunkCache} (inflate, decode and re-creating its spills) against generating and lighting it again.
+ * {@code demote} is the compressor thread's side.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ColdChunkCacheBenchmark {
+
+    private static final int CHUNKS = 16;
+
+    private TerrainGenerator generator;
+    private final Chunk[] chunks = new Chunk[CHUNKS * CHUNKS];
+    private final byte[][] compressed = new byte[CHUNKS * CHUNKS][];
+    private final int[] rawLengths = new int[CHUNKS * CHUNKS];
+    private final ByteBuffer raw = ByteBuffer.allocate(ColdChunkCache.MAX_RAW_BYTES);
+    private final byte[] deflated = new byte[ColdChunkCache.MAX_RAW_BYTES + 1024];
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        generator = new TerrainGenerator(BenchmarkWorlds.SEED);
+        World world = BenchmarkWorlds.generated(CHUNKS * Chunk.SIZE);
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = world.getChunk(i / CHUNKS, i % CHUNKS);
+            compressed[i] = ColdChunkCache.compress(chunks[i], raw, deflated, deflater);
+            rawLengths[i] = raw.position();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        deflater.end();
+    }
+
+    @Benchmark
+    public byte[] demote() {
+        int i = next++ % chunks.length;
+        return ColdChunkCache.compress(chunks[i], raw, deflated, deflater);
+    }
+
+    @Benchmark
+    public Object promote() {
+        int i = next++ % chunks.length;
+        Chunk chunk = ColdChunkCache.expand(i / CHUNKS, i % CHUNKS, compressed[i], rawLengths[i]);
+        SpillEdits spill = new SpillEdits(chunk.chunkX, chunk.chunkZ, true);
+        generator.respill(spill);
+        return chunk;
+    }
+
+    @Benchmark
+    public Object regenerate() {
+        int i = next++ % chunks.length;
+        Chunk chunk = generator.generate(i / CHUNKS, i % CHUNKS, new SpillEdits(i / CHUNKS, i % CHUNKS));
+        LightEngine.lightChunk(chunk);
+        return chunk;
+    }
+}
@@ -0,0 +1,78 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Swept-AABB physics steps of player-sized bodies walking and falling through the world. Each invocation runs
+ * one second of fixed steps for every body from a fresh start, so falls, landings and wall slides are all in
+ * the mix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollisionBenchmark {
+
+    private static final int BODIES = 64;
+    private static final int STEPS = 60;
+    private static final float STEP = 1f / STEPS;
+    private static final float GRAVITY = 20f;
+    private static final float WALK_SPEED = 5f;
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    @Param({"terrain", "0.1", "0.5", "0.9"})
+    public String fill;
+
+    private World world;
+    private final PlayerBody[] bodies = new PlayerBody[BODIES];
+    private final float[] starts = new float[BODIES * 5];
+
+    @Setup
+    public void setUp() {
+        world = BenchmarkWorlds.create(worldSize, fill);
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < BODIES; i++) {
+            bodies[i] = new PlayerBody(0.3f, 1.8f);
+            int start = i * 5;
+            starts[start] = 1f + random.nextFloat() * (worldSize - 2);
+            starts[start + 1] = random.nextFloat() * Chunk.HEIGHT;
+            starts[start + 2] = 1f + random.nextFloat() * (worldSize - 2);
+            float angle = random.nextFloat() * (float) (Math.PI * 2);
+            starts[start + 3] = (float) Math.cos(angle) * WALK_SPEED;
+            starts[start + 4] = (float) Math.sin(angle) * WALK_SPEED;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BODIES * STEPS)
+    public int step() {
+        int grounded = 0;
+        for (int i = 0; i < BODIES; i++) {
+            PlayerBody body = bodies[i];
+            int start = i * 5;
+            body.setPosition(starts[start], starts[start + 1], starts[start + 2]);
+            body.velocityY = 0f;
+            for (int step = 0; step < STEPS; step++) {
+                body.velocityX = starts[start + 3];
+                body.velocityZ = starts[start + 4];
+                body.step(world, STEP, GRAVITY);
+            }
+            if (body.onGround) {
+                grounded++;
+            }
+        }
+        return grounded;
+    }
+}
@@ -0,0 +1,57 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Terrain generation: one chunk at a time on the benchmark thread, a whole region on the common pool, and the
+ * chunk-local lighting every new chunk gets on its generator thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GenerationBenchmark {
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    private TerrainGenerator generator;
+    private int chunks;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        generator = new TerrainGenerator(BenchmarkWorlds.SEED);
+        chunks = worldSize / Chunk.SIZE;
+    }
+
+    @Benchmark
+    public Object generateChunk() {
+        // walk the area so noise is sampled at fresh coordinates
+        int i = next++ % (chunks * chunks);
+        return generator.generate(i / chunks, i % chunks, new SpillEdits(i / chunks, i % chunks));
+    }
+
+    @Benchmark
+    public Object generateAndLightChunk() {
+        int i = next++ % (chunks * chunks);
+        Chunk chunk = generator.generate(i / chunks, i % chunks, new SpillEdits(i / chunks, i % chunks));
+        LightEngine.lightChunk(chunk);
+        return chunk;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object generateRegion() {
+        return generator.generateRegion(ForkJoinPool.commonPool(), 0, 0, chunks, chunks);
+    }
+}
@@ -0,0 +1,53 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a distant terrain tile as an {@link LodTerrain} worker does it, heightmap sampling included, for
+ * each column width; {@code withHole} leaves out the chunks within 2 chunks of the tile's corner chunk, as for
+ * a near field there. Tiles are built in turn over an 8x8 area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LodMesherBenchmark {
+
+    private static final int TILES = 8;
+    private static final int CORNER_CUT = LodTerrain.chunkBit(0, 0) | LodTerrain.chunkBit(0, 1)
+        | LodTerrain.chunkBit(0, 2) | LodTerrain.chunkBit(1, 0) | LodTerrain.chunkBit(1, 1) | LodTerrain.chunkBit(2, 0);
+
+    @Param({"2", "4", "8"})
+    public int scale;
+
+    private TerrainGenerator generator;
+    private final LodMesher mesher = new LodMesher();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        generator = new TerrainGenerator(BenchmarkWorlds.SEED);
+    }
+
+    @Benchmark
+    public int buildTile() {
+        int i = next++ % (TILES * TILES);
+        mesher.build(generator, i / TILES, i % TILES, scale, 0);
+        return mesher.getFloatCount();
+    }
+
+    @Benchmark
+    public int buildTileWithHole() {
+        int i = next++ % (TILES * TILES);
+        mesher.build(generator, i / TILES, i % TILES, scale, CORNER_CUT);
+        return mesher.getFloatCount();
+    }
+}
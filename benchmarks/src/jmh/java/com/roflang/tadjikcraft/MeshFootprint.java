@@ -0,0 +1,46 @@
+package com.roflang.tadjikcraft;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Prints the vertex buffer size per chunk of generated worlds in the packed chunk vertex format next to the float
+ * layouts before it, for the same faces. The baseline is the game's original vertex, position and texture
+ * coordinates in 5 floats; the lit layout added packed colour and light for 7 floats before vertices were
+ * packed. Runs without a GL context.
+ */
+public final class MeshFootprint {
+
+    private static final int[] WORLD_SIZES = {64, 256, 512};
+    private static final int ORIGINAL_LAYOUT_BYTES = 5 * 4;
+    private static final int LIT_LAYOUT_BYTES = 7 * 4;
+    private static final long SEED = 1L;
+
+    private MeshFootprint() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %8s %14s %18s %16s %16s %8s%n",
+            "size", "chunks", "vertices", "original (B/chunk)", "lit (B/chunk)", "packed (B/chunk)", "ratio");
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        ChunkMesher mesher = new ChunkMesher();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (int size : WORLD_SIZES) {
+            World world = new World();
+            int chunks = size / Chunk.SIZE;
+            for (Chunk chunk : generator.generateRegion(pool, 0, 0, chunks, chunks)) {
+                LightEngine.lightChunk(chunk);
+                world.addChunk(chunk);
+            }
+            long vertices = 0;
+            for (Chunk chunk : world.getDirtyChunks()) {
+                mesher.build(ChunkSnapshot.capture(world, chunk));
+                vertices += mesher.getVertexCount();
+            }
+            int count = world.getChunkCount();
+            System.out.printf("%8d %8d %14d %18d %16d %16d %7.1fx%n",
+                size, count, vertices, vertices * ORIGINAL_LAYOUT_BYTES / count, vertices * LIT_LAYOUT_BYTES / count,
+                vertices * ChunkMesher.BYTES_PER_VERTEX / count,
+                ORIGINAL_LAYOUT_BYTES / (double) ChunkMesher.BYTES_PER_VERTEX);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Greedy meshing of one chunk column as a mesh worker does it, with and without taking the snapshot first,
+ * plus the section visibility flood fill that runs alongside it. Chunks are meshed in turn so the caches see a
+ * realistic mix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MeshingBenchmark {
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    @Param({"terrain", "0.1", "0.5", "0.9"})
+    public String fill;
+
+    private World world;
+    private Chunk[] chunks;
+    private ChunkSnapshot[] snapshots;
+    private final ChunkMesher mesher = new ChunkMesher();
+    private final SectionVisibility visibility = new SectionVisibility();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        world = BenchmarkWorlds.create(worldSize, fill);
+        chunks = new Chunk[world.getChunkCount()];
+        snapshots = new ChunkSnapshot[chunks.length];
+        int i = 0;
+        for (Chunk chunk : world.getChunks()) {
+            chunks[i] = chunk;
+            snapshots[i] = ChunkSnapshot.capture(world, chunk);
+            i++;
+        }
+    }
+
+    @Benchmark
+    public int meshChunk() {
+        mesher.build(snapshots[next++ % snapshots.length]);
+        return mesher.getFloatCount();
+    }
+
+    @Benchmark
+    public int snapshotAndMeshChunk() {
+        mesher.build(ChunkSnapshot.capture(world, chunks[next++ % chunks.length]));
+        return mesher.getFloatCount();
+    }
+
+    @Benchmark
+    public int sectionVisibility() {
+        ChunkSnapshot snapshot = snapshots[next++ % snapshots.length];
+        int pairs = 0;
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            pairs += Integer.bitCount(visibility.compute(snapshot.getSection(sectionY)));
+        }
+        return pairs;
+    }
+}
@@ -0,0 +1,107 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whether a solid block is hidden on all six sides, looked up through {@link World} the way the old per-block
+ * renderer's {@code isCompletelyHidden} did, and through a {@link ChunkSnapshot} the way the mesher checks its
+ * faces now.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NeighbourCheckBenchmark {
+
+    private static final int BATCH = 4096;
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    @Param({"terrain", "0.1", "0.5", "0.9"})
+    public String fill;
+
+    private World world;
+    private final int[] xs = new int[BATCH];
+    private final int[] ys = new int[BATCH];
+    private final int[] zs = new int[BATCH];
+    private final ChunkSnapshot[] snapshots = new ChunkSnapshot[BATCH];
+
+    @Setup
+    public void setUp() {
+        world = BenchmarkWorlds.create(worldSize, fill);
+        Random random = new Random(BenchmarkWorlds.SEED);
+        int found = 0;
+        for (int attempt = 0; found < BATCH && attempt < BATCH * 1000; attempt++) {
+            int x = random.nextInt(worldSize);
+            int y = random.nextInt(Chunk.HEIGHT);
+            int z = random.nextInt(worldSize);
+            if (world.isSolid(x, y, z)) {
+                xs[found] = x;
+                ys[found] = y;
+                zs[found] = z;
+                found++;
+            }
+        }
+        if (found < BATCH) {
+            throw new IllegalStateException("Only " + found + " solid blocks found");
+        }
+        // one snapshot per chunk, shared by every block in it
+        ChunkSnapshot[] byChunk = new ChunkSnapshot[world.getChunkCount()];
+        int chunksPerRow = worldSize / Chunk.SIZE;
+        for (int i = 0; i < BATCH; i++) {
+            int chunkX = xs[i] >> 4;
+            int chunkZ = zs[i] >> 4;
+            int index = chunkX * chunksPerRow + chunkZ;
+            if (byChunk[index] == null) {
+                byChunk[index] = ChunkSnapshot.capture(world, world.getChunk(chunkX, chunkZ));
+            }
+            snapshots[i] = byChunk[index];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int throughWorld() {
+        int hidden = 0;
+        for (int i = 0; i < BATCH; i++) {
+            int x = xs[i];
+            int y = ys[i];
+            int z = zs[i];
+            if (world.isSolid(x + 1, y, z) && world.isSolid(x - 1, y, z)
+                && world.isSolid(x, y + 1, z) && world.isSolid(x, y - 1, z)
+                && world.isSolid(x, y, z + 1) && world.isSolid(x, y, z - 1)) {
+                hidden++;
+            }
+        }
+        return hidden;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int throughSnapshot() {
+        int hidden = 0;
+        for (int i = 0; i < BATCH; i++) {
+            ChunkSnapshot snapshot = snapshots[i];
+            int x = xs[i] & 15;
+            int y = ys[i];
+            int z = zs[i] & 15;
+            if (snapshot.getBlock(x + 1, y, z) != BlockType.AIR && snapshot.getBlock(x - 1, y, z) != BlockType.AIR
+                && snapshot.getBlock(x, y + 1, z) != BlockType.AIR && snapshot.getBlock(x, y - 1, z) != BlockType.AIR
+                && snapshot.getBlock(x, y, z + 1) != BlockType.AIR && snapshot.getBlock(x, y, z - 1) != BlockType.AIR) {
+                hidden++;
+            }
+        }
+        return hidden;
+    }
+}
@@ -0,0 +1,112 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block targeting rays from random points in random directions: the DDA {@link VoxelRaycaster} one ray at a time
+ * and batched, against the fixed-step sampling loop it replaced as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RaycastBenchmark {
+
+    private static final int RAYS = 1024;
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    @Param({"terrain", "0.1", "0.5", "0.9"})
+    public String fill;
+
+    @Param({"6", "64"})
+    public float maxDistance;
+
+    private World world;
+    private final VoxelRaycaster raycaster = new VoxelRaycaster();
+    private final float[] rays = new float[RAYS * VoxelRaycaster.RAY_STRIDE];
+    private final int[] hits = new int[RAYS * VoxelRaycaster.HIT_STRIDE];
+
+    @Setup
+    public void setUp() {
+        world = BenchmarkWorlds.create(worldSize, fill);
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < RAYS; i++) {
+            int ray = i * VoxelRaycaster.RAY_STRIDE;
+            rays[ray] = random.nextFloat() * worldSize;
+            rays[ray + 1] = random.nextFloat() * Chunk.HEIGHT;
+            rays[ray + 2] = random.nextFloat() * worldSize;
+            // uniform on the sphere
+            float z = random.nextFloat() * 2f - 1f;
+            float angle = random.nextFloat() * MathUtils.PI2;
+            float radius = (float) Math.sqrt(1f - z * z);
+            rays[ray + 3] = radius * MathUtils.cos(angle);
+            rays[ray + 4] = z;
+            rays[ray + 5] = radius * MathUtils.sin(angle);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int dda() {
+        int hitCount = 0;
+        for (int i = 0; i < RAYS; i++) {
+            int ray = i * VoxelRaycaster.RAY_STRIDE;
+            if (raycaster.cast(world, rays[ray], rays[ray + 1], rays[ray + 2], rays[ray + 3], rays[ray + 4], rays[ray + 5],
+                maxDistance)) {
+                hitCount++;
+            }
+        }
+        return hitCount;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int ddaBatch() {
+        return raycaster.castAll(world, rays, RAYS, maxDistance, hits);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int legacyStepping() {
+        int hitCount = 0;
+        for (int i = 0; i < RAYS; i++) {
+            int ray = i * VoxelRaycaster.RAY_STRIDE;
+            if (legacyTarget(rays[ray], rays[ray + 1], rays[ray + 2], rays[ray + 3], rays[ray + 4], rays[ray + 5]) != null) {
+                hitCount++;
+            }
+        }
+        return hitCount;
+    }
+
+    /**
+     * The old {@code TadjikCraftGame.getTargetedBlock(true)}: samples the ray every 0.1 blocks, allocating its
+     * vectors and result as it did. Can step past block corners.
+     */
+    private int[] legacyTarget(float x, float y, float z, float dirX, float dirY, float dirZ) {
+        Vector3 origin = new Vector3(x, y, z);
+        Vector3 dir = new Vector3(dirX, dirY, dirZ).nor();
+        for (float d = 0.2f; d <= maxDistance; d += 0.1f) {
+            int bx = MathUtils.floor(origin.x + dir.x * d);
+            int by = MathUtils.floor(origin.y + dir.y * d);
+            int bz = MathUtils.floor(origin.z + dir.z * d);
+            if (world.isSolid(bx, by, bz)) {
+                return new int[]{bx, by, bz};
+            }
+        }
+        return null;
+    }
+}
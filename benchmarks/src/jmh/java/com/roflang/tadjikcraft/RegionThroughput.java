@@ -0,0 +1,83 @@
+package com.roflang.tadjikcraft;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares generating 10k chunks with loading them from region files. Runs without a GL context.
+ *
+ * <p>Pass a directory to reuse a world written by an earlier run: dropping the OS page cache in between
+ * ({@code sync; echo 3 > /proc/sys/vm/drop_caches} on Linux) makes the first pass a truly cold read.
+ * Without one, the cold pass only starts from freshly opened, unmapped files.
+ */
+public final class RegionThroughput {
+
+    private static final int SIDE = 100;
+    private static final long SEED = 1L;
+
+    private RegionThroughput() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = args.length > 0 ? new File(args[0]) : Files.createTempDirectory("tadjikcraft-regions").toFile();
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        int chunks = SIDE * SIDE;
+
+        if (!new File(directory, "world.properties").isFile()) {
+            long start = System.nanoTime();
+            Chunk[] region = generator.generateRegion(ForkJoinPool.commonPool(), 0, 0, SIDE, SIDE);
+            long generated = System.nanoTime() - start;
+            report("generate (" + ForkJoinPool.commonPool().getParallelism() + " threads)", chunks, generated);
+
+            long bytes = 0;
+            try (RegionStorage storage = new RegionStorage(directory, SEED)) {
+                start = System.nanoTime();
+                for (Chunk chunk : region) {
+                    bytes += storage.save(chunk);
+                }
+                storage.sync();
+                report("save", chunks, System.nanoTime() - start);
+            }
+            System.out.printf("%d bytes per chunk on average%n", bytes / chunks);
+        }
+
+        try (RegionStorage storage = new RegionStorage(directory, SEED)) {
+            report("load, cold", chunks, loadAll(storage));
+            report("load, warm", chunks, loadAll(storage));
+        }
+
+        long start = System.nanoTime();
+        for (int x = 0; x < SIDE; x++) {
+            for (int z = 0; z < SIDE; z++) {
+                generator.generate(x, z, new SpillEdits(x, z));
+            }
+        }
+        report("generate (1 thread)", chunks, System.nanoTime() - start);
+        System.out.println("World: " + directory.getAbsolutePath());
+    }
+
+    private static long loadAll(RegionStorage storage) throws IOException {
+        long start = System.nanoTime();
+        int blocks = 0;
+        for (int x = 0; x < SIDE; x++) {
+            for (int z = 0; z < SIDE; z++) {
+                Chunk chunk = storage.load(x, z);
+                if (chunk == null) {
+                    throw new IOException("Chunk " + x + ", " + z + " is missing from " + storage.getDirectory());
+                }
+                blocks += chunk.getBlockCount();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (blocks == 0) {
+            throw new IllegalStateException("Loaded an empty world");
+        }
+        return elapsed;
+    }
+
+    private static void report(String label, int chunks, long nanos) {
+        System.out.printf("%-24s %8.1f ms %10.0f chunks/s%n", label, nanos / 1e6, chunks / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,88 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental relighting after a single block edit on generated terrain. Each invocation makes an edit on the
+ * surface and undoes it, so the world is unchanged afterwards and every operation is one {@link World#setBlock}.
+ * The chunks it marks for meshing are let go again at the end of the invocation, as a tick would after meshing
+ * them, so every edit pays for marking its chunks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RelightBenchmark {
+
+    private static final int SPOTS = 256;
+
+    @Param({"64", "256"})
+    public int worldSize;
+
+    private World world;
+    private final int[] xs = new int[SPOTS];
+    private final int[] ys = new int[SPOTS];
+    private final int[] zs = new int[SPOTS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        world = BenchmarkWorlds.generated(worldSize);
+        Random random = new Random(BenchmarkWorlds.SEED);
+        for (int i = 0; i < SPOTS; i++) {
+            int x;
+            int z;
+            do {
+                // away from the world edge so every edit has loaded neighbours on all sides
+                x = 16 + random.nextInt(worldSize - 32);
+                z = 16 + random.nextInt(worldSize - 32);
+            } while (world.getTopBlockY(x, z) >= Chunk.HEIGHT - 2);
+            xs[i] = x;
+            ys[i] = world.getTopBlockY(x, z) + 1;
+            zs[i] = z;
+        }
+    }
+
+    /** Places a block on the surface, shading the column below, and removes it again. */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int placeAndBreak() {
+        int i = next++ & (SPOTS - 1);
+        world.setBlock(xs[i], ys[i], zs[i], BlockType.STONE.id);
+        int id = world.setBlock(xs[i], ys[i], zs[i], BlockType.AIR);
+        BenchmarkWorlds.clearDirty(world);
+        return id;
+    }
+
+    /** Places a lamp on the surface, lighting the area around it, and removes it again. */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int lampOnOff() {
+        int i = next++ & (SPOTS - 1);
+        world.setBlock(xs[i], ys[i], zs[i], BlockType.LAMP.id);
+        int id = world.setBlock(xs[i], ys[i], zs[i], BlockType.AIR);
+        BenchmarkWorlds.clearDirty(world);
+        return id;
+    }
+
+    /** Breaks a surface block, opening it to the sky, and puts it back. */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public int breakAndRestore() {
+        int i = next++ & (SPOTS - 1);
+        int id = world.setBlock(xs[i], ys[i] - 1, zs[i], BlockType.AIR);
+        int restored = world.setBlock(xs[i], ys[i] - 1, zs[i], id);
+        BenchmarkWorlds.clearDirty(world);
+        return restored;
+    }
+}
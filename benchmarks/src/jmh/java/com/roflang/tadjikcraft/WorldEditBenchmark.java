@@ -0,0 +1,76 @@
+package com.roflang.tadjikcraft;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk edits of a 256x64x256 box of generated terrain, relighting included. The box is either lined up with
+ * the section grid ({@code inset} 0), so every section is swapped whole, or one block in from every side, so
+ * the outer sections are written cell by cell. Each edit is undone after the invocation, outside the timing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WorldEditBenchmark {
+
+    private static final int WORLD_SIZE = 288;
+    private static final int MIN = 16;
+    private static final int MAX = MIN + 255;
+
+    @Param({"0", "1"})
+    public int inset;
+
+    private World world;
+    private WorldEdit edit;
+    private WorldEdit.Undo undo;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = BenchmarkWorlds.generated(WORLD_SIZE);
+        edit = new WorldEdit(world);
+    }
+
+    @TearDown(Level.Invocation)
+    public void restore() {
+        if (undo != null) {
+            edit.undo(undo);
+            undo = null;
+        }
+        // as a tick would after meshing, so the next edit lists its chunks again
+        BenchmarkWorlds.clearDirty(world);
+    }
+
+    /** Fills the box with stone. */
+    @Benchmark
+    public WorldEdit.Undo fill() {
+        undo = edit.fill(MIN + inset, inset, MIN + inset, MAX - inset, Chunk.HEIGHT - 1 - inset, MAX - inset,
+            BlockType.STONE.id);
+        return undo;
+    }
+
+    /** Turns the stone in the box into dirt. */
+    @Benchmark
+    public WorldEdit.Undo replace() {
+        undo = edit.replace(MIN + inset, inset, MIN + inset, MAX - inset, Chunk.HEIGHT - 1 - inset, MAX - inset,
+            BlockType.STONE.id, BlockType.DIRT.id);
+        return undo;
+    }
+
+    /** Copies the western half of the box over the eastern half. */
+    @Benchmark
+    public WorldEdit.Undo cloneHalf() {
+        undo = edit.clone(MIN + inset, inset, MIN + inset, MIN + 127, Chunk.HEIGHT - 1 - inset, MAX - inset,
+            MIN + 128 + inset, inset, MIN + inset);
+        return undo;
+    }
+}
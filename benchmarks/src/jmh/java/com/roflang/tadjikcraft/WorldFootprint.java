@@ -0,0 +1,36 @@
+package com.roflang.tadjikcraft;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Prints the heap footprint of the chunked block store next to the old {@code LinkedHashMap<BlockPos, BlockType>}
+ * for generated worlds of a few sizes. Runs without a GL context.
+ */
+public final class WorldFootprint {
+
+    private static final int[] WORLD_SIZES = {64, 512, 2048};
+    private static final long SEED = 1L;
+
+    private WorldFootprint() {
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%8s %12s %8s %14s %14s %8s%n", "size", "blocks", "chunks", "chunked (KB)", "map (KB)", "ratio");
+        World world = new World();
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (int size : WORLD_SIZES) {
+            world.clear();
+            int chunks = size / Chunk.SIZE;
+            for (Chunk chunk : generator.generateRegion(pool, 0, 0, chunks, chunks)) {
+                world.addChunk(chunk);
+            }
+            BenchmarkWorlds.clearDirty(world);
+            long blocks = world.getBlockCount();
+            long chunked = world.estimateHeapBytes();
+            long legacy = World.estimateLegacyMapBytes(blocks);
+            System.out.printf("%8d %12d %8d %14d %14d %7.1fx%n",
+                size, blocks, world.getChunkCount(), chunked / 1024, legacy / 1024, legacy / (double) chunked);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.roflang.tadjikcraft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** The {@link ChunkEvents} recorded as JFR events; only loaded when the runtime has {@code jdk.jfr}. */
+final class JfrChunkEvents extends ChunkEvents {
+
+    @Override
+    Object beginGenerate() {
+        Generate event = new Generate();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endGenerate(Object event, int chunkX, int chunkZ, boolean fromDisk, boolean fromCache) {
+        Generate generate = (Generate) event;
+        if (generate.shouldCommit()) {
+            generate.chunkX = chunkX;
+            generate.chunkZ = chunkZ;
+            generate.fromDisk = fromDisk;
+            generate.fromCache = fromCache;
+            generate.commit();
+        }
+    }
+
+    @Override
+    Object beginMesh() {
+        Mesh event = new Mesh();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endMesh(Object event, int chunkX, int chunkZ, int vertices) {
+        Mesh mesh = (Mesh) event;
+        if (mesh.shouldCommit()) {
+            mesh.chunkX = chunkX;
+            mesh.chunkZ = chunkZ;
+            mesh.vertices = vertices;
+            mesh.commit();
+        }
+    }
+
+    @Override
+    Object beginUpload() {
+        Upload event = new Upload();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void endUpload(Object event, int chunkX, int chunkZ, int vertices) {
+        Upload upload = (Upload) event;
+        if (upload.shouldCommit()) {
+            upload.chunkX = chunkX;
+            upload.chunkZ = chunkZ;
+            upload.vertices = vertices;
+            upload.commit();
+        }
+    }
+
+    @Name("tadjikcraft.ChunkGenerate")
+    @Label("Chunk Generate")
+    @Category("TadjikCraft")
+    @Description("Promoting, loading or generating a chunk and lighting it, on a streaming worker")
+    static final class Generate extends Event {
+        @Label("Chunk X")
+        int chunkX;
+        @Label("Chunk Z")
+        int chunkZ;
+        @Label("From Disk")
+        boolean fromDisk;
+        @Label("From Cold Cache")
+        boolean fromCache;
+    }
+
+    @Name("tadjikcraft.ChunkMesh")
+    @Label("Chunk Mesh")
+    @Category("TadjikCraft")
+    @Description("Building a chunk's vertices on a meshing worker")
+    static final class Mesh extends Event {
+        @Label("Chunk X")
+        int chunkX;
+        @Label("Chunk Z")
+        int chunkZ;
+        @Label("Vertices")
+        int vertices;
+    }
+
+    @Name("tadjikcraft.ChunkUpload")
+    @Label("Chunk Upload")
+    @Category("TadjikCraft")
+    @Description("Copying a finished chunk mesh to the GPU on the render thread")
+    static final class Upload extends Event {
+        @Label("Chunk X")
+        int chunkX;
+        @Label("Chunk Z")
+        int chunkZ;
+        @Label("Vertices")
+        int vertices;
+    }
+}
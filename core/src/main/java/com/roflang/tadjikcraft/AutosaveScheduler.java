@@ -0,0 +1,263 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Saves chunks without stalling the simulation. The simulation thread only takes copy-on-write snapshots of
+ * changed chunks ({@link Chunk#snapshotBlocks()}); a writer thread encodes them and writes them to the
+ * {@link RegionStorage}, grouped by region file, and forces the files to disk at most every
+ * {@code syncIntervalMillis}.
+ *
+ * <p>A chunk's {@link Chunk#needsSave} is cleared when its snapshot is taken, so an edit made while the snapshot
+ * is being written marks it again and it goes out with the next autosave. Snapshots are written in the order
+ * they were taken, and {@link #load} returns a queued snapshot before it reaches the file, so a chunk that is
+ * unloaded and streamed back in straight away never reads stale data.
+ *
+ * <p>A snapshot that fails to write stays queued for {@link #load} and is retried, backing off from
+ * 100 ms to 10 s between tries, until it is written or a newer snapshot of the chunk
+ * replaces it. Only {@link #dispose()} gives up on it, after one last try.
+ */
+final class AutosaveScheduler implements Disposable {
+
+    private static final Comparator<Chunk> BY_REGION = new Comparator<Chunk>() {
+        @Override
+        public int compare(Chunk a, Chunk b) {
+            int byX = Integer.compare(a.chunkX >> 5, b.chunkX >> 5);
+            return byX != 0 ? byX : Integer.compare(a.chunkZ >> 5, b.chunkZ >> 5);
+        }
+    };
+    private static final long RETRY_MIN_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+    private static final long RETRY_MAX_NANOS = TimeUnit.SECONDS.toNanos(10L);
+
+    private final RegionStorage storage;
+    private final float intervalSeconds;
+    private final long syncIntervalNanos;
+    private final long shutdownTimeoutMillis;
+
+    private final LinkedBlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<Long, Chunk> unwritten = new ConcurrentHashMap<>();
+    private final Thread writer;
+    // writer thread only
+    private final ArrayList<Chunk> failed = new ArrayList<>();
+    private long retryDelayNanos;
+    private long retryAt;
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong chunksWritten = new AtomicLong();
+    private volatile long lastSaveNanos;
+    private volatile long maxSaveNanos;
+    private volatile boolean running = true;
+
+    private float sinceAutosave;
+    private volatile long lastSnapshotNanos;
+
+    /**
+     * @param intervalSeconds       time between autosaves of all changed chunks
+     * @param syncIntervalMillis    minimum time between two fsyncs of the written region files
+     * @param shutdownTimeoutMillis how long {@link #dispose()} waits for queued snapshots to be written
+     */
+    AutosaveScheduler(RegionStorage storage, float intervalSeconds, long syncIntervalMillis, long shutdownTimeoutMillis) {
+        this.storage = storage;
+        this.intervalSeconds = intervalSeconds;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+        writer = new Thread(this::runWriter, "chunk-saver");
+        writer.setDaemon(true);
+        writer.setPriority(Thread.NORM_PRIORITY - 1);
+        writer.start();
+    }
+
+    /** Counts down the autosave interval and snapshots every changed chunk when it runs out. Simulation thread only. */
+    void update(float delta, Iterable<Chunk> chunks) {
+        sinceAutosave += delta;
+        if (sinceAutosave >= intervalSeconds) {
+            sinceAutosave = 0f;
+            saveAll(chunks);
+        }
+    }
+
+    /** Snapshots every changed chunk for writing. Simulation thread only. */
+    void saveAll(Iterable<Chunk> chunks) {
+        long start = System.nanoTime();
+        for (Chunk chunk : chunks) {
+            save(chunk);
+        }
+        lastSnapshotNanos = System.nanoTime() - start;
+    }
+
+    /** Snapshots {@code chunk} for writing if it changed since its last save. Simulation thread only. */
+    void save(Chunk chunk) {
+        if (!chunk.needsSave) {
+            return;
+        }
+        chunk.needsSave = false;
+        Chunk snapshot = chunk.snapshotBlocks();
+        // stamp the queue time so the writer can report the save latency
+        snapshot.dirtySince = System.nanoTime();
+        unwritten.put(World.chunkKey(chunk.chunkX, chunk.chunkZ), snapshot);
+        queue.add(snapshot);
+    }
+
+    /** Loads a chunk, preferring a snapshot that is still waiting to be written. Safe from any thread. */
+    Chunk load(int chunkX, int chunkZ) throws IOException {
+        Chunk queued = unwritten.get(World.chunkKey(chunkX, chunkZ));
+        if (queued != null) {
+            Chunk copy = copyOf(queued);
+            copy.needsSave = false;
+            return copy;
+        }
+        return storage.load(chunkX, chunkZ);
+    }
+
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    long getChunksWritten() {
+        return chunksWritten.get();
+    }
+
+    /** Time from the last written snapshot being taken to it reaching the region file. */
+    long getLastSaveNanos() {
+        return lastSaveNanos;
+    }
+
+    long getMaxSaveNanos() {
+        return maxSaveNanos;
+    }
+
+    /** Simulation-thread time spent taking the last autosave's snapshots. */
+    long getLastSnapshotNanos() {
+        return lastSnapshotNanos;
+    }
+
+    private void runWriter() {
+        ArrayList<Chunk> batch = new ArrayList<>();
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+        while (true) {
+            try {
+                Chunk first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            // failed snapshots go first, before newer snapshots of the same chunks
+            boolean retrying = !failed.isEmpty() && (!running || System.nanoTime() - retryAt >= 0);
+            if (retrying) {
+                batch.addAll(0, failed);
+                failed.clear();
+            }
+            if (!batch.isEmpty()) {
+                int failedBefore = failed.size();
+                write(batch);
+                batch.clear();
+                unsynced = true;
+                if (retrying || failed.size() > failedBefore) {
+                    scheduleRetry();
+                }
+            }
+            boolean stopping = !running && queue.isEmpty() && (failed.isEmpty() || retrying);
+            if (stopping && !failed.isEmpty()) {
+                Gdx.app.error("AutosaveScheduler", "Gave up saving " + failed.size() + " chunks");
+            }
+            if (unsynced && (stopping || System.nanoTime() - lastSync >= syncIntervalNanos)) {
+                try {
+                    storage.sync();
+                } catch (IOException e) {
+                    Gdx.app.error("AutosaveScheduler", "Failed to sync " + storage.getDirectory(), e);
+                }
+                lastSync = System.nanoTime();
+                unsynced = false;
+            }
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    private void write(ArrayList<Chunk> batch) {
+        // stable sort: snapshots of the same chunk keep their order, and each region file is written in one go
+        Collections.sort(batch, BY_REGION);
+        for (Chunk snapshot : batch) {
+            try {
+                bytesWritten.addAndGet(storage.save(snapshot));
+                chunksWritten.incrementAndGet();
+            } catch (IOException e) {
+                Gdx.app.error("AutosaveScheduler", "Failed to save chunk " + snapshot.chunkX + ", " + snapshot.chunkZ, e);
+                // keep it for load() and try again, unless a newer snapshot took its place
+                if (unwritten.get(World.chunkKey(snapshot.chunkX, snapshot.chunkZ)) == snapshot) {
+                    failed.add(snapshot);
+                }
+                continue;
+            }
+            unwritten.remove(World.chunkKey(snapshot.chunkX, snapshot.chunkZ), snapshot);
+
+            long latency = System.nanoTime() - snapshot.dirtySince;
+            lastSaveNanos = latency;
+            if (latency > maxSaveNanos) {
+                maxSaveNanos = latency;
+            }
+        }
+    }
+
+    /** Doubles the wait before the next retry while writes keep failing, and resets it once they go through. */
+    private void scheduleRetry() {
+        if (failed.isEmpty()) {
+            retryDelayNanos = 0L;
+            return;
+        }
+        retryDelayNanos = retryDelayNanos == 0L ? RETRY_MIN_NANOS : Math.min(retryDelayNanos * 2, RETRY_MAX_NANOS);
+        retryAt = System.nanoTime() + retryDelayNanos;
+    }
+
+    /** Copies a queued snapshot. Nothing writes to queued snapshots, so sharing their sections is safe anywhere. */
+    private static Chunk copyOf(Chunk snapshot) {
+        Chunk copy = snapshot.snapshotBlocks();
+        copy.fromDisk = true;
+        return copy;
+    }
+
+    /** Whether the writer has finished, after {@link #dispose()}; until then the region files are in use. */
+    boolean isStopped() {
+        return !writer.isAlive();
+    }
+
+    /**
+     * Stops the writer after it has written everything queued so far, waiting at most the shutdown timeout.
+     * Callers queue their last changes with {@link #saveAll} first, and close the {@link RegionStorage} only if
+     * {@link #isStopped()} afterwards.
+     */
+    @Override
+    public void dispose() {
+        // no interrupt: an interrupt during a FileChannel write would close the region file
+        running = false;
+        try {
+            writer.join(shutdownTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            Gdx.app.error("AutosaveScheduler", "Gave up waiting for " + queue.size() + " chunks to be saved");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * All block textures packed into one texture at startup, one square tile per block type in id order, so the
+ * whole terrain renders with a single texture bind. A block uses {@code blocks/<name>.png} if the file exists;
+ * otherwise its tile is the base texture multiplied by the block's tint, which is how blocks looked before
+ * they had textures of their own.
+ */
+final class BlockAtlas implements Disposable {
+
+    private final Texture texture;
+    private final int tilesPerRow;
+
+    BlockAtlas(String baseTexture) {
+        Pixmap base = new Pixmap(Gdx.files.internal(baseTexture));
+        int tileSize = base.getWidth();
+        int tiles = BlockType.values().length;
+        // power-of-two rows keep tile edges on exact texel boundaries
+        int perRow = 1;
+        while (perRow * perRow < tiles) {
+            perRow <<= 1;
+        }
+        tilesPerRow = perRow;
+
+        Pixmap atlas = new Pixmap(tileSize * perRow, tileSize * perRow, Pixmap.Format.RGBA8888);
+        atlas.setBlending(Pixmap.Blending.None);
+        for (BlockType type : BlockType.values()) {
+            int tile = tileOf(type.id);
+            int originX = (tile % perRow) * tileSize;
+            int originY = (tile / perRow) * tileSize;
+            FileHandle file = Gdx.files.internal("blocks/" + type.name().toLowerCase() + ".png");
+            if (file.exists()) {
+                Pixmap own = new Pixmap(file);
+                atlas.drawPixmap(own, 0, 0, own.getWidth(), own.getHeight(), originX, originY, tileSize, tileSize);
+                own.dispose();
+            } else {
+                drawTinted(atlas, base, type.tint, originX, originY, tileSize);
+            }
+        }
+        base.dispose();
+
+        texture = new Texture(atlas);
+        texture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
+        atlas.dispose();
+    }
+
+    private static void drawTinted(Pixmap atlas, Pixmap base, Color tint, int originX, int originY, int tileSize) {
+        for (int y = 0; y < tileSize; y++) {
+            for (int x = 0; x < tileSize; x++) {
+                int pixel = base.getPixel(x % base.getWidth(), y % base.getHeight());
+                float r = ((pixel >>> 24) & 0xff) / 255f * tint.r;
+                float g = ((pixel >>> 16) & 0xff) / 255f * tint.g;
+                float b = ((pixel >>> 8) & 0xff) / 255f * tint.b;
+                atlas.drawPixel(originX + x, originY + y, Color.rgba8888(r, g, b, 1f));
+            }
+        }
+    }
+
+    /** Atlas tile of a block id; ids start at 1, tiles at 0. */
+    static int tileOf(int id) {
+        return id - 1;
+    }
+
+    Texture getTexture() {
+        return texture;
+    }
+
+    int getTilesPerRow() {
+        return tilesPerRow;
+    }
+
+    @Override
+    public void dispose() {
+        texture.dispose();
+    }
+}
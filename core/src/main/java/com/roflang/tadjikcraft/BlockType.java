@@ -0,0 +1,63 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.graphics.Color;
+
+enum BlockType {
+    GRASS(1, new Color(0.62f, 0.82f, 0.55f, 1f)),
+    DIRT(2, new Color(0.70f, 0.54f, 0.41f, 1f)),
+    STONE(3, new Color(0.70f, 0.70f, 0.73f, 1f)),
+    SAND(4, new Color(0.90f, 0.84f, 0.58f, 1f)),
+    WOOD(5, new Color(0.66f, 0.50f, 0.30f, 1f)),
+    LEAVES(6, new Color(0.44f, 0.72f, 0.40f, 1f)),
+    SNOW(7, new Color(0.95f, 0.96f, 1.0f, 1f)),
+    LAMP(8, new Color(1.0f, 0.86f, 0.52f, 1f), 15);
+
+    /** Storage id of an empty cell. Block ids start at 1 so that zeroed storage reads as air. */
+    static final int AIR = 0;
+
+    private static final BlockType[] BY_ID = new BlockType[values().length + 1];
+    private static final int[] EMISSION_BY_ID = new int[values().length + 1];
+
+    static {
+        for (BlockType value : values()) {
+            BY_ID[value.id] = value;
+            EMISSION_BY_ID[value.id] = value.lightEmission;
+        }
+    }
+
+    final int id;
+    final int slot;
+    final Color tint;
+    /** Block light level the block gives off, 0 for none. */
+    final int lightEmission;
+
+    BlockType(int slot, Color tint) {
+        this(slot, tint, 0);
+    }
+
+    BlockType(int slot, Color tint, int lightEmission) {
+        this.id = ordinal() + 1;
+        this.slot = slot;
+        this.tint = tint;
+        this.lightEmission = lightEmission;
+    }
+
+    /** Returns the block type for a storage id, or {@code null} for {@link #AIR}. */
+    static BlockType byId(int id) {
+        return BY_ID[id];
+    }
+
+    /** Light emission for a storage id; 0 for {@link #AIR}. */
+    static int emissionOf(int id) {
+        return EMISSION_BY_ID[id];
+    }
+
+    static BlockType fromSlot(int slot) {
+        for (BlockType value : values()) {
+            if (value.slot == slot) {
+                return value;
+            }
+        }
+        return GRASS;
+    }
+}
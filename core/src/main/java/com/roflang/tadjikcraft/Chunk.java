@@ -3,72 +3,261 @@ package com.roflang.tadjikcraft;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 
+import java.util.Arrays;
+
 public class Chunk {
 
     static final int SIZE = 16;
+    static final int SECTION_COUNT = 4;
+    static final int HEIGHT = SIZE * SECTION_COUNT;
 
     int chunkX;
     int chunkZ;
 
+    /** Vertical stack of sections; a {@code null} entry is an all-air section and costs nothing. */
+    final ChunkSection[] sections = new ChunkSection[SECTION_COUNT];
+
+    /**
+     * Light per {@link LightEngine} channel and section. A {@code null} array is uniform at the channel's
+     * {@link LightEngine#defaultLevel}: full sky light, no block light.
+     */
+    final NibbleArray[][] light = new NibbleArray[2][SECTION_COUNT];
+
+    /** Per column ({@code z * SIZE + x}) one more than the y of the top non-air block; 0 for an empty column. */
+    private final short[] heightmap = new short[SIZE * SIZE];
+
     Mesh mesh;
     int vertexCount;
 
+    /** Set while the chunk waits in {@link World#getDirtyChunks()}; {@code dirtySince} is when it got there. */
+    boolean meshDirty;
+    long dirtySince;
+    volatile boolean hasMesh;
+    /** {@link SectionVisibility} of each section as of the current mesh; fully open until the first mesh. */
+    final int[] sectionVisibility = new int[SECTION_COUNT];
+
+    /** Bumped on every mesh submission; workers and the upload step drop results for older versions. */
+    volatile int meshVersion;
+    ChunkMeshPipeline.MeshJob pendingMeshJob;
+    volatile boolean disposed;
+
+    /** Set when blocks changed since the chunk was last written to disk. New chunks start unsaved. */
+    volatile boolean needsSave = true;
+    /** Whether the chunk was read from a save rather than generated, see {@link SpillEdits#FRESH_TARGETS_ONLY}. */
+    boolean fromDisk;
+    /** {@link ChunkStreamer} centre change at which the chunk was last within the view radius. */
+    long lastInView;
+
     public Chunk(int chunkX, int chunkZ){
         this.chunkX = chunkX;
         this.chunkZ = chunkZ;
-        buildMesh();
+        Arrays.fill(sectionVisibility, SectionVisibility.ALL);
     }
 
-    private void buildMesh(){
+    int getBlock(int x, int y, int z){
+        ChunkSection section = sections[y >> 4];
+        return section == null ? BlockType.AIR : section.get(x, y & 15, z);
+    }
+
+    /** Stores {@code id} at chunk-local coordinates and returns the id that was there before. */
+    int setBlock(int x, int y, int z, int id){
+        int sectionY = y >> 4;
+        ChunkSection section = sections[sectionY];
+        if(section == null){
+            if(id == BlockType.AIR){
+                return BlockType.AIR;
+            }
+            section = new ChunkSection();
+            sections[sectionY] = section;
+        }
 
-        float[] vertices = new float[SIZE*SIZE*6*6*3];
-        int idx = 0;
+        int previous = section.set(x, y & 15, z, id);
+        if(previous != id){
+            needsSave = true;
+            updateHeight(x, y, z, id);
+        }
+        if(section.isEmpty()){
+            sections[sectionY] = null;
+        }
+        return previous;
+    }
 
-        for(int x=0;x<SIZE;x++){
-            for(int z=0;z<SIZE;z++){
+    /** Y of the top non-air block in the column at chunk-local (x, z), or -1 if the column is empty. */
+    int getTopBlockY(int x, int z){
+        return heightmap[z * SIZE + x] - 1;
+    }
+
+    /** Recomputes every column's height; for chunks whose sections were filled without {@link #setBlock}. */
+    void rebuildHeightmap(){
+        for(int z = 0; z < SIZE; z++){
+            for(int x = 0; x < SIZE; x++){
+                heightmap[z * SIZE + x] = (short) (scanDown(x, HEIGHT - 1, z) + 1);
+            }
+        }
+    }
+
+    private void updateHeight(int x, int y, int z, int id){
+        int column = z * SIZE + x;
+        int height = heightmap[column];
+        if(id != BlockType.AIR){
+            if(y >= height){
+                heightmap[column] = (short) (y + 1);
+            }
+        }else if(y == height - 1){
+            // the top block went away; only this column needs a rescan
+            heightmap[column] = (short) (scanDown(x, y - 1, z) + 1);
+        }
+    }
+
+    private int scanDown(int x, int fromY, int z){
+        for(int y = fromY; y >= 0; y--){
+            ChunkSection section = sections[y >> 4];
+            if(section == null){
+                // skip the whole empty section
+                y &= ~15;
+                continue;
+            }
+            if(section.get(x, y & 15, z) != BlockType.AIR){
+                return y;
+            }
+        }
+        return -1;
+    }
 
-                float worldX = chunkX*SIZE + x;
-                float worldZ = chunkZ*SIZE + z;
-                float y = 0;
+    int getLight(int channel, int x, int y, int z){
+        NibbleArray levels = light[channel][y >> 4];
+        return levels == null ? LightEngine.defaultLevel(channel) : levels.get(ChunkSection.index(x, y & 15, z));
+    }
 
-                idx = addCube(vertices, idx, worldX, y, worldZ);
+    /** Stores a light level at chunk-local coordinates and returns whether it changed. */
+    boolean setLight(int channel, int x, int y, int z, int level){
+        NibbleArray levels = light[channel][y >> 4];
+        if(levels == null){
+            int fill = LightEngine.defaultLevel(channel);
+            if(level == fill){
+                return false;
             }
+            levels = new NibbleArray(fill);
+            light[channel][y >> 4] = levels;
         }
+        int index = ChunkSection.index(x, y & 15, z);
+        if(levels.get(index) == level){
+            return false;
+        }
+        levels.set(index, level);
+        return true;
+    }
 
-        mesh = new Mesh(true,
-            idx/3,
-            0,
-            new VertexAttribute(VertexAttributes.Usage.Position,3,"a_position")
-        );
+    int getBlockCount(){
+        int count = 0;
+        for(ChunkSection section : sections){
+            if(section != null){
+                count += section.getNonAirCount();
+            }
+        }
+        return count;
+    }
 
-        mesh.setVertices(vertices,0,idx);
-        vertexCount = idx/3;
+    long estimateHeapBytes(){
+        // object header + fields + the sections array + the heightmap
+        long bytes = 40 + 32 + 16 + SIZE * SIZE * 2;
+        for(ChunkSection section : sections){
+            if(section != null){
+                bytes += section.estimateHeapBytes();
+            }
+        }
+        for(NibbleArray[] channel : light){
+            for(NibbleArray levels : channel){
+                if(levels != null){
+                    bytes += levels.estimateHeapBytes();
+                }
+            }
+        }
+        return bytes;
     }
 
-    private int addCube(float[] v,int idx,float x,float y,float z){
+    /** Bytes of block and light data kept in {@link SectionSlabs}, 0 when they are on the heap. */
+    long estimateOffHeapBytes(){
+        long bytes = 0;
+        for(ChunkSection section : sections){
+            if(section != null){
+                bytes += section.estimateOffHeapBytes();
+            }
+        }
+        for(NibbleArray[] channel : light){
+            for(NibbleArray levels : channel){
+                if(levels != null){
+                    bytes += levels.estimateOffHeapBytes();
+                }
+            }
+        }
+        return bytes;
+    }
 
-        float s=1f;
+    /**
+     * Detached copy of the blocks for saving on another thread. Sections are shared copy-on-write, so this costs
+     * a few small objects no matter how full the chunk is. Must be called from the thread that edits the chunk.
+     */
+    Chunk snapshotBlocks(){
+        Chunk copy = new Chunk(chunkX, chunkZ);
+        for(int i = 0; i < SECTION_COUNT; i++){
+            ChunkSection section = sections[i];
+            copy.sections[i] = section == null ? null : section.snapshot();
+        }
+        System.arraycopy(heightmap, 0, copy.heightmap, 0, heightmap.length);
+        copy.fromDisk = fromDisk;
+        return copy;
+    }
 
-        // только верхняя грань (для примера)
-        float[] face={
-            x,y+s,z,
-            x+s,y+s,z,
-            x+s,y+s,z+s,
+    /** {@link #snapshotBlocks()} with the light arrays shared copy-on-write as well. Same thread rule. */
+    Chunk snapshotBlocksAndLight(){
+        Chunk copy = snapshotBlocks();
+        for(int channel = 0; channel < light.length; channel++){
+            for(int i = 0; i < SECTION_COUNT; i++){
+                NibbleArray levels = light[channel][i];
+                copy.light[channel][i] = levels == null ? null : levels.snapshot();
+            }
+        }
+        return copy;
+    }
 
-            x,y+s,z,
-            x+s,y+s,z+s,
-            x,y+s,z+s
-        };
+    void uploadMesh(float[] vertices, int floatCount){
+        int count = floatCount / ChunkMesher.FLOATS_PER_VERTEX;
+        if(count > 0 && (mesh == null || mesh.getMaxVertices() < count)){
+            if(mesh != null){
+                mesh.dispose();
+            }
+            mesh = new Mesh(true,
+                count,
+                0,
+                // see ChunkMesher for the packed layout
+                new VertexAttribute(VertexAttributes.Usage.Position,4,GL20.GL_UNSIGNED_BYTE,false,"a_position"),
+                new VertexAttribute(VertexAttributes.Usage.Generic,4,GL20.GL_UNSIGNED_BYTE,false,"a_data")
+            );
+        }
+        if(count > 0){
+            mesh.setVertices(vertices,0,floatCount);
+        }
+        vertexCount = count;
+        hasMesh = true;
+    }
 
-        System.arraycopy(face,0,v,idx,face.length);
-        return idx+face.length;
+    /** Bytes of vertex buffer this chunk holds on the GPU. */
+    int getMeshBytes(){
+        return mesh == null ? 0 : mesh.getMaxVertices() * ChunkMesher.BYTES_PER_VERTEX;
     }
 
     public void render(ShaderProgram shader){
-        mesh.render(shader,GL20.GL_TRIANGLES,0,vertexCount);
+        if(mesh != null && vertexCount > 0){
+            mesh.render(shader,GL20.GL_TRIANGLES,0,vertexCount);
+        }
     }
 
     public void dispose(){
-        mesh.dispose();
+        disposed = true;
+        if(mesh != null){
+            mesh.dispose();
+            mesh = null;
+        }
     }
 }
@@ -0,0 +1,53 @@
+package com.roflang.tadjikcraft;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary chunk format shared by region files: a version byte, a bit mask of non-empty sections and each
+ * section's palette with run-length encoded indices. Terrain is mostly long horizontal runs of stone and dirt,
+ * so a typical chunk shrinks to a few hundred bytes. Decoding reads straight from the source buffer, which
+ * lets region files decode from a memory-mapped view without copying.
+ */
+final class ChunkCodec {
+
+    static final byte VERSION = 1;
+
+    /** Upper bound of an encoded chunk: every section stores a full palette and one run per block. */
+    static final int MAX_ENCODED_BYTES = 2 + Chunk.SECTION_COUNT * (1 + 256 + ChunkSection.VOLUME * 3);
+
+    private ChunkCodec() {
+    }
+
+    static void encode(Chunk chunk, ByteBuffer out) {
+        out.put(VERSION);
+        int mask = 0;
+        for (int i = 0; i < Chunk.SECTION_COUNT; i++) {
+            if (chunk.sections[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        out.put((byte) mask);
+        for (ChunkSection section : chunk.sections) {
+            if (section != null) {
+                section.write(out);
+            }
+        }
+    }
+
+    static Chunk decode(int chunkX, int chunkZ, ByteBuffer in) {
+        byte version = in.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported chunk format " + version);
+        }
+        Chunk chunk = new Chunk(chunkX, chunkZ);
+        int mask = in.get() & 0xff;
+        for (int i = 0; i < Chunk.SECTION_COUNT; i++) {
+            if ((mask & (1 << i)) != 0) {
+                ChunkSection section = ChunkSection.read(in);
+                chunk.sections[i] = section.isEmpty() ? null : section;
+            }
+        }
+        chunk.rebuildHeightmap();
+        return chunk;
+    }
+}
@@ -0,0 +1,152 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Picks the chunks worth drawing each frame. Starting at the camera's section, a breadth-first walk steps
+ * through neighbouring sections that are inside the view frustum, only leaving a section through a face its
+ * {@link SectionVisibility} connects to the face it was entered by, and never turning back towards the camera.
+ * A chunk is drawn if the walk reaches any of its sections, so caves hidden behind solid rock, and everything
+ * behind the camera, are skipped without a single draw call.
+ *
+ * <p>Render thread only. All scratch space is sized for the load radius up front, so a frame allocates nothing.
+ */
+final class ChunkCuller {
+
+    private static final int NO_FACE = SectionVisibility.FACES;
+    private static final int HALF_SECTION = Chunk.SIZE / 2;
+
+    private final int radius;
+    private final int side;
+    private final int[] sectionStamps;
+    private final int[] columnStamps;
+    private final IntArray queue = new IntArray();
+    private final Array<Chunk> visible = new Array<>(false, 256);
+
+    private int stamp;
+    private int originX;
+    private int originZ;
+    private int frustumCulled;
+    private int occlusionCulled;
+
+    /** @param radius chunks around the camera that can be loaded, view radius plus unload margin */
+    ChunkCuller(int radius) {
+        this.radius = radius;
+        this.side = radius * 2 + 1;
+        sectionStamps = new int[side * side * Chunk.SECTION_COUNT];
+        columnStamps = new int[side * side];
+    }
+
+    /** Chunks with geometry that should be drawn this frame, valid until the next {@link #update}. */
+    Array<Chunk> getVisible() {
+        return visible;
+    }
+
+    int getFrustumCulled() {
+        return frustumCulled;
+    }
+
+    int getOcclusionCulled() {
+        return occlusionCulled;
+    }
+
+    void update(RenderChunks chunks, Camera camera) {
+        stamp++;
+        visible.clear();
+        Frustum frustum = camera.frustum;
+
+        originX = (MathUtils.floor(camera.position.x) >> 4) - radius;
+        originZ = (MathUtils.floor(camera.position.z) >> 4) - radius;
+        int startY = MathUtils.clamp(MathUtils.floor(camera.position.y) >> 4, 0, Chunk.SECTION_COUNT - 1);
+
+        queue.clear();
+        int start = cell(radius, radius, startY);
+        sectionStamps[start] = stamp;
+        queue.add(start);
+        queue.add(NO_FACE);
+        for (int head = 0; head < queue.size; head += 2) {
+            int cell = queue.get(head);
+            int state = queue.get(head + 1);
+            int entered = state & 7;
+            int directions = state >>> 3;
+            int sectionY = cell % Chunk.SECTION_COUNT;
+            int localZ = cell / Chunk.SECTION_COUNT % side;
+            int localX = cell / Chunk.SECTION_COUNT / side;
+
+            // sections of chunks still loading count as open air so the walk can reach what lies beyond them
+            Chunk chunk = chunks.getChunk(originX + localX, originZ + localZ);
+            int connectivity = SectionVisibility.ALL;
+            if (chunk != null) {
+                connectivity = chunk.sectionVisibility[sectionY];
+                int column = localX * side + localZ;
+                if (columnStamps[column] != stamp) {
+                    columnStamps[column] = stamp;
+                    if (chunk.vertexCount > 0) {
+                        visible.add(chunk);
+                    }
+                }
+            }
+
+            for (int face = 0; face < SectionVisibility.FACES; face++) {
+                if ((directions & (1 << (face ^ 1))) != 0) {
+                    continue;
+                }
+                if (entered != NO_FACE && !SectionVisibility.connects(connectivity, entered, face)) {
+                    continue;
+                }
+                int nextX = localX + (face == SectionVisibility.WEST ? -1 : face == SectionVisibility.EAST ? 1 : 0);
+                int nextY = sectionY + (face == SectionVisibility.DOWN ? -1 : face == SectionVisibility.UP ? 1 : 0);
+                int nextZ = localZ + (face == SectionVisibility.NORTH ? -1 : face == SectionVisibility.SOUTH ? 1 : 0);
+                if (nextX < 0 || nextX >= side || nextZ < 0 || nextZ >= side || nextY < 0 || nextY >= Chunk.SECTION_COUNT) {
+                    continue;
+                }
+                int next = cell(nextX, nextZ, nextY);
+                if (sectionStamps[next] == stamp) {
+                    continue;
+                }
+                float centerX = (originX + nextX) * Chunk.SIZE + HALF_SECTION;
+                float centerY = nextY * Chunk.SIZE + HALF_SECTION;
+                float centerZ = (originZ + nextZ) * Chunk.SIZE + HALF_SECTION;
+                if (!frustum.boundsInFrustum(centerX, centerY, centerZ, HALF_SECTION, HALF_SECTION, HALF_SECTION)) {
+                    continue;
+                }
+                sectionStamps[next] = stamp;
+                queue.add(next);
+                queue.add((face ^ 1) | ((directions | (1 << face)) << 3));
+            }
+        }
+
+        countCulled(chunks, frustum);
+    }
+
+    private void countCulled(RenderChunks chunks, Frustum frustum) {
+        frustumCulled = 0;
+        occlusionCulled = 0;
+        for (Chunk chunk : chunks.getChunks()) {
+            if (chunk.vertexCount == 0 || isVisited(chunk)) {
+                continue;
+            }
+            float halfHeight = Chunk.HEIGHT / 2f;
+            if (frustum.boundsInFrustum(chunk.chunkX * Chunk.SIZE + HALF_SECTION, halfHeight,
+                chunk.chunkZ * Chunk.SIZE + HALF_SECTION, HALF_SECTION, halfHeight, HALF_SECTION)) {
+                occlusionCulled++;
+            } else {
+                frustumCulled++;
+            }
+        }
+    }
+
+    private boolean isVisited(Chunk chunk) {
+        int localX = chunk.chunkX - originX;
+        int localZ = chunk.chunkZ - originZ;
+        return localX >= 0 && localX < side && localZ >= 0 && localZ < side && columnStamps[localX * side + localZ] == stamp;
+    }
+
+    private int cell(int localX, int localZ, int sectionY) {
+        return (localX * side + localZ) * Chunk.SECTION_COUNT + sectionY;
+    }
+}
@@ -0,0 +1,67 @@
+package com.roflang.tadjikcraft;
+
+/**
+ * Java Flight Recorder events for the chunk work done off the frame: generation, meshing and upload. A
+ * recording started with {@code -XX:StartFlightRecording} then shows which chunks a slow frame was waiting on.
+ *
+ * <p>Core is compiled for Java 8, which has no {@code jdk.jfr} to compile against, so the events are recorded by
+ * {@code JfrChunkEvents} from the separately compiled {@code jfr} source set, loaded by name when the runtime
+ * has JFR. Without it the {@code start} methods return {@code null} and the {@code commit} methods accept that,
+ * so callers need no checks. Without a recording JFR reports the events as disabled and nothing is committed.
+ */
+abstract class ChunkEvents {
+
+    private static final String RECORDER_CLASS = "com.roflang.tadjikcraft.JfrChunkEvents";
+    private static final ChunkEvents RECORDER = load();
+
+    private static ChunkEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (ChunkEvents) Class.forName(RECORDER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    static Object startGenerate() {
+        return RECORDER == null ? null : RECORDER.beginGenerate();
+    }
+
+    static void commitGenerate(Object event, int chunkX, int chunkZ, boolean fromDisk, boolean fromCache) {
+        if (event != null) {
+            RECORDER.endGenerate(event, chunkX, chunkZ, fromDisk, fromCache);
+        }
+    }
+
+    static Object startMesh() {
+        return RECORDER == null ? null : RECORDER.beginMesh();
+    }
+
+    static void commitMesh(Object event, int chunkX, int chunkZ, int vertices) {
+        if (event != null) {
+            RECORDER.endMesh(event, chunkX, chunkZ, vertices);
+        }
+    }
+
+    static Object startUpload() {
+        return RECORDER == null ? null : RECORDER.beginUpload();
+    }
+
+    static void commitUpload(Object event, int chunkX, int chunkZ, int vertices) {
+        if (event != null) {
+            RECORDER.endUpload(event, chunkX, chunkZ, vertices);
+        }
+    }
+
+    abstract Object beginGenerate();
+
+    abstract void endGenerate(Object event, int chunkX, int chunkZ, boolean fromDisk, boolean fromCache);
+
+    abstract Object beginMesh();
+
+    abstract void endMesh(Object event, int chunkX, int chunkZ, int vertices);
+
+    abstract Object beginUpload();
+
+    abstract void endUpload(Object event, int chunkX, int chunkZ, int vertices);
+}
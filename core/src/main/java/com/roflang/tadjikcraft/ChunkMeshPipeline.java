@@ -0,0 +1,219 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds chunk meshes on a pool of worker threads. The simulation thread captures a {@link ChunkSnapshot} and
+ * submits it; workers pick the nearest chunk first, mesh it and hand the vertex array back through a bounded
+ * queue, which the render thread drains under a time budget with {@link #uploadFinished(long)}.
+ *
+ * <p>Resubmitting a chunk cancels its queued job, and results older than the chunk's latest submission are
+ * dropped, so a chunk edited several times only ever uploads its newest geometry.
+ *
+ * <p>For chunks that already had geometry the time from the first unmeshed change to the upload is recorded
+ * as the remesh latency, i.e. how long a block edit takes to show up on screen.
+ *
+ * <p>A headless pipeline meshes as usual but only records the vertex count instead of uploading, so the CPU
+ * side can be measured without a GL context.
+ */
+final class ChunkMeshPipeline implements Disposable {
+
+    private static final int RESULT_CAPACITY = 64;
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final PriorityBlockingQueue<MeshJob> jobs = new PriorityBlockingQueue<>();
+    private final BlockingQueue<MeshResult> results = new ArrayBlockingQueue<>(RESULT_CAPACITY);
+    private final AtomicLong sequence = new AtomicLong();
+    /** Jobs submitted and not yet meshed or dropped, counted before they are queued. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Thread[] workers;
+    private final boolean headless;
+
+    private volatile boolean running = true;
+
+    private long lastRemeshLatencyNanos;
+    private long maxRemeshLatencyNanos;
+
+    ChunkMeshPipeline(int threads) {
+        this(threads, false);
+    }
+
+    ChunkMeshPipeline(int threads, boolean headless) {
+        this.headless = headless;
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::runWorker, "chunk-mesher-" + THREAD_ID.incrementAndGet());
+            worker.setDaemon(true);
+            worker.setPriority(Thread.NORM_PRIORITY - 1);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    static int defaultThreadCount() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /** Queues {@code chunk} for meshing, nearest to {@code eye} first. Call from the simulation thread. */
+    void submit(World world, Chunk chunk, Vector3 eye) {
+        MeshJob previous = chunk.pendingMeshJob;
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+
+        float dx = chunk.chunkX * Chunk.SIZE + Chunk.SIZE / 2f - eye.x;
+        float dz = chunk.chunkZ * Chunk.SIZE + Chunk.SIZE / 2f - eye.z;
+        int version = ++chunk.meshVersion;
+        long dirtySince = chunk.hasMesh ? chunk.dirtySince : 0L;
+        MeshJob job = new MeshJob(chunk, ChunkSnapshot.capture(world, chunk), version, dx * dx + dz * dz,
+            sequence.incrementAndGet(), dirtySince);
+        chunk.pendingMeshJob = job;
+        inFlight.incrementAndGet();
+        jobs.add(job);
+    }
+
+    /**
+     * Uploads finished meshes until the queue is empty or {@code budgetNanos} has passed. At least one mesh is
+     * uploaded per call so progress is made even on slow frames. Returns the number of meshes uploaded.
+     */
+    int uploadFinished(long budgetNanos) {
+        long start = System.nanoTime();
+        int uploaded = 0;
+        MeshResult result;
+        while ((result = results.poll()) != null) {
+            Chunk chunk = result.chunk;
+            if (result.version == chunk.meshVersion && !chunk.disposed) {
+                Object event = ChunkEvents.startUpload();
+                if (headless) {
+                    chunk.vertexCount = result.vertices.length / ChunkMesher.FLOATS_PER_VERTEX;
+                    chunk.hasMesh = true;
+                } else {
+                    chunk.uploadMesh(result.vertices, result.vertices.length);
+                }
+                System.arraycopy(result.visibility, 0, chunk.sectionVisibility, 0, Chunk.SECTION_COUNT);
+                ChunkEvents.commitUpload(event, chunk.chunkX, chunk.chunkZ, chunk.vertexCount);
+                uploaded++;
+                if (result.dirtySince != 0L) {
+                    lastRemeshLatencyNanos = System.nanoTime() - result.dirtySince;
+                    maxRemeshLatencyNanos = Math.max(maxRemeshLatencyNanos, lastRemeshLatencyNanos);
+                }
+            }
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        return uploaded;
+    }
+
+    int getQueuedJobs() {
+        return jobs.size();
+    }
+
+    /** True when nothing is queued, being meshed or waiting for upload. */
+    boolean isIdle() {
+        // a result is queued before its job stops counting, so there is no moment where neither shows
+        return inFlight.get() == 0 && results.isEmpty();
+    }
+
+    long getLastRemeshLatencyNanos() {
+        return lastRemeshLatencyNanos;
+    }
+
+    long getMaxRemeshLatencyNanos() {
+        return maxRemeshLatencyNanos;
+    }
+
+    private void runWorker() {
+        ChunkMesher mesher = new ChunkMesher();
+        SectionVisibility sectionVisibility = new SectionVisibility();
+        while (running) {
+            MeshJob job;
+            try {
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (job.cancelled || job.version != job.chunk.meshVersion) {
+                    continue;
+                }
+                Object event = ChunkEvents.startMesh();
+                mesher.build(job.snapshot);
+                float[] vertices = new float[mesher.getFloatCount()];
+                System.arraycopy(mesher.getVertices(), 0, vertices, 0, vertices.length);
+                int[] visibility = new int[Chunk.SECTION_COUNT];
+                for (int i = 0; i < visibility.length; i++) {
+                    visibility[i] = sectionVisibility.compute(job.snapshot.getSection(i));
+                }
+                ChunkEvents.commitMesh(event, job.chunk.chunkX, job.chunk.chunkZ, mesher.getVertexCount());
+                results.put(new MeshResult(job.chunk, job.version, vertices, visibility, job.dirtySince));
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                Gdx.app.error("ChunkMeshPipeline", "Failed to mesh chunk " + job.chunk.chunkX + ", " + job.chunk.chunkZ, e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        jobs.clear();
+        results.clear();
+    }
+
+    static final class MeshJob implements Comparable<MeshJob> {
+        final Chunk chunk;
+        final ChunkSnapshot snapshot;
+        final int version;
+        final float distance2;
+        final long sequence;
+        final long dirtySince;
+
+        volatile boolean cancelled;
+
+        MeshJob(Chunk chunk, ChunkSnapshot snapshot, int version, float distance2, long sequence, long dirtySince) {
+            this.chunk = chunk;
+            this.snapshot = snapshot;
+            this.version = version;
+            this.distance2 = distance2;
+            this.sequence = sequence;
+            this.dirtySince = dirtySince;
+        }
+
+        @Override
+        public int compareTo(MeshJob other) {
+            int byDistance = Float.compare(distance2, other.distance2);
+            return byDistance != 0 ? byDistance : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class MeshResult {
+        final Chunk chunk;
+        final int version;
+        final float[] vertices;
+        final int[] visibility;
+        final long dirtySince;
+
+        MeshResult(Chunk chunk, int version, float[] vertices, int[] visibility, long dirtySince) {
+            this.chunk = chunk;
+            this.version = version;
+            this.vertices = vertices;
+            this.visibility = visibility;
+            this.dirtySince = dirtySince;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.FloatArray;
+
+/**
+ * Builds chunk vertex arrays with greedy meshing: for every section, face direction and layer the exposed
+ * faces are collected into a 16x16 mask and coplanar faces of the same block type are merged into the
+ * largest rectangles possible. Only faces next to air are emitted, lit by the light of that air cell; faces
+ * only merge when block type, light and ambient occlusion match, and faces whose corners are not all equally
+ * occluded do not merge at all, so the shading of every corner stays where it belongs.
+ *
+ * <p>Ambient occlusion is taken per corner from the three cells next to it in the face's air layer, the two
+ * along the edges and the one diagonally across: 3 is open, 0 is a corner between two solid cells. Quads are
+ * split along the diagonal whose corners are less occluded, so the shading does not depend on the triangulation.
+ *
+ * <p>Instances keep reusable buffers and are not thread-safe; each mesh worker owns one.
+ *
+ * <p>Vertex layout, 8 bytes as two words of unsigned bytes: position (x, y, z, chunk-local) and face
+ * ({@link SectionVisibility} order), then light ({@code sky * 16 + block}), {@link BlockAtlas} tile, the
+ * corner's occlusion and a spare byte. The shader derives texture coordinates from the position and face, so the
+ * tile repeats across merged quads. The words travel as floats for {@link com.badlogic.gdx.graphics.Mesh}; their top byte is
+ * always below 0x7f, so none of them is a NaN whose bits could be changed on the way.
+ */
+final class ChunkMesher {
+
+    static final int FLOATS_PER_VERTEX = 2;
+    static final int BYTES_PER_VERTEX = FLOATS_PER_VERTEX * 4;
+    static final int VERTICES_PER_FACE = 6;
+    /** Occlusion of a quad with all four corners open, 2 bits per corner. */
+    static final int UNOCCLUDED = 0xff;
+
+    // corners of a quad, bit 0 set at the far end along u and bit 1 along v, as two triangles: for faces
+    // pointing along and against their axis, each split along the 0-3 or the 1-2 diagonal
+    private static final int[] CORNER_ORDER = {
+        0, 1, 3, 0, 3, 2,
+        1, 3, 2, 2, 0, 1,
+        0, 3, 1, 0, 2, 3,
+        2, 3, 1, 1, 0, 2,
+    };
+
+    private static final int SIZE = Chunk.SIZE;
+
+    private final FloatArray vertices = new FloatArray(4096);
+    private final int[] mask = new int[SIZE * SIZE];
+    private final int[] pos = new int[3];
+
+    private ChunkSnapshot snapshot;
+    private int faceCount;
+
+    /**
+     * Meshes the centre column of {@code snapshot}. The result stays valid until the next call; see
+     * {@link #getVertices()} and {@link #getFloatCount()}.
+     */
+    void build(ChunkSnapshot snapshot) {
+        this.snapshot = snapshot;
+        vertices.clear();
+        faceCount = 0;
+
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            if (snapshot.isSectionEmpty(sectionY)) {
+                continue;
+            }
+            for (int axis = 0; axis < 3; axis++) {
+                meshAxis(sectionY, axis, 1);
+                meshAxis(sectionY, axis, -1);
+            }
+        }
+
+        this.snapshot = null;
+    }
+
+    float[] getVertices() {
+        return vertices.items;
+    }
+
+    int getFloatCount() {
+        return vertices.size;
+    }
+
+    int getVertexCount() {
+        return vertices.size / FLOATS_PER_VERTEX;
+    }
+
+    int getFaceCount() {
+        return faceCount;
+    }
+
+    private void meshAxis(int sectionY, int axis, int direction) {
+        int u = (axis + 1) % 3;
+        int v = (axis + 2) % 3;
+        int baseY = sectionY * SIZE;
+
+        for (int layer = 0; layer < SIZE; layer++) {
+            int faces = 0;
+            for (int j = 0; j < SIZE; j++) {
+                for (int i = 0; i < SIZE; i++) {
+                    pos[axis] = layer;
+                    pos[u] = i;
+                    pos[v] = j;
+                    int x = pos[0];
+                    int y = baseY + pos[1];
+                    int z = pos[2];
+
+                    int id = snapshot.getBlock(x, y, z);
+                    int value = 0;
+                    if (id != BlockType.AIR) {
+                        pos[axis] += direction;
+                        int airX = pos[0];
+                        int airY = baseY + pos[1];
+                        int airZ = pos[2];
+                        if (blockAt(airX, airY, airZ) == BlockType.AIR) {
+                            // ids fit in the low byte, the face's light and then its occlusion go above it
+                            value = id | snapshot.getLight(airX, airY, airZ) << 8
+                                | occlusion(airX, airY, airZ, u, v) << 16;
+                            faces++;
+                        }
+                    }
+                    mask[j * SIZE + i] = value;
+                }
+            }
+            if (faces > 0) {
+                mergeLayer(baseY, axis, u, v, layer, direction);
+            }
+        }
+    }
+
+    private void mergeLayer(int baseY, int axis, int u, int v, int layer, int direction) {
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; ) {
+                int value = mask[j * SIZE + i];
+                if (value == 0) {
+                    i++;
+                    continue;
+                }
+
+                // unevenly occluded faces stay single, a merged quad would stretch their shading
+                int occlusion = value >>> 16;
+                boolean merges = occlusion == (occlusion & 3) * 0x55;
+                int width = 1;
+                while (merges && i + width < SIZE && mask[j * SIZE + i + width] == value) {
+                    width++;
+                }
+
+                int height = 1;
+                grow:
+                while (merges && j + height < SIZE) {
+                    int row = (j + height) * SIZE;
+                    for (int k = 0; k < width; k++) {
+                        if (mask[row + i + k] != value) {
+                            break grow;
+                        }
+                    }
+                    height++;
+                }
+
+                for (int h = 0; h < height; h++) {
+                    int row = (j + h) * SIZE;
+                    for (int k = 0; k < width; k++) {
+                        mask[row + i + k] = 0;
+                    }
+                }
+
+                pos[axis] = layer + (direction > 0 ? 1 : 0);
+                pos[u] = i;
+                pos[v] = j;
+                pos[1] += baseY;
+                emitQuad(axis, u, v, width, height, direction, packData(value & 0xff, value >>> 8 & 0xff), occlusion);
+                i += width;
+            }
+        }
+    }
+
+    private void emitQuad(int axis, int u, int v, int width, int height, int direction, int data, int occlusion) {
+        putQuad(vertices, pos[0], pos[1], pos[2], axis, u, v, width, height, direction, data, occlusion);
+        faceCount++;
+    }
+
+    /** {@link #putQuad(FloatArray, int, int, int, int, int, int, int, int, int, int, int)} with no occlusion. */
+    static void putQuad(FloatArray vertices, int x0, int y0, int z0, int axis, int u, int v, int width, int height,
+                        int direction, int data) {
+        putQuad(vertices, x0, y0, z0, axis, u, v, width, height, direction, data, UNOCCLUDED);
+    }
+
+    /**
+     * Appends a quad with its corner at (x0, y0, z0), {@code width} along axis {@code u} and {@code height}
+     * along {@code v}, facing {@code direction} along {@code axis}, as two triangles. {@code occlusion} holds
+     * 2 bits per corner, see {@link #occlusion}.
+     */
+    static void putQuad(FloatArray vertices, int x0, int y0, int z0, int axis, int u, int v, int width, int height,
+                        int direction, int data, int occlusion) {
+        int face = axis * 2 + (direction > 0 ? 1 : 0);
+
+        int dux = u == 0 ? width : 0, duy = u == 1 ? width : 0, duz = u == 2 ? width : 0;
+        int dvx = v == 0 ? height : 0, dvy = v == 1 ? height : 0, dvz = v == 2 ? height : 0;
+
+        float[] items = vertices.ensureCapacity(VERTICES_PER_FACE * FLOATS_PER_VERTEX);
+        int idx = vertices.size;
+
+        // corners counter-clockwise when seen from the side the face points to
+        boolean flip = (occlusion & 3) + (occlusion >>> 6 & 3) < (occlusion >>> 2 & 3) + (occlusion >>> 4 & 3);
+        int order = (direction > 0 ? 0 : 12) + (flip ? VERTICES_PER_FACE : 0);
+        for (int i = 0; i < VERTICES_PER_FACE; i++) {
+            int corner = CORNER_ORDER[order + i];
+            int alongU = corner & 1;
+            int alongV = corner >>> 1;
+            idx = vertex(items, idx, x0 + alongU * dux + alongV * dvx, y0 + alongU * duy + alongV * dvy,
+                z0 + alongU * duz + alongV * dvz, face,
+                Float.intBitsToFloat(data | (occlusion >>> corner * 2 & 3) << 16));
+        }
+
+        vertices.size = idx;
+    }
+
+    private static int vertex(float[] items, int idx, int x, int y, int z, int face, float data) {
+        items[idx] = Float.intBitsToFloat(x | y << 8 | z << 16 | face << 24);
+        items[idx + 1] = data;
+        return idx + FLOATS_PER_VERTEX;
+    }
+
+    /** Data word of a face: light in the low byte, atlas tile in the next one; the corners add their occlusion. */
+    static int packData(int id, int light) {
+        return light | BlockAtlas.tileOf(id) << 8;
+    }
+
+    /**
+     * Occlusion of the four corners of a face whose air cell is (x, y, z), with the face spanning axes {@code u}
+     * and {@code v}: 2 bits per corner, corner {@code k} at bits {@code 2k}, ordered like {@link #CORNER_ORDER}.
+     */
+    private int occlusion(int x, int y, int z, int u, int v) {
+        boolean lowU = solidAt(x, y, z, u, -1, v, 0);
+        boolean highU = solidAt(x, y, z, u, 1, v, 0);
+        boolean lowV = solidAt(x, y, z, u, 0, v, -1);
+        boolean highV = solidAt(x, y, z, u, 0, v, 1);
+        return cornerLevel(lowU, lowV, solidAt(x, y, z, u, -1, v, -1))
+            | cornerLevel(highU, lowV, solidAt(x, y, z, u, 1, v, -1)) << 2
+            | cornerLevel(lowU, highV, solidAt(x, y, z, u, -1, v, 1)) << 4
+            | cornerLevel(highU, highV, solidAt(x, y, z, u, 1, v, 1)) << 6;
+    }
+
+    private static int cornerLevel(boolean side, boolean otherSide, boolean diagonal) {
+        if (side && otherSide) {
+            return 0;
+        }
+        return 3 - (side ? 1 : 0) - (otherSide ? 1 : 0) - (diagonal ? 1 : 0);
+    }
+
+    /** Whether the cell {@code du} along {@code u} and {@code dv} along {@code v} from (x, y, z) is solid. */
+    private boolean solidAt(int x, int y, int z, int u, int du, int v, int dv) {
+        x += (u == 0 ? du : 0) + (v == 0 ? dv : 0);
+        y += (u == 1 ? du : 0) + (v == 1 ? dv : 0);
+        z += (u == 2 ? du : 0) + (v == 2 ? dv : 0);
+        // not blockAt: the void below the world closes faces, but does not shade the ones along its edge
+        return snapshot.getBlock(x, y, z) != BlockType.AIR;
+    }
+
+    private int blockAt(int x, int y, int z) {
+        if (y < 0) {
+            // the underside of the world is never visible
+            return BlockType.STONE.id;
+        }
+        return snapshot.getBlock(x, y, z);
+    }
+}
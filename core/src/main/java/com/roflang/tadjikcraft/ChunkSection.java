@@ -0,0 +1,340 @@
+package com.roflang.tadjikcraft;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A 16x16x16 cube of blocks stored as a small palette of block ids plus bit-packed palette indices.
+ * Index width grows 1 -> 2 -> 4 -> 8 bits as new block types appear, so a section of stone and dirt
+ * costs 512 bytes instead of 4096. Entries never straddle a long because the width is a power of two.
+ *
+ * <p>{@link #snapshot()} is copy-on-write: the snapshot shares the arrays and the live section copies them
+ * before its next write, so a snapshot can be read from any thread while the owner keeps editing.
+ *
+ * <p>The packed indices live in a {@code long[]}, or in a slot of the installed {@link SectionSlabs} when
+ * section data is kept off the heap.
+ */
+final class ChunkSection {
+
+    static final int SIZE = Chunk.SIZE;
+    static final int VOLUME = SIZE * SIZE * SIZE;
+
+    private byte[] palette;
+    private int paletteSize;
+    private int bits;
+    /** The packed indices: exactly one of the two is set. */
+    private long[] data;
+    private SectionSlabs.Slot slot;
+    private int nonAirCount;
+    private boolean shared;
+
+    ChunkSection() {
+        palette = new byte[2];
+        palette[0] = BlockType.AIR;
+        paletteSize = 1;
+        bits = 1;
+        allocate(1);
+    }
+
+    private ChunkSection(ChunkSection source) {
+        palette = source.palette;
+        paletteSize = source.paletteSize;
+        bits = source.bits;
+        data = source.data;
+        slot = source.slot;
+        nonAirCount = source.nonAirCount;
+        shared = true;
+    }
+
+    /** A section with every cell set to {@code id}, which must not be air. */
+    static ChunkSection filled(int id) {
+        ChunkSection section = new ChunkSection();
+        section.palette[0] = (byte) id;
+        section.nonAirCount = VOLUME;
+        return section;
+    }
+
+    /** Returns a read-only view of the current contents. Must be called from the thread that writes this section. */
+    ChunkSection snapshot() {
+        shared = true;
+        return new ChunkSection(this);
+    }
+
+    static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    int get(int x, int y, int z) {
+        return get(index(x, y, z));
+    }
+
+    int get(int index) {
+        int bitIndex = index * bits;
+        int paletteIndex = (int) (word(bitIndex >>> 6) >>> (bitIndex & 63)) & ((1 << bits) - 1);
+        return palette[paletteIndex] & 0xff;
+    }
+
+    /** Stores {@code id} and returns the id that was there before. */
+    int set(int x, int y, int z, int id) {
+        return set(index(x, y, z), id);
+    }
+
+    int set(int index, int id) {
+        if (shared) {
+            copyOnWrite();
+        }
+
+        int paletteIndex = paletteIndexOf(id);
+        if (paletteIndex < 0) {
+            paletteIndex = addToPalette(id);
+        }
+
+        int bitIndex = index * bits;
+        int word = bitIndex >>> 6;
+        int shift = bitIndex & 63;
+        long mask = ((1L << bits) - 1) << shift;
+        long packed = word(word);
+        int previous = palette[(int) ((packed & mask) >>> shift)] & 0xff;
+        if (previous == id) {
+            return previous;
+        }
+        setWord(word, (packed & ~mask) | ((long) paletteIndex << shift));
+
+        if (previous == BlockType.AIR) {
+            nonAirCount++;
+        } else if (id == BlockType.AIR) {
+            nonAirCount--;
+        }
+        return previous;
+    }
+
+    /**
+     * Sets every cell of the box from (minX, minY, minZ) to (maxX, maxY, maxZ), inclusive, to {@code id}, or
+     * only the cells holding {@code match} when it is not negative. Each cell that changes gets its bit set in
+     * {@code changed} (indexed like {@link #index}). Returns the change in non-air cells.
+     */
+    int fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int match, int id, long[] changed) {
+        if (match >= 0 && paletteIndexOf(match) < 0) {
+            return 0;
+        }
+        if (shared) {
+            copyOnWrite();
+        }
+        int paletteIndex = paletteIndexOf(id);
+        if (paletteIndex < 0) {
+            paletteIndex = addToPalette(id);
+        }
+        int matchIndex = match < 0 ? -1 : paletteIndexOf(match);
+
+        int cellMask = (1 << bits) - 1;
+        int before = nonAirCount;
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                for (int index = index(minX, y, z), end = index(maxX, y, z); index <= end; index++) {
+                    int bitIndex = index * bits;
+                    int word = bitIndex >>> 6;
+                    int shift = bitIndex & 63;
+                    long packed = word(word);
+                    int current = (int) (packed >>> shift) & cellMask;
+                    if (current == paletteIndex || (matchIndex >= 0 && current != matchIndex)) {
+                        continue;
+                    }
+                    setWord(word, (packed & ~((long) cellMask << shift)) | ((long) paletteIndex << shift));
+                    changed[index >>> 6] |= 1L << index;
+                    if ((palette[current] & 0xff) == BlockType.AIR) {
+                        nonAirCount++;
+                    } else if (id == BlockType.AIR) {
+                        nonAirCount--;
+                    }
+                }
+            }
+        }
+        return nonAirCount - before;
+    }
+
+    /**
+     * Writes the palette followed by run-length encoded palette indices in storage order (x fastest, then z,
+     * then y), so horizontal layers of one block type collapse into a single run.
+     */
+    void write(ByteBuffer out) {
+        out.put((byte) (paletteSize - 1));
+        for (int i = 0; i < paletteSize; i++) {
+            out.put(palette[i]);
+        }
+
+        int mask = (1 << bits) - 1;
+        int runValue = -1;
+        int runLength = 0;
+        for (int i = 0; i < VOLUME; i++) {
+            int bitIndex = i * bits;
+            int value = (int) (word(bitIndex >>> 6) >>> (bitIndex & 63)) & mask;
+            if (value == runValue) {
+                runLength++;
+                continue;
+            }
+            if (runLength > 0) {
+                out.putShort((short) (runLength - 1));
+                out.put((byte) runValue);
+            }
+            runValue = value;
+            runLength = 1;
+        }
+        out.putShort((short) (runLength - 1));
+        out.put((byte) runValue);
+    }
+
+    /** Reads a section written by {@link #write(ByteBuffer)}, decoding straight from {@code in}. */
+    static ChunkSection read(ByteBuffer in) {
+        ChunkSection section = new ChunkSection();
+        int size = (in.get() & 0xff) + 1;
+        int bits = 1;
+        while ((1 << bits) < size) {
+            bits <<= 1;
+        }
+        section.paletteSize = size;
+        section.palette = new byte[Math.max(2, size)];
+        in.get(section.palette, 0, size);
+        if (bits != section.bits) {
+            section.releaseStorage();
+            section.allocate(bits);
+            section.bits = bits;
+        }
+
+        int index = 0;
+        int nonAir = 0;
+        while (index < VOLUME) {
+            int runLength = (in.getShort() & 0xffff) + 1;
+            int value = in.get() & 0xff;
+            if (value >= size || index + runLength > VOLUME) {
+                throw new IllegalStateException("Corrupt section data");
+            }
+            if ((section.palette[value] & 0xff) != BlockType.AIR) {
+                nonAir += runLength;
+            }
+            if (value != 0) {
+                for (int end = index + runLength; index < end; index++) {
+                    int bitIndex = index * bits;
+                    int word = bitIndex >>> 6;
+                    section.setWord(word, section.word(word) | (long) value << (bitIndex & 63));
+                }
+            } else {
+                index += runLength;
+            }
+        }
+        section.nonAirCount = nonAir;
+        return section;
+    }
+
+    boolean isEmpty() {
+        return nonAirCount == 0;
+    }
+
+    int getNonAirCount() {
+        return nonAirCount;
+    }
+
+    long estimateHeapBytes() {
+        // object header + fields, palette byte[] and packed long[] (compressed oops, 8-byte alignment); off the
+        // heap, the slot and its phantom reference instead of the array
+        long packed = slot == null ? 16 + data.length * 8L : 40 + 40;
+        return 32 + align(16 + palette.length) + packed;
+    }
+
+    /** Bytes of packed indices held in {@link SectionSlabs}, 0 for a section on the heap. */
+    long estimateOffHeapBytes() {
+        return slot == null ? 0 : slot.bytes;
+    }
+
+    /** Zeroed storage for {@code bits} bits per cell, in the installed slabs if there are any. */
+    private void allocate(int bits) {
+        SectionSlabs slabs = SectionSlabs.active();
+        if (slabs == null) {
+            data = new long[VOLUME * bits / 64];
+            slot = null;
+        } else {
+            slot = slabs.allocate(VOLUME * bits / 8);
+            data = null;
+        }
+    }
+
+    /** Gives up storage nothing else shares; a shared slot is freed once its last snapshot is collected. */
+    private void releaseStorage() {
+        if (slot != null && !shared) {
+            slot.owner.release(slot);
+        }
+    }
+
+    private void copyOnWrite() {
+        palette = palette.clone();
+        if (slot == null) {
+            data = data.clone();
+        } else {
+            SectionSlabs.Slot copy = slot.owner.allocate(slot.bytes);
+            copy.copyFrom(slot, slot.bytes);
+            slot = copy;
+        }
+        shared = false;
+    }
+
+    private long word(int index) {
+        return slot == null ? data[index] : slot.getLong(index);
+    }
+
+    private void setWord(int index, long value) {
+        if (slot == null) {
+            data[index] = value;
+        } else {
+            slot.putLong(index, value);
+        }
+    }
+
+    private int paletteIndexOf(int id) {
+        for (int i = 0; i < paletteSize; i++) {
+            if ((palette[i] & 0xff) == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addToPalette(int id) {
+        if (paletteSize == 1 << bits) {
+            resize(bits << 1);
+        }
+        if (paletteSize == palette.length) {
+            byte[] grown = new byte[palette.length << 1];
+            System.arraycopy(palette, 0, grown, 0, paletteSize);
+            palette = grown;
+        }
+        palette[paletteSize] = (byte) id;
+        return paletteSize++;
+    }
+
+    private void resize(int newBits) {
+        if (newBits > 8) {
+            throw new IllegalStateException("Section palette overflow: more than 256 block types");
+        }
+        long[] oldData = data;
+        SectionSlabs.Slot oldSlot = slot;
+        int oldBits = bits;
+        int oldMask = (1 << oldBits) - 1;
+        allocate(newBits);
+        bits = newBits;
+        for (int i = 0; i < VOLUME; i++) {
+            int oldBit = i * oldBits;
+            long packed = oldSlot == null ? oldData[oldBit >>> 6] : oldSlot.getLong(oldBit >>> 6);
+            long value = (packed >>> (oldBit & 63)) & oldMask;
+            if (value != 0) {
+                int newBit = i * newBits;
+                setWord(newBit >>> 6, word(newBit >>> 6) | value << (newBit & 63));
+            }
+        }
+        if (oldSlot != null) {
+            // only reached after copy-on-write, so nothing else holds the old slot
+            oldSlot.owner.release(oldSlot);
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
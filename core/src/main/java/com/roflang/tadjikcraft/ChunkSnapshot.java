@@ -0,0 +1,169 @@
+package com.roflang.tadjikcraft;
+
+/**
+ * Immutable copy-on-write view of a chunk column and the four columns around it, taken on the simulation thread
+ * and handed to mesh workers. Chunks are full-height columns, so the blocks above and below are part of the
+ * centre column and only the horizontal neighbours are captured. Light levels are captured the same way. The
+ * blocks of the four diagonal columns are captured too, for the ambient occlusion of faces at the corners.
+ */
+final class ChunkSnapshot {
+
+    private static final int SIZE = Chunk.SIZE;
+
+    final int chunkX;
+    final int chunkZ;
+
+    private final ChunkSection[] center;
+    private final ChunkSection[] west;
+    private final ChunkSection[] east;
+    private final ChunkSection[] north;
+    private final ChunkSection[] south;
+    private final ChunkSection[] northWest;
+    private final ChunkSection[] northEast;
+    private final ChunkSection[] southWest;
+    private final ChunkSection[] southEast;
+    // [column][channel][section] in the order centre, west, east, north, south; null columns are unloaded
+    private final NibbleArray[][][] light = new NibbleArray[5][][];
+
+    private ChunkSnapshot(int chunkX, int chunkZ, ChunkSection[] center, ChunkSection[] west, ChunkSection[] east,
+                          ChunkSection[] north, ChunkSection[] south, ChunkSection[] northWest,
+                          ChunkSection[] northEast, ChunkSection[] southWest, ChunkSection[] southEast) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.center = center;
+        this.west = west;
+        this.east = east;
+        this.north = north;
+        this.south = south;
+        this.northWest = northWest;
+        this.northEast = northEast;
+        this.southWest = southWest;
+        this.southEast = southEast;
+    }
+
+    static ChunkSnapshot capture(World world, Chunk chunk) {
+        int cx = chunk.chunkX;
+        int cz = chunk.chunkZ;
+        Chunk west = world.getChunk(cx - 1, cz);
+        Chunk east = world.getChunk(cx + 1, cz);
+        Chunk north = world.getChunk(cx, cz - 1);
+        Chunk south = world.getChunk(cx, cz + 1);
+        ChunkSnapshot snapshot = new ChunkSnapshot(cx, cz,
+            sectionsOf(chunk), sectionsOf(west), sectionsOf(east), sectionsOf(north), sectionsOf(south),
+            sectionsOf(world.getChunk(cx - 1, cz - 1)), sectionsOf(world.getChunk(cx + 1, cz - 1)),
+            sectionsOf(world.getChunk(cx - 1, cz + 1)), sectionsOf(world.getChunk(cx + 1, cz + 1)));
+        snapshot.light[0] = lightOf(chunk);
+        snapshot.light[1] = lightOf(west);
+        snapshot.light[2] = lightOf(east);
+        snapshot.light[3] = lightOf(north);
+        snapshot.light[4] = lightOf(south);
+        return snapshot;
+    }
+
+    private static NibbleArray[][] lightOf(Chunk chunk) {
+        if (chunk == null) {
+            return null;
+        }
+        NibbleArray[][] copy = new NibbleArray[2][Chunk.SECTION_COUNT];
+        for (int channel = 0; channel < 2; channel++) {
+            for (int i = 0; i < Chunk.SECTION_COUNT; i++) {
+                NibbleArray levels = chunk.light[channel][i];
+                copy[channel][i] = levels == null ? null : levels.snapshot();
+            }
+        }
+        return copy;
+    }
+
+    private static ChunkSection[] sectionsOf(Chunk chunk) {
+        if (chunk == null) {
+            return null;
+        }
+        ChunkSection[] copy = new ChunkSection[Chunk.SECTION_COUNT];
+        for (int i = 0; i < copy.length; i++) {
+            ChunkSection section = chunk.sections[i];
+            copy[i] = section == null ? null : section.snapshot();
+        }
+        return copy;
+    }
+
+    /** Section of the centre column, or {@code null} if it is all air. */
+    ChunkSection getSection(int sectionY) {
+        return center[sectionY];
+    }
+
+    boolean isSectionEmpty(int sectionY) {
+        return center[sectionY] == null;
+    }
+
+    /**
+     * Block at chunk-local coordinates; x and z may reach one block into the neighbouring columns, diagonal ones
+     * included. Unloaded neighbours read as air so world edges stay closed.
+     */
+    int getBlock(int x, int y, int z) {
+        if (y < 0 || y >= Chunk.HEIGHT) {
+            return BlockType.AIR;
+        }
+        ChunkSection[] column;
+        if (x < 0) {
+            column = z < 0 ? northWest : z >= SIZE ? southWest : west;
+            x += SIZE;
+        } else if (x >= SIZE) {
+            column = z < 0 ? northEast : z >= SIZE ? southEast : east;
+            x -= SIZE;
+        } else if (z < 0) {
+            column = north;
+        } else if (z >= SIZE) {
+            column = south;
+        } else {
+            column = center;
+        }
+        if (z < 0) {
+            z += SIZE;
+        } else if (z >= SIZE) {
+            z -= SIZE;
+        }
+        if (column == null) {
+            return BlockType.AIR;
+        }
+        ChunkSection section = column[y >> 4];
+        return section == null ? BlockType.AIR : section.get(x, y & 15, z);
+    }
+
+    /**
+     * Light at chunk-local coordinates as {@code sky << 4 | block}; x and z may reach one block into the
+     * neighbouring columns. Cells above the world and in unloaded columns are open sky, cells below it dark.
+     */
+    int getLight(int x, int y, int z) {
+        if (y >= Chunk.HEIGHT) {
+            return LightEngine.MAX_LEVEL << 4;
+        }
+        if (y < 0) {
+            return 0;
+        }
+        NibbleArray[][] column;
+        if (x < 0) {
+            column = z >= 0 && z < SIZE ? light[1] : null;
+            x += SIZE;
+        } else if (x >= SIZE) {
+            column = z >= 0 && z < SIZE ? light[2] : null;
+            x -= SIZE;
+        } else if (z < 0) {
+            column = light[3];
+            z += SIZE;
+        } else if (z >= SIZE) {
+            column = light[4];
+            z -= SIZE;
+        } else {
+            column = light[0];
+        }
+        if (column == null) {
+            return LightEngine.MAX_LEVEL << 4;
+        }
+        int index = ChunkSection.index(x, y & 15, z);
+        NibbleArray sky = column[LightEngine.SKY][y >> 4];
+        NibbleArray block = column[LightEngine.BLOCK][y >> 4];
+        int skyLevel = sky == null ? LightEngine.defaultLevel(LightEngine.SKY) : sky.get(index);
+        int blockLevel = block == null ? LightEngine.defaultLevel(LightEngine.BLOCK) : block.get(index);
+        return skyLevel << 4 | blockLevel;
+    }
+}
@@ -0,0 +1,25 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * Where the chunks of the simulation's {@link World} come from: generated and saved locally by a
+ * {@link ChunkStreamer}, or replicated from a dedicated server by a {@link ServerConnection}. Simulation thread
+ * only.
+ */
+interface ChunkSource extends Disposable {
+
+    /** Loads and unloads chunks around {@code eye} and adds whatever has arrived to the world. */
+    void update(Vector3 eye);
+
+    /** Changes a block on the player's behalf. */
+    void setBlock(int x, int y, int z, int id);
+
+    int getLoadedCount();
+
+    /** Chunks requested but not in the world yet. */
+    int getPendingCount();
+
+    long getEvictedCount();
+}
@@ -0,0 +1,471 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.io.IOException;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the chunks within a view radius of the camera loaded, or of every player on a {@link WorldServer}.
+ * Missing chunks are generated on worker
+ * threads, nearest first, and added to the {@link World} on the simulation thread; chunks that drift further
+ * than the view radius plus a hysteresis margin are removed and their meshes freed, so memory depends
+ * only on the radius and not on how far the player travels.
+ *
+ * <p>Decoration that a new chunk spills into its neighbours goes through {@link PendingEdits}: it is applied
+ * right away to neighbours that are loaded and parked for the others until they arrive. A chunk generated again
+ * while a neighbour stays loaded gets that neighbour's spills re-created by the worker.
+ *
+ * <p>With an {@link AutosaveScheduler}, workers read saved chunks before generating anything and changed chunks
+ * are queued for saving when they are unloaded.
+ *
+ * <p>With a {@link ColdChunkCache}, unloaded chunks are kept compressed in memory and workers promote them from
+ * there before trying the save or the generator. The decoded chunks can have a byte budget too: when they go
+ * over it, chunks in the unload margin are unloaded early, those that left the view radius longest ago first.
+ * Chunks within the view radius always stay.
+ */
+final class ChunkStreamer implements ChunkSource {
+
+    private static final int MAX_CHUNKS_ADDED_PER_FRAME = 8;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final Comparator<Chunk> BY_LAST_IN_VIEW = new Comparator<Chunk>() {
+        @Override
+        public int compare(Chunk a, Chunk b) {
+            return Long.compare(a.lastInView, b.lastInView);
+        }
+    };
+
+    private final World world;
+    private final TerrainGenerator generator;
+    private final AutosaveScheduler saver;
+    private final ColdChunkCache cold;
+    private final int viewRadius;
+    private final int unloadRadius;
+    private final long activeBudgetBytes;
+    private final boolean lit;
+
+    private final LongMap<GenerateJob> pending = new LongMap<>();
+    private final PendingEdits pendingEdits = new PendingEdits();
+    private final PriorityBlockingQueue<GenerateJob> jobs = new PriorityBlockingQueue<>();
+    private final ConcurrentLinkedQueue<GenerateJob> finished = new ConcurrentLinkedQueue<>();
+    private final LongArray scratch = new LongArray();
+    private final Array<Chunk> marginChunks = new Array<>(false, 64);
+    private final Thread[] workers;
+
+    private volatile boolean running = true;
+    /** Chunk keys of the centres chunks are kept around, sorted and without duplicates. */
+    private final LongArray centers = new LongArray();
+    private final LongArray eyeCenter = new LongArray(1);
+    private boolean centersSet;
+    private long centerChanges;
+    private long evictedCount;
+
+    private final AtomicLong promotedChunks = new AtomicLong();
+    private final AtomicLong promoteNanos = new AtomicLong();
+    private final AtomicLong generatedChunks = new AtomicLong();
+    private final AtomicLong generateNanos = new AtomicLong();
+
+    /**
+     * @param viewRadius   radius in chunks that is kept loaded around the camera
+     * @param unloadMargin extra chunks a chunk may be away before it is unloaded
+     * @param saver        saved world to load from and save to, or {@code null} to always generate
+     * @param cold         where unloaded chunks are kept compressed, or {@code null} to let them go
+     * @param activeBudgetBytes memory the loaded chunks' blocks and light may take, or 0 for no limit
+     */
+    ChunkStreamer(World world, TerrainGenerator generator, AutosaveScheduler saver, ColdChunkCache cold,
+                  int viewRadius, int unloadMargin, long activeBudgetBytes, int threads) {
+        this.world = world;
+        this.generator = generator;
+        this.saver = saver;
+        this.cold = cold;
+        this.viewRadius = viewRadius;
+        this.unloadRadius = viewRadius + unloadMargin;
+        this.activeBudgetBytes = activeBudgetBytes;
+        this.lit = world.isLit();
+
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::runWorker, "chunk-generator-" + THREAD_ID.incrementAndGet());
+            worker.setDaemon(true);
+            worker.setPriority(Thread.NORM_PRIORITY - 1);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    /** Requests and evicts chunks around {@code eye} and adds finished chunks to the world. Simulation thread only. */
+    @Override
+    public void update(Vector3 eye) {
+        eyeCenter.clear();
+        eyeCenter.add(World.chunkKey(MathUtils.floor(eye.x) >> 4, MathUtils.floor(eye.z) >> 4));
+        update(eyeCenter);
+    }
+
+    /**
+     * Requests and evicts chunks around every centre in {@code chunkKeys}, which must be sorted and free of
+     * duplicates, and adds finished chunks to the world. With no centres everything is unloaded.
+     */
+    void update(LongArray chunkKeys) {
+        if (!centersSet || !centers.equals(chunkKeys)) {
+            centersSet = true;
+            centers.clear();
+            centers.addAll(chunkKeys);
+            unloadFarChunks();
+            cancelFarJobs();
+            pendingEdits.discardBeyond(world, centers, unloadRadius);
+            requestMissingChunks();
+        }
+        addFinishedChunks();
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int id) {
+        world.setBlock(x, y, z, id);
+    }
+
+    @Override
+    public int getLoadedCount() {
+        return world.getChunkCount();
+    }
+
+    @Override
+    public int getPendingCount() {
+        return pending.size;
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    PendingEdits getPendingEdits() {
+        return pendingEdits;
+    }
+
+    int getViewRadius() {
+        return viewRadius;
+    }
+
+    /** Average time to take a chunk out of the {@link ColdChunkCache}, decoded and lit, or 0 before the first. */
+    long getAveragePromoteNanos() {
+        long count = promotedChunks.get();
+        return count == 0 ? 0 : promoteNanos.get() / count;
+    }
+
+    /** Average time to generate and light a new chunk, or 0 before the first. */
+    long getAverageGenerateNanos() {
+        long count = generatedChunks.get();
+        return count == 0 ? 0 : generateNanos.get() / count;
+    }
+
+    private void requestMissingChunks() {
+        int radius2 = viewRadius * viewRadius;
+        for (int i = 0; i < centers.size; i++) {
+            int centerX = World.keyX(centers.get(i));
+            int centerZ = World.keyZ(centers.get(i));
+            for (int dx = -viewRadius; dx <= viewRadius; dx++) {
+                for (int dz = -viewRadius; dz <= viewRadius; dz++) {
+                    int distance2 = dx * dx + dz * dz;
+                    if (distance2 > radius2) {
+                        continue;
+                    }
+                    int chunkX = centerX + dx;
+                    int chunkZ = centerZ + dz;
+                    long key = World.chunkKey(chunkX, chunkZ);
+                    if (pending.containsKey(key) || world.isChunkLoaded(chunkX, chunkZ)) {
+                        continue;
+                    }
+                    GenerateJob job = new GenerateJob(chunkX, chunkZ, distance2, 1);
+                    pending.put(key, job);
+                    jobs.add(job);
+                }
+            }
+        }
+    }
+
+    private void unloadFarChunks() {
+        long stamp = ++centerChanges;
+        long activeBytes = 0L;
+        scratch.clear();
+        marginChunks.clear();
+        for (Chunk chunk : world.getChunks()) {
+            if (isBeyondUnloadRadius(chunk.chunkX, chunk.chunkZ)) {
+                scratch.add(World.chunkKey(chunk.chunkX, chunk.chunkZ));
+                continue;
+            }
+            if (!isBeyond(centers, chunk.chunkX, chunk.chunkZ, viewRadius)) {
+                chunk.lastInView = stamp;
+            } else {
+                marginChunks.add(chunk);
+            }
+            if (activeBudgetBytes > 0) {
+                activeBytes += chunk.estimateHeapBytes() + chunk.estimateOffHeapBytes();
+            }
+        }
+        if (activeBytes > activeBudgetBytes && activeBudgetBytes > 0) {
+            marginChunks.sort(BY_LAST_IN_VIEW);
+            for (int i = 0; i < marginChunks.size && activeBytes > activeBudgetBytes; i++) {
+                Chunk chunk = marginChunks.get(i);
+                activeBytes -= chunk.estimateHeapBytes() + chunk.estimateOffHeapBytes();
+                scratch.add(World.chunkKey(chunk.chunkX, chunk.chunkZ));
+            }
+        }
+        marginChunks.clear();
+
+        for (int i = 0; i < scratch.size; i++) {
+            long key = scratch.get(i);
+            Chunk chunk = world.removeChunk(World.keyX(key), World.keyZ(key));
+            if (chunk != null) {
+                if (saver != null) {
+                    saver.save(chunk);
+                }
+                if (cold != null) {
+                    cold.put(chunk);
+                }
+                evictedCount++;
+            }
+        }
+    }
+
+    private void cancelFarJobs() {
+        scratch.clear();
+        for (GenerateJob job : pending.values()) {
+            if (isBeyondUnloadRadius(job.chunkX, job.chunkZ)) {
+                job.cancelled = true;
+                scratch.add(World.chunkKey(job.chunkX, job.chunkZ));
+            }
+        }
+        for (int i = 0; i < scratch.size; i++) {
+            pending.remove(scratch.get(i));
+        }
+    }
+
+    private boolean isBeyondUnloadRadius(int chunkX, int chunkZ) {
+        return isBeyond(centers, chunkX, chunkZ, unloadRadius);
+    }
+
+    /** Whether the chunk is further than {@code radius} from every centre in {@code centers}. */
+    static boolean isBeyond(LongArray centers, int chunkX, int chunkZ, int radius) {
+        for (int i = 0; i < centers.size; i++) {
+            int dx = chunkX - World.keyX(centers.get(i));
+            int dz = chunkZ - World.keyZ(centers.get(i));
+            if (dx * dx + dz * dz <= radius * radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addFinishedChunks() {
+        int added = 0;
+        GenerateJob job;
+        while (added < MAX_CHUNKS_ADDED_PER_FRAME && (job = finished.poll()) != null) {
+            if (job.cancelled) {
+                continue;
+            }
+            long key = World.chunkKey(job.chunkX, job.chunkZ);
+            pending.remove(key);
+            if (job.result == null) {
+                retry(key, job);
+            } else {
+                boolean stale = pendingEdits.applyParked(job.result);
+                if (job.incoming != null) {
+                    stale |= applyIncoming(job);
+                }
+                if (stale && lit) {
+                    LightEngine.lightChunk(job.result);
+                }
+                job.result.lastInView = centerChanges;
+                world.addChunk(job.result);
+                pendingEdits.distribute(world, job.spill);
+                added++;
+            }
+        }
+    }
+
+    /** Queues a failed chunk again, so a player standing still does not keep a hole, up to {@link #MAX_ATTEMPTS}. */
+    private void retry(long key, GenerateJob failed) {
+        if (failed.attempt >= MAX_ATTEMPTS) {
+            Gdx.app.error("ChunkStreamer", "Giving up on chunk " + failed.chunkX + ", " + failed.chunkZ + " after "
+                + MAX_ATTEMPTS + " attempts");
+            return;
+        }
+        GenerateJob job = new GenerateJob(failed.chunkX, failed.chunkZ, failed.distance2, failed.attempt + 1);
+        pending.put(key, job);
+        jobs.add(job);
+    }
+
+    /**
+     * Applies to a freshly generated chunk the spills of its loaded neighbours, which were generated before it
+     * and have long handed theirs out. Returns whether there were any.
+     */
+    private boolean applyIncoming(GenerateJob job) {
+        boolean applied = false;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                IntArray edits = job.incoming[(dx + 1) * 3 + (dz + 1)];
+                if (edits != null && world.isChunkLoaded(job.chunkX + dx, job.chunkZ + dz)) {
+                    SpillEdits.applyTo(job.result, edits);
+                    applied = true;
+                }
+            }
+        }
+        return applied;
+    }
+
+    private void runWorker() {
+        while (running) {
+            GenerateJob job;
+            try {
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job.cancelled) {
+                continue;
+            }
+
+            Object event = ChunkEvents.startGenerate();
+            try {
+                long start = System.nanoTime();
+                job.result = promote(job);
+                boolean fromCache = job.result != null;
+                boolean fromDisk = false;
+                if (fromCache) {
+                    promoteNanos.addAndGet(System.nanoTime() - start);
+                    promotedChunks.incrementAndGet();
+                } else {
+                    job.result = load(job);
+                    fromDisk = job.result != null;
+                    start = System.nanoTime();
+                    if (job.result == null) {
+                        job.spill = new SpillEdits(job.chunkX, job.chunkZ);
+                        job.result = generator.generate(job.chunkX, job.chunkZ, job.spill);
+                        job.incoming = respillNeighbours(job.chunkX, job.chunkZ);
+                    }
+                    if (job.result != null && lit) {
+                        LightEngine.lightChunk(job.result);
+                    }
+                    if (!fromDisk) {
+                        generateNanos.addAndGet(System.nanoTime() - start);
+                        generatedChunks.incrementAndGet();
+                    }
+                }
+                ChunkEvents.commitGenerate(event, job.chunkX, job.chunkZ, fromDisk, fromCache);
+            } catch (RuntimeException e) {
+                Gdx.app.error("ChunkStreamer", "Failed to generate chunk " + job.chunkX + ", " + job.chunkZ, e);
+            }
+            // failed jobs are handed back too so the chunk can be retried
+            finished.add(job);
+        }
+    }
+
+    /**
+     * Takes a chunk out of the cold cache, already lit, and re-creates the decoration it spills into neighbours,
+     * or returns {@code null}.
+     */
+    private Chunk promote(GenerateJob job) {
+        if (cold == null) {
+            return null;
+        }
+        Chunk chunk = cold.take(job.chunkX, job.chunkZ);
+        if (chunk != null) {
+            // like a saved chunk, it already holds its neighbours' spills
+            job.spill = new SpillEdits(job.chunkX, job.chunkZ, true);
+            generator.respill(job.spill);
+        }
+        return chunk;
+    }
+
+    /** Reads a saved chunk and re-creates the decoration it spills into neighbours, or returns {@code null}. */
+    private Chunk load(GenerateJob job) {
+        if (saver == null) {
+            return null;
+        }
+        Chunk chunk;
+        try {
+            chunk = saver.load(job.chunkX, job.chunkZ);
+        } catch (IOException e) {
+            if (!running) {
+                // dispose() interrupted the read
+                return null;
+            }
+            Gdx.app.error("ChunkStreamer", "Failed to load chunk " + job.chunkX + ", " + job.chunkZ + ", regenerating", e);
+            return null;
+        }
+        if (chunk != null) {
+            chunk.fromDisk = true;
+            job.spill = new SpillEdits(job.chunkX, job.chunkZ, true);
+            generator.respill(job.spill);
+        }
+        return chunk;
+    }
+
+    /**
+     * Re-creates what each neighbour spills into chunk (chunkX, chunkZ), indexed by the neighbour's offset like
+     * {@link SpillEdits#get(int, int)}. Saved and cached chunks hold these already.
+     */
+    private IntArray[] respillNeighbours(int chunkX, int chunkZ) {
+        IntArray[] incoming = new IntArray[9];
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (dx == 0 && dz == 0) {
+                    continue;
+                }
+                SpillEdits neighbour = new SpillEdits(chunkX + dx, chunkZ + dz);
+                generator.respill(neighbour);
+                incoming[(dx + 1) * 3 + (dz + 1)] = neighbour.get(-dx, -dz);
+            }
+        }
+        return incoming;
+    }
+
+    @Override
+    public void dispose() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        jobs.clear();
+        finished.clear();
+        pending.clear();
+    }
+
+    private static final class GenerateJob implements Comparable<GenerateJob> {
+        final int chunkX;
+        final int chunkZ;
+        final int distance2;
+        /** 1 for the first try, counting up with every retry. */
+        final int attempt;
+
+        volatile boolean cancelled;
+        Chunk result;
+        SpillEdits spill;
+        /** Spills of the neighbours into a generated chunk, see {@link #respillNeighbours(int, int)}. */
+        IntArray[] incoming;
+
+        GenerateJob(int chunkX, int chunkZ, int distance2, int attempt) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.distance2 = distance2;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public int compareTo(GenerateJob other) {
+            return Integer.compare(distance2, other.distance2);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Second tier behind the loaded chunks: chunks the {@link ChunkStreamer} unloaded, kept in memory compressed so
+ * that walking back to them costs an inflate and a decode instead of a read from disk or a regeneration. Each
+ * chunk is stored as its {@link ChunkCodec} encoding followed by its light arrays, deflated; terrain compresses
+ * to a few hundred bytes. Once the stored chunks take more than the byte budget, those stored longest ago are
+ * dropped; a promoted chunk leaves the cache, so that is least recently used first.
+ *
+ * <p>{@link #put} only takes a copy-on-write snapshot, on the simulation thread; a compressor thread of its
+ * own deflates it, and a chunk asked for again before that is copied from the snapshot.
+ *
+ * <p>Stored light is what the chunk had when it was unloaded, stitched with its neighbours. Light only spreads
+ * into a chunk when it is added back, so an edit next to a stored chunk, which could have taken light away from
+ * it, marks its light stale and the chunk is lit again on promotion. The cache listens to the world's block
+ * changes for that.
+ */
+final class ColdChunkCache implements World.BlockListener, Disposable {
+
+    /** Entry, map node, key and array headers of a stored chunk, roughly. */
+    private static final int ENTRY_OVERHEAD_BYTES = 112;
+    /** Upper bound of a chunk before deflating: the codec's bound and every light array. */
+    static final int MAX_RAW_BYTES = ChunkCodec.MAX_ENCODED_BYTES + 1 + 2 * Chunk.SECTION_COUNT * NibbleArray.BYTES;
+
+    private final long budgetBytes;
+    private final LongMap<Entry> entries = new LongMap<>();
+    // stored order, eldest first; a promoted chunk leaves the list, so the eldest is also the least recently used
+    private Entry eldest;
+    private Entry newest;
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread compressor;
+    private volatile boolean running = true;
+
+    // written under the lock, read by the HUD without it
+    private volatile int count;
+    private volatile long storedBytes;
+    private volatile long compressedBytes;
+    private volatile long decodedBytes;
+    private volatile long evictedCount;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleLight = new AtomicLong();
+
+    /** @param budgetBytes memory the stored chunks may take before the oldest are dropped */
+    ColdChunkCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        compressor = new Thread(this::runCompressor, "chunk-compressor");
+        compressor.setDaemon(true);
+        compressor.setPriority(Thread.NORM_PRIORITY - 1);
+        compressor.start();
+    }
+
+    /** Stores a chunk that was just removed from the world, replacing any older copy. Simulation thread only. */
+    void put(Chunk chunk) {
+        Entry entry = new Entry(World.chunkKey(chunk.chunkX, chunk.chunkZ), chunk.snapshotBlocksAndLight(),
+            chunk.estimateHeapBytes() + chunk.estimateOffHeapBytes());
+        synchronized (this) {
+            Entry replaced = entries.put(entry.key, entry);
+            if (replaced != null) {
+                unlink(replaced);
+            }
+            entry.previous = newest;
+            if (newest != null) {
+                newest.next = entry;
+            } else {
+                eldest = entry;
+            }
+            newest = entry;
+            storedBytes += entry.size();
+            count = entries.size;
+            evictOverBudget();
+        }
+        queue.add(entry);
+    }
+
+    /**
+     * Removes a stored chunk and returns it decoded and lit, or returns {@code null} if it is not stored. The
+     * chunk counts as read from disk, see {@link Chunk#fromDisk}. Safe from any thread.
+     */
+    Chunk take(int chunkX, int chunkZ) {
+        Entry entry;
+        Chunk snapshot;
+        byte[] data;
+        synchronized (this) {
+            entry = entries.remove(World.chunkKey(chunkX, chunkZ));
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            unlink(entry);
+            count = entries.size;
+            snapshot = entry.snapshot;
+            data = entry.data;
+        }
+        hits.incrementAndGet();
+
+        Chunk chunk = snapshot != null ? snapshot.snapshotBlocksAndLight() : expand(chunkX, chunkZ, data, entry.rawLength);
+        if (entry.lightStale) {
+            staleLight.incrementAndGet();
+            LightEngine.lightChunk(chunk);
+        }
+        chunk.fromDisk = true;
+        // whatever changed before the chunk was unloaded was queued for saving then
+        chunk.needsSave = false;
+        return chunk;
+    }
+
+    @Override
+    public void blockChanged(int x, int y, int z, int id) {
+        lightChangedNear(x >> 4, z >> 4);
+    }
+
+    @Override
+    public void chunkEdited(Chunk chunk) {
+        lightChangedNear(chunk.chunkX, chunk.chunkZ);
+    }
+
+    /** Marks the stored light of the chunks around a changed chunk stale. */
+    private synchronized void lightChangedNear(int chunkX, int chunkZ) {
+        if (entries.size == 0) {
+            return;
+        }
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                Entry entry = (dx | dz) == 0 ? null : entries.get(World.chunkKey(chunkX + dx, chunkZ + dz));
+                if (entry != null) {
+                    entry.lightStale = true;
+                }
+            }
+        }
+    }
+
+    private void evictOverBudget() {
+        while (storedBytes > budgetBytes && eldest != null) {
+            Entry entry = eldest;
+            entries.remove(entry.key);
+            unlink(entry);
+            evictedCount++;
+        }
+        count = entries.size;
+    }
+
+    /**
+     * Takes an entry that left the map out of the stored order and the totals, and stops the compressor from
+     * storing it.
+     */
+    private void unlink(Entry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            eldest = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        } else {
+            newest = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+        entry.removed = true;
+        storedBytes -= entry.size();
+        if (entry.data != null) {
+            compressedBytes -= entry.data.length;
+            decodedBytes -= entry.decodedBytes;
+        }
+    }
+
+    private void runCompressor() {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteBuffer raw = ByteBuffer.allocate(MAX_RAW_BYTES);
+        byte[] deflated = new byte[MAX_RAW_BYTES + 1024];
+        try {
+            while (running) {
+                Entry entry;
+                try {
+                    entry = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (entry.removed) {
+                    continue;
+                }
+                byte[] data;
+                try {
+                    data = compress(entry.snapshot, raw, deflated, deflater);
+                } catch (RuntimeException e) {
+                    Gdx.app.error("ColdChunkCache", "Failed to compress chunk " + World.keyX(entry.key) + ", "
+                        + World.keyZ(entry.key), e);
+                    continue;
+                }
+                synchronized (this) {
+                    if (entry.removed) {
+                        continue;
+                    }
+                    storedBytes -= entry.size();
+                    entry.rawLength = raw.position();
+                    entry.data = data;
+                    entry.snapshot = null;
+                    storedBytes += entry.size();
+                    compressedBytes += data.length;
+                    decodedBytes += entry.decodedBytes;
+                    evictOverBudget();
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a chunk with {@link #write} into {@code raw} and returns it deflated; {@code raw.position()} is then
+     * the length {@link #expand} needs. {@code deflated} must hold {@link #MAX_RAW_BYTES} and a little more.
+     */
+    static byte[] compress(Chunk chunk, ByteBuffer raw, byte[] deflated, Deflater deflater) {
+        raw.clear();
+        write(chunk, raw);
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == deflated.length) {
+                throw new IllegalStateException("Chunk " + chunk.chunkX + ", " + chunk.chunkZ
+                    + " deflates to more than " + deflated.length + " bytes");
+            }
+            length += deflater.deflate(deflated, length, deflated.length - length);
+        }
+        return Arrays.copyOf(deflated, length);
+    }
+
+    /** Writes the blocks with {@link ChunkCodec}, then a bit mask of the light arrays there are and each of them. */
+    static void write(Chunk chunk, ByteBuffer out) {
+        ChunkCodec.encode(chunk, out);
+        int mask = 0;
+        for (int channel = 0; channel < 2; channel++) {
+            for (int i = 0; i < Chunk.SECTION_COUNT; i++) {
+                if (chunk.light[channel][i] != null) {
+                    mask |= 1 << (channel * Chunk.SECTION_COUNT + i);
+                }
+            }
+        }
+        out.put((byte) mask);
+        for (int channel = 0; channel < 2; channel++) {
+            for (int i = 0; i < Chunk.SECTION_COUNT; i++) {
+                if (chunk.light[channel][i] != null) {
+                    chunk.light[channel][i].write(out);
+                }
+            }
+        }
+    }
+
+    /** Inflates and decodes what the compressor stored: {@code rawLength} bytes as laid out by {@link #write}. */
+    static Chunk expand(int chunkX, int chunkZ, byte[] data, int rawLength) {
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            if (inflater.inflate(raw) != rawLength) {
+                throw new IllegalStateException("Truncated chunk " + chunkX + ", " + chunkZ);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt chunk " + chunkX + ", " + chunkZ, e);
+        } finally {
+            inflater.end();
+        }
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        Chunk chunk = ChunkCodec.decode(chunkX, chunkZ, in);
+        int mask = in.get() & 0xff;
+        for (int channel = 0; channel < 2; channel++) {
+            for (int i = 0; i < Chunk.SECTION_COUNT; i++) {
+                if ((mask & (1 << (channel * Chunk.SECTION_COUNT + i))) != 0) {
+                    chunk.light[channel][i] = NibbleArray.read(in);
+                }
+            }
+        }
+        return chunk;
+    }
+
+    int getChunkCount() {
+        return count;
+    }
+
+    /** Memory the stored chunks take, compressed or still waiting for the compressor. */
+    long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /** What the compressed chunks would take decoded, over what they take compressed. */
+    float getCompressionRatio() {
+        long compressed = compressedBytes;
+        return compressed == 0 ? 0f : (float) decodedBytes / compressed;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /** Promotions that had to light the chunk again because a neighbour changed while it was stored. */
+    long getStaleLightCount() {
+        return staleLight.get();
+    }
+
+    long getEvictedCount() {
+        return evictedCount;
+    }
+
+    @Override
+    public void dispose() {
+        running = false;
+        compressor.interrupt();
+        queue.clear();
+        synchronized (this) {
+            entries.clear();
+            eldest = null;
+            newest = null;
+            count = 0;
+        }
+    }
+
+    private static final class Entry {
+        final long key;
+        final long decodedBytes;
+        /** The chunk until the compressor has stored it, then {@code null}. */
+        Chunk snapshot;
+        byte[] data;
+        int rawLength;
+        boolean lightStale;
+        boolean removed;
+        Entry previous;
+        Entry next;
+
+        Entry(long key, Chunk snapshot, long decodedBytes) {
+            this.key = key;
+            this.snapshot = snapshot;
+            this.decodedBytes = decodedBytes;
+        }
+
+        long size() {
+            return ENTRY_OVERHEAD_BYTES + (data != null ? data.length : decodedBytes);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.ByteArray;
+import com.badlogic.gdx.utils.FloatArray;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A camera path with block actions, one entry per frame: the player's feet position, view yaw and pitch, the
+ * selected hotbar slot and whether a block is broken or placed that frame. Played back at a fixed
+ * {@link #FRAME_SECONDS} per frame so a run does the same work on every machine.
+ *
+ * <p>Scripts are either generated from a seed by {@link #generate} or recorded from play and saved as text,
+ * one line per frame: {@code x y z yaw pitch slot actions}.
+ */
+final class FlythroughScript {
+
+    static final float FRAME_SECONDS = Simulation.TICK_SECONDS;
+    static final int BREAK = 1;
+    static final int PLACE = 2;
+
+    private static final int POSE_STRIDE = 5;
+    private static final int WAYPOINTS = 8;
+    private static final float FLY_SPEED = 11f;
+    private static final float TURN_DEGREES_PER_SECOND = 90f;
+    private static final float HOVER_HEIGHT = 2f;
+    private static final int ACTION_PERIOD = 120;
+    private static final int ACTION_WINDOW = 30;
+
+    private final FloatArray poses = new FloatArray();
+    private final ByteArray slots = new ByteArray();
+    private final ByteArray actions = new ByteArray();
+
+    int getFrameCount() {
+        return slots.size;
+    }
+
+    void add(float x, float y, float z, float yaw, float pitch, int slot, int frameActions) {
+        poses.add(x, y, z, yaw);
+        poses.add(pitch);
+        slots.add((byte) slot);
+        actions.add((byte) frameActions);
+    }
+
+    float getX(int frame) {
+        return poses.get(frame * POSE_STRIDE);
+    }
+
+    float getY(int frame) {
+        return poses.get(frame * POSE_STRIDE + 1);
+    }
+
+    float getZ(int frame) {
+        return poses.get(frame * POSE_STRIDE + 2);
+    }
+
+    float getYaw(int frame) {
+        return poses.get(frame * POSE_STRIDE + 3);
+    }
+
+    float getPitch(int frame) {
+        return poses.get(frame * POSE_STRIDE + 4);
+    }
+
+    int getSlot(int frame) {
+        return slots.get(frame);
+    }
+
+    int getActions(int frame) {
+        return actions.get(frame);
+    }
+
+    /**
+     * A loop of {@link #WAYPOINTS} random points around (startX, startZ), flown low over the terrain at sprint
+     * speed while the view sways. Every {@link #ACTION_PERIOD} frames the camera looks down, breaks the block
+     * below and places one from the next hotbar slot. The same seed always gives the same script.
+     */
+    static FlythroughScript generate(long seed, int frames, TerrainGenerator terrain, float startX, float startZ) {
+        Random random = new Random(seed);
+        float[] waypoints = new float[WAYPOINTS * 2];
+        for (int i = 0; i < WAYPOINTS; i++) {
+            float angle = (i + random.nextFloat() * 0.5f) * MathUtils.PI2 / WAYPOINTS;
+            float radius = 40f + random.nextFloat() * 120f;
+            waypoints[i * 2] = startX + MathUtils.cos(angle) * radius;
+            waypoints[i * 2 + 1] = startZ + MathUtils.sin(angle) * radius;
+        }
+
+        FlythroughScript script = new FlythroughScript();
+        float x = startX;
+        float z = startZ;
+        float y = groundY(terrain, x, z) + HOVER_HEIGHT;
+        float yaw = MathUtils.atan2(waypoints[1] - z, waypoints[0] - x) * MathUtils.radiansToDegrees;
+        int target = 0;
+        int slot = 1;
+        for (int frame = 0; frame < frames; frame++) {
+            float dx = waypoints[target * 2] - x;
+            float dz = waypoints[target * 2 + 1] - z;
+            float distance = (float) Math.sqrt(dx * dx + dz * dz);
+            float step = FLY_SPEED * FRAME_SECONDS;
+            if (distance <= step) {
+                target = (target + 1) % WAYPOINTS;
+            } else {
+                x += dx / distance * step;
+                z += dz / distance * step;
+            }
+
+            float heading = MathUtils.atan2(dz, dx) * MathUtils.radiansToDegrees;
+            float turn = ((heading - yaw) % 360f + 540f) % 360f - 180f;
+            float maxTurn = TURN_DEGREES_PER_SECOND * FRAME_SECONDS;
+            yaw += MathUtils.clamp(turn, -maxTurn, maxTurn);
+
+            float ground = groundY(terrain, x, z);
+            y += (ground + HOVER_HEIGHT - y) * 0.1f;
+            y = Math.max(y, ground + 1f);
+
+            float seconds = frame * FRAME_SECONDS;
+            float pitch = -10f + 8f * MathUtils.sin(seconds * 0.7f);
+            int frameActions = 0;
+            int inWindow = frame % ACTION_PERIOD;
+            if (frame >= ACTION_PERIOD && inWindow < ACTION_WINDOW) {
+                pitch = -75f;
+                if (inWindow == ACTION_WINDOW / 3) {
+                    frameActions = BREAK;
+                } else if (inWindow == ACTION_WINDOW * 2 / 3) {
+                    frameActions = PLACE;
+                    slot = slot % BlockType.values().length + 1;
+                }
+            }
+            script.add(x, y, z, yaw + 20f * MathUtils.sin(seconds * 0.5f), pitch, slot, frameActions);
+        }
+        return script;
+    }
+
+    /** Feet height standing on the generated surface; trees and edits are ignored. */
+    private static float groundY(TerrainGenerator terrain, float x, float z) {
+        return terrain.surfaceHeight(MathUtils.floor(x), MathUtils.floor(z)) + 1f;
+    }
+
+    static FlythroughScript load(File file) throws IOException {
+        FlythroughScript script = new FlythroughScript();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts.length != 7) {
+                    throw new IOException(file + ":" + lineNumber + ": expected 7 values, got " + parts.length);
+                }
+                try {
+                    script.add(Float.parseFloat(parts[0]), Float.parseFloat(parts[1]), Float.parseFloat(parts[2]),
+                        Float.parseFloat(parts[3]), Float.parseFloat(parts[4]), Integer.parseInt(parts[5]),
+                        Integer.parseInt(parts[6]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return script;
+    }
+
+    void write(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.println("# x y z yaw pitch slot actions (1 break, 2 place), one line per frame");
+            for (int frame = 0; frame < getFrameCount(); frame++) {
+                out.printf(Locale.ROOT, "%.4f %.4f %.4f %.3f %.3f %d %d%n",
+                    getX(frame), getY(frame), getZ(frame), getYaw(frame), getPitch(frame), getSlot(frame), getActions(frame));
+            }
+        }
+    }
+}
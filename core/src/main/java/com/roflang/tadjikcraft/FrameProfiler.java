@@ -0,0 +1,129 @@
+package com.roflang.tadjikcraft;
+
+/**
+ * Splits each frame into phases and keeps the time spent in every phase for the last {@link #HISTORY} frames.
+ * The render loop calls {@link #beginFrame()}, then {@link #split(int)} as each phase ends and
+ * {@link #endFrame()}; while disabled every call returns after one field read, so the hooks can stay in the
+ * loop.
+ */
+final class FrameProfiler {
+
+    static final int INPUT = 0;
+    /** Ticks stepped on the render thread; near zero while the simulation has its own thread. */
+    static final int SIMULATION = 1;
+    static final int UPLOAD = 2;
+    static final int WORLD = 3;
+    static final int HUD = 4;
+    static final int PHASES = 5;
+
+    static final int HISTORY = 240;
+
+    private static final String[] NAMES = {"input", "simulation", "upload", "world", "hud"};
+
+    private final long[][] nanos = new long[PHASES][HISTORY];
+    private final long[] current = new long[PHASES];
+    private int frame;
+    private int recorded;
+    private long lastSplit;
+    private boolean enabled;
+
+    private int drawCalls;
+    private int shaderSwitches;
+    private int vertices;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Turning the profiler on starts a fresh history. */
+    void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            recorded = 0;
+            frame = 0;
+        }
+        this.enabled = enabled;
+    }
+
+    void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < PHASES; i++) {
+            current[i] = 0L;
+        }
+        lastSplit = System.nanoTime();
+    }
+
+    /** Charges the time since the previous split, or the start of the frame, to {@code phase}. */
+    void split(int phase) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        current[phase] += now - lastSplit;
+        lastSplit = now;
+    }
+
+    void endFrame() {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < PHASES; i++) {
+            nanos[i][frame] = current[i];
+        }
+        frame = (frame + 1) % HISTORY;
+        recorded = Math.min(recorded + 1, HISTORY);
+    }
+
+    /** GL work of the last frame, as counted by libGDX's {@code GLProfiler}. */
+    void setGlCounts(int drawCalls, int shaderSwitches, int vertices) {
+        this.drawCalls = drawCalls;
+        this.shaderSwitches = shaderSwitches;
+        this.vertices = vertices;
+    }
+
+    /** Frames in the history, up to {@link #HISTORY}. */
+    int getRecorded() {
+        return recorded;
+    }
+
+    /** Time of {@code phase} in the {@code age}-th most recent frame, 0 being the last one. */
+    long getNanos(int phase, int age) {
+        return nanos[phase][(frame - 1 - age + HISTORY * 2) % HISTORY];
+    }
+
+    long getAverageNanos(int phase) {
+        if (recorded == 0) {
+            return 0L;
+        }
+        long sum = 0L;
+        for (int age = 0; age < recorded; age++) {
+            sum += getNanos(phase, age);
+        }
+        return sum / recorded;
+    }
+
+    long getMaxNanos(int phase) {
+        long max = 0L;
+        for (int age = 0; age < recorded; age++) {
+            max = Math.max(max, getNanos(phase, age));
+        }
+        return max;
+    }
+
+    static String getName(int phase) {
+        return NAMES[phase];
+    }
+
+    int getDrawCalls() {
+        return drawCalls;
+    }
+
+    int getShaderSwitches() {
+        return shaderSwitches;
+    }
+
+    int getVertices() {
+        return vertices;
+    }
+}
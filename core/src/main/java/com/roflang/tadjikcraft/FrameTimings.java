@@ -0,0 +1,92 @@
+package com.roflang.tadjikcraft;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Update and render time of a fixed number of frames, written out as one CSV row per frame plus a summary of
+ * the 50th, 95th and 99th percentiles. Sized up front so recording allocates nothing.
+ */
+final class FrameTimings {
+
+    private final long[] updateNanos;
+    private final long[] renderNanos;
+    private int count;
+
+    FrameTimings(int frames) {
+        updateNanos = new long[frames];
+        renderNanos = new long[frames];
+    }
+
+    /** Records the next frame; frames beyond the capacity are ignored. */
+    void record(long update, long render) {
+        if (count < updateNanos.length) {
+            updateNanos[count] = update;
+            renderNanos[count] = render;
+            count++;
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count == updateNanos.length;
+    }
+
+    /** Writes {@code frame,update_ms,render_ms,total_ms} rows. */
+    void writeCsv(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.println("frame,update_ms,render_ms,total_ms");
+            for (int i = 0; i < count; i++) {
+                out.printf(Locale.ROOT, "%d,%.4f,%.4f,%.4f%n",
+                    i, millis(updateNanos[i]), millis(renderNanos[i]), millis(updateNanos[i] + renderNanos[i]));
+            }
+        }
+    }
+
+    /** Percentile table of update, render and total frame time in milliseconds. */
+    String summary() {
+        long[] total = new long[count];
+        for (int i = 0; i < count; i++) {
+            total[i] = updateNanos[i] + renderNanos[i];
+        }
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%d frames%n%-8s %9s %9s %9s %9s%n", count, "", "p50", "p95", "p99", "max"));
+        appendRow(out, "update", Arrays.copyOf(updateNanos, count));
+        appendRow(out, "render", Arrays.copyOf(renderNanos, count));
+        appendRow(out, "total", total);
+        return out.toString();
+    }
+
+    private static void appendRow(StringBuilder out, String name, long[] values) {
+        Arrays.sort(values);
+        out.append(String.format(Locale.ROOT, "%-8s %9.3f %9.3f %9.3f %9.3f%n", name,
+            millis(percentile(values, 50)), millis(percentile(values, 95)), millis(percentile(values, 99)),
+            millis(values.length == 0 ? 0L : values[values.length - 1])));
+    }
+
+    /** Nearest-rank percentile of sorted values. */
+    static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
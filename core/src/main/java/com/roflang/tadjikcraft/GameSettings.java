@@ -0,0 +1,182 @@
+package com.roflang.tadjikcraft;
+
+import java.io.File;
+
+/** Startup options for {@link TadjikCraftGame}. Launchers fill these in before creating the game. */
+public class GameSettings {
+
+    /** Seed of scripted flythroughs when none is given, so runs are comparable across builds. */
+    public static final long DEFAULT_FLYTHROUGH_SEED = 1L;
+
+    /** World seed; the same seed always produces the same terrain. */
+    public long seed = System.nanoTime();
+
+    /** Radius in chunks kept loaded around the camera. */
+    public int viewRadius = 8;
+
+    /** Extra chunks beyond {@link #viewRadius} before a chunk is unloaded, so walking along a border does not thrash. */
+    public int unloadMargin = 2;
+
+    /**
+     * Folder the world is saved in, or {@code null} to keep it in memory only. An existing world keeps its own
+     * seed and ignores {@link #seed}.
+     */
+    public File worldDirectory;
+
+    /** Seconds between autosaves of changed chunks. */
+    public float autosaveSeconds = 30f;
+
+    /** Minimum milliseconds between two fsyncs of the region files; writes in between reach the OS cache only. */
+    public long autosaveSyncMillis = 5_000L;
+
+    /**
+     * Runs the world on a thread of its own at a fixed tick rate. When off, the render thread steps it between
+     * frames; flythroughs always do, so their runs repeat exactly.
+     */
+    public boolean simulationThread = true;
+
+    /**
+     * Keeps block and light data of loaded chunks in pooled direct buffers instead of heap arrays, see
+     * {@link SectionSlabs}. Worth it at large view distances, where the arrays make every full GC slower.
+     */
+    public boolean offHeapStorage;
+
+    /**
+     * Megabytes of unloaded chunks kept compressed in memory, see {@link ColdChunkCache}, or 0 to drop them and
+     * read or generate them again.
+     */
+    public int coldCacheMegabytes = 64;
+
+    /**
+     * Megabytes the blocks and light of loaded chunks may take before chunks beyond {@link #viewRadius} are
+     * unloaded early, or 0 for no limit. Chunks within the view radius are never unloaded for it.
+     */
+    public int activeChunkMegabytes;
+
+    /**
+     * How many times the view radius terrain is drawn to, beyond the loaded chunks at reduced detail from the
+     * generator's heightmap, see {@link LodTerrain}, or 1 to draw the loaded chunks only.
+     */
+    public int lodRadiusScale = 4;
+
+    /**
+     * {@code host:port} of a {@link WorldServer} to play on, or {@code null} to play a local world. The port
+     * may be left out.
+     */
+    public String serverAddress;
+
+    /** Port a {@link WorldServer} listens on. */
+    public int serverPort = Protocol.DEFAULT_PORT;
+
+    /** Skips everything that needs GL, for the headless backend. Only useful with a flythrough. */
+    public boolean headless;
+
+    /**
+     * Frames to play of a scripted flythrough before writing {@link #flythroughReport} and exiting, or 0 to
+     * play normally. Player input is ignored during a flythrough.
+     */
+    public int flythroughFrames;
+
+    /** Recorded flythrough to play, or {@code null} to generate one from {@link #seed}. */
+    public File flythroughScript;
+
+    /** Per-frame timing CSV of a flythrough; the percentile summary goes next to it. */
+    public File flythroughReport = new File("flythrough.csv");
+
+    /** When set, normal play is recorded to this file on exit as a flythrough script. */
+    public File recordFlythrough;
+
+    /**
+     * Reads the {@code TADJIKCRAFT_*} environment variables. Invalid values are reported and ignored.
+     */
+    public static GameSettings fromEnvironment() {
+        GameSettings settings = new GameSettings();
+        String viewDistance = System.getenv("TADJIKCRAFT_VIEW_DISTANCE");
+        if (viewDistance != null) {
+            try {
+                settings.viewRadius = Math.max(2, Integer.parseInt(viewDistance.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_VIEW_DISTANCE=" + viewDistance + ", expected a chunk count.");
+            }
+        }
+        String frames = System.getenv("TADJIKCRAFT_FLYTHROUGH");
+        if (frames != null) {
+            try {
+                settings.flythroughFrames = Math.max(0, Integer.parseInt(frames.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_FLYTHROUGH=" + frames + ", expected a frame count.");
+            }
+        }
+        String seed = System.getenv("TADJIKCRAFT_SEED");
+        if (seed != null) {
+            try {
+                settings.seed = Long.parseLong(seed.trim());
+            } catch (NumberFormatException e) {
+                settings.seed = seed.trim().hashCode();
+            }
+        } else if (settings.flythroughFrames > 0) {
+            settings.seed = DEFAULT_FLYTHROUGH_SEED;
+        }
+        String world = System.getenv("TADJIKCRAFT_WORLD");
+        if (settings.flythroughFrames > 0) {
+            // a saved world would make each run start from the last one's edits
+            settings.worldDirectory = null;
+        } else if (world == null) {
+            settings.worldDirectory = new File("worlds", "default");
+        } else if (!world.trim().isEmpty()) {
+            settings.worldDirectory = new File(world.trim());
+        }
+        settings.flythroughScript = file(System.getenv("TADJIKCRAFT_FLYTHROUGH_SCRIPT"), null);
+        settings.flythroughReport = file(System.getenv("TADJIKCRAFT_FLYTHROUGH_REPORT"), settings.flythroughReport);
+        settings.recordFlythrough = file(System.getenv("TADJIKCRAFT_RECORD"), null);
+        String storage = System.getenv("TADJIKCRAFT_STORAGE");
+        if (storage != null) {
+            if ("offheap".equalsIgnoreCase(storage.trim())) {
+                settings.offHeapStorage = true;
+            } else if (!"heap".equalsIgnoreCase(storage.trim())) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_STORAGE=" + storage + ", expected heap or offheap.");
+            }
+        }
+        String coldCache = System.getenv("TADJIKCRAFT_COLD_CACHE_MB");
+        if (coldCache != null) {
+            try {
+                settings.coldCacheMegabytes = Math.max(0, Integer.parseInt(coldCache.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_COLD_CACHE_MB=" + coldCache + ", expected megabytes.");
+            }
+        }
+        String active = System.getenv("TADJIKCRAFT_ACTIVE_MB");
+        if (active != null) {
+            try {
+                settings.activeChunkMegabytes = Math.max(0, Integer.parseInt(active.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_ACTIVE_MB=" + active + ", expected megabytes.");
+            }
+        }
+        String lod = System.getenv("TADJIKCRAFT_LOD");
+        if (lod != null) {
+            try {
+                settings.lodRadiusScale = Math.max(1, Integer.parseInt(lod.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_LOD=" + lod + ", expected a multiple of the view distance.");
+            }
+        }
+        String server = System.getenv("TADJIKCRAFT_SERVER");
+        if (server != null && !server.trim().isEmpty() && settings.flythroughFrames == 0) {
+            settings.serverAddress = server.trim();
+        }
+        String port = System.getenv("TADJIKCRAFT_PORT");
+        if (port != null) {
+            try {
+                settings.serverPort = Integer.parseInt(port.trim());
+            } catch (NumberFormatException e) {
+                System.out.println("[TadjikCraft] Ignoring TADJIKCRAFT_PORT=" + port + ", expected a port number.");
+            }
+        }
+        return settings;
+    }
+
+    private static File file(String value, File fallback) {
+        return value == null || value.trim().isEmpty() ? fallback : new File(value.trim());
+    }
+}
@@ -0,0 +1,71 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.GlyphLayout;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+
+/**
+ * Lines of HUD text built into reused buffers every frame. A line is laid out again only when its text differs
+ * from what was drawn last, so an unchanged HUD costs a comparison per line and no garbage.
+ */
+final class HudText {
+
+    private final StringBuilder[] lines;
+    private final StringBuilder[] drawn;
+    private final GlyphLayout[] layouts;
+    private final boolean[] laidOut;
+
+    HudText(int lineCount) {
+        lines = new StringBuilder[lineCount];
+        drawn = new StringBuilder[lineCount];
+        layouts = new GlyphLayout[lineCount];
+        laidOut = new boolean[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+            lines[i] = new StringBuilder(128);
+            drawn[i] = new StringBuilder(128);
+            layouts[i] = new GlyphLayout();
+        }
+    }
+
+    /** Clears {@code line} and returns its buffer to append the new text to. */
+    StringBuilder line(int line) {
+        StringBuilder text = lines[line];
+        text.setLength(0);
+        return text;
+    }
+
+    void draw(BitmapFont font, SpriteBatch batch, int line, float x, float y) {
+        StringBuilder text = lines[line];
+        if (!laidOut[line] || !contentEquals(text, drawn[line])) {
+            drawn[line].setLength(0);
+            drawn[line].append(text);
+            layouts[line].setText(font, text);
+            laidOut[line] = true;
+        }
+        font.draw(batch, layouts[line], x, y);
+    }
+
+    private static boolean contentEquals(StringBuilder a, StringBuilder b) {
+        int length = a.length();
+        if (length != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.charAt(i) != b.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Appends nanoseconds as milliseconds with two decimals; {@code append(float)} would allocate. */
+    static StringBuilder appendMillis(StringBuilder out, long nanos) {
+        long hundredths = nanos / 10_000L;
+        out.append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction);
+    }
+}
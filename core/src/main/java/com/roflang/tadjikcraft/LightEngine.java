@@ -0,0 +1,379 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Flood-fill lighting with two channels of levels 0-15: sky light, which falls straight down undimmed from
+ * the open sky, and block light from emitting blocks. Both spread through air, losing one level per block.
+ *
+ * <p>New chunks are lit on their generator thread by {@link #lightChunk(Chunk)}, which only sees the chunk
+ * itself; {@link #stitch(Chunk)} then lets light flow across its borders once it is in the world. Block edits
+ * relight incrementally in {@link #onBlockChanged}: light that came from a removed source is taken away
+ * breadth-first, and the area is refilled from the brightest cells left around it. Every chunk whose light
+ * changes, and its neighbour when the change is on a border, is marked dirty so its mesh picks the new
+ * levels up. Bulk edits relight whole chunks instead, see {@link #relight}.
+ *
+ * <p>The instance methods run on the simulation thread, like every other world change.
+ */
+final class LightEngine {
+
+    static final int SKY = 0;
+    static final int BLOCK = 1;
+    static final int MAX_LEVEL = 15;
+
+    private static final int DOWN = SectionVisibility.DOWN;
+    private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, -1, 1};
+
+    private final World world;
+    // queued cells packed by pack(); both are drained before a public method returns
+    private final LongArray increase = new LongArray();
+    private final LongArray decrease = new LongArray();
+    private final LongMap<Chunk> relit = new LongMap<>();
+    private long updatedCells;
+
+    LightEngine(World world) {
+        this.world = world;
+    }
+
+    /** Level of cells never lit: the whole world is open sky and dark until something says otherwise. */
+    static int defaultLevel(int channel) {
+        return channel == SKY ? MAX_LEVEL : 0;
+    }
+
+    /** Level a cell passes to its neighbour in {@code direction}; sky light at full strength falls undimmed. */
+    private static int spread(int channel, int level, int direction) {
+        return channel == SKY && level == MAX_LEVEL && direction == DOWN ? MAX_LEVEL : level - 1;
+    }
+
+    /** Total cells whose light changed so far; a cost measure for relighting. */
+    long getUpdatedCells() {
+        return updatedCells;
+    }
+
+    /**
+     * Lights a chunk that is not in the world yet, as if it had no neighbours. Safe to call on any thread that
+     * owns the chunk.
+     */
+    static void lightChunk(Chunk chunk) {
+        int topY = -1;
+        for (int z = 0; z < Chunk.SIZE; z++) {
+            for (int x = 0; x < Chunk.SIZE; x++) {
+                topY = Math.max(topY, chunk.getTopBlockY(x, z));
+            }
+        }
+
+        IntArray queue = new IntArray(1024);
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            // sections above all terrain stay null, which reads as open sky
+            chunk.light[SKY][sectionY] = sectionY * Chunk.SIZE <= topY ? new NibbleArray(0) : null;
+            chunk.light[BLOCK][sectionY] = null;
+        }
+        // above the highest block everything is lit already, so only the cells below it need spreading
+        int litTopY = topY | 15;
+        for (int z = 0; z < Chunk.SIZE; z++) {
+            for (int x = 0; x < Chunk.SIZE; x++) {
+                for (int y = chunk.getTopBlockY(x, z) + 1; y <= litTopY; y++) {
+                    chunk.setLight(SKY, x, y, z, MAX_LEVEL);
+                    if (y <= topY) {
+                        queue.add(packLocal(x, y, z, MAX_LEVEL));
+                    }
+                }
+            }
+        }
+        spreadLocal(chunk, SKY, queue);
+
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            ChunkSection section = chunk.sections[sectionY];
+            if (section == null) {
+                continue;
+            }
+            for (int index = 0; index < ChunkSection.VOLUME; index++) {
+                int emission = BlockType.emissionOf(section.get(index));
+                if (emission > 0) {
+                    int x = index & 15;
+                    int y = sectionY * Chunk.SIZE + (index >>> 8);
+                    int z = (index >>> 4) & 15;
+                    chunk.setLight(BLOCK, x, y, z, emission);
+                    queue.add(packLocal(x, y, z, emission));
+                }
+            }
+        }
+        spreadLocal(chunk, BLOCK, queue);
+    }
+
+    private static void spreadLocal(Chunk chunk, int channel, IntArray queue) {
+        for (int head = 0; head < queue.size; head++) {
+            int entry = queue.get(head);
+            int level = entry & 15;
+            int x = (entry >>> 4) & 15;
+            int z = (entry >>> 8) & 15;
+            int y = entry >>> 12;
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                int nz = z + DZ[d];
+                if (nx < 0 || nx >= Chunk.SIZE || nz < 0 || nz >= Chunk.SIZE || ny < 0 || ny >= Chunk.HEIGHT) {
+                    continue;
+                }
+                int next = spread(channel, level, d);
+                if (next > 0 && chunk.getBlock(nx, ny, nz) == BlockType.AIR && chunk.getLight(channel, nx, ny, nz) < next) {
+                    chunk.setLight(channel, nx, ny, nz, next);
+                    queue.add(packLocal(nx, ny, nz, next));
+                }
+            }
+        }
+        queue.clear();
+    }
+
+    private static int packLocal(int x, int y, int z, int level) {
+        return (y << 12) | (z << 8) | (x << 4) | level;
+    }
+
+    /** Lets light flow both ways across the borders between a newly added chunk and its loaded neighbours. */
+    void stitch(Chunk chunk) {
+        int baseX = chunk.chunkX * Chunk.SIZE;
+        int baseZ = chunk.chunkZ * Chunk.SIZE;
+        for (int channel = SKY; channel <= BLOCK; channel++) {
+            if (world.isChunkLoaded(chunk.chunkX - 1, chunk.chunkZ)) {
+                seedBorder(channel, baseX, baseZ, 0, 1, baseX - 1);
+            }
+            if (world.isChunkLoaded(chunk.chunkX + 1, chunk.chunkZ)) {
+                seedBorder(channel, baseX + Chunk.SIZE - 1, baseZ, 0, 1, baseX + Chunk.SIZE);
+            }
+            if (world.isChunkLoaded(chunk.chunkX, chunk.chunkZ - 1)) {
+                seedBorder(channel, baseX, baseZ, 1, 0, baseZ - 1);
+            }
+            if (world.isChunkLoaded(chunk.chunkX, chunk.chunkZ + 1)) {
+                seedBorder(channel, baseX, baseZ + Chunk.SIZE - 1, 1, 0, baseZ + Chunk.SIZE);
+            }
+            propagateIncrease(channel);
+        }
+    }
+
+    /**
+     * Queues the lit cells on both sides of one border. The border runs from (x, z) along (stepX, stepZ); the
+     * cells across it are at {@code across} on the other axis.
+     */
+    private void seedBorder(int channel, int x, int z, int stepX, int stepZ, int across) {
+        for (int i = 0; i < Chunk.SIZE; i++) {
+            int insideX = x + stepX * i;
+            int insideZ = z + stepZ * i;
+            int outsideX = stepX == 0 ? across : insideX;
+            int outsideZ = stepZ == 0 ? across : insideZ;
+            for (int y = 0; y < Chunk.HEIGHT; y++) {
+                queueIfLit(channel, insideX, y, insideZ);
+                queueIfLit(channel, outsideX, y, outsideZ);
+            }
+        }
+    }
+
+    private void queueIfLit(int channel, int x, int y, int z) {
+        int level = getLight(channel, x, y, z);
+        if (level > 1) {
+            increase.add(pack(x, y, z, level));
+        }
+    }
+
+    /**
+     * Relights chunks whose blocks changed in bulk, together with their loaded neighbours, from scratch. Light
+     * travels at most 14 blocks, so it cannot have reached past the neighbours through an edited chunk. Once
+     * more than a few blocks changed this is much cheaper than {@link #onBlockChanged} for each of them.
+     */
+    void relight(Array<Chunk> chunks) {
+        relit.clear();
+        for (int i = 0; i < chunks.size; i++) {
+            Chunk chunk = chunks.get(i);
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    Chunk neighbour = world.getChunk(chunk.chunkX + dx, chunk.chunkZ + dz);
+                    if (neighbour != null) {
+                        relit.put(World.chunkKey(neighbour.chunkX, neighbour.chunkZ), neighbour);
+                    }
+                }
+            }
+        }
+        for (Chunk chunk : relit.values()) {
+            lightChunk(chunk);
+        }
+        for (Chunk chunk : relit.values()) {
+            stitch(chunk);
+            world.markDirty(chunk);
+        }
+        relit.clear();
+    }
+
+    /** Relights around a block that changed from {@code previous} to {@code id}. */
+    void onBlockChanged(int x, int y, int z, int previous, int id) {
+        for (int channel = SKY; channel <= BLOCK; channel++) {
+            int old = getLight(channel, x, y, z);
+            int emission = channel == BLOCK ? BlockType.emissionOf(id) : 0;
+            if (id != BlockType.AIR) {
+                // a solid block only holds light it makes itself
+                if (old > 0) {
+                    setLight(channel, x, y, z, 0);
+                    decrease.add(pack(x, y, z, old));
+                }
+                propagateDecrease(channel);
+                if (emission > 0) {
+                    setLight(channel, x, y, z, emission);
+                    increase.add(pack(x, y, z, emission));
+                }
+            } else {
+                if (old > 0 && channel == BLOCK && BlockType.emissionOf(previous) > 0) {
+                    setLight(channel, x, y, z, 0);
+                    decrease.add(pack(x, y, z, old));
+                    propagateDecrease(channel);
+                }
+                if (channel == SKY && y == Chunk.HEIGHT - 1) {
+                    setLight(channel, x, y, z, MAX_LEVEL);
+                    increase.add(pack(x, y, z, MAX_LEVEL));
+                }
+                // the opened cell fills from whatever is brightest around it
+                for (int d = 0; d < 6; d++) {
+                    queueIfLit(channel, x + DX[d], y + DY[d], z + DZ[d]);
+                }
+            }
+            propagateIncrease(channel);
+        }
+    }
+
+    /**
+     * Removes light that was fed by the cells in {@link #decrease}. Neighbours dimmer than their feeder lose
+     * their light too; brighter ones have another source and are queued to fill the gap back in.
+     */
+    private void propagateDecrease(int channel) {
+        for (int head = 0; head < decrease.size; head++) {
+            long entry = decrease.get(head);
+            int level = unpackLevel(entry);
+            int x = unpackX(entry);
+            int y = unpackY(entry);
+            int z = unpackZ(entry);
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                int nz = z + DZ[d];
+                if (ny < 0 || ny >= Chunk.HEIGHT) {
+                    continue;
+                }
+                Chunk chunk = world.getChunk(nx >> 4, nz >> 4);
+                if (chunk == null) {
+                    continue;
+                }
+                int neighbour = chunk.getLight(channel, nx & 15, ny, nz & 15);
+                if (neighbour == 0) {
+                    continue;
+                }
+                if (neighbour < level || (neighbour == MAX_LEVEL && spread(channel, level, d) == MAX_LEVEL)) {
+                    setLight(chunk, channel, nx, ny, nz, 0);
+                    decrease.add(pack(nx, ny, nz, neighbour));
+                    int emission = channel == BLOCK ? BlockType.emissionOf(chunk.getBlock(nx & 15, ny, nz & 15)) : 0;
+                    if (emission > 0) {
+                        setLight(chunk, channel, nx, ny, nz, emission);
+                        increase.add(pack(nx, ny, nz, emission));
+                    }
+                } else {
+                    increase.add(pack(nx, ny, nz, neighbour));
+                }
+            }
+        }
+        decrease.clear();
+    }
+
+    /** Spreads light from the cells in {@link #increase} into darker air around them. */
+    private void propagateIncrease(int channel) {
+        for (int head = 0; head < increase.size; head++) {
+            long entry = increase.get(head);
+            int level = unpackLevel(entry);
+            int x = unpackX(entry);
+            int y = unpackY(entry);
+            int z = unpackZ(entry);
+            if (getLight(channel, x, y, z) != level) {
+                // dimmed or brightened since it was queued; another entry covers it
+                continue;
+            }
+            for (int d = 0; d < 6; d++) {
+                int next = spread(channel, level, d);
+                int ny = y + DY[d];
+                if (next <= 0 || ny < 0 || ny >= Chunk.HEIGHT) {
+                    continue;
+                }
+                int nx = x + DX[d];
+                int nz = z + DZ[d];
+                Chunk chunk = world.getChunk(nx >> 4, nz >> 4);
+                if (chunk == null || chunk.getBlock(nx & 15, ny, nz & 15) != BlockType.AIR) {
+                    continue;
+                }
+                if (chunk.getLight(channel, nx & 15, ny, nz & 15) < next) {
+                    setLight(chunk, channel, nx, ny, nz, next);
+                    increase.add(pack(nx, ny, nz, next));
+                }
+            }
+        }
+        increase.clear();
+    }
+
+    private int getLight(int channel, int x, int y, int z) {
+        if (y >= Chunk.HEIGHT) {
+            return defaultLevel(channel);
+        }
+        if (y < 0) {
+            return 0;
+        }
+        Chunk chunk = world.getChunk(x >> 4, z >> 4);
+        return chunk == null ? 0 : chunk.getLight(channel, x & 15, y, z & 15);
+    }
+
+    private void setLight(int channel, int x, int y, int z, int level) {
+        Chunk chunk = world.getChunk(x >> 4, z >> 4);
+        if (chunk != null) {
+            setLight(chunk, channel, x, y, z, level);
+        }
+    }
+
+    private void setLight(Chunk chunk, int channel, int x, int y, int z, int level) {
+        int localX = x & 15;
+        int localZ = z & 15;
+        if (!chunk.setLight(channel, localX, y, localZ, level)) {
+            return;
+        }
+        updatedCells++;
+        world.markDirty(chunk);
+        // faces of the neighbouring chunk read this cell's light too
+        if (localX == 0) {
+            world.markDirty(chunk.chunkX - 1, chunk.chunkZ);
+        } else if (localX == Chunk.SIZE - 1) {
+            world.markDirty(chunk.chunkX + 1, chunk.chunkZ);
+        }
+        if (localZ == 0) {
+            world.markDirty(chunk.chunkX, chunk.chunkZ - 1);
+        } else if (localZ == Chunk.SIZE - 1) {
+            world.markDirty(chunk.chunkX, chunk.chunkZ + 1);
+        }
+    }
+
+    // x and z take 26 bits each, y 8 bits and the level 4 bits
+    private static long pack(int x, int y, int z, int level) {
+        return ((long) x << 38) | ((z & 0x3ffffffL) << 12) | ((long) y << 4) | level;
+    }
+
+    private static int unpackX(long entry) {
+        return (int) (entry >> 38);
+    }
+
+    private static int unpackZ(long entry) {
+        return (int) ((entry << 26) >> 38);
+    }
+
+    private static int unpackY(long entry) {
+        return (int) (entry >>> 4) & 0xff;
+    }
+
+    private static int unpackLevel(long entry) {
+        return (int) entry & 15;
+    }
+}
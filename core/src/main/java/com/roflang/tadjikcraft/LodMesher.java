@@ -0,0 +1,191 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.FloatArray;
+
+/**
+ * Builds the mesh of one {@link LodTerrain} tile from the generator's heightmap instead of from blocks. The
+ * tile is split into square columns {@code scale} blocks wide, each as tall as the terrain at its centre and
+ * made of its surface block. Column tops of the same height and block are merged like {@link ChunkMesher}
+ * faces, and sides are emitted where a column stands above its neighbour, merged along runs of equal ones.
+ *
+ * <p>Where a column borders another tile or the chunks left out for the real ones, whose surface there can
+ * differ from the column's neighbour, its side is a skirt reaching down to the bottom of the world. That covers
+ * the cracks between tiles of different levels and between the tiles and the real chunks; what lies below the
+ * other side's surface is hidden by it, and one depth for all skirts lets them merge into long runs.
+ *
+ * <p>Vertices have {@link ChunkMesher}'s layout with positions counted in columns, so a tile is drawn scaled
+ * by its column width, and are lit by full sky light. Instances keep reusable buffers and are not
+ * thread-safe; each worker owns one.
+ */
+final class LodMesher {
+
+    /** Sky light only, at full strength, as {@code sky * 16 + block}. */
+    private static final int LIGHT = 15 << 4;
+
+    private final FloatArray vertices = new FloatArray(4096);
+    // the tile's columns and a ring of its neighbours' around them, see index()
+    private final int[] tops;
+    private final int[] ids;
+    private final boolean[] drawn;
+    private final int[] mask;
+
+    private int columns;
+    private int side;
+
+    LodMesher() {
+        int maxSide = LodTerrain.TILE_BLOCKS / LodTerrain.MIN_SCALE + 2;
+        tops = new int[maxSide * maxSide];
+        ids = new int[maxSide * maxSide];
+        drawn = new boolean[maxSide * maxSide];
+        mask = new int[maxSide * maxSide];
+    }
+
+    /**
+     * Meshes tile (tileX, tileZ) with columns {@code scale} blocks wide, leaving out the chunks whose
+     * {@link LodTerrain#chunkBit} is set in {@code cut}. The result stays valid until the next call; see
+     * {@link #getVertices()} and {@link #getFloatCount()}.
+     */
+    void build(TerrainGenerator generator, int tileX, int tileZ, int scale, int cut) {
+        vertices.clear();
+        columns = LodTerrain.TILE_BLOCKS / scale;
+        side = columns + 2;
+        int baseX = tileX * LodTerrain.TILE_BLOCKS;
+        int baseZ = tileZ * LodTerrain.TILE_BLOCKS;
+
+        for (int x = -1; x <= columns; x++) {
+            for (int z = -1; z <= columns; z++) {
+                int blockX = baseX + x * scale;
+                int blockZ = baseZ + z * scale;
+                int column = generator.surfaceColumn(blockX + scale / 2, blockZ + scale / 2);
+                int index = index(x, z);
+                // the column holds height + 1 blocks, rounded to whole columns
+                tops[index] = Math.max(1, ((column >> 8) + 1 + scale / 2) / scale);
+                ids[index] = column & 0xff;
+                drawn[index] = x >= 0 && x < columns && z >= 0 && z < columns
+                    && (cut & LodTerrain.chunkBit(blockX >> 4, blockZ >> 4)) == 0;
+            }
+        }
+
+        meshTops();
+        meshSides(0, 1);
+        meshSides(0, -1);
+        meshSides(2, 1);
+        meshSides(2, -1);
+    }
+
+    float[] getVertices() {
+        return vertices.items;
+    }
+
+    int getFloatCount() {
+        return vertices.size;
+    }
+
+    int getVertexCount() {
+        return vertices.size / ChunkMesher.FLOATS_PER_VERTEX;
+    }
+
+    private int index(int x, int z) {
+        return (x + 1) * side + z + 1;
+    }
+
+    private void meshTops() {
+        for (int x = 0; x < columns; x++) {
+            for (int z = 0; z < columns; z++) {
+                int index = index(x, z);
+                mask[x * columns + z] = drawn[index] ? tops[index] << 8 | ids[index] : 0;
+            }
+        }
+
+        for (int x = 0; x < columns; x++) {
+            for (int z = 0; z < columns; ) {
+                int value = mask[x * columns + z];
+                if (value == 0) {
+                    z++;
+                    continue;
+                }
+
+                int width = 1;
+                while (z + width < columns && mask[x * columns + z + width] == value) {
+                    width++;
+                }
+                int depth = 1;
+                grow:
+                while (x + depth < columns) {
+                    int row = (x + depth) * columns;
+                    for (int k = 0; k < width; k++) {
+                        if (mask[row + z + k] != value) {
+                            break grow;
+                        }
+                    }
+                    depth++;
+                }
+
+                for (int d = 0; d < depth; d++) {
+                    int row = (x + d) * columns;
+                    for (int k = 0; k < width; k++) {
+                        mask[row + z + k] = 0;
+                    }
+                }
+
+                ChunkMesher.putQuad(vertices, x, value >>> 8, z, 1, 2, 0, width, depth, 1,
+                    ChunkMesher.packData(value & 0xff, LIGHT));
+                z += width;
+            }
+        }
+    }
+
+    /**
+     * Emits the sides facing {@code direction} along {@code axis}, 0 for x and 2 for z, one line of columns at a
+     * time, merging neighbouring sides that span the same heights with the same block.
+     */
+    private void meshSides(int axis, int direction) {
+        for (int line = 0; line < columns; line++) {
+            int runStart = 0;
+            int runLength = 0;
+            int runBottom = 0;
+            int runTop = 0;
+            int runId = 0;
+            for (int along = 0; along <= columns; along++) {
+                int bottom = 0;
+                int top = 0;
+                int id = 0;
+                if (along < columns) {
+                    int x = axis == 0 ? line : along;
+                    int z = axis == 0 ? along : line;
+                    int index = index(x, z);
+                    if (drawn[index]) {
+                        int neighbour = axis == 0 ? index(x + direction, z) : index(x, z + direction);
+                        top = tops[index];
+                        id = ids[index];
+                        bottom = drawn[neighbour] ? Math.min(top, tops[neighbour]) : 0;
+                    }
+                }
+
+                if (runLength > 0 && (bottom != runBottom || top != runTop || id != runId)) {
+                    emitSide(axis, direction, line, runStart, runLength, runBottom, runTop, runId);
+                    runLength = 0;
+                }
+                if (top > bottom) {
+                    if (runLength == 0) {
+                        runStart = along;
+                        runBottom = bottom;
+                        runTop = top;
+                        runId = id;
+                    }
+                    runLength++;
+                }
+            }
+        }
+    }
+
+    private void emitSide(int axis, int direction, int line, int start, int length, int bottom, int top, int id) {
+        int plane = line + (direction > 0 ? 1 : 0);
+        int data = ChunkMesher.packData(id, LIGHT);
+        if (axis == 0) {
+            ChunkMesher.putQuad(vertices, plane, bottom, start, 0, 1, 2, top - bottom, length, direction, data);
+        } else {
+            ChunkMesher.putQuad(vertices, start, bottom, plane, 2, 0, 1, length, top - bottom, direction, data);
+        }
+    }
+}
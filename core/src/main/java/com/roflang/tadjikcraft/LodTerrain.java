@@ -0,0 +1,465 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Frustum;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Draws the terrain beyond the loaded chunks, out to a multiple of the view radius, with meshes {@link LodMesher}
+ * builds from the generator's heightmap. The area is split into tiles of {@value #TILE_BLOCKS} blocks whose
+ * columns get coarser with distance from the camera: 2 blocks wide up to twice the view radius, 4 up to three
+ * times and 8 beyond. Chunks within the view radius of the camera's chunk and every other loaded chunk are left
+ * out of the tiles, and the real chunks are drawn there.
+ *
+ * <p>When the camera enters another chunk or chunks are loaded or unloaded, tiles whose level or left-out chunks
+ * changed are rebuilt on worker threads of their own, nearest first, and the render thread uploads the results
+ * under a time budget like {@link ChunkMeshPipeline} does. A tile keeps drawing its old mesh until the new one is
+ * uploaded, so what is drawn where follows the uploaded meshes: {@link #coversChunk} tells which chunks a tile
+ * draws instead of the real one, and an unloaded chunk stays on screen, see {@link #keepsDrawing}, until the
+ * tile that will draw it has its new mesh.
+ *
+ * <p>Only the generator's terrain is known out there, so edits and trees beyond the loaded chunks do not show.
+ * A headless instance builds the meshes but only records their vertex counts.
+ */
+final class LodTerrain implements RenderChunks.Retention, Disposable {
+
+    static final int TILE_BLOCKS = 64;
+    /** Width of the finest columns, in blocks. */
+    static final int MIN_SCALE = 2;
+
+    private static final int TILE_CHUNKS = TILE_BLOCKS / Chunk.SIZE;
+    /** Every chunk of a tile, see {@link #chunkBit}. */
+    private static final int ALL_CHUNKS = (1 << TILE_CHUNKS * TILE_CHUNKS) - 1;
+    private static final int RESULT_CAPACITY = 64;
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final TerrainGenerator generator;
+    private final int nearRadius;
+    private final int radiusBlocks;
+    private final boolean headless;
+    private final LongMap<Tile> tiles = new LongMap<>();
+    private final LongArray dropped = new LongArray();
+    private final Array<Tile> visible = new Array<>(false, 256);
+    private final PriorityBlockingQueue<BuildJob> jobs = new PriorityBlockingQueue<>();
+    private final BlockingQueue<BuildResult> results = new ArrayBlockingQueue<>(RESULT_CAPACITY);
+    private final AtomicLong sequence = new AtomicLong();
+    /** Builds submitted and not yet finished or dropped, counted before they are queued. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong builtTiles = new AtomicLong();
+    private final AtomicLong buildNanos = new AtomicLong();
+    private final Thread[] workers;
+
+    private volatile boolean running = true;
+
+    private boolean centerSet;
+    private int centerX;
+    private int centerZ;
+    private int chunksVersion;
+    private int vertexCount;
+    private int drawnVertices;
+
+    /**
+     * @param nearRadius  view radius in chunks, drawn from real chunks
+     * @param radiusScale how many times the view radius the tiles reach
+     */
+    LodTerrain(TerrainGenerator generator, int nearRadius, int radiusScale, int threads, boolean headless) {
+        this.generator = generator;
+        this.nearRadius = nearRadius;
+        this.radiusBlocks = nearRadius * radiusScale * Chunk.SIZE;
+        this.headless = headless;
+        workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::runWorker, "lod-mesher-" + THREAD_ID.incrementAndGet());
+            worker.setDaemon(true);
+            // behind chunk meshing, whose results the player is waiting for
+            worker.setPriority(Thread.NORM_PRIORITY - 2);
+            workers[i] = worker;
+            worker.start();
+        }
+    }
+
+    /** Blocks from the camera to where the tiles end. */
+    int getRadiusBlocks() {
+        return radiusBlocks;
+    }
+
+    /** Bit of a chunk in the masks of the chunks a tile leaves out. */
+    static int chunkBit(int chunkX, int chunkZ) {
+        return 1 << ((chunkX & TILE_CHUNKS - 1) * TILE_CHUNKS + (chunkZ & TILE_CHUNKS - 1));
+    }
+
+    /**
+     * Adds, drops and queues rebuilds of tiles for the camera at {@code position} and the real chunks in
+     * {@code chunks}; does nothing until the camera enters another chunk or the chunks change. Render thread only.
+     */
+    void update(Vector3 position, RenderChunks chunks) {
+        int chunkX = MathUtils.floor(position.x) >> 4;
+        int chunkZ = MathUtils.floor(position.z) >> 4;
+        boolean moved = !centerSet || chunkX != centerX || chunkZ != centerZ;
+        if (!moved && chunks.getVersion() == chunksVersion) {
+            return;
+        }
+        chunksVersion = chunks.getVersion();
+        if (moved) {
+            centerSet = true;
+            centerX = chunkX;
+            centerZ = chunkZ;
+            placeTiles(position);
+        }
+
+        for (Tile tile : tiles.values()) {
+            tile.nextCut = nearFieldOf(tile.tileX, tile.tileZ);
+        }
+        for (Chunk chunk : chunks.getChunks()) {
+            Tile tile = tiles.get(tileKey(chunk.chunkX, chunk.chunkZ));
+            if (tile != null && !chunks.isLeaving(chunk)) {
+                tile.nextCut |= chunkBit(chunk.chunkX, chunk.chunkZ);
+            }
+        }
+        for (Tile tile : tiles.values()) {
+            if (tile.nextScale != tile.scale || tile.nextCut != tile.cut) {
+                submit(tile, tile.nextScale, tile.nextCut, tile.distance);
+            }
+        }
+    }
+
+    /** Drops the tiles the camera moved away from and adds those it moved towards, with each one's level. */
+    private void placeTiles(Vector3 position) {
+        dropped.clear();
+        for (Tile tile : tiles.values()) {
+            if (distanceTo(tile.tileX, tile.tileZ, position) > radiusBlocks || isInsideHole(tile.tileX, tile.tileZ)) {
+                dropped.add(World.chunkKey(tile.tileX, tile.tileZ));
+            }
+        }
+        for (int i = 0; i < dropped.size; i++) {
+            Tile tile = tiles.remove(dropped.get(i));
+            vertexCount -= tile.vertexCount;
+            tile.dispose();
+        }
+
+        int tileRadius = radiusBlocks / TILE_BLOCKS + 1;
+        int cameraTileX = MathUtils.floor(position.x / TILE_BLOCKS);
+        int cameraTileZ = MathUtils.floor(position.z / TILE_BLOCKS);
+        for (int tileX = cameraTileX - tileRadius; tileX <= cameraTileX + tileRadius; tileX++) {
+            for (int tileZ = cameraTileZ - tileRadius; tileZ <= cameraTileZ + tileRadius; tileZ++) {
+                float distance = distanceTo(tileX, tileZ, position);
+                if (distance > radiusBlocks || isInsideHole(tileX, tileZ)) {
+                    continue;
+                }
+                long key = World.chunkKey(tileX, tileZ);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new Tile(tileX, tileZ);
+                    tiles.put(key, tile);
+                }
+                tile.nextScale = scaleFor(distance);
+                tile.distance = distance;
+            }
+        }
+    }
+
+    /** Whether the uploaded mesh of the chunk's tile draws the chunk, so the real one should not be. */
+    boolean coversChunk(int chunkX, int chunkZ) {
+        Tile tile = tiles.get(tileKey(chunkX, chunkZ));
+        return tile != null && (tile.meshCut & chunkBit(chunkX, chunkZ)) == 0;
+    }
+
+    /**
+     * Whether an unloaded chunk should stay on screen: its tile's uploaded mesh leaves it out, but the build on its
+     * way will draw it.
+     */
+    @Override
+    public boolean keepsDrawing(int chunkX, int chunkZ) {
+        Tile tile = tiles.get(tileKey(chunkX, chunkZ));
+        int bit = chunkBit(chunkX, chunkZ);
+        return tile != null && (tile.meshCut & bit) != 0 && (tile.cut & bit) == 0;
+    }
+
+    /**
+     * Uploads finished meshes until the queue is empty or {@code budgetNanos} has passed, at least one per call.
+     * Returns the number of tiles uploaded.
+     */
+    int uploadFinished(long budgetNanos) {
+        long start = System.nanoTime();
+        int uploaded = 0;
+        BuildResult result;
+        while ((result = results.poll()) != null) {
+            Tile tile = result.tile;
+            if (result.version == tile.version && !tile.disposed) {
+                int count = result.vertices.length / ChunkMesher.FLOATS_PER_VERTEX;
+                vertexCount += count - tile.vertexCount;
+                if (headless) {
+                    tile.vertexCount = count;
+                } else {
+                    tile.upload(result.vertices);
+                }
+                tile.meshScale = result.scale;
+                tile.meshCut = result.cut;
+                uploaded++;
+            }
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        return uploaded;
+    }
+
+    /** Collects the tiles with geometry inside the camera's frustum into {@link #getVisible()}. */
+    void cull(Camera camera) {
+        visible.clear();
+        drawnVertices = 0;
+        Frustum frustum = camera.frustum;
+        float half = TILE_BLOCKS / 2f;
+        for (Tile tile : tiles.values()) {
+            if (tile.vertexCount > 0 && frustum.boundsInFrustum(tile.tileX * TILE_BLOCKS + half, Chunk.HEIGHT / 2f,
+                tile.tileZ * TILE_BLOCKS + half, half, Chunk.HEIGHT / 2f, half)) {
+                visible.add(tile);
+                drawnVertices += tile.vertexCount;
+            }
+        }
+    }
+
+    /** Tiles to draw this frame, valid until the next {@link #cull}. */
+    Array<Tile> getVisible() {
+        return visible;
+    }
+
+    int getTileCount() {
+        return tiles.size;
+    }
+
+    /** Vertices of every tile's current mesh. */
+    int getVertexCount() {
+        return vertexCount;
+    }
+
+    int getDrawnVertices() {
+        return drawnVertices;
+    }
+
+    int getQueuedTiles() {
+        return jobs.size();
+    }
+
+    /** True when nothing is queued, being built or waiting for upload. */
+    boolean isIdle() {
+        // a result is queued before its build stops counting, so there is no moment where neither shows
+        return inFlight.get() == 0 && results.isEmpty();
+    }
+
+    /** Average time to build a tile's mesh, or 0 before the first. */
+    long getAverageBuildNanos() {
+        long count = builtTiles.get();
+        return count == 0 ? 0 : buildNanos.get() / count;
+    }
+
+    /** Column width for a tile whose nearest point is {@code distance} blocks away. */
+    private int scaleFor(float distance) {
+        int ring = (int) (distance / (nearRadius * Chunk.SIZE));
+        return ring < 2 ? MIN_SCALE : ring < 3 ? MIN_SCALE * 2 : MIN_SCALE * 4;
+    }
+
+    /** Horizontal distance from {@code position} to the nearest point of a tile. */
+    private static float distanceTo(int tileX, int tileZ, Vector3 position) {
+        float minX = tileX * TILE_BLOCKS;
+        float minZ = tileZ * TILE_BLOCKS;
+        float dx = Math.max(0f, Math.max(minX - position.x, position.x - (minX + TILE_BLOCKS)));
+        float dz = Math.max(0f, Math.max(minZ - position.z, position.z - (minZ + TILE_BLOCKS)));
+        return (float) Math.sqrt(dx * dx + dz * dz);
+    }
+
+    private static long tileKey(int chunkX, int chunkZ) {
+        return World.chunkKey(Math.floorDiv(chunkX, TILE_CHUNKS), Math.floorDiv(chunkZ, TILE_CHUNKS));
+    }
+
+    /** The tile's chunks within the view radius of the centre, as a mask of {@link #chunkBit}s. */
+    private int nearFieldOf(int tileX, int tileZ) {
+        int cut = 0;
+        for (int chunkX = tileX * TILE_CHUNKS; chunkX < (tileX + 1) * TILE_CHUNKS; chunkX++) {
+            for (int chunkZ = tileZ * TILE_CHUNKS; chunkZ < (tileZ + 1) * TILE_CHUNKS; chunkZ++) {
+                int dx = chunkX - centerX;
+                int dz = chunkZ - centerZ;
+                if (dx * dx + dz * dz <= nearRadius * nearRadius) {
+                    cut |= chunkBit(chunkX, chunkZ);
+                }
+            }
+        }
+        return cut;
+    }
+
+    /** Whether all of the tile's chunks are within the view radius of the centre. */
+    private boolean isInsideHole(int tileX, int tileZ) {
+        int minX = tileX * TILE_CHUNKS;
+        int minZ = tileZ * TILE_CHUNKS;
+        int dx = Math.max(Math.abs(minX - centerX), Math.abs(minX + TILE_CHUNKS - 1 - centerX));
+        int dz = Math.max(Math.abs(minZ - centerZ), Math.abs(minZ + TILE_CHUNKS - 1 - centerZ));
+        return dx * dx + dz * dz <= nearRadius * nearRadius;
+    }
+
+    private void submit(Tile tile, int scale, int cut, float distance) {
+        tile.scale = scale;
+        tile.cut = cut;
+        int version = ++tile.version;
+        inFlight.incrementAndGet();
+        jobs.add(new BuildJob(tile, version, scale, cut, distance, sequence.incrementAndGet()));
+    }
+
+    private void runWorker() {
+        LodMesher mesher = new LodMesher();
+        while (running) {
+            BuildJob job;
+            try {
+                job = jobs.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Tile tile = job.tile;
+            try {
+                if (job.version != tile.version || tile.disposed) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                mesher.build(generator, tile.tileX, tile.tileZ, job.scale, job.cut);
+                float[] vertices = Arrays.copyOf(mesher.getVertices(), mesher.getFloatCount());
+                buildNanos.addAndGet(System.nanoTime() - start);
+                builtTiles.incrementAndGet();
+                results.put(new BuildResult(tile, job.version, job.scale, job.cut, vertices));
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                Gdx.app.error("LodTerrain", "Failed to build tile " + tile.tileX + ", " + tile.tileZ, e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        jobs.clear();
+        results.clear();
+        for (Tile tile : tiles.values()) {
+            tile.dispose();
+        }
+        tiles.clear();
+        visible.clear();
+    }
+
+    /** A {@value #TILE_BLOCKS} block square of distant terrain. Fields other than the version are render thread only. */
+    static final class Tile implements Disposable {
+        final int tileX;
+        final int tileZ;
+        /** Column width and chunks left out, see {@link #chunkBit}, of the newest build and of the mesh on screen. */
+        int scale;
+        int cut;
+        int meshScale;
+        int meshCut = ALL_CHUNKS;
+        // what update() wants the tile to be, and how far it is, for the build queue
+        int nextScale;
+        int nextCut;
+        float distance;
+        volatile int version;
+        volatile boolean disposed;
+        int vertexCount;
+        private Mesh mesh;
+
+        Tile(int tileX, int tileZ) {
+            this.tileX = tileX;
+            this.tileZ = tileZ;
+        }
+
+        private void upload(float[] vertices) {
+            int count = vertices.length / ChunkMesher.FLOATS_PER_VERTEX;
+            if (count > 0 && (mesh == null || mesh.getMaxVertices() < count)) {
+                if (mesh != null) {
+                    mesh.dispose();
+                }
+                // the layout of chunk meshes, see ChunkMesher
+                mesh = new Mesh(true, count, 0,
+                    new VertexAttribute(VertexAttributes.Usage.Position, 4, GL20.GL_UNSIGNED_BYTE, false, "a_position"),
+                    new VertexAttribute(VertexAttributes.Usage.Generic, 4, GL20.GL_UNSIGNED_BYTE, false, "a_data"));
+            }
+            if (count > 0) {
+                mesh.setVertices(vertices, 0, vertices.length);
+            }
+            vertexCount = count;
+        }
+
+        void render(ShaderProgram shader) {
+            if (mesh != null && vertexCount > 0) {
+                mesh.render(shader, GL20.GL_TRIANGLES, 0, vertexCount);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+            if (mesh != null) {
+                mesh.dispose();
+                mesh = null;
+            }
+        }
+    }
+
+    private static final class BuildJob implements Comparable<BuildJob> {
+        final Tile tile;
+        final int version;
+        final int scale;
+        final int cut;
+        final float distance;
+        final long sequence;
+
+        BuildJob(Tile tile, int version, int scale, int cut, float distance, long sequence) {
+            this.tile = tile;
+            this.version = version;
+            this.scale = scale;
+            this.cut = cut;
+            this.distance = distance;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(BuildJob other) {
+            int byDistance = Float.compare(distance, other.distance);
+            return byDistance != 0 ? byDistance : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class BuildResult {
+        final Tile tile;
+        final int version;
+        final int scale;
+        final int cut;
+        final float[] vertices;
+
+        BuildResult(Tile tile, int version, int scale, int cut, float[] vertices) {
+            this.tile = tile;
+            this.version = version;
+            this.scale = scale;
+            this.cut = cut;
+            this.vertices = vertices;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.roflang.tadjikcraft;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Garbage collection and heap figures over the measured part of a flythrough, so runs with heap and off-heap
+ * section storage can be compared on the same path. Reads the JVM's management beans at the start and the end
+ * only; nothing is sampled per frame.
+ */
+final class MemoryStats {
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+    private final long[] startCounts = new long[collectors.size()];
+    private final long[] startMillis = new long[collectors.size()];
+
+    void start() {
+        for (int i = 0; i < collectors.size(); i++) {
+            startCounts[i] = collectors.get(i).getCollectionCount();
+            startMillis[i] = collectors.get(i).getCollectionTime();
+        }
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Collections and their time per collector since {@link #start}, the heap's peak and what is left after a
+     * full collection, and the off-heap slabs if {@code slabs} is not {@code null}. Forces that collection.
+     */
+    String summary(SectionSlabs slabs) {
+        StringBuilder out = new StringBuilder();
+        out.append("storage ").append(slabs == null ? "heap" : "off-heap").append('\n');
+        for (int i = 0; i < collectors.size(); i++) {
+            GarbageCollectorMXBean collector = collectors.get(i);
+            out.append(String.format(Locale.ROOT, "gc %-24s %6d collections %9d ms%n", collector.getName(),
+                collector.getCollectionCount() - startCounts[i], collector.getCollectionTime() - startMillis[i]));
+        }
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                // pools peak at different moments, so this is an upper bound
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.gc();
+        long live = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        out.append(String.format(Locale.ROOT, "heap peak %10.1f MB, after full gc %10.1f MB%n", mb(peak), mb(live)));
+        if (slabs != null) {
+            slabs.reclaimNow();
+            out.append(String.format(Locale.ROOT, "off-heap %d slabs, %.1f MB, %.1f MB used (%s)%n", slabs.getSlabCount(),
+                mb(slabs.getCapacityBytes()), mb(slabs.getUsedBytes()), slabs.describe()));
+        }
+        return out.toString();
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,113 @@
+package com.roflang.tadjikcraft;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One 4-bit value per cell of a 16x16x16 section, two cells to a byte, indexed like
+ * {@link ChunkSection#index(int, int, int)}. {@link #snapshot()} is copy-on-write, as for sections, and the
+ * values live in the installed {@link SectionSlabs} when there are any.
+ */
+final class NibbleArray {
+
+    static final int BYTES = ChunkSection.VOLUME / 2;
+
+    /** Exactly one of the two is set. */
+    private byte[] data;
+    private SectionSlabs.Slot slot;
+    private boolean shared;
+
+    NibbleArray(int fill) {
+        SectionSlabs slabs = SectionSlabs.active();
+        byte packed = (byte) (fill | (fill << 4));
+        if (slabs == null) {
+            data = new byte[BYTES];
+            if (fill != 0) {
+                Arrays.fill(data, packed);
+            }
+        } else {
+            slot = slabs.allocate(BYTES);
+            if (fill != 0) {
+                long word = (packed & 0xffL) * 0x0101010101010101L;
+                for (int i = 0; i < BYTES / 8; i++) {
+                    slot.putLong(i, word);
+                }
+            }
+        }
+    }
+
+    private NibbleArray(NibbleArray source) {
+        data = source.data;
+        slot = source.slot;
+        shared = true;
+    }
+
+    /** Returns a read-only view of the current contents. Must be called from the thread that writes this array. */
+    NibbleArray snapshot() {
+        shared = true;
+        return new NibbleArray(this);
+    }
+
+    int get(int index) {
+        int packed = slot == null ? data[index >> 1] : slot.get(index >> 1);
+        return (index & 1) == 0 ? packed & 15 : (packed >> 4) & 15;
+    }
+
+    void set(int index, int value) {
+        if (shared) {
+            if (slot == null) {
+                data = data.clone();
+            } else {
+                SectionSlabs.Slot copy = slot.owner.allocate(BYTES);
+                copy.copyFrom(slot, BYTES);
+                slot = copy;
+            }
+            shared = false;
+        }
+        int i = index >> 1;
+        int packed = slot == null ? data[i] : slot.get(i);
+        if ((index & 1) == 0) {
+            packed = (packed & 0xf0) | value;
+        } else {
+            packed = (packed & 0x0f) | (value << 4);
+        }
+        if (slot == null) {
+            data[i] = (byte) packed;
+        } else {
+            slot.put(i, (byte) packed);
+        }
+    }
+
+    /** Writes the {@value #BYTES} packed bytes as they are. */
+    void write(ByteBuffer out) {
+        if (slot == null) {
+            out.put(data);
+        } else {
+            for (int i = 0; i < BYTES; i++) {
+                out.put(slot.get(i));
+            }
+        }
+    }
+
+    /** Reads what {@link #write} wrote. */
+    static NibbleArray read(ByteBuffer in) {
+        NibbleArray levels = new NibbleArray(0);
+        if (levels.slot == null) {
+            in.get(levels.data);
+        } else {
+            for (int i = 0; i < BYTES; i++) {
+                levels.slot.put(i, in.get());
+            }
+        }
+        return levels;
+    }
+
+    long estimateHeapBytes() {
+        return 16 + (slot == null ? 16 + data.length : 40 + 40);
+    }
+
+    /** Bytes held in {@link SectionSlabs}, 0 on the heap. */
+    long estimateOffHeapBytes() {
+        return slot == null ? 0 : BYTES;
+    }
+}
@@ -0,0 +1,96 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Decoration spills waiting for their target chunk to load. Owned by the simulation thread, which is the only
+ * place chunks enter the world, so no locking is needed: generator threads hand their {@link SpillEdits}
+ * over with the finished chunk and the simulation thread either applies them or parks them here.
+ */
+final class PendingEdits {
+
+    private final LongMap<IntArray> byChunk = new LongMap<>();
+    private final LongArray scratch = new LongArray();
+    private int editCount;
+
+    /** Applies the spills of a freshly generated chunk to loaded neighbours and parks the rest. */
+    void distribute(World world, SpillEdits spill) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                IntArray edits = spill.get(dx, dz);
+                if (edits == null) {
+                    continue;
+                }
+                int chunkX = spill.chunkX + dx;
+                int chunkZ = spill.chunkZ + dz;
+                if (world.isChunkLoaded(chunkX, chunkZ)) {
+                    SpillEdits.applyTo(world, chunkX, chunkZ, edits);
+                } else {
+                    long key = World.chunkKey(chunkX, chunkZ);
+                    IntArray parked = byChunk.get(key);
+                    if (parked == null) {
+                        parked = new IntArray(edits.size);
+                        byChunk.put(key, parked);
+                    }
+                    parked.addAll(edits);
+                    editCount += edits.size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies and forgets edits parked for {@code chunk}, which must not be in the world yet. Returns whether
+     * there were any, in which case the chunk's light is stale.
+     */
+    boolean applyParked(Chunk chunk) {
+        IntArray parked = byChunk.remove(World.chunkKey(chunk.chunkX, chunk.chunkZ));
+        if (parked == null) {
+            return false;
+        }
+        SpillEdits.applyTo(chunk, parked);
+        editCount -= parked.size;
+        return true;
+    }
+
+    /**
+     * Drops edits for chunks further than {@code radius} from every centre and with no loaded neighbour. Edits
+     * are kept while a neighbour that may have made them is loaded, since it will not spill again until it is
+     * generated again; once none is, whichever neighbour is generated next re-emits its share.
+     */
+    void discardBeyond(World world, LongArray centers, int radius) {
+        scratch.clear();
+        for (LongMap.Entry<IntArray> entry : byChunk.entries()) {
+            int chunkX = World.keyX(entry.key);
+            int chunkZ = World.keyZ(entry.key);
+            if (ChunkStreamer.isBeyond(centers, chunkX, chunkZ, radius)
+                    && !hasLoadedNeighbour(world, chunkX, chunkZ)) {
+                scratch.add(entry.key);
+            }
+        }
+        for (int i = 0; i < scratch.size; i++) {
+            editCount -= byChunk.remove(scratch.get(i)).size;
+        }
+    }
+
+    private static boolean hasLoadedNeighbour(World world, int chunkX, int chunkZ) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if ((dx != 0 || dz != 0) && world.isChunkLoaded(chunkX + dx, chunkZ + dz)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    int getChunkCount() {
+        return byChunk.size;
+    }
+
+    int getEditCount() {
+        return editCount;
+    }
+}
@@ -0,0 +1,144 @@
+package com.roflang.tadjikcraft;
+
+/**
+ * The player's axis-aligned box and its collision with the block grid. Movement is swept one axis at a time,
+ * vertical first: on each axis only the cells the box enters are tested, nearest first, and the move stops a
+ * hair short of the first solid one. Nothing is allocated, and the cost depends on the distance moved rather
+ * than on the build height.
+ *
+ * <p>Positions are the centre of the box's bottom face and are kept in doubles so collisions stay exact far from
+ * the origin.
+ */
+final class PlayerBody {
+
+    /** Gap left between the box and a block it stops against, so the next sweep does not start inside it. */
+    private static final double SKIN = 1e-3;
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+
+    final float halfWidth;
+    final float height;
+
+    double x;
+    double y;
+    double z;
+    /** Position before the last {@link #step}, for interpolating between steps. */
+    double previousX;
+    double previousY;
+    double previousZ;
+
+    float velocityX;
+    float velocityY;
+    float velocityZ;
+    boolean onGround;
+
+    PlayerBody(float halfWidth, float height) {
+        this.halfWidth = halfWidth;
+        this.height = height;
+    }
+
+    void setPosition(double x, double y, double z) {
+        this.x = previousX = x;
+        this.y = previousY = y;
+        this.z = previousZ = z;
+    }
+
+    /** Applies {@code gravity} and moves by the velocity for {@code dt} seconds, stopping at solid blocks. */
+    void step(World world, float dt, float gravity) {
+        previousX = x;
+        previousY = y;
+        previousZ = z;
+
+        velocityY -= gravity * dt;
+        double wantedY = velocityY * dt;
+        double movedY = sweep(world, Y, wantedY);
+        y += movedY;
+        onGround = wantedY < 0 && movedY > wantedY;
+        if (movedY != wantedY) {
+            velocityY = 0f;
+        }
+
+        double wantedX = velocityX * dt;
+        double movedX = sweep(world, X, wantedX);
+        x += movedX;
+        if (movedX != wantedX) {
+            velocityX = 0f;
+        }
+
+        double wantedZ = velocityZ * dt;
+        double movedZ = sweep(world, Z, wantedZ);
+        z += movedZ;
+        if (movedZ != wantedZ) {
+            velocityZ = 0f;
+        }
+    }
+
+    /** Whether the box overlaps the block cell at (bx, by, bz). */
+    boolean overlaps(int bx, int by, int bz) {
+        return x + halfWidth > bx && x - halfWidth < bx + 1
+            && y + height > by && y < by + 1
+            && z + halfWidth > bz && z - halfWidth < bz + 1;
+    }
+
+    /** How far the box can move along {@code axis} towards {@code delta} before touching a solid block. */
+    private double sweep(World world, int axis, double delta) {
+        if (delta == 0) {
+            return 0;
+        }
+        double min = min(axis);
+        double max = max(axis);
+        // the other two axes, and the cell ranges the box covers on them
+        int axisA = axis == X ? Y : X;
+        int axisB = axis == Z ? Y : Z;
+        int fromA = (int) Math.floor(min(axisA));
+        int toA = (int) Math.ceil(max(axisA)) - 1;
+        int fromB = (int) Math.floor(min(axisB));
+        int toB = (int) Math.ceil(max(axisB)) - 1;
+
+        if (delta > 0) {
+            int last = (int) Math.floor(max + delta);
+            for (int cell = (int) Math.ceil(max - SKIN); cell <= last; cell++) {
+                if (isLayerSolid(world, axis, cell, axisA, fromA, toA, fromB, toB)) {
+                    return Math.max(0, cell - max - SKIN);
+                }
+            }
+        } else {
+            int last = (int) Math.floor(min + delta);
+            for (int cell = (int) Math.floor(min + SKIN) - 1; cell >= last; cell--) {
+                if (isLayerSolid(world, axis, cell, axisA, fromA, toA, fromB, toB)) {
+                    return Math.min(0, cell + 1 - min + SKIN);
+                }
+            }
+        }
+        return delta;
+    }
+
+    private static boolean isLayerSolid(World world, int axis, int cell, int axisA, int fromA, int toA, int fromB, int toB) {
+        for (int a = fromA; a <= toA; a++) {
+            for (int b = fromB; b <= toB; b++) {
+                boolean solid;
+                if (axis == X) {
+                    solid = world.isSolid(cell, a, b);
+                } else if (axis == Y) {
+                    solid = world.isSolid(a, cell, b);
+                } else {
+                    solid = world.isSolid(a, b, cell);
+                }
+                if (solid) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private double min(int axis) {
+        return axis == X ? x - halfWidth : axis == Y ? y : z - halfWidth;
+    }
+
+    private double max(int axis) {
+        return axis == X ? x + halfWidth : axis == Y ? y + height : z + halfWidth;
+    }
+}
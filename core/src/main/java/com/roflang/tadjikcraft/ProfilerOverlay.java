@@ -0,0 +1,116 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.profiling.GLProfiler;
+
+/**
+ * The F3 overlay: a stacked bar per frame for the last {@link FrameProfiler#HISTORY} frames, one colour per
+ * phase, with the average and worst time of every phase and the GL counters of the last frame. The
+ * {@link GLProfiler} wraps every GL call, so it is only enabled while the overlay is shown.
+ */
+final class ProfilerOverlay {
+
+    private static final Color[] PHASE_COLORS = {
+        new Color(0.55f, 0.55f, 0.95f, 1f),
+        new Color(0.35f, 0.85f, 0.45f, 1f),
+        new Color(0.85f, 0.35f, 0.85f, 1f),
+        new Color(0.30f, 0.80f, 0.90f, 1f),
+        new Color(0.90f, 0.35f, 0.35f, 1f)
+    };
+    private static final float BAR_WIDTH = 2f;
+    private static final float GRAPH_HEIGHT = 120f;
+    /** Frame time the graph's full height stands for. */
+    private static final float GRAPH_MILLIS = 33.3f;
+    private static final float MARGIN = 12f;
+    private static final float LINE_HEIGHT = 18f;
+
+    private final FrameProfiler profiler;
+    private final GLProfiler glProfiler;
+    private final StringBuilder text = new StringBuilder();
+
+    ProfilerOverlay(FrameProfiler profiler) {
+        this.profiler = profiler;
+        this.glProfiler = new GLProfiler(Gdx.graphics);
+    }
+
+    boolean isVisible() {
+        return profiler.isEnabled();
+    }
+
+    void toggle() {
+        boolean visible = !profiler.isEnabled();
+        profiler.setEnabled(visible);
+        if (visible) {
+            glProfiler.enable();
+            glProfiler.reset();
+        } else {
+            glProfiler.disable();
+        }
+    }
+
+    /** Hands the GL counters of the frame drawn so far to the profiler and starts counting the next frame. */
+    void collectGlCounts() {
+        if (!profiler.isEnabled()) {
+            return;
+        }
+        profiler.setGlCounts(glProfiler.getDrawCalls(), glProfiler.getShaderSwitches(),
+            (int) glProfiler.getVertexCount().total);
+        glProfiler.reset();
+    }
+
+    void draw(ShapeRenderer shapes, SpriteBatch batch, BitmapFont font) {
+        if (!profiler.isEnabled()) {
+            return;
+        }
+        float width = FrameProfiler.HISTORY * BAR_WIDTH;
+        float left = Gdx.graphics.getWidth() - MARGIN - width;
+        float bottom = Gdx.graphics.getHeight() - MARGIN - GRAPH_HEIGHT;
+        float pixelsPerNano = GRAPH_HEIGHT / (GRAPH_MILLIS * 1_000_000f);
+
+        shapes.begin(ShapeRenderer.ShapeType.Filled);
+        shapes.setColor(0.05f, 0.05f, 0.08f, 1f);
+        shapes.rect(left, bottom, width, GRAPH_HEIGHT);
+        // newest frame on the right
+        for (int age = 0; age < profiler.getRecorded(); age++) {
+            float x = left + width - (age + 1) * BAR_WIDTH;
+            float y = bottom;
+            for (int phase = 0; phase < FrameProfiler.PHASES && y < bottom + GRAPH_HEIGHT; phase++) {
+                float height = Math.min(profiler.getNanos(phase, age) * pixelsPerNano, bottom + GRAPH_HEIGHT - y);
+                Color color = PHASE_COLORS[phase];
+                shapes.setColor(color.r, color.g, color.b, 1f);
+                shapes.rect(x, y, BAR_WIDTH, height);
+                y += height;
+            }
+        }
+        // 60 fps line
+        shapes.setColor(1f, 1f, 1f, 1f);
+        shapes.rect(left, bottom + GRAPH_HEIGHT / 2f, width, 1f);
+        for (int phase = 0; phase < FrameProfiler.PHASES; phase++) {
+            Color color = PHASE_COLORS[phase];
+            shapes.setColor(color.r, color.g, color.b, 1f);
+            shapes.rect(left, bottom - (phase + 1) * LINE_HEIGHT - 2f, 10f, 10f);
+        }
+        shapes.end();
+
+        batch.begin();
+        for (int phase = 0; phase < FrameProfiler.PHASES; phase++) {
+            text.setLength(0);
+            text.append(FrameProfiler.getName(phase)).append(": ");
+            HudText.appendMillis(text, profiler.getAverageNanos(phase));
+            text.append(" ms avg, ");
+            HudText.appendMillis(text, profiler.getMaxNanos(phase));
+            text.append(" ms max");
+            font.draw(batch, text, left + 16f, bottom - phase * LINE_HEIGHT - 6f);
+        }
+        text.setLength(0);
+        text.append("GL: ").append(profiler.getDrawCalls()).append(" draw calls, ")
+            .append(profiler.getShaderSwitches()).append(" shader switches, ")
+            .append(profiler.getVertices()).append(" vertices");
+        font.draw(batch, text, left, bottom - FrameProfiler.PHASES * LINE_HEIGHT - 6f);
+        batch.end();
+    }
+}
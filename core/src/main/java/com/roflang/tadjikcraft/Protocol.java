@@ -0,0 +1,118 @@
+package com.roflang.tadjikcraft;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format between a {@link WorldServer} and its {@link ServerConnection}s. Every message is a frame: a
+ * 4 byte big-endian length of what follows, a type byte and the payload.
+ *
+ * <p>A client joins with {@link #HELLO} and is answered with {@link #WELCOME}; from then on it sends its
+ * position and block edits. The server sends every chunk within the client's view radius once as a
+ * {@link #CHUNK}, deflated {@link ChunkCodec} bytes, and {@link #UNLOAD} when the client moves away. Changes
+ * after that arrive as one {@link #BLOCKS} batch per tick: grouped by chunk, each block a 14 bit position
+ * inside the chunk and an id, and only the last change of a block within the tick.
+ */
+final class Protocol {
+
+    static final int VERSION = 1;
+    static final int DEFAULT_PORT = 24_816;
+
+    /** Length and type. */
+    static final int HEADER_BYTES = 5;
+
+    // client to server
+    /** int version, int view radius in chunks. */
+    static final byte HELLO = 1;
+    /** float x, y, z of the player's feet. */
+    static final byte POSITION = 2;
+    /** int x, byte y, int z, byte block id. */
+    static final byte EDIT = 3;
+
+    // server to client
+    /** int version, long seed, float spawn x, y, z, int view radius, int unload radius, int ticks per second. */
+    static final byte WELCOME = 16;
+    /** int chunk x, int chunk z, int encoded length, deflated {@link ChunkCodec} bytes. */
+    static final byte CHUNK = 17;
+    /** int chunk x, int chunk z. */
+    static final byte UNLOAD = 18;
+    /**
+     * long tick, short chunk count, then per chunk: int chunk x, int chunk z, short block count and per block
+     * a short {@link #blockIndex} and a byte id.
+     */
+    static final byte BLOCKS = 19;
+
+    static final int BLOCK_BYTES = 3;
+    static final int BLOCKS_HEADER_BYTES = 8 + 2;
+    static final int BLOCKS_CHUNK_HEADER_BYTES = 4 + 4 + 2;
+
+    /** Largest frame a server accepts; clients only send small fixed-size frames. */
+    static final int MAX_CLIENT_FRAME_BYTES = 64;
+    /** Largest frame a client accepts. */
+    static final int MAX_SERVER_FRAME_BYTES = 1 << 20;
+
+    private Protocol() {
+    }
+
+    /** Starts a frame of {@code type} at the buffer's position and returns where it starts, for {@link #endFrame}. */
+    static int beginFrame(ByteBuffer out, byte type) {
+        int start = out.position();
+        out.putInt(0);
+        out.put(type);
+        return start;
+    }
+
+    static void endFrame(ByteBuffer out, int start) {
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    /**
+     * Length of the whole frame starting at the buffer's position, header included, or -1 if it has not fully
+     * arrived. Throws if the frame is longer than {@code maxBytes}, which means the peer is broken or hostile.
+     */
+    static int completeFrameLength(ByteBuffer in, int maxBytes) throws IOException {
+        if (in.remaining() < HEADER_BYTES) {
+            return -1;
+        }
+        int length = in.getInt(in.position());
+        if (length < 1 || length > maxBytes) {
+            throw new IOException("Frame of " + length + " bytes, limit " + maxBytes);
+        }
+        return in.remaining() < length + 4 ? -1 : length + 4;
+    }
+
+    /** Packs chunk-local coordinates into 14 bits: x and z 4 bits each, y 6 bits. */
+    static int blockIndex(int x, int y, int z) {
+        return y << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    static int indexX(int index) {
+        return index & 15;
+    }
+
+    static int indexY(int index) {
+        return index >> 8;
+    }
+
+    static int indexZ(int index) {
+        return (index >> 4) & 15;
+    }
+
+    /**
+     * Returns {@code buffer}, in write mode, or a larger copy of it when fewer than {@code bytes} remain.
+     * Returns {@code null} if that would take it over {@code maxCapacity}.
+     */
+    static ByteBuffer ensureRemaining(ByteBuffer buffer, int bytes, int maxCapacity) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        int needed = buffer.position() + bytes;
+        if (needed > maxCapacity) {
+            return null;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(maxCapacity, Math.max(needed, buffer.capacity() * 2)));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,177 @@
+package com.roflang.tadjikcraft;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * One file holding up to 32x32 chunks. The file is split into 4 KB sectors; sector 0 is a fixed header with one
+ * int per chunk, {@code (sectorOffset << 8) | sectorCount}, and each stored chunk starts at its offset with its
+ * byte length followed by the {@link ChunkCodec} payload.
+ *
+ * <p>Reads go through a {@link MappedByteBuffer} of the whole file: loading a chunk is a header lookup and a
+ * decode straight from the mapped pages. Writes go through the {@link FileChannel}; a chunk that outgrows its
+ * sectors moves to the first free run. All methods are synchronized on the region, so different regions never
+ * block each other.
+ */
+final class RegionFile implements Closeable {
+
+    static final int CHUNKS = 32;
+    static final int SECTOR_BYTES = 4096;
+
+    private static final int MAX_SECTORS_PER_CHUNK = 255;
+
+    private final File file;
+    private final int regionX;
+    private final int regionZ;
+    private final FileChannel channel;
+    private final int[] offsets = new int[CHUNKS * CHUNKS];
+    private final BitSet usedSectors = new BitSet();
+    private final ByteBuffer headerEntry = ByteBuffer.allocateDirect(4);
+
+    private MappedByteBuffer mapped;
+    private long fileSize;
+
+    RegionFile(File file, int regionX, int regionZ) throws IOException {
+        this.file = file;
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileSize = channel.size();
+        if (fileSize < SECTOR_BYTES) {
+            channel.write(ByteBuffer.allocate(SECTOR_BYTES), 0);
+            fileSize = SECTOR_BYTES;
+        }
+        usedSectors.set(0);
+
+        ByteBuffer header = map().duplicate();
+        int sectorsInFile = (int) (fileSize / SECTOR_BYTES);
+        for (int i = 0; i < offsets.length; i++) {
+            int entry = header.getInt(i * 4);
+            int offset = entry >>> 8;
+            int count = entry & 0xff;
+            if (entry != 0 && offset > 0 && offset + count <= sectorsInFile) {
+                offsets[i] = entry;
+                usedSectors.set(offset, offset + count);
+            }
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getRegionX() {
+        return regionX;
+    }
+
+    int getRegionZ() {
+        return regionZ;
+    }
+
+    synchronized boolean contains(int localX, int localZ) {
+        return offsets[index(localX, localZ)] != 0;
+    }
+
+    /** Decodes the chunk straight from the mapped file, or returns {@code null} if it was never saved. */
+    synchronized Chunk read(int chunkX, int chunkZ) throws IOException {
+        int entry = offsets[index(chunkX & (CHUNKS - 1), chunkZ & (CHUNKS - 1))];
+        if (entry == 0) {
+            return null;
+        }
+        ByteBuffer view = map().duplicate();
+        int position = (entry >>> 8) * SECTOR_BYTES;
+        int length = view.getInt(position);
+        if (length <= 0 || length > (entry & 0xff) * SECTOR_BYTES - 4) {
+            throw new IOException("Corrupt chunk " + chunkX + ", " + chunkZ + " in " + file.getName());
+        }
+        view.position(position + 4).limit(position + 4 + length);
+        return ChunkCodec.decode(chunkX, chunkZ, view);
+    }
+
+    /** Stores an encoded chunk; {@code payload} is read from its position to its limit. Returns bytes written. */
+    synchronized int write(int chunkX, int chunkZ, ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        int sectors = (length + 4 + SECTOR_BYTES - 1) / SECTOR_BYTES;
+        if (sectors > MAX_SECTORS_PER_CHUNK) {
+            throw new IOException("Chunk " + chunkX + ", " + chunkZ + " is too large: " + length + " bytes");
+        }
+
+        int index = index(chunkX & (CHUNKS - 1), chunkZ & (CHUNKS - 1));
+        int entry = offsets[index];
+        int offset = entry >>> 8;
+        int oldCount = entry & 0xff;
+        if (entry == 0 || sectors > oldCount) {
+            if (entry != 0) {
+                usedSectors.clear(offset, offset + oldCount);
+            }
+            offset = findFreeRun(sectors);
+        } else if (sectors < oldCount) {
+            usedSectors.clear(offset + sectors, offset + oldCount);
+        }
+        usedSectors.set(offset, offset + sectors);
+
+        long position = (long) offset * SECTOR_BYTES;
+        ByteBuffer lengthPrefix = ByteBuffer.allocate(4);
+        lengthPrefix.putInt(0, length);
+        channel.write(lengthPrefix, position);
+        long written = 4;
+        while (payload.hasRemaining()) {
+            written += channel.write(payload, position + written);
+        }
+
+        long end = (long) (offset + sectors) * SECTOR_BYTES;
+        if (end > fileSize) {
+            // pad to a whole sector so the next append starts on a boundary
+            if (position + written < end) {
+                channel.write(ByteBuffer.allocate(1), end - 1);
+            }
+            fileSize = end;
+            mapped = null;
+        }
+
+        offsets[index] = (offset << 8) | sectors;
+        headerEntry.clear();
+        headerEntry.putInt(0, offsets[index]);
+        channel.write(headerEntry, index * 4L);
+        return (int) written;
+    }
+
+    /** Flushes written data to the storage device. */
+    synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    private int findFreeRun(int sectors) {
+        int start = usedSectors.nextClearBit(1);
+        while (true) {
+            int end = usedSectors.nextSetBit(start);
+            if (end < 0 || end - start >= sectors) {
+                return start;
+            }
+            start = usedSectors.nextClearBit(end);
+        }
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        if (mapped == null) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+        return mapped;
+    }
+
+    private static int index(int localX, int localZ) {
+        return localZ * CHUNKS + localX;
+    }
+}
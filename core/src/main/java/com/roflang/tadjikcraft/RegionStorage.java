@@ -0,0 +1,198 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A saved world on disk: {@code world.properties} with the seed plus a {@code region} folder of
+ * {@link RegionFile}s. Safe to use from several threads; open region files are kept in a small LRU cache.
+ */
+final class RegionStorage implements Closeable {
+
+    private static final int MAX_OPEN_REGIONS = 32;
+
+    private final File directory;
+    private final File regionDirectory;
+    private final long seed;
+    private final LinkedHashMap<Long, RegionFile> regions = new LinkedHashMap<>(16, 0.75f, true);
+    private final ThreadLocal<ByteBuffer> encodeBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(ChunkCodec.MAX_ENCODED_BYTES);
+        }
+    };
+
+    /**
+     * Opens or creates the world in {@code directory}. An existing world keeps the seed it was created with;
+     * {@code newWorldSeed} is only used for a new one.
+     */
+    RegionStorage(File directory, long newWorldSeed) throws IOException {
+        this.directory = directory;
+        this.regionDirectory = new File(directory, "region");
+        if (!regionDirectory.isDirectory() && !regionDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + regionDirectory);
+        }
+
+        File info = new File(directory, "world.properties");
+        Properties properties = new Properties();
+        if (info.isFile()) {
+            try (InputStream in = new FileInputStream(info)) {
+                properties.load(in);
+            }
+        }
+        String storedSeed = properties.getProperty("seed");
+        if (storedSeed != null) {
+            seed = Long.parseLong(storedSeed.trim());
+        } else {
+            seed = newWorldSeed;
+            properties.setProperty("seed", Long.toString(seed));
+            try (OutputStream out = new FileOutputStream(info)) {
+                properties.store(out, "TadjikCraft world");
+            }
+        }
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /** Loads a saved chunk, or returns {@code null} if it has never been saved. */
+    Chunk load(int chunkX, int chunkZ) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            RegionFile region = region(chunkX, chunkZ, false);
+            try {
+                Chunk chunk = region == null ? null : region.read(chunkX, chunkZ);
+                if (chunk != null) {
+                    chunk.needsSave = false;
+                }
+                return chunk;
+            } catch (ClosedChannelException e) {
+                reopenLater(region, e, attempt);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt chunk " + chunkX + ", " + chunkZ, e);
+            }
+        }
+    }
+
+    /** Encodes and writes a chunk. Returns the number of bytes written. */
+    int save(Chunk chunk) throws IOException {
+        ByteBuffer buffer = encodeBuffer.get();
+        buffer.clear();
+        ChunkCodec.encode(chunk, buffer);
+        buffer.flip();
+        return write(chunk.chunkX, chunk.chunkZ, buffer);
+    }
+
+    /** Writes an already encoded chunk read from {@code payload}'s position to its limit. */
+    int write(int chunkX, int chunkZ, ByteBuffer payload) throws IOException {
+        int start = payload.position();
+        for (int attempt = 0; ; attempt++) {
+            RegionFile region = region(chunkX, chunkZ, true);
+            try {
+                return region.write(chunkX, chunkZ, payload);
+            } catch (ClosedChannelException e) {
+                reopenLater(region, e, attempt);
+                payload.position(start);
+            }
+        }
+    }
+
+    /**
+     * Handles a region whose channel was closed under us: evicted by another thread, or closed because a thread
+     * was interrupted during I/O on it. The region is dropped from the cache so the next attempt reopens it;
+     * the caller's own interrupt and a second failure are rethrown.
+     */
+    private void reopenLater(RegionFile region, ClosedChannelException e, int attempt) throws ClosedChannelException {
+        synchronized (regions) {
+            Long key = World.chunkKey(region.getRegionX(), region.getRegionZ());
+            if (regions.get(key) == region) {
+                regions.remove(key);
+            }
+        }
+        if (attempt > 0 || e instanceof ClosedByInterruptException) {
+            throw e;
+        }
+    }
+
+    /** Forces written data of every open region to disk. */
+    void sync() throws IOException {
+        RegionFile[] open;
+        synchronized (regions) {
+            open = regions.values().toArray(new RegionFile[0]);
+        }
+        for (RegionFile region : open) {
+            try {
+                region.sync();
+            } catch (ClosedChannelException ignored) {
+                // evicted regions were synced when they were closed
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (regions) {
+            for (RegionFile region : regions.values()) {
+                try {
+                    region.sync();
+                } catch (ClosedChannelException ignored) {
+                    // closed by an interrupted reader; its writes already reached the OS
+                }
+                region.close();
+            }
+            regions.clear();
+        }
+    }
+
+    /** Returns the open region for a chunk; {@code null} if it does not exist and {@code create} is false. */
+    private RegionFile region(int chunkX, int chunkZ, boolean create) throws IOException {
+        int regionX = chunkX >> 5;
+        int regionZ = chunkZ >> 5;
+        Long key = World.chunkKey(regionX, regionZ);
+        synchronized (regions) {
+            RegionFile region = regions.get(key);
+            if (region == null) {
+                File file = new File(regionDirectory, "r." + regionX + "." + regionZ + ".tcr");
+                if (!create && !file.isFile()) {
+                    return null;
+                }
+                region = new RegionFile(file, regionX, regionZ);
+                regions.put(key, region);
+                evictIfFull();
+            }
+            return region;
+        }
+    }
+
+    private void evictIfFull() {
+        Iterator<Map.Entry<Long, RegionFile>> iterator = regions.entrySet().iterator();
+        while (regions.size() > MAX_OPEN_REGIONS && iterator.hasNext()) {
+            RegionFile eldest = iterator.next().getValue();
+            iterator.remove();
+            try {
+                eldest.sync();
+                eldest.close();
+            } catch (IOException e) {
+                Gdx.app.error("RegionStorage", "Failed to close " + eldest.getFile(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The render thread's own map of loaded chunks, used for culling and drawing while the simulation thread
+ * changes the {@link World}. Chunks joining and leaving the world are queued from the simulation thread and
+ * applied by {@link #sync()} at the start of each frame, which is also where unloaded chunks free their meshes.
+ * With a {@link Retention} set, an unloaded chunk stays in the map and on screen, marked as leaving, for as long
+ * as the retention asks for it.
+ */
+final class RenderChunks implements World.ChunkListener, Disposable {
+
+    /** Decides which unloaded chunks are still drawn, until something else draws their place. */
+    interface Retention {
+        boolean keepsDrawing(int chunkX, int chunkZ);
+    }
+
+    private final ConcurrentLinkedQueue<Chunk> added = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Chunk> removed = new ConcurrentLinkedQueue<>();
+    private final LongMap<Chunk> chunks = new LongMap<>();
+    private final LongMap<Chunk> leaving = new LongMap<>();
+    private final LongArray released = new LongArray();
+    private Retention retention;
+    private int version;
+
+    void setRetention(Retention retention) {
+        this.retention = retention;
+    }
+
+    @Override
+    public void chunkAdded(Chunk chunk) {
+        added.add(chunk);
+    }
+
+    @Override
+    public void chunkRemoved(Chunk chunk) {
+        removed.add(chunk);
+    }
+
+    /** Applies the queued changes and lets go of the leaving chunks no longer kept. Render thread only. */
+    void sync() {
+        released.clear();
+        for (LongMap.Entry<Chunk> entry : leaving.entries()) {
+            if (!retention.keepsDrawing(entry.value.chunkX, entry.value.chunkZ)) {
+                released.add(entry.key);
+            }
+        }
+        for (int i = 0; i < released.size; i++) {
+            chunks.remove(released.get(i));
+            leaving.remove(released.get(i)).dispose();
+        }
+
+        Chunk chunk;
+        while ((chunk = added.poll()) != null) {
+            long key = World.chunkKey(chunk.chunkX, chunk.chunkZ);
+            Chunk previous = chunks.put(key, chunk);
+            if (previous != null && leaving.get(key) == previous) {
+                leaving.remove(key);
+                previous.dispose();
+            }
+            version++;
+        }
+        while ((chunk = removed.poll()) != null) {
+            long key = World.chunkKey(chunk.chunkX, chunk.chunkZ);
+            // a chunk that was unloaded and loaded again is a new instance under the same key
+            if (chunks.get(key) != chunk) {
+                chunk.dispose();
+            } else if (retention != null) {
+                leaving.put(key, chunk);
+                version++;
+            } else {
+                chunks.remove(key);
+                chunk.dispose();
+            }
+        }
+    }
+
+    /** Changes whenever a chunk joins or starts leaving. */
+    int getVersion() {
+        return version;
+    }
+
+    /** Whether the chunk was unloaded and is only still drawn for the {@link Retention}. */
+    boolean isLeaving(Chunk chunk) {
+        return leaving.get(World.chunkKey(chunk.chunkX, chunk.chunkZ)) == chunk;
+    }
+
+    Chunk getChunk(int chunkX, int chunkZ) {
+        return chunks.get(World.chunkKey(chunkX, chunkZ));
+    }
+
+    LongMap.Values<Chunk> getChunks() {
+        return chunks.values();
+    }
+
+    @Override
+    public void dispose() {
+        sync();
+        for (Chunk chunk : chunks.values()) {
+            chunk.dispose();
+        }
+        chunks.clear();
+        leaving.clear();
+    }
+}
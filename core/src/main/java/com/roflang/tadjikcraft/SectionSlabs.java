@@ -0,0 +1,229 @@
+package com.roflang.tadjikcraft;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Off-heap home for section data, {@link ChunkSection} packed indices and {@link NibbleArray} light: direct
+ * buffers of {@link #SLAB_BYTES} cut into fixed-size {@link Slot}s, one size class per power of two from 512
+ * bytes to 4 KiB. Slabs are never given back; slots go back to their class's free list and are handed out
+ * again, so a world that streams chunks in and out settles at a fixed off-heap size and the heap only holds
+ * the small objects pointing into it.
+ *
+ * <p>Sections share slots with their copy-on-write snapshots, which mesh workers and the save thread hold for
+ * as long as they like. A slot is therefore freed by its owner only while nothing else can see it (when a
+ * section outgrows it, say); otherwise it is freed once its {@link Slot} object has been garbage collected,
+ * which is when the last section or snapshot using it is gone.
+ *
+ * <p>Chosen at startup with {@link #install}, before the first chunk exists; without it everything stays on
+ * the heap. Slots can be allocated from any thread.
+ */
+final class SectionSlabs {
+
+    static final int SLAB_BYTES = 1 << 20;
+
+    private static final int MIN_SLOT_SHIFT = 9;
+    private static final int CLASSES = 4;
+
+    private static volatile SectionSlabs active;
+
+    private final SizeClass[] classes = new SizeClass[CLASSES];
+    private final ReferenceQueue<Slot> collected = new ReferenceQueue<>();
+
+    // written under the lock, read by the HUD without it
+    private volatile int slabCount;
+    private volatile long usedBytes;
+    private volatile long reclaimedSlots;
+
+    SectionSlabs() {
+        for (int i = 0; i < CLASSES; i++) {
+            classes[i] = new SizeClass(i, 1 << (MIN_SLOT_SHIFT + i));
+        }
+    }
+
+    /** Makes sections created from now on live in {@code slabs}, or on the heap again if it is {@code null}. */
+    static void install(SectionSlabs slabs) {
+        active = slabs;
+    }
+
+    /** The installed slabs, or {@code null} when section data stays on the heap. */
+    static SectionSlabs active() {
+        return active;
+    }
+
+    /** A zeroed slot of at least {@code bytes}, a power of two between 512 and 4096. */
+    synchronized Slot allocate(int bytes) {
+        reclaim();
+        SizeClass sizeClass = classes[Integer.numberOfTrailingZeros(bytes) - MIN_SLOT_SHIFT];
+        if (sizeClass.freeCount == 0) {
+            sizeClass.addSlab(ByteBuffer.allocateDirect(SLAB_BYTES).order(ByteOrder.nativeOrder()));
+            slabCount++;
+        }
+        int id = sizeClass.free[--sizeClass.freeCount];
+        ByteBuffer slab = sizeClass.slabs[id / sizeClass.slotsPerSlab];
+        int base = (id % sizeClass.slotsPerSlab) * sizeClass.slotBytes;
+        for (int i = 0; i < sizeClass.slotBytes; i += 8) {
+            slab.putLong(base + i, 0L);
+        }
+        Slot slot = new Slot(this, slab, base, sizeClass.slotBytes, sizeClass.index, id);
+        sizeClass.refs[id] = new SlotReference(slot, collected, sizeClass.index, id);
+        usedBytes += sizeClass.slotBytes;
+        return slot;
+    }
+
+    /** Frees a slot now. Only for a slot no snapshot or other section can still be reading. */
+    synchronized void release(Slot slot) {
+        SizeClass sizeClass = classes[slot.sizeClass];
+        SlotReference reference = sizeClass.refs[slot.id];
+        if (reference == null) {
+            return;
+        }
+        // a cleared reference is never enqueued, so the slot cannot be freed twice
+        reference.clear();
+        free(sizeClass, slot.id);
+    }
+
+    private void reclaim() {
+        Reference<? extends Slot> reference;
+        while ((reference = collected.poll()) != null) {
+            SlotReference slotReference = (SlotReference) reference;
+            SizeClass sizeClass = classes[slotReference.sizeClass];
+            if (sizeClass.refs[slotReference.id] == slotReference) {
+                free(sizeClass, slotReference.id);
+                reclaimedSlots++;
+            }
+        }
+    }
+
+    private void free(SizeClass sizeClass, int id) {
+        sizeClass.refs[id] = null;
+        sizeClass.free[sizeClass.freeCount++] = id;
+        usedBytes -= sizeClass.slotBytes;
+    }
+
+    /** Picks up slots whose sections have been collected since the last allocation. */
+    synchronized void reclaimNow() {
+        reclaim();
+    }
+
+    int getSlabCount() {
+        return slabCount;
+    }
+
+    long getCapacityBytes() {
+        return (long) slabCount * SLAB_BYTES;
+    }
+
+    /** Bytes in slots handed out and not freed yet, whether or not their sections are still reachable. */
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /** Slots freed because their last section was garbage collected rather than released by its owner. */
+    long getReclaimedSlots() {
+        return reclaimedSlots;
+    }
+
+    /** Per size class: slot size, slots in use and slots in all of its slabs. */
+    synchronized String describe() {
+        reclaim();
+        StringBuilder out = new StringBuilder();
+        for (SizeClass sizeClass : classes) {
+            int total = sizeClass.slabCount * sizeClass.slotsPerSlab;
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            out.append(sizeClass.slotBytes).append(" B: ").append(total - sizeClass.freeCount).append('/').append(total);
+        }
+        return out.toString();
+    }
+
+    /** Fixed-size region of a slab. Sections and light arrays read and write it through absolute offsets. */
+    static final class Slot {
+        final SectionSlabs owner;
+        private final ByteBuffer slab;
+        private final int base;
+        final int bytes;
+        private final int sizeClass;
+        private final int id;
+
+        private Slot(SectionSlabs owner, ByteBuffer slab, int base, int bytes, int sizeClass, int id) {
+            this.owner = owner;
+            this.slab = slab;
+            this.base = base;
+            this.bytes = bytes;
+            this.sizeClass = sizeClass;
+            this.id = id;
+        }
+
+        long getLong(int index) {
+            return slab.getLong(base + (index << 3));
+        }
+
+        void putLong(int index, long value) {
+            slab.putLong(base + (index << 3), value);
+        }
+
+        byte get(int offset) {
+            return slab.get(base + offset);
+        }
+
+        void put(int offset, byte value) {
+            slab.put(base + offset, value);
+        }
+
+        /** Copies the first {@code bytes} of {@code source}, a multiple of 8. */
+        void copyFrom(Slot source, int bytes) {
+            for (int i = 0; i < bytes; i += 8) {
+                slab.putLong(base + i, source.slab.getLong(source.base + i));
+            }
+        }
+    }
+
+    private static final class SlotReference extends PhantomReference<Slot> {
+        final int sizeClass;
+        final int id;
+
+        SlotReference(Slot slot, ReferenceQueue<Slot> queue, int sizeClass, int id) {
+            super(slot, queue);
+            this.sizeClass = sizeClass;
+            this.id = id;
+        }
+    }
+
+    private static final class SizeClass {
+        final int index;
+        final int slotBytes;
+        final int slotsPerSlab;
+        ByteBuffer[] slabs = new ByteBuffer[4];
+        int slabCount;
+        /** Live slot references by slot id; they must stay reachable to be enqueued. */
+        SlotReference[] refs = new SlotReference[0];
+        int[] free = new int[0];
+        int freeCount;
+
+        SizeClass(int index, int slotBytes) {
+            this.index = index;
+            this.slotBytes = slotBytes;
+            slotsPerSlab = SLAB_BYTES / slotBytes;
+        }
+
+        void addSlab(ByteBuffer slab) {
+            if (slabCount == slabs.length) {
+                slabs = Arrays.copyOf(slabs, slabCount * 2);
+            }
+            int first = slabCount * slotsPerSlab;
+            slabs[slabCount++] = slab;
+            refs = Arrays.copyOf(refs, slabCount * slotsPerSlab);
+            free = Arrays.copyOf(free, slabCount * slotsPerSlab);
+            // lowest ids on top, so slots are handed out in address order
+            for (int id = first + slotsPerSlab - 1; id >= first; id--) {
+                free[freeCount++] = id;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.roflang.tadjikcraft;
+
+import java.util.Arrays;
+
+/**
+ * Which faces of a 16x16x16 section can see each other through air. Flood-filling the air touching the
+ * section's border gives, for every pair of faces, whether some air pocket reaches both; the result is packed
+ * into 15 bits, one per pair. {@link ChunkCuller} walks these to skip sections sealed off from the camera.
+ *
+ * <p>Faces are numbered -X, +X, -Y, +Y, -Z, +Z, so {@code face ^ 1} is the opposite face. Instances hold
+ * flood-fill scratch space and belong to one thread.
+ */
+final class SectionVisibility {
+
+    static final int WEST = 0;
+    static final int EAST = 1;
+    static final int DOWN = 2;
+    static final int UP = 3;
+    static final int NORTH = 4;
+    static final int SOUTH = 5;
+    static final int FACES = 6;
+
+    /** Every face sees every other one, as in an empty section. */
+    static final int ALL = (1 << 15) - 1;
+
+    private static final int SIZE = Chunk.SIZE;
+    private static final int[] PAIR_BITS = new int[FACES * FACES];
+
+    static {
+        int bit = 0;
+        for (int a = 0; a < FACES; a++) {
+            for (int b = a + 1; b < FACES; b++) {
+                PAIR_BITS[a * FACES + b] = 1 << bit;
+                PAIR_BITS[b * FACES + a] = 1 << bit;
+                bit++;
+            }
+        }
+    }
+
+    private final boolean[] visited = new boolean[ChunkSection.VOLUME];
+    private final int[] stack = new int[ChunkSection.VOLUME];
+
+    /** Whether something entering through face {@code from} can leave through face {@code to}. */
+    static boolean connects(int visibility, int from, int to) {
+        return (visibility & PAIR_BITS[from * FACES + to]) != 0;
+    }
+
+    /** Face connectivity of {@code section}; {@code null} is an all-air section. */
+    int compute(ChunkSection section) {
+        if (section == null) {
+            return ALL;
+        }
+        int nonAir = section.getNonAirCount();
+        if (nonAir == ChunkSection.VOLUME) {
+            return 0;
+        }
+        if (nonAir < SIZE * SIZE) {
+            // too few blocks to wall off even one full layer
+            return ALL;
+        }
+
+        Arrays.fill(visited, false);
+        int result = 0;
+        for (int index = 0; index < ChunkSection.VOLUME; index++) {
+            if (!visited[index] && isBorder(index) && section.get(index) == BlockType.AIR) {
+                result |= pairsOf(flood(section, index));
+                if (result == ALL) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Fills the air pocket containing {@code start} and returns a bit mask of the faces it touches. */
+    private int flood(ChunkSection section, int start) {
+        int faces = 0;
+        int size = 0;
+        stack[size++] = start;
+        visited[start] = true;
+        while (size > 0) {
+            int index = stack[--size];
+            int x = index & 15;
+            int z = (index >>> 4) & 15;
+            int y = index >>> 8;
+            faces |= facesOf(x, y, z);
+
+            if (x > 0) {
+                size = push(section, index - 1, size);
+            }
+            if (x < SIZE - 1) {
+                size = push(section, index + 1, size);
+            }
+            if (z > 0) {
+                size = push(section, index - SIZE, size);
+            }
+            if (z < SIZE - 1) {
+                size = push(section, index + SIZE, size);
+            }
+            if (y > 0) {
+                size = push(section, index - SIZE * SIZE, size);
+            }
+            if (y < SIZE - 1) {
+                size = push(section, index + SIZE * SIZE, size);
+            }
+        }
+        return faces;
+    }
+
+    private int push(ChunkSection section, int index, int size) {
+        if (!visited[index] && section.get(index) == BlockType.AIR) {
+            visited[index] = true;
+            stack[size++] = index;
+        }
+        return size;
+    }
+
+    private static boolean isBorder(int index) {
+        return facesOf(index & 15, index >>> 8, (index >>> 4) & 15) != 0;
+    }
+
+    private static int facesOf(int x, int y, int z) {
+        int faces = 0;
+        if (x == 0) {
+            faces |= 1 << WEST;
+        }
+        if (x == SIZE - 1) {
+            faces |= 1 << EAST;
+        }
+        if (y == 0) {
+            faces |= 1 << DOWN;
+        }
+        if (y == SIZE - 1) {
+            faces |= 1 << UP;
+        }
+        if (z == 0) {
+            faces |= 1 << NORTH;
+        }
+        if (z == SIZE - 1) {
+            faces |= 1 << SOUTH;
+        }
+        return faces;
+    }
+
+    private static int pairsOf(int faces) {
+        int pairs = 0;
+        for (int a = 0; a < FACES; a++) {
+            if ((faces & (1 << a)) == 0) {
+                continue;
+            }
+            for (int b = a + 1; b < FACES; b++) {
+                if ((faces & (1 << b)) != 0) {
+                    pairs |= PAIR_BITS[a * FACES + b];
+                }
+            }
+        }
+        return pairs;
+    }
+}
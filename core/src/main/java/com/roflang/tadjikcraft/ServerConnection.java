@@ -0,0 +1,344 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The client side of a {@link WorldServer}: fills the local {@link World} with the chunks and block changes the
+ * server sends and reports the player's position and edits back, see {@link Protocol}. The world is only a
+ * replica; edits are applied to it right away so they show without a round trip, and the server's answer
+ * overwrites them if it disagrees.
+ *
+ * <p>Everything after {@link #connect} runs on the simulation thread and never blocks. Received chunks are
+ * decoded and lit at most {@link #MAX_CHUNKS_PER_UPDATE} per tick; the rest wait in the input buffer.
+ */
+final class ServerConnection implements ChunkSource {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final int MAX_CHUNKS_PER_UPDATE = 8;
+    private static final int MAX_BUFFERED_BYTES = 64 << 20;
+
+    private final World world;
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(256 * 1024);
+    private final ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+    private final Inflater inflater = new Inflater();
+    private final byte[] inflated = new byte[ChunkCodec.MAX_ENCODED_BYTES];
+    private final Array<Chunk> replaced = new Array<>(1);
+
+    final long seed;
+    final float spawnX;
+    final float spawnY;
+    final float spawnZ;
+    final int viewRadius;
+    final int unloadRadius;
+
+    private float sentX = Float.NaN;
+    private float sentY;
+    private float sentZ;
+    private int queuedChunks;
+    private long evictedCount;
+    private boolean closed;
+
+    private ServerConnection(World world, SocketChannel channel, ByteBuffer welcome) {
+        this.world = world;
+        this.channel = channel;
+        seed = welcome.getLong();
+        spawnX = welcome.getFloat();
+        spawnY = welcome.getFloat();
+        spawnZ = welcome.getFloat();
+        viewRadius = welcome.getInt();
+        unloadRadius = welcome.getInt();
+        welcome.getInt();
+    }
+
+    /**
+     * Connects to {@code address} ({@code host:port} or just {@code host}) and waits for the server to accept
+     * the player. Chunks the server sends go into {@code world}.
+     */
+    static ServerConnection connect(World world, String address, int viewRadius) throws IOException {
+        String host = address;
+        int port = Protocol.DEFAULT_PORT;
+        int colon = address.lastIndexOf(':');
+        if (colon >= 0) {
+            host = address.substring(0, colon);
+            try {
+                port = Integer.parseInt(address.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid port in " + address, e);
+            }
+        }
+
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            channel.socket().setTcpNoDelay(true);
+            ByteBuffer hello = ByteBuffer.allocate(Protocol.HEADER_BYTES + 8);
+            int start = Protocol.beginFrame(hello, Protocol.HELLO);
+            hello.putInt(Protocol.VERSION);
+            hello.putInt(viewRadius);
+            Protocol.endFrame(hello, start);
+            hello.flip();
+            while (hello.hasRemaining()) {
+                channel.write(hello);
+            }
+
+            ByteBuffer welcome = ByteBuffer.allocate(Protocol.HEADER_BYTES + 40);
+            welcome.limit(Protocol.HEADER_BYTES);
+            readFully(channel, welcome);
+            int length = welcome.getInt(0);
+            if (welcome.get(4) != Protocol.WELCOME || length + 4 > welcome.capacity()) {
+                throw new IOException("Not a TadjikCraft server");
+            }
+            welcome.limit(length + 4);
+            readFully(channel, welcome);
+            welcome.position(Protocol.HEADER_BYTES);
+            int version = welcome.getInt();
+            if (version != Protocol.VERSION) {
+                throw new IOException("Server speaks protocol " + version + ", expected " + Protocol.VERSION);
+            }
+            channel.configureBlocking(false);
+            return new ServerConnection(world, channel, welcome);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Server closed the connection");
+            }
+        }
+    }
+
+    @Override
+    public void update(Vector3 eye) {
+        if (closed) {
+            return;
+        }
+        try {
+            receive();
+            applyFrames();
+            float y = eye.y - Simulation.PLAYER_HEIGHT;
+            boolean moved = eye.x != sentX || y != sentY || eye.z != sentZ;
+            if (moved && out.remaining() >= Protocol.HEADER_BYTES + 12) {
+                sentX = eye.x;
+                sentY = y;
+                sentZ = eye.z;
+                int start = Protocol.beginFrame(out, Protocol.POSITION);
+                out.putFloat(eye.x);
+                out.putFloat(y);
+                out.putFloat(eye.z);
+                Protocol.endFrame(out, start);
+            }
+            flush();
+        } catch (IOException | RuntimeException e) {
+            lostConnection(e);
+        }
+    }
+
+    private void receive() throws IOException {
+        while (true) {
+            if (!in.hasRemaining()) {
+                ByteBuffer larger = Protocol.ensureRemaining(in, in.capacity(), MAX_BUFFERED_BYTES);
+                if (larger == null) {
+                    // leave the rest in the socket until the backlog has been applied
+                    return;
+                }
+                in = larger;
+            }
+            int read = channel.read(in);
+            if (read < 0) {
+                throw new IOException("Server closed the connection");
+            }
+            if (read == 0) {
+                return;
+            }
+        }
+    }
+
+    private void applyFrames() throws IOException {
+        in.flip();
+        int chunks = 0;
+        queuedChunks = 0;
+        int length;
+        while ((length = Protocol.completeFrameLength(in, Protocol.MAX_SERVER_FRAME_BYTES)) > 0) {
+            int start = in.position();
+            byte type = in.get(start + 4);
+            if (type == Protocol.CHUNK && chunks == MAX_CHUNKS_PER_UPDATE) {
+                // keep order: later changes may be for this chunk
+                countQueuedChunks();
+                break;
+            }
+            in.position(start + Protocol.HEADER_BYTES);
+            switch (type) {
+                case Protocol.CHUNK:
+                    receiveChunk(length - Protocol.HEADER_BYTES);
+                    chunks++;
+                    break;
+                case Protocol.UNLOAD:
+                    if (world.removeChunk(in.getInt(), in.getInt()) != null) {
+                        evictedCount++;
+                    }
+                    break;
+                case Protocol.BLOCKS:
+                    receiveBlocks();
+                    break;
+                default:
+                    throw new IOException("Unknown frame type " + type);
+            }
+            in.position(start + length);
+        }
+        in.compact();
+    }
+
+    private void countQueuedChunks() throws IOException {
+        int from = in.position();
+        int length;
+        while ((length = Protocol.completeFrameLength(in, Protocol.MAX_SERVER_FRAME_BYTES)) > 0) {
+            if (in.get(in.position() + 4) == Protocol.CHUNK) {
+                queuedChunks++;
+            }
+            in.position(in.position() + length);
+        }
+        in.position(from);
+    }
+
+    private void receiveChunk(int payload) throws IOException {
+        int chunkX = in.getInt();
+        int chunkZ = in.getInt();
+        int encodedLength = in.getInt();
+        if (encodedLength > inflated.length) {
+            throw new IOException("Chunk of " + encodedLength + " bytes");
+        }
+        inflater.reset();
+        inflater.setInput(in.array(), in.arrayOffset() + in.position(), payload - 12);
+        try {
+            int inflatedLength = 0;
+            while (inflatedLength < encodedLength && !inflater.finished()) {
+                int n = inflater.inflate(inflated, inflatedLength, encodedLength - inflatedLength);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated chunk " + chunkX + ", " + chunkZ);
+                }
+                inflatedLength += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk " + chunkX + ", " + chunkZ, e);
+        }
+        Chunk chunk = ChunkCodec.decode(chunkX, chunkZ, ByteBuffer.wrap(inflated, 0, encodedLength));
+        boolean replacing = world.isChunkLoaded(chunkX, chunkZ);
+        LightEngine.lightChunk(chunk);
+        world.addChunk(chunk);
+        if (replacing) {
+            // the server resends chunks edited in bulk whole; light they lost may still sit in the neighbours,
+            // which adding only stitches inwards, so relight them the way the server did
+            replaced.add(chunk);
+            world.getLightEngine().relight(replaced);
+            replaced.clear();
+        }
+    }
+
+    private void receiveBlocks() {
+        in.getLong();
+        int chunkCount = in.getShort() & 0xffff;
+        for (int c = 0; c < chunkCount; c++) {
+            int chunkX = in.getInt();
+            int chunkZ = in.getInt();
+            int count = in.getShort() & 0xffff;
+            boolean loaded = world.isChunkLoaded(chunkX, chunkZ);
+            for (int i = 0; i < count; i++) {
+                int index = in.getShort() & 0xffff;
+                int id = in.get() & 0xff;
+                if (loaded) {
+                    world.setBlock(chunkX * Chunk.SIZE + Protocol.indexX(index), Protocol.indexY(index),
+                        chunkZ * Chunk.SIZE + Protocol.indexZ(index), id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, int id) {
+        if (closed || y < 0 || y >= Chunk.HEIGHT || !world.isChunkLoaded(x >> 4, z >> 4)) {
+            return;
+        }
+        if (out.remaining() < Protocol.HEADER_BYTES + 10) {
+            try {
+                flush();
+            } catch (IOException e) {
+                lostConnection(e);
+                return;
+            }
+            if (out.remaining() < Protocol.HEADER_BYTES + 10) {
+                // the server is not keeping up; dropping the edit here keeps the replica in step with it
+                return;
+            }
+        }
+        world.setBlock(x, y, z, id);
+        int start = Protocol.beginFrame(out, Protocol.EDIT);
+        out.putInt(x);
+        out.put((byte) y);
+        out.putInt(z);
+        out.put((byte) id);
+        Protocol.endFrame(out, start);
+    }
+
+    private void flush() throws IOException {
+        out.flip();
+        channel.write(out);
+        out.compact();
+    }
+
+    private void lostConnection(Exception e) {
+        closed = true;
+        Gdx.app.error("ServerConnection", "Lost the connection to the server", e);
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+
+    boolean isConnected() {
+        return !closed;
+    }
+
+    @Override
+    public int getLoadedCount() {
+        return world.getChunkCount();
+    }
+
+    /** Chunks received but not added to the world yet. */
+    @Override
+    public int getPendingCount() {
+        return queuedChunks;
+    }
+
+    @Override
+    public long getEvictedCount() {
+        return evictedCount;
+    }
+
+    @Override
+    public void dispose() {
+        if (!closed) {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Gdx.app.error("ServerConnection", "Cannot close the connection", e);
+            }
+        }
+        inflater.end();
+    }
+}
@@ -0,0 +1,258 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs a {@link WorldServer} and connects simulated players to it over loopback, {@code clientsPerStep} more
+ * every {@code stepSeconds} up to {@code maxClients}. Each bot walks around spawn and breaks or places a block
+ * about once a second, so the server streams chunks and sends block batches the whole time. The second half of
+ * every step, once the new players have their chunks, is measured: server tick time and bytes per second both
+ * ways. The bots run on a thread of their own in the same process, so they share the machine with the server.
+ */
+public class ServerLoadTest extends ApplicationAdapter {
+
+    private static final float BOT_SPEED = 4.3f;
+    private static final float BOT_RANGE = 96f;
+    private static final float EDITS_PER_SECOND = 1f;
+
+    private final GameSettings settings;
+    private final int maxClients;
+    private final int clientsPerStep;
+    private final long stepTicks;
+
+    private WorldServer server;
+    private Bots bots;
+    private Thread botThread;
+    private long stepStart;
+    private final StringBuilder table = new StringBuilder();
+
+    private long measureTick;
+    private long measureTickNanos;
+    private long measureBytesSent;
+    private long measureBytesReceived;
+    private long measureChunks;
+    private long measureBlocks;
+    private long measureStartNanos;
+
+    public ServerLoadTest(GameSettings settings, int maxClients, int clientsPerStep, float stepSeconds) {
+        this.settings = settings;
+        this.maxClients = maxClients;
+        this.clientsPerStep = clientsPerStep;
+        this.stepTicks = Math.max(2, Math.round(stepSeconds * WorldServer.TICKS_PER_SECOND));
+    }
+
+    @Override
+    public void create() {
+        server = new WorldServer(settings);
+        server.create();
+        bots = new Bots(server.getPort(), server.getSpawnX(), server.getSpawnY(), server.getSpawnZ(),
+            settings.viewRadius);
+        botThread = new Thread(bots, "load-test-bots");
+        botThread.setDaemon(true);
+        botThread.start();
+        bots.target = clientsPerStep;
+        table.append(String.format(Locale.ROOT, "%8s %10s %10s %12s %12s %10s %10s%n",
+            "clients", "tick ms", "max ms", "out KB/s", "in KB/s", "chunks/s", "blocks/s"));
+    }
+
+    @Override
+    public void render() {
+        server.render();
+        long step = server.getTickCount() - stepStart;
+        if (step == stepTicks / 2) {
+            startMeasuring();
+        } else if (step == stepTicks) {
+            report();
+            stepStart = server.getTickCount();
+            if (bots.target >= maxClients) {
+                Gdx.app.log("ServerLoadTest", "\n" + table);
+                Gdx.app.exit();
+                return;
+            }
+            bots.target = Math.min(maxClients, bots.target + clientsPerStep);
+        }
+    }
+
+    private void startMeasuring() {
+        server.takeMaxTickNanos();
+        measureTick = server.getTickCount();
+        measureTickNanos = server.getTotalTickNanos();
+        measureBytesSent = server.getBytesSent();
+        measureBytesReceived = server.getBytesReceived();
+        measureChunks = server.getChunksSent();
+        measureBlocks = server.getBlocksSent();
+        measureStartNanos = System.nanoTime();
+    }
+
+    private void report() {
+        long ticks = server.getTickCount() - measureTick;
+        double seconds = (System.nanoTime() - measureStartNanos) / 1e9;
+        String line = String.format(Locale.ROOT, "%8d %10.3f %10.3f %12.1f %12.1f %10.1f %10.1f",
+            server.getClientCount(),
+            (server.getTotalTickNanos() - measureTickNanos) / 1e6 / Math.max(1, ticks),
+            server.takeMaxTickNanos() / 1e6,
+            (server.getBytesSent() - measureBytesSent) / 1024.0 / seconds,
+            (server.getBytesReceived() - measureBytesReceived) / 1024.0 / seconds,
+            (server.getChunksSent() - measureChunks) / seconds,
+            (server.getBlocksSent() - measureBlocks) / seconds);
+        table.append(line).append('\n');
+        Gdx.app.log("ServerLoadTest", line + " | " + server.getLoadedChunkCount() + " chunks loaded");
+    }
+
+    @Override
+    public void dispose() {
+        bots.running = false;
+        try {
+            botThread.join(2_000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.dispose();
+    }
+
+    /** Simulated players. Each reads and drops whatever the server sends and writes position and edit frames. */
+    private static final class Bots implements Runnable {
+        private static final long STEP_NANOS = 1_000_000_000L / WorldServer.TICKS_PER_SECOND;
+
+        volatile int target;
+        volatile boolean running = true;
+
+        private final int port;
+        private final float spawnX;
+        private final float spawnY;
+        private final float spawnZ;
+        private final int viewRadius;
+        private final Array<Bot> bots = new Array<>();
+        private final ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+        private final Random random = new Random(1L);
+
+        Bots(int port, float spawnX, float spawnY, float spawnZ, int viewRadius) {
+            this.port = port;
+            this.spawnX = spawnX;
+            this.spawnY = spawnY;
+            this.spawnZ = spawnZ;
+            this.viewRadius = viewRadius;
+        }
+
+        @Override
+        public void run() {
+            try (Selector selector = Selector.open()) {
+                long next = System.nanoTime();
+                while (running) {
+                    while (bots.size < target) {
+                        bots.add(connect(selector));
+                    }
+                    drain(selector);
+                    for (int i = 0; i < bots.size; i++) {
+                        step(bots.get(i));
+                    }
+                    next += STEP_NANOS;
+                    long sleep = next - System.nanoTime();
+                    if (sleep > 0) {
+                        Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+                    }
+                }
+                for (int i = 0; i < bots.size; i++) {
+                    bots.get(i).channel.close();
+                }
+            } catch (IOException e) {
+                Gdx.app.error("ServerLoadTest", "Bots stopped", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private Bot connect(Selector selector) throws IOException {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            Bot bot = new Bot(channel);
+            bot.x = spawnX + (random.nextFloat() - 0.5f) * 32f;
+            bot.z = spawnZ + (random.nextFloat() - 0.5f) * 32f;
+            bot.heading = random.nextFloat() * (float) Math.PI * 2f;
+            int start = Protocol.beginFrame(bot.out, Protocol.HELLO);
+            bot.out.putInt(Protocol.VERSION);
+            bot.out.putInt(viewRadius);
+            Protocol.endFrame(bot.out, start);
+            return bot;
+        }
+
+        private void drain(Selector selector) throws IOException {
+            selector.selectNow();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                SocketChannel channel = (SocketChannel) key.channel();
+                sink.clear();
+                while (channel.read(sink) > 0) {
+                    sink.clear();
+                }
+            }
+        }
+
+        private void step(Bot bot) throws IOException {
+            bot.heading += (random.nextFloat() - 0.5f) * 0.3f;
+            float dx = bot.x - spawnX;
+            float dz = bot.z - spawnZ;
+            if (dx * dx + dz * dz > BOT_RANGE * BOT_RANGE) {
+                bot.heading = (float) Math.atan2(-dz, -dx);
+            }
+            float distance = BOT_SPEED / WorldServer.TICKS_PER_SECOND;
+            bot.x += (float) Math.cos(bot.heading) * distance;
+            bot.z += (float) Math.sin(bot.heading) * distance;
+
+            ByteBuffer out = bot.out;
+            if (out.remaining() < 2 * Protocol.MAX_CLIENT_FRAME_BYTES) {
+                // the server is not reading; skip this tick like a stalled client would
+                flush(bot);
+                return;
+            }
+            int start = Protocol.beginFrame(out, Protocol.POSITION);
+            out.putFloat(bot.x);
+            out.putFloat(spawnY);
+            out.putFloat(bot.z);
+            Protocol.endFrame(out, start);
+            if (random.nextFloat() < EDITS_PER_SECOND / WorldServer.TICKS_PER_SECOND) {
+                start = Protocol.beginFrame(out, Protocol.EDIT);
+                out.putInt((int) Math.floor(bot.x) + random.nextInt(5) - 2);
+                out.put((byte) (spawnY + 1 + random.nextInt(3)));
+                out.putInt((int) Math.floor(bot.z) + random.nextInt(5) - 2);
+                out.put((byte) (random.nextBoolean() ? BlockType.AIR : BlockType.STONE.id));
+                Protocol.endFrame(out, start);
+            }
+            flush(bot);
+        }
+
+        private static void flush(Bot bot) throws IOException {
+            bot.out.flip();
+            bot.channel.write(bot.out);
+            bot.out.compact();
+        }
+    }
+
+    private static final class Bot {
+        final SocketChannel channel;
+        final ByteBuffer out = ByteBuffer.allocate(256);
+        float x;
+        float z;
+        float heading;
+
+        Bot(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
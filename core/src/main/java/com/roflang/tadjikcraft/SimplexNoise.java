@@ -0,0 +1,89 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.math.RandomXS128;
+
+/**
+ * Seeded 2D simplex noise (after Stefan Gustavson's reference implementation). Output is in roughly
+ * [-1, 1] and depends only on the seed and the input, so results are identical on every thread.
+ */
+final class SimplexNoise {
+
+    private static final double F2 = 0.5 * (Math.sqrt(3.0) - 1.0);
+    private static final double G2 = (3.0 - Math.sqrt(3.0)) / 6.0;
+
+    private static final int[] GRAD_X = {1, -1, 1, -1, 1, -1, 0, 0};
+    private static final int[] GRAD_Y = {1, 1, -1, -1, 0, 0, 1, -1};
+
+    private final short[] perm = new short[512];
+
+    SimplexNoise(long seed) {
+        short[] p = new short[256];
+        for (int i = 0; i < 256; i++) {
+            p[i] = (short) i;
+        }
+        RandomXS128 random = new RandomXS128(seed);
+        for (int i = 255; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            short swap = p[i];
+            p[i] = p[j];
+            p[j] = swap;
+        }
+        for (int i = 0; i < 512; i++) {
+            perm[i] = p[i & 255];
+        }
+    }
+
+    double noise(double x, double y) {
+        double s = (x + y) * F2;
+        int i = fastFloor(x + s);
+        int j = fastFloor(y + s);
+        double t = (i + j) * G2;
+        double x0 = x - (i - t);
+        double y0 = y - (j - t);
+
+        int i1 = x0 > y0 ? 1 : 0;
+        int j1 = 1 - i1;
+
+        double x1 = x0 - i1 + G2;
+        double y1 = y0 - j1 + G2;
+        double x2 = x0 - 1.0 + 2.0 * G2;
+        double y2 = y0 - 1.0 + 2.0 * G2;
+
+        int ii = i & 255;
+        int jj = j & 255;
+        int gi0 = perm[ii + perm[jj]] & 7;
+        int gi1 = perm[ii + i1 + perm[jj + j1]] & 7;
+        int gi2 = perm[ii + 1 + perm[jj + 1]] & 7;
+
+        return 70.0 * (corner(gi0, x0, y0) + corner(gi1, x1, y1) + corner(gi2, x2, y2));
+    }
+
+    /** Sums {@code octaves} layers of noise, each at twice the frequency and {@code gain} times the amplitude. */
+    double fractal(double x, double y, int octaves, double gain) {
+        double sum = 0;
+        double amplitude = 1;
+        double frequency = 1;
+        double norm = 0;
+        for (int i = 0; i < octaves; i++) {
+            sum += noise(x * frequency, y * frequency) * amplitude;
+            norm += amplitude;
+            amplitude *= gain;
+            frequency *= 2;
+        }
+        return sum / norm;
+    }
+
+    private static double corner(int gradient, double x, double y) {
+        double t = 0.5 - x * x - y * y;
+        if (t < 0) {
+            return 0;
+        }
+        t *= t;
+        return t * t * (GRAD_X[gradient] * x + GRAD_Y[gradient] * y);
+    }
+
+    private static int fastFloor(double value) {
+        int truncated = (int) value;
+        return value < truncated ? truncated - 1 : truncated;
+    }
+}
@@ -0,0 +1,432 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Everything that changes the world, advanced in fixed {@link #TICK_SECONDS} ticks: player physics, block edits,
+ * the day cycle, chunk streaming, lighting, autosave and handing dirty chunks to the mesh workers. A slow frame
+ * no longer slows the world down and a fast monitor no longer speeds it up.
+ *
+ * <p>Normally the ticks run on their own thread, started with {@link #start()}. The render thread talks to it in
+ * three ways, none of which lock: the movement keys held are published as one immutable {@link Movement} with
+ * {@link #setMovement}, one-off actions such as jumps and block edits go through a lock-free queue with
+ * {@link #submit}, and after every tick the simulation publishes a {@link SimulationSnapshot} through a triple
+ * buffer that {@link #getSnapshot()} reads. The render thread draws between the last two snapshots.
+ *
+ * <p>Without {@link #start()} the simulation is stepped on the calling thread with {@link #advance(float)} or
+ * {@link #tick()}, which flythroughs use to stay deterministic.
+ */
+final class Simulation implements Disposable {
+
+    static final float TICK_SECONDS = 1f / 60f;
+    static final long TICK_NANOS = 1_000_000_000L / 60L;
+
+    static final float PLAYER_HEIGHT = 1.8f;
+    private static final float PLAYER_HALF_WIDTH = 0.3f;
+    private static final float GRAVITY = 20f;
+    private static final float JUMP_SPEED = 7f;
+    private static final float WALK_SPEED = 7.5f;
+    private static final float SPRINT_SPEED = 11f;
+    private static final float BLOCK_REACH = 6f;
+    /** Stepped mode catches up at most this many ticks per frame, the thread this many before skipping ahead. */
+    private static final int MAX_TICKS_BEHIND = 8;
+
+    private final World world;
+    private final ChunkSource chunks;
+    private final AutosaveScheduler autosave;
+    private final ChunkMeshPipeline meshPipeline;
+    private final PlayerBody player = new PlayerBody(PLAYER_HALF_WIDTH, PLAYER_HEIGHT);
+    private final VoxelRaycaster raycaster = new VoxelRaycaster();
+    private final Vector3 eye = new Vector3();
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+
+    // held movement keys, replaced as a whole by the render thread so a tick never sees half an update
+    private volatile Movement movement = new Movement(0f, 0f, 0f, false, 0f, -1f);
+
+    private final AtomicReference<SimulationSnapshot> published;
+    private SimulationSnapshot back;
+    private SimulationSnapshot front;
+
+    private Thread thread;
+    private volatile boolean running;
+    private float accumulator;
+
+    private long tick;
+    private boolean flyMode;
+    private boolean jumpRequested;
+    private boolean spawnSettled;
+    private float dayTime;
+
+    private long lastTickNanos;
+    private long maxTickNanos;
+    private long windowMaxTickNanos;
+    private long windowStart;
+    private int windowTicks;
+    private int ticksPerSecond;
+
+    /**
+     * @param chunks   generates or receives the world's chunks; disposed with the simulation
+     * @param autosave saves the world, or {@code null} when it is not saved here
+     */
+    Simulation(World world, ChunkSource chunks, AutosaveScheduler autosave, ChunkMeshPipeline meshPipeline,
+               double spawnX, double spawnY, double spawnZ) {
+        this.world = world;
+        this.chunks = chunks;
+        this.autosave = autosave;
+        this.meshPipeline = meshPipeline;
+        player.setPosition(spawnX, spawnY, spawnZ);
+
+        back = new SimulationSnapshot();
+        front = new SimulationSnapshot();
+        SimulationSnapshot first = new SimulationSnapshot();
+        fill(back);
+        fill(front);
+        fill(first);
+        published = new AtomicReference<>(first);
+        windowStart = System.nanoTime();
+    }
+
+    /** Runs the ticks on a thread of their own from now on. */
+    void start() {
+        running = true;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    boolean isThreaded() {
+        return thread != null;
+    }
+
+    private void run() {
+        long next = System.nanoTime();
+        while (running) {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                Gdx.app.error("Simulation", "Tick " + tick + " failed", e);
+            }
+            next += TICK_NANOS;
+            long now = System.nanoTime();
+            if (now - next > TICK_NANOS * MAX_TICKS_BEHIND) {
+                // too far behind to catch up; carry on from here rather than fast-forwarding the world
+                next = now;
+            }
+            while (running && (now = System.nanoTime()) < next) {
+                LockSupport.parkNanos(next - now);
+            }
+        }
+    }
+
+    /** Stepped mode: runs as many ticks as {@code delta} seconds cover, carrying the rest to the next call. */
+    void advance(float delta) {
+        accumulator = Math.min(accumulator + delta, TICK_SECONDS * MAX_TICKS_BEHIND);
+        while (accumulator >= TICK_SECONDS) {
+            accumulator -= TICK_SECONDS;
+            tick();
+        }
+    }
+
+    /** Runs one tick on the calling thread. Only for stepped mode, or from the simulation thread itself. */
+    void tick() {
+        long start = System.nanoTime();
+        tick++;
+        dayTime = (dayTime + TICK_SECONDS * 0.03f) % 1f;
+
+        Command command;
+        while ((command = commands.poll()) != null) {
+            apply(command);
+        }
+        stepPlayer();
+
+        eye.set((float) player.x, (float) player.y + PLAYER_HEIGHT, (float) player.z);
+        chunks.update(eye);
+        if (autosave != null) {
+            autosave.update(TICK_SECONDS, world.getChunks());
+        }
+        remeshDirtyChunks();
+
+        long end = System.nanoTime();
+        recordTickTime(start, end);
+        publish(end);
+    }
+
+    private void apply(Command command) {
+        switch (command.type) {
+            case Command.JUMP:
+                jumpRequested = true;
+                break;
+            case Command.TOGGLE_FLY:
+                flyMode = !flyMode;
+                player.velocityY = 0f;
+                break;
+            case Command.BREAK:
+            case Command.PLACE:
+                editBlock(command);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command.type);
+        }
+    }
+
+    private void editBlock(Command command) {
+        if (!raycaster.cast(world, command.eyeX, command.eyeY, command.eyeZ,
+            command.directionX, command.directionY, command.directionZ, BLOCK_REACH)) {
+            return;
+        }
+        if (command.type == Command.BREAK) {
+            chunks.setBlock(raycaster.hitX, raycaster.hitY, raycaster.hitZ, BlockType.AIR);
+        } else if (raycaster.getFace() >= 0) {
+            int x = raycaster.hitX + raycaster.normalX;
+            int y = raycaster.hitY + raycaster.normalY;
+            int z = raycaster.hitZ + raycaster.normalZ;
+            if (!world.isSolid(x, y, z) && !player.overlaps(x, y, z)) {
+                chunks.setBlock(x, y, z, command.block.id);
+            }
+        }
+    }
+
+    /** Turns the held movement keys into velocity and moves the player one tick, stopping at solid blocks. */
+    private void stepPlayer() {
+        Movement movement = this.movement;
+        float speed = movement.sprinting ? SPRINT_SPEED : WALK_SPEED;
+        float forward = movement.forward * speed;
+        float strafe = movement.strafe * speed;
+        float forwardX = movement.headingX;
+        float forwardZ = movement.headingZ;
+        // right is forward x up
+        player.velocityX = forwardX * forward - forwardZ * strafe;
+        player.velocityZ = forwardZ * forward + forwardX * strafe;
+        if (flyMode) {
+            player.velocityY = movement.vertical * speed * 1.4f;
+        }
+
+        // hold the player in place until the ground under them has streamed in
+        if (!flyMode && !isGroundLoaded()) {
+            player.setPosition(player.x, player.y, player.z);
+            player.velocityY = 0f;
+            return;
+        }
+        if (!spawnSettled) {
+            settleOnGround();
+        }
+        if (jumpRequested && player.onGround && !flyMode) {
+            player.velocityY = JUMP_SPEED;
+        }
+        jumpRequested = false;
+        player.step(world, TICK_SECONDS, flyMode ? 0f : GRAVITY);
+    }
+
+    /**
+     * Lifts the player onto the loaded ground once at spawn. The spawn height comes from the generator, so a
+     * saved world may have been built up above it since.
+     */
+    private void settleOnGround() {
+        spawnSettled = true;
+        int top = world.getTopBlockY(MathUtils.floor((float) player.x), MathUtils.floor((float) player.z));
+        if (player.y < top + 1) {
+            player.setPosition(player.x, top + 1, player.z);
+        }
+    }
+
+    private boolean isGroundLoaded() {
+        return world.isChunkLoaded(MathUtils.floor((float) player.x) >> 4, MathUtils.floor((float) player.z) >> 4);
+    }
+
+    private void remeshDirtyChunks() {
+        Array<Chunk> dirty = world.getDirtyChunks();
+        for (int i = 0; i < dirty.size; i++) {
+            Chunk chunk = dirty.get(i);
+            chunk.meshDirty = false;
+            meshPipeline.submit(world, chunk, eye);
+        }
+        dirty.clear();
+    }
+
+    private void recordTickTime(long start, long end) {
+        lastTickNanos = end - start;
+        windowMaxTickNanos = Math.max(windowMaxTickNanos, lastTickNanos);
+        windowTicks++;
+        if (end - windowStart >= 1_000_000_000L) {
+            ticksPerSecond = windowTicks;
+            maxTickNanos = windowMaxTickNanos;
+            windowTicks = 0;
+            windowMaxTickNanos = 0L;
+            windowStart = end;
+        }
+    }
+
+    private void publish(long now) {
+        fill(back);
+        back.publishedNanos = now;
+        back = published.getAndSet(back);
+    }
+
+    private void fill(SimulationSnapshot snapshot) {
+        snapshot.tick = tick;
+        snapshot.publishedNanos = System.nanoTime();
+        snapshot.previousX = player.previousX;
+        snapshot.previousY = player.previousY;
+        snapshot.previousZ = player.previousZ;
+        snapshot.x = player.x;
+        snapshot.y = player.y;
+        snapshot.z = player.z;
+        snapshot.onGround = player.onGround;
+        snapshot.flyMode = flyMode;
+        snapshot.dayTime = dayTime;
+        snapshot.blockCount = world.getBlockCount();
+        snapshot.loadedChunks = chunks.getLoadedCount();
+        snapshot.pendingChunks = chunks.getPendingCount();
+        snapshot.evictedChunks = chunks.getEvictedCount();
+        snapshot.tickNanos = lastTickNanos;
+        snapshot.maxTickNanos = maxTickNanos;
+        snapshot.ticksPerSecond = ticksPerSecond;
+    }
+
+    /**
+     * The newest published tick. Render thread only; the snapshot stays unchanged until the next call, which
+     * hands it back to the simulation for reuse.
+     */
+    SimulationSnapshot getSnapshot() {
+        if (published.get().tick > front.tick) {
+            front = published.getAndSet(front);
+        }
+        return front;
+    }
+
+    /** How far the render thread is between the previous tick and {@code snapshot}, from 0 to 1. */
+    float getAlpha(SimulationSnapshot snapshot, long now) {
+        if (thread == null) {
+            return accumulator / TICK_SECONDS;
+        }
+        return MathUtils.clamp((now - snapshot.publishedNanos) / (float) TICK_NANOS, 0f, 1f);
+    }
+
+    /**
+     * Sets the movement keys held: each axis -1 to 1, the heading a unit vector on the ground plane. Only
+     * allocates when something changed.
+     */
+    void setMovement(float forward, float strafe, float vertical, boolean sprint, float headingX, float headingZ) {
+        if (!movement.equals(forward, strafe, vertical, sprint, headingX, headingZ)) {
+            movement = new Movement(forward, strafe, vertical, sprint, headingX, headingZ);
+        }
+    }
+
+    /** Queues a one-off action for the next tick. Safe from any thread. */
+    void submit(Command command) {
+        commands.add(command);
+    }
+
+    /** Moves the player without physics and holds them there in fly mode. Stepped mode only. */
+    void teleport(double x, double y, double z) {
+        player.setPosition(x, y, z);
+        player.velocityY = 0f;
+        flyMode = true;
+    }
+
+    /** Whether streaming and remeshing have caught up. Stepped mode only. */
+    boolean isIdle() {
+        return chunks.getPendingCount() == 0 && world.getDirtyChunks().size == 0;
+    }
+
+    /** Stops the simulation thread, if any, and the chunk source; the world can then be read from any thread. */
+    @Override
+    public void dispose() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            // the caller saves the world next, so the last tick has to be over whatever it takes
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        chunks.dispose();
+    }
+
+    /** The movement keys held, see {@link #setMovement}. */
+    private static final class Movement {
+        final float forward;
+        final float strafe;
+        final float vertical;
+        final boolean sprinting;
+        final float headingX;
+        final float headingZ;
+
+        Movement(float forward, float strafe, float vertical, boolean sprinting, float headingX, float headingZ) {
+            this.forward = forward;
+            this.strafe = strafe;
+            this.vertical = vertical;
+            this.sprinting = sprinting;
+            this.headingX = headingX;
+            this.headingZ = headingZ;
+        }
+
+        boolean equals(float forward, float strafe, float vertical, boolean sprinting, float headingX,
+                       float headingZ) {
+            return this.forward == forward && this.strafe == strafe && this.vertical == vertical
+                && this.sprinting == sprinting && this.headingX == headingX && this.headingZ == headingZ;
+        }
+    }
+
+    /** A one-off player action, queued from the render thread with {@link #submit}. */
+    static final class Command {
+        static final int JUMP = 0;
+        static final int TOGGLE_FLY = 1;
+        static final int BREAK = 2;
+        static final int PLACE = 3;
+
+        final int type;
+        final float eyeX;
+        final float eyeY;
+        final float eyeZ;
+        final float directionX;
+        final float directionY;
+        final float directionZ;
+        final BlockType block;
+
+        private Command(int type, Vector3 eye, Vector3 direction, BlockType block) {
+            this.type = type;
+            this.eyeX = eye == null ? 0f : eye.x;
+            this.eyeY = eye == null ? 0f : eye.y;
+            this.eyeZ = eye == null ? 0f : eye.z;
+            this.directionX = direction == null ? 0f : direction.x;
+            this.directionY = direction == null ? 0f : direction.y;
+            this.directionZ = direction == null ? 0f : direction.z;
+            this.block = block;
+        }
+
+        static Command jump() {
+            return new Command(JUMP, null, null, null);
+        }
+
+        static Command toggleFly() {
+            return new Command(TOGGLE_FLY, null, null, null);
+        }
+
+        /** Breaks the block seen from {@code eye} along {@code direction}, if one is within reach. */
+        static Command breakBlock(Vector3 eye, Vector3 direction) {
+            return new Command(BREAK, eye, direction, null);
+        }
+
+        /** Places {@code block} against the face seen from {@code eye} along {@code direction}. */
+        static Command placeBlock(Vector3 eye, Vector3 direction, BlockType block) {
+            return new Command(PLACE, eye, direction, block);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.roflang.tadjikcraft;
+
+/**
+ * What the render thread needs to know about one simulation tick. The simulation fills a snapshot and then
+ * publishes it; from then on nothing writes to it until the render thread has swapped it back, so it can be read
+ * without locking. See {@link Simulation#getSnapshot()}.
+ */
+final class SimulationSnapshot {
+
+    /** Tick this snapshot was taken after; 0 before the first tick. */
+    long tick;
+    /** {@link System#nanoTime()} when the tick finished. */
+    long publishedNanos;
+
+    /** Player feet position before and after the tick, to interpolate the camera between. */
+    double previousX;
+    double previousY;
+    double previousZ;
+    double x;
+    double y;
+    double z;
+    boolean onGround;
+    boolean flyMode;
+
+    /** Position in the day cycle, 0 to 1. */
+    float dayTime;
+
+    int blockCount;
+    int loadedChunks;
+    int pendingChunks;
+    long evictedChunks;
+
+    /** Time the last tick took and the worst tick since the previous snapshot the render thread saw. */
+    long tickNanos;
+    long maxTickNanos;
+    /** Ticks per second over the last second of simulation. */
+    int ticksPerSecond;
+
+    /** Interpolated feet X position, {@code alpha} 0 being the previous tick and 1 the latest. */
+    double lerpX(float alpha) {
+        return previousX + (x - previousX) * alpha;
+    }
+
+    double lerpY(float alpha) {
+        return previousY + (y - previousY) * alpha;
+    }
+
+    double lerpZ(float alpha) {
+        return previousZ + (z - previousZ) * alpha;
+    }
+}
@@ -0,0 +1,118 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Decoration writes that a chunk's decoration pass made outside its own borders, grouped by the neighbour
+ * they land in. Each edit is packed as {@code (sectionIndex << 8) | blockId} with a chunk-local index, see
+ * {@link #pack(int, int, int, int)}.
+ *
+ * <p>Decoration edits only fill air (trunks may also replace leaves), so applying spills from several
+ * neighbours gives the same chunk whatever order they arrive in.
+ *
+ * <p>Spills re-emitted by a chunk loaded from disk carry {@link #FRESH_TARGETS_ONLY}: a neighbour that was
+ * saved already holds them, and applying them again could bring back leaves the player removed.
+ */
+final class SpillEdits {
+
+    /** Edit flag: only apply to chunks that were just generated, never to chunks read from disk. */
+    static final int FRESH_TARGETS_ONLY = 1 << 30;
+
+    final int chunkX;
+    final int chunkZ;
+    private final int flags;
+
+    // 3x3 neighbourhood indexed (dx + 1) * 3 + (dz + 1); the centre slot stays empty
+    private final IntArray[] byNeighbour = new IntArray[9];
+
+    SpillEdits(int chunkX, int chunkZ) {
+        this(chunkX, chunkZ, false);
+    }
+
+    SpillEdits(int chunkX, int chunkZ, boolean freshTargetsOnly) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.flags = freshTargetsOnly ? FRESH_TARGETS_ONLY : 0;
+    }
+
+    static int pack(int localX, int y, int localZ, int id) {
+        return (((y << 8) | (localZ << 4) | localX) << 8) | id;
+    }
+
+    static int x(int edit) {
+        return (edit >>> 8) & 15;
+    }
+
+    static int z(int edit) {
+        return (edit >>> 12) & 15;
+    }
+
+    static int y(int edit) {
+        return (edit >>> 16) & 0xff;
+    }
+
+    static int id(int edit) {
+        return edit & 0xff;
+    }
+
+    /** Whether a decoration block may overwrite {@code current}. */
+    static boolean canReplace(int current, int id) {
+        return current == BlockType.AIR || (current == BlockType.LEAVES.id && id == BlockType.WOOD.id);
+    }
+
+    /** Records a write at world coordinates in a chunk next to this one. */
+    void add(int x, int y, int z, int id) {
+        int dx = (x >> 4) - chunkX;
+        int dz = (z >> 4) - chunkZ;
+        int slot = (dx + 1) * 3 + (dz + 1);
+        IntArray edits = byNeighbour[slot];
+        if (edits == null) {
+            edits = new IntArray(32);
+            byNeighbour[slot] = edits;
+        }
+        edits.add(pack(x & 15, y, z & 15, id) | flags);
+    }
+
+    /** Edits for the neighbour at offset (dx, dz), or {@code null} if none. */
+    IntArray get(int dx, int dz) {
+        return byNeighbour[(dx + 1) * 3 + (dz + 1)];
+    }
+
+    /** Applies edits to a chunk that is not yet visible to the simulation thread. */
+    static void applyTo(Chunk chunk, IntArray edits) {
+        for (int i = 0; i < edits.size; i++) {
+            int edit = edits.get(i);
+            if (chunk.fromDisk && (edit & FRESH_TARGETS_ONLY) != 0) {
+                continue;
+            }
+            int x = x(edit);
+            int y = y(edit);
+            int z = z(edit);
+            int id = id(edit);
+            if (canReplace(chunk.getBlock(x, y, z), id)) {
+                chunk.setBlock(x, y, z, id);
+            }
+        }
+    }
+
+    /** Applies edits to a loaded chunk through the world so the affected chunks get remeshed. */
+    static void applyTo(World world, int chunkX, int chunkZ, IntArray edits) {
+        int baseX = chunkX * Chunk.SIZE;
+        int baseZ = chunkZ * Chunk.SIZE;
+        Chunk chunk = world.getChunk(chunkX, chunkZ);
+        boolean fromDisk = chunk != null && chunk.fromDisk;
+        for (int i = 0; i < edits.size; i++) {
+            int edit = edits.get(i);
+            if (fromDisk && (edit & FRESH_TARGETS_ONLY) != 0) {
+                continue;
+            }
+            int x = baseX + x(edit);
+            int y = y(edit);
+            int z = baseZ + z(edit);
+            int id = id(edit);
+            if (canReplace(world.getBlock(x, y, z), id)) {
+                world.setBlock(x, y, z, id);
+            }
+        }
+    }
+}
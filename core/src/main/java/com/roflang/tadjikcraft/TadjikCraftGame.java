@@ -5,11 +5,8 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
-import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.PerspectiveCamera;
 import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.VertexAttribute;
-import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
@@ -17,192 +14,532 @@ import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 
 public class TadjikCraftGame extends ApplicationAdapter {
 
-    private static final int WORLD_SIZE = 64;
-    private static final int MAX_BUILD_HEIGHT = 24;
-    private static final float PLAYER_HEIGHT = 1.8f;
+    static final int SPAWN_X = 32;
+    static final int SPAWN_Z = 32;
+    private static final float PLAYER_HEIGHT = Simulation.PLAYER_HEIGHT;
     private static final float PLAYER_EYE_OFFSET = 1.62f;
-    private static final float GRAVITY = 20f;
-    private static final float JUMP_SPEED = 7f;
-    private static final float BLOCK_REACH = 6f;
+    private static final int HOTBAR_SLOTS = 8;
+    private static final long MESH_UPLOAD_BUDGET_NANOS = 2_000_000L;
+    private static final int LEAVING_CHUNKS_MARGIN = 2;
+    private static final long SAVE_SHUTDOWN_TIMEOUT_MILLIS = 5_000L;
+    /** Recording stops after this many frames, an hour at 60 fps, about 5 MB. */
+    private static final int MAX_RECORDED_FRAMES = 60 * 60 * 60;
+    private static final int FALLBACK_VIEWPORT_WIDTH = 1280;
+    private static final int FALLBACK_VIEWPORT_HEIGHT = 720;
+    /** Frames the world must stay fully streamed and meshed before a flythrough starts measuring. */
+    private static final int FLYTHROUGH_SETTLE_FRAMES = 30;
+    private static final int HUD_CONTROLS = 0;
+    private static final int HUD_STATUS = 1;
+    private static final int HUD_POSITION = 2;
+    private static final int HUD_DRAWN = 3;
+    private static final int HUD_SIMULATION = 4;
+    private static final int HUD_SAVE = 5;
+    private static final int HUD_STORAGE = 6;
+    private static final int HUD_CACHE = 7;
+    private static final int HUD_LOD = 8;
+    /** Where the fog starts, as a fraction of the distance where it hides everything. */
+    private static final float FOG_START = 0.6f;
 
     private PerspectiveCamera camera;
     private ShaderProgram shader;
-    private Mesh cubeMesh;
-    private Texture terrainTexture;
+    private final GameSettings settings;
+
+    private ChunkMeshPipeline meshPipeline;
+    private TerrainGenerator terrainGenerator;
+    private RegionStorage regionStorage;
+    private AutosaveScheduler autosave;
+    private ChunkCuller chunkCuller;
+    private Simulation simulation;
+    private SimulationSnapshot snapshot;
+    private final RenderChunks renderChunks = new RenderChunks();
+    private final FrameProfiler profiler = new FrameProfiler();
+    private ProfilerOverlay profilerOverlay;
+    private BlockAtlas blockAtlas;
     private Texture hand;
 
     private SpriteBatch batch;
     private BitmapFont font;
     private ShapeRenderer shapeRenderer;
+    private final HudText hudText = new HudText(HUD_LOD + 1);
 
     private final Matrix4 modelMatrix = new Matrix4();
     private final Vector3 tmp = new Vector3();
+    private final Vector3 eye = new Vector3();
 
     private float yaw = -90f;
     private float pitch = 0f;
-    private float yVelocity = 0f;
-    private boolean onGround = false;
-    private boolean flyMode = false;
-    private float dayTime = 0f;
+    private int drawnChunks;
+    private long drawnMeshBytes;
+    private int drawnVertices;
+    private float fogEnd;
+    private final Color skyColor = new Color();
+
+    private FlythroughScript flythrough;
+    private FrameTimings frameTimings;
+    private MemoryStats memoryStats;
+    private int flythroughFrame;
+    private int settledFrames;
+    private FlythroughScript recording;
 
     private BlockType selectedBlock = BlockType.GRASS;
 
-    private final LinkedHashMap<BlockPos, BlockType> worldBlocks = new LinkedHashMap<>();
+    private final World world = new World();
+    private SectionSlabs slabs;
+    private ColdChunkCache coldCache;
+    private ChunkStreamer chunkStreamer;
+    private LodTerrain lodTerrain;
+
+    public TadjikCraftGame() {
+        this(new GameSettings());
+    }
+
+    public TadjikCraftGame(GameSettings settings) {
+        this.settings = settings;
+    }
 
     @Override
     public void create() {
-        camera = new PerspectiveCamera(75f, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
-        camera.position.set(WORLD_SIZE / 2f, 18f, WORLD_SIZE / 2f);
+        // the headless backend reports a 0x0 screen; keep the frustum that of a normal window
+        int width = Gdx.graphics.getWidth() > 0 ? Gdx.graphics.getWidth() : FALLBACK_VIEWPORT_WIDTH;
+        int height = Gdx.graphics.getHeight() > 0 ? Gdx.graphics.getHeight() : FALLBACK_VIEWPORT_HEIGHT;
+        camera = new PerspectiveCamera(75f, width, height);
         camera.near = 0.1f;
         camera.far = 420f;
 
-        ShaderProgram.pedantic = false;
-        shader = new ShaderProgram(Gdx.files.internal("default.vert"), Gdx.files.internal("default.frag"));
-
-        terrainTexture = new Texture("dirt.png");
-        hand = new Texture("steve-hand.png");
+        if (!settings.headless) {
+            ShaderProgram.pedantic = false;
+            shader = new ShaderProgram(Gdx.files.internal("default.vert"), Gdx.files.internal("default.frag"));
 
-        batch = new SpriteBatch();
-        font = new BitmapFont();
-        shapeRenderer = new ShapeRenderer();
+            blockAtlas = new BlockAtlas("dirt.png");
+            hand = new Texture("steve-hand.png");
 
-        cubeMesh = createCubeMesh();
-        generateWorld();
-
-        Gdx.input.setCursorCatched(true);
-    }
-
-    private void generateWorld() {
-        worldBlocks.clear();
-        for (int x = 0; x < WORLD_SIZE; x++) {
-            for (int z = 0; z < WORLD_SIZE; z++) {
-                float terrainNoise = MathUtils.sin(x * 0.18f) * 2.7f + MathUtils.cos(z * 0.16f) * 2.4f + MathUtils.sin((x + z) * 0.08f) * 3.2f;
-                int height = MathUtils.clamp(6 + MathUtils.floor(terrainNoise), 2, 14);
-
-                float biomeNoise = MathUtils.sin(x * 0.045f) + MathUtils.cos(z * 0.055f);
-                BlockType surface = biomeNoise > 0.75f ? BlockType.SNOW : biomeNoise < -0.75f ? BlockType.SAND : BlockType.GRASS;
-
-                for (int y = 0; y <= height; y++) {
-                    BlockType type;
-                    if (y == height) {
-                        type = surface;
-                    } else if (y > height - 3) {
-                        type = BlockType.DIRT;
-                    } else {
-                        type = BlockType.STONE;
-                    }
-                    worldBlocks.put(new BlockPos(x, y, z), type);
-                }
+            batch = new SpriteBatch();
+            font = new BitmapFont();
+            shapeRenderer = new ShapeRenderer();
+            profilerOverlay = new ProfilerOverlay(profiler);
+        }
 
-                if (surface == BlockType.GRASS && MathUtils.randomBoolean(0.02f) && height + 5 < MAX_BUILD_HEIGHT) {
-                    spawnTree(x, height + 1, z);
-                }
+        if (settings.offHeapStorage) {
+            slabs = new SectionSlabs();
+            SectionSlabs.install(slabs);
+        }
+        meshPipeline = new ChunkMeshPipeline(ChunkMeshPipeline.defaultThreadCount(), settings.headless);
+        world.setChunkListener(renderChunks);
+        ServerConnection connection = null;
+        if (settings.serverAddress != null) {
+            try {
+                connection = ServerConnection.connect(world, settings.serverAddress, settings.viewRadius);
+                Gdx.app.log("TadjikCraft", "Connected to " + settings.serverAddress);
+            } catch (IOException e) {
+                Gdx.app.error("TadjikCraft", "Cannot connect to " + settings.serverAddress + ", playing locally", e);
             }
         }
-    }
-
-    private void spawnTree(int baseX, int baseY, int baseZ) {
-        int trunkHeight = MathUtils.random(3, 5);
-        for (int i = 0; i < trunkHeight; i++) {
-            worldBlocks.put(new BlockPos(baseX, baseY + i, baseZ), BlockType.WOOD);
+        long seed = connection != null ? connection.seed : settings.seed;
+        if (connection == null && settings.worldDirectory != null) {
+            try {
+                regionStorage = new RegionStorage(settings.worldDirectory, seed);
+                seed = regionStorage.getSeed();
+                autosave = new AutosaveScheduler(regionStorage, settings.autosaveSeconds, settings.autosaveSyncMillis,
+                    SAVE_SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (IOException | RuntimeException e) {
+                Gdx.app.error("TadjikCraft", "Cannot open world " + settings.worldDirectory + ", not saving", e);
+            }
         }
+        terrainGenerator = new TerrainGenerator(seed);
+        int loadRadius;
+        if (connection != null) {
+            simulation = new Simulation(world, connection, null, meshPipeline,
+                connection.spawnX, connection.spawnY, connection.spawnZ);
+            loadRadius = connection.unloadRadius;
+        } else {
+            if (settings.coldCacheMegabytes > 0) {
+                coldCache = new ColdChunkCache(settings.coldCacheMegabytes * 1024L * 1024L);
+                world.addBlockListener(coldCache);
+            }
+            chunkStreamer = new ChunkStreamer(world, terrainGenerator, autosave, coldCache, settings.viewRadius,
+                settings.unloadMargin, settings.activeChunkMegabytes * 1024L * 1024L,
+                ChunkMeshPipeline.defaultThreadCount());
+            simulation = new Simulation(world, chunkStreamer, autosave, meshPipeline,
+                SPAWN_X + 0.5, terrainGenerator.surfaceHeight(SPAWN_X, SPAWN_Z) + 1, SPAWN_Z + 0.5);
+            loadRadius = settings.viewRadius + settings.unloadMargin;
+        }
+        if (settings.lodRadiusScale > 1) {
+            lodTerrain = new LodTerrain(terrainGenerator, settings.viewRadius, settings.lodRadiusScale,
+                Math.max(1, ChunkMeshPipeline.defaultThreadCount() / 2), settings.headless);
+            renderChunks.setRetention(lodTerrain);
+            fogEnd = lodTerrain.getRadiusBlocks();
+            // unloaded chunks stay drawn until their tile is rebuilt, a little beyond the load radius
+            chunkCuller = new ChunkCuller(loadRadius + LEAVING_CHUNKS_MARGIN);
+        } else {
+            fogEnd = loadRadius * Chunk.SIZE;
+            chunkCuller = new ChunkCuller(loadRadius);
+        }
+        // the fog hides where the terrain stops, the far plane only has to clear the highest of it
+        camera.far = Math.max(camera.far, fogEnd + Chunk.HEIGHT);
+        snapshot = simulation.getSnapshot();
+        updateCameraPosition(0f);
+        hudText.line(HUD_CONTROLS).append("WASD move | SPACE jump | SHIFT sprint | F fly | LMB break | RMB place | F3 profiler");
+
+        if (settings.flythroughFrames > 0) {
+            startFlythrough();
+        } else {
+            Gdx.input.setCursorCatched(true);
+            if (settings.recordFlythrough != null) {
+                recording = new FlythroughScript();
+            }
+            if (settings.simulationThread) {
+                simulation.start();
+            }
+        }
+    }
 
-        int top = baseY + trunkHeight;
-        for (int ox = -2; ox <= 2; ox++) {
-            for (int oy = -1; oy <= 2; oy++) {
-                for (int oz = -2; oz <= 2; oz++) {
-                    int dist = Math.abs(ox) + Math.abs(oz) + Math.abs(oy);
-                    if (dist <= 4) {
-                        worldBlocks.put(new BlockPos(baseX + ox, top + oy, baseZ + oz), BlockType.LEAVES);
-                    }
-                }
+    private void startFlythrough() {
+        if (settings.flythroughScript != null) {
+            try {
+                flythrough = FlythroughScript.load(settings.flythroughScript);
+            } catch (IOException e) {
+                Gdx.app.error("TadjikCraft", "Cannot read flythrough " + settings.flythroughScript + ", generating one", e);
             }
         }
+        if (flythrough == null || flythrough.getFrameCount() == 0) {
+            flythrough = FlythroughScript.generate(settings.seed, settings.flythroughFrames, terrainGenerator,
+                SPAWN_X + 0.5f, SPAWN_Z + 0.5f);
+        }
+        frameTimings = new FrameTimings(settings.flythroughFrames);
+        memoryStats = new MemoryStats();
+        showFlythroughFrame(0);
     }
 
     @Override
     public void render() {
-        float dt = Gdx.graphics.getDeltaTime();
-        dayTime = (dayTime + dt * 0.03f) % 1f;
+        long frameStart = System.nanoTime();
+        boolean measuring = flythrough != null && !frameTimings.isFull() && isSettled();
+        profiler.beginFrame();
+        if (measuring) {
+            if (frameTimings.getCount() == 0) {
+                memoryStats.start();
+            }
+            playFlythroughFrame();
+            profiler.split(FrameProfiler.SIMULATION);
+        } else if (flythrough != null) {
+            // flythroughs tick once per frame so every run covers the same path and day time
+            simulation.tick();
+            profiler.split(FrameProfiler.SIMULATION);
+        } else {
+            handleMouse();
+            handleModeSwitch();
+            handleMovement();
+            handleBlockSelection();
+            handleBlocks(Gdx.input.isButtonJustPressed(Input.Buttons.LEFT), Gdx.input.isButtonJustPressed(Input.Buttons.RIGHT));
+            profiler.split(FrameProfiler.INPUT);
+            if (!simulation.isThreaded()) {
+                simulation.advance(Gdx.graphics.getDeltaTime());
+            }
+            profiler.split(FrameProfiler.SIMULATION);
+        }
 
-        handleMouse();
-        handleModeSwitch();
-        handleMovement(dt);
-        if (!flyMode) {
-            applyGravity(dt);
+        renderChunks.sync();
+        snapshot = simulation.getSnapshot();
+        updateCameraPosition(simulation.getAlpha(snapshot, System.nanoTime()));
+        camera.update();
+        float dayLight = 0.3f + 0.7f * MathUtils.sin(snapshot.dayTime * MathUtils.PI2) * 0.5f + 0.35f;
+
+        long renderStart = System.nanoTime();
+        if (settings.headless) {
+            uploadMeshes();
+            profiler.split(FrameProfiler.UPLOAD);
+            cullWorld();
+            profiler.split(FrameProfiler.WORLD);
+            updateHudText(dayLight);
+            profiler.split(FrameProfiler.HUD);
+        } else {
+            skyColor.set(0.08f + dayLight * 0.45f, 0.12f + dayLight * 0.55f, 0.22f + dayLight * 0.65f, 1f);
+            Gdx.gl.glClearColor(skyColor.r, skyColor.g, skyColor.b, 1f);
+            Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
+            Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+
+            uploadMeshes();
+            profiler.split(FrameProfiler.UPLOAD);
+
+            shader.bind();
+            shader.setUniformMatrix("u_projViewTrans", camera.combined);
+
+            drawWorld(dayLight);
+            profiler.split(FrameProfiler.WORLD);
+            updateHudText(dayLight);
+            drawHud();
+            if (flythrough != null) {
+                // count the GPU's work against this frame rather than a later one
+                Gdx.gl.glFinish();
+            }
+            profiler.split(FrameProfiler.HUD);
+            profilerOverlay.collectGlCounts();
+        }
+        profiler.endFrame();
+        if (profilerOverlay != null) {
+            profilerOverlay.draw(shapeRenderer, batch, font);
         }
-        handleBlockSelection();
-        handleBlocks();
 
-        float dayLight = 0.3f + 0.7f * MathUtils.sin(dayTime * MathUtils.PI2) * 0.5f + 0.35f;
-        float skyR = 0.08f + dayLight * 0.45f;
-        float skyG = 0.12f + dayLight * 0.55f;
-        float skyB = 0.22f + dayLight * 0.65f;
+        if (measuring) {
+            long end = System.nanoTime();
+            frameTimings.record(renderStart - frameStart, end - renderStart);
+            if (frameTimings.isFull()) {
+                finishFlythrough();
+            }
+        } else if (recording != null && recording.getFrameCount() < MAX_RECORDED_FRAMES) {
+            recording.add((float) snapshot.x, (float) snapshot.y, (float) snapshot.z, yaw, pitch, selectedBlock.slot,
+                (Gdx.input.isButtonJustPressed(Input.Buttons.LEFT) ? FlythroughScript.BREAK : 0) |
+                    (Gdx.input.isButtonJustPressed(Input.Buttons.RIGHT) ? FlythroughScript.PLACE : 0));
+            if (recording.getFrameCount() == MAX_RECORDED_FRAMES) {
+                Gdx.app.log("TadjikCraft", "Flythrough recording stopped after " + MAX_RECORDED_FRAMES + " frames");
+            }
+        }
+    }
 
-        Gdx.gl.glClearColor(skyR, skyG, skyB, 1f);
-        Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT | GL20.GL_DEPTH_BUFFER_BIT);
-        Gdx.gl.glEnable(GL20.GL_DEPTH_TEST);
+    /**
+     * Whether the world around the flythrough start has finished streaming and meshing for
+     * {@link #FLYTHROUGH_SETTLE_FRAMES} frames in a row. Once the flythrough is playing it stays settled.
+     */
+    private boolean isSettled() {
+        if (settledFrames >= FLYTHROUGH_SETTLE_FRAMES) {
+            return true;
+        }
+        boolean idle = simulation.isIdle() && meshPipeline.isIdle() && (lodTerrain == null || lodTerrain.isIdle());
+        settledFrames = idle ? settledFrames + 1 : 0;
+        return false;
+    }
 
-        camera.update();
+    private void playFlythroughFrame() {
+        int frame = flythroughFrame++ % flythrough.getFrameCount();
+        showFlythroughFrame(frame);
+        selectedBlock = BlockType.fromSlot(flythrough.getSlot(frame));
+        int actions = flythrough.getActions(frame);
+        handleBlocks((actions & FlythroughScript.BREAK) != 0, (actions & FlythroughScript.PLACE) != 0);
+        simulation.tick();
+    }
 
-        shader.bind();
-        shader.setUniformMatrix("u_projViewTrans", camera.combined);
+    private void showFlythroughFrame(int frame) {
+        simulation.teleport(flythrough.getX(frame), flythrough.getY(frame), flythrough.getZ(frame));
+        camera.position.set(flythrough.getX(frame), flythrough.getY(frame) + PLAYER_HEIGHT, flythrough.getZ(frame));
+        yaw = flythrough.getYaw(frame);
+        pitch = MathUtils.clamp(flythrough.getPitch(frame), -89f, 89f);
+        updateCameraDirection();
+    }
 
-        drawWorld(dayLight);
-        drawHud(dayLight);
+    private void finishFlythrough() {
+        String summary = frameTimings.summary() + memoryStats.summary(slabs) + coldCacheSummary() + lodSummary();
+        Gdx.app.log("TadjikCraft", "Flythrough of " + frameTimings.getCount() + " frames, seed " + settings.seed +
+            (settings.headless ? ", headless" : "") + "\n" + summary);
+        File report = settings.flythroughReport;
+        try {
+            frameTimings.writeCsv(report);
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(report.getPath() + ".summary.txt"), StandardCharsets.UTF_8))) {
+                out.print(summary);
+            }
+            Gdx.app.log("TadjikCraft", "Frame timings written to " + report.getAbsolutePath());
+        } catch (IOException e) {
+            Gdx.app.error("TadjikCraft", "Cannot write flythrough report " + report, e);
+        }
+        Gdx.app.exit();
     }
 
-    private void drawWorld(float dayLight) {
-        for (Map.Entry<BlockPos, BlockType> block : worldBlocks.entrySet()) {
-            BlockPos pos = block.getKey();
-            BlockType type = block.getValue();
+    /**
+     * Uploads finished chunk and distant terrain meshes within one shared budget, chunks first, and queues the
+     * distant tiles the camera now needs.
+     */
+    private void uploadMeshes() {
+        long start = System.nanoTime();
+        meshPipeline.uploadFinished(MESH_UPLOAD_BUDGET_NANOS);
+        if (lodTerrain != null) {
+            lodTerrain.update(camera.position, renderChunks);
+            long left = MESH_UPLOAD_BUDGET_NANOS - (System.nanoTime() - start);
+            if (left > 0) {
+                lodTerrain.uploadFinished(left);
+            }
+        }
+    }
 
-            if (isCompletelyHidden(pos)) {
+    /** Picks the chunks and distant tiles to draw and counts them for the HUD; no GL, so headless runs cull too. */
+    private void cullWorld() {
+        chunkCuller.update(renderChunks, camera);
+        Array<Chunk> visible = chunkCuller.getVisible();
+        drawnChunks = 0;
+        drawnMeshBytes = 0;
+        drawnVertices = 0;
+        for (int i = 0; i < visible.size; i++) {
+            Chunk chunk = visible.get(i);
+            if (isDrawnByLod(chunk)) {
                 continue;
             }
+            drawnChunks++;
+            drawnMeshBytes += chunk.getMeshBytes();
+            drawnVertices += chunk.vertexCount;
+        }
+        if (lodTerrain != null) {
+            lodTerrain.cull(camera);
+        }
+    }
 
-            modelMatrix.idt().translate(pos.x, pos.y, pos.z);
+    private boolean isDrawnByLod(Chunk chunk) {
+        return lodTerrain != null && lodTerrain.coversChunk(chunk.chunkX, chunk.chunkZ);
+    }
+
+    private void drawWorld(float dayLight) {
+        blockAtlas.getTexture().bind(0);
+        shader.setUniformi("u_texture", 0);
+        shader.setUniformf("u_atlasTiles", blockAtlas.getTilesPerRow());
+        shader.setUniformf("u_daylight", dayLight);
+        shader.setUniformf("u_cameraPosition", camera.position.x, camera.position.y, camera.position.z);
+        shader.setUniformf("u_fog", fogEnd * FOG_START, fogEnd);
+        shader.setUniformf("u_fogColor", skyColor.r, skyColor.g, skyColor.b);
+
+        cullWorld();
+        Array<Chunk> visible = chunkCuller.getVisible();
+        for (int i = 0; i < visible.size; i++) {
+            Chunk chunk = visible.get(i);
+            if (isDrawnByLod(chunk)) {
+                continue;
+            }
+            modelMatrix.setToTranslation(chunk.chunkX * Chunk.SIZE, 0f, chunk.chunkZ * Chunk.SIZE);
             shader.setUniformMatrix("u_model", modelMatrix);
-            terrainTexture.bind(0);
-            shader.setUniformi("u_texture", 0);
+            chunk.render(shader);
+        }
+        if (lodTerrain != null) {
+            Array<LodTerrain.Tile> tiles = lodTerrain.getVisible();
+            for (int i = 0; i < tiles.size; i++) {
+                LodTerrain.Tile tile = tiles.get(i);
+                // tile vertices count columns, see LodMesher
+                float originX = tile.tileX * LodTerrain.TILE_BLOCKS;
+                float originZ = tile.tileZ * LodTerrain.TILE_BLOCKS;
+                modelMatrix.setToTranslation(originX, 0f, originZ).scale(tile.meshScale, tile.meshScale, tile.meshScale);
+                shader.setUniformMatrix("u_model", modelMatrix);
+                tile.render(shader);
+            }
+        }
+    }
+
+    /** Writes the HUD lines into {@link #hudText}; no GL, so headless runs build them too. */
+    private void updateHudText(float dayLight) {
+        StringBuilder line = hudText.line(HUD_STATUS);
+        line.append("Selected: ").append(selectedBlock.name()).append(" | Blocks: ").append(snapshot.blockCount)
+            .append(" | Daylight: ").append(MathUtils.round(dayLight * 100f)).append("% | Mode: ")
+            .append(snapshot.flyMode ? "FLY" : (snapshot.onGround ? "GROUND" : "AIR"));
+
+        line = hudText.line(HUD_POSITION);
+        line.append("XYZ: ").append(MathUtils.floor(camera.position.x)).append(" / ").append(MathUtils.floor(camera.position.y))
+            .append(" / ").append(MathUtils.floor(camera.position.z))
+            .append(" | FPS: ").append(Gdx.graphics.getFramesPerSecond()).append(" | Remesh: ");
+        HudText.appendMillis(line, meshPipeline.getLastRemeshLatencyNanos()).append(" ms | Chunks: ")
+            .append(snapshot.loadedChunks).append(" loaded / ").append(snapshot.pendingChunks)
+            .append(" pending / ").append(snapshot.evictedChunks).append(" evicted | Gen: ")
+            .append(MathUtils.round(terrainGenerator.getChunksPerSecondPerCore())).append(" chunks/s/core");
+
+        line = hudText.line(HUD_DRAWN);
+        line.append("Drawn: ").append(drawnChunks).append(" chunks, ").append(drawnMeshBytes / 1024)
+            .append(" KB of vertices | Culled: ").append(chunkCuller.getFrustumCulled()).append(" outside view, ")
+            .append(chunkCuller.getOcclusionCulled()).append(" occluded");
+
+        line = hudText.line(HUD_SIMULATION);
+        line.append("Simulation: ").append(snapshot.ticksPerSecond).append(" ticks/s, ");
+        HudText.appendMillis(line, snapshot.tickNanos).append(" ms/tick, ");
+        HudText.appendMillis(line, snapshot.maxTickNanos).append(" ms max")
+            .append(simulation.isThreaded() ? "" : " (stepped)");
+
+        line = hudText.line(HUD_SAVE);
+        if (autosave != null) {
+            line.append("Save: ");
+            HudText.appendMillis(line, autosave.getLastSaveNanos()).append(" ms (snapshot ");
+            HudText.appendMillis(line, autosave.getLastSnapshotNanos()).append(" ms) | ")
+                .append(autosave.getChunksWritten()).append(" chunks, ").append(autosave.getBytesWritten() / 1024)
+                .append(" KB written | ").append(autosave.getQueuedCount()).append(" queued");
+        }
+
+        line = hudText.line(HUD_STORAGE);
+        if (slabs != null) {
+            long capacity = slabs.getCapacityBytes();
+            line.append("Off-heap: ").append(slabs.getSlabCount()).append(" slabs, ")
+                .append(slabs.getUsedBytes() >> 20).append(" / ").append(capacity >> 20).append(" MB used (")
+                .append(capacity == 0 ? 0 : MathUtils.round(100f * slabs.getUsedBytes() / capacity)).append("%)");
+        }
+
+        line = hudText.line(HUD_CACHE);
+        if (coldCache != null) {
+            long hits = coldCache.getHits();
+            long lookups = hits + coldCache.getMisses();
+            line.append("Cold: ").append(coldCache.getChunkCount()).append(" chunks, ")
+                .append(coldCache.getStoredBytes() / 1024).append(" KB (")
+                .append(MathUtils.round(coldCache.getCompressionRatio())).append(":1) | ")
+                .append(lookups == 0 ? 0 : MathUtils.round(100f * hits / lookups)).append("% hits | Promote ");
+            HudText.appendMillis(line, chunkStreamer.getAveragePromoteNanos()).append(" ms, generate ");
+            HudText.appendMillis(line, chunkStreamer.getAverageGenerateNanos()).append(" ms");
+        }
 
-            Color tint = type.tint;
-            shader.setUniformf("u_tint", tint.r * dayLight, tint.g * dayLight, tint.b * dayLight, 1f);
-            cubeMesh.render(shader, GL20.GL_TRIANGLES);
+        line = hudText.line(HUD_LOD);
+        if (lodTerrain != null) {
+            line.append("LOD: ").append(lodTerrain.getVisible().size).append(" / ").append(lodTerrain.getTileCount())
+                .append(" tiles to ").append(lodTerrain.getRadiusBlocks()).append(" blocks, ")
+                .append(lodTerrain.getDrawnVertices() / 1000).append("k vertices drawn (chunks ")
+                .append(drawnVertices / 1000).append("k) | ").append(lodTerrain.getQueuedTiles()).append(" queued, ");
+            HudText.appendMillis(line, lodTerrain.getAverageBuildNanos()).append(" ms/tile");
         }
     }
 
-    private boolean isCompletelyHidden(BlockPos pos) {
-        return worldBlocks.containsKey(new BlockPos(pos.x + 1, pos.y, pos.z))
-            && worldBlocks.containsKey(new BlockPos(pos.x - 1, pos.y, pos.z))
-            && worldBlocks.containsKey(new BlockPos(pos.x, pos.y + 1, pos.z))
-            && worldBlocks.containsKey(new BlockPos(pos.x, pos.y - 1, pos.z))
-            && worldBlocks.containsKey(new BlockPos(pos.x, pos.y, pos.z + 1))
-            && worldBlocks.containsKey(new BlockPos(pos.x, pos.y, pos.z - 1));
+    private String coldCacheSummary() {
+        if (coldCache == null) {
+            return "";
+        }
+        return String.format(Locale.ROOT, "cold cache %d chunks, %.1f MB, %.1f:1 | %d hits, %d misses, %d relit | "
+                + "promote %.3f ms, generate %.3f ms%n", coldCache.getChunkCount(), coldCache.getStoredBytes() / (1024.0 * 1024.0),
+            coldCache.getCompressionRatio(), coldCache.getHits(), coldCache.getMisses(), coldCache.getStaleLightCount(),
+            chunkStreamer.getAveragePromoteNanos() / 1e6, chunkStreamer.getAverageGenerateNanos() / 1e6);
     }
 
-    private void drawHud(float dayLight) {
+    private String lodSummary() {
+        if (lodTerrain == null) {
+            return "";
+        }
+        return String.format(Locale.ROOT, "lod %d tiles to %d blocks, %d vertices, %d drawn | chunks %d vertices drawn | "
+                + "build %.3f ms/tile%n", lodTerrain.getTileCount(), lodTerrain.getRadiusBlocks(), lodTerrain.getVertexCount(),
+            lodTerrain.getDrawnVertices(), drawnVertices, lodTerrain.getAverageBuildNanos() / 1e6);
+    }
+
+    private void drawHud() {
         batch.begin();
-        String status = "Mode: " + (flyMode ? "FLY" : (onGround ? "GROUND" : "AIR"));
-        font.draw(batch,
-            "WASD move | SPACE jump | SHIFT sprint | F fly | LMB break | RMB place",
-            12,
-            Gdx.graphics.getHeight() - 12);
-        font.draw(batch,
-            "Selected: " + selectedBlock.name() + " | Blocks: " + worldBlocks.size() + " | Daylight: " + MathUtils.round(dayLight * 100f) + "% | " + status,
-            12,
-            Gdx.graphics.getHeight() - 34);
-        font.draw(batch,
-            "XYZ: " + MathUtils.floor(camera.position.x) + " / " + MathUtils.floor(camera.position.y) + " / " + MathUtils.floor(camera.position.z) +
-                " | FPS: " + Gdx.graphics.getFramesPerSecond(),
-            12,
-            Gdx.graphics.getHeight() - 56);
+        int top = Gdx.graphics.getHeight();
+        hudText.draw(font, batch, HUD_CONTROLS, 12, top - 12);
+        hudText.draw(font, batch, HUD_STATUS, 12, top - 34);
+        hudText.draw(font, batch, HUD_POSITION, 12, top - 56);
+        hudText.draw(font, batch, HUD_DRAWN, 12, top - 78);
+        hudText.draw(font, batch, HUD_SIMULATION, 12, top - 100);
+        int y = top - 122;
+        if (autosave != null) {
+            hudText.draw(font, batch, HUD_SAVE, 12, y);
+            y -= 22;
+        }
+        if (slabs != null) {
+            hudText.draw(font, batch, HUD_STORAGE, 12, y);
+            y -= 22;
+        }
+        if (coldCache != null) {
+            hudText.draw(font, batch, HUD_CACHE, 12, y);
+            y -= 22;
+        }
+        if (lodTerrain != null) {
+            hudText.draw(font, batch, HUD_LOD, 12, y);
+        }
         batch.draw(hand, Gdx.graphics.getWidth() - 230, -42, 280, 280);
         batch.end();
 
@@ -222,7 +559,7 @@ public class TadjikCraftGame extends ApplicationAdapter {
         float baseY = 16f;
         for (int i = 0; i < 10; i++) {
             float x = baseX + i * 16f;
-            float healthPulse = onGround ? 1f : 0.75f;
+            float healthPulse = snapshot.onGround ? 1f : 0.75f;
             shapeRenderer.setColor(0.25f, 0.06f, 0.06f, 0.9f);
             shapeRenderer.rect(x, baseY, 12f, 12f);
             shapeRenderer.setColor(0.94f * healthPulse, 0.22f, 0.22f, 0.95f);
@@ -233,11 +570,11 @@ public class TadjikCraftGame extends ApplicationAdapter {
     private void drawHotbar() {
         float slot = 42f;
         float gap = 4f;
-        float barWidth = slot * 7f + gap * 6f;
+        float barWidth = slot * HOTBAR_SLOTS + gap * (HOTBAR_SLOTS - 1);
         float startX = (Gdx.graphics.getWidth() - barWidth) / 2f;
         float y = 18f;
 
-        for (int i = 0; i < 7; i++) {
+        for (int i = 0; i < HOTBAR_SLOTS; i++) {
             float x = startX + i * (slot + gap);
             boolean selected = selectedBlock.slot == i + 1;
             shapeRenderer.setColor(0.05f, 0.05f, 0.05f, 0.8f);
@@ -257,8 +594,10 @@ public class TadjikCraftGame extends ApplicationAdapter {
 
     private void handleModeSwitch() {
         if (Gdx.input.isKeyJustPressed(Input.Keys.F)) {
-            flyMode = !flyMode;
-            yVelocity = 0f;
+            simulation.submit(Simulation.Command.toggleFly());
+        }
+        if (profilerOverlay != null && Gdx.input.isKeyJustPressed(Input.Keys.F3)) {
+            profilerOverlay.toggle();
         }
         if (Gdx.input.isKeyJustPressed(Input.Keys.ESCAPE)) {
             Gdx.input.setCursorCatched(!Gdx.input.isCursorCatched());
@@ -274,7 +613,10 @@ public class TadjikCraftGame extends ApplicationAdapter {
         yaw -= Gdx.input.getDeltaX() * sensitivity;
         pitch -= Gdx.input.getDeltaY() * sensitivity;
         pitch = MathUtils.clamp(pitch, -89f, 89f);
+        updateCameraDirection();
+    }
 
+    private void updateCameraDirection() {
         tmp.set(
             MathUtils.cosDeg(yaw) * MathUtils.cosDeg(pitch),
             MathUtils.sinDeg(pitch),
@@ -285,176 +627,56 @@ public class TadjikCraftGame extends ApplicationAdapter {
         camera.up.set(Vector3.Y);
     }
 
-    private void handleMovement(float dt) {
-        float speed = (Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT) ? 11f : 7.5f) * dt;
-        Vector3 forward = new Vector3(camera.direction.x, 0f, camera.direction.z).nor();
-        Vector3 right = new Vector3(forward).crs(Vector3.Y).nor();
-
-        if (Gdx.input.isKeyPressed(Input.Keys.W)) {
-            camera.position.mulAdd(forward, speed);
-        }
-        if (Gdx.input.isKeyPressed(Input.Keys.S)) {
-            camera.position.mulAdd(forward, -speed);
+    /** Hands the movement keys to the simulation, which turns them into velocity on its next tick. */
+    private void handleMovement() {
+        float forwardX = camera.direction.x;
+        float forwardZ = camera.direction.z;
+        float length = (float) Math.sqrt(forwardX * forwardX + forwardZ * forwardZ);
+        if (length > 0f) {
+            forwardX /= length;
+            forwardZ /= length;
         }
-        if (Gdx.input.isKeyPressed(Input.Keys.A)) {
-            camera.position.mulAdd(right, -speed);
-        }
-        if (Gdx.input.isKeyPressed(Input.Keys.D)) {
-            camera.position.mulAdd(right, speed);
-        }
-
-        if (flyMode) {
-            if (Gdx.input.isKeyPressed(Input.Keys.SPACE)) {
-                camera.position.y += speed * 1.4f;
-            }
-            if (Gdx.input.isKeyPressed(Input.Keys.CONTROL_LEFT)) {
-                camera.position.y -= speed * 1.4f;
-            }
-        } else if (Gdx.input.isKeyJustPressed(Input.Keys.SPACE) && onGround) {
-            yVelocity = JUMP_SPEED;
-            onGround = false;
+        simulation.setMovement(axis(Input.Keys.W, Input.Keys.S), axis(Input.Keys.D, Input.Keys.A),
+            axis(Input.Keys.SPACE, Input.Keys.CONTROL_LEFT), Gdx.input.isKeyPressed(Input.Keys.SHIFT_LEFT),
+            forwardX, forwardZ);
+        if (!snapshot.flyMode && Gdx.input.isKeyJustPressed(Input.Keys.SPACE)) {
+            simulation.submit(Simulation.Command.jump());
         }
     }
 
-    private void applyGravity(float dt) {
-        yVelocity -= GRAVITY * dt;
-        camera.position.y += yVelocity * dt;
-
-        int feetX = MathUtils.floor(camera.position.x);
-        int feetZ = MathUtils.floor(camera.position.z);
-        int groundY = getTopSolidBlockY(feetX, feetZ);
-        float minY = groundY + PLAYER_HEIGHT;
-
-        if (camera.position.y <= minY) {
-            camera.position.y = minY;
-            yVelocity = 0f;
-            onGround = true;
-        } else {
-            onGround = false;
-        }
+    private static float axis(int positiveKey, int negativeKey) {
+        return (Gdx.input.isKeyPressed(positiveKey) ? 1f : 0f) - (Gdx.input.isKeyPressed(negativeKey) ? 1f : 0f);
     }
 
-    private int getTopSolidBlockY(int x, int z) {
-        for (int y = MAX_BUILD_HEIGHT; y >= 0; y--) {
-            if (worldBlocks.containsKey(new BlockPos(x, y, z))) {
-                return y + 1;
-            }
-        }
-        return 0;
+    /** Places the camera between the last two simulation ticks. */
+    private void updateCameraPosition(float alpha) {
+        camera.position.set((float) snapshot.lerpX(alpha), (float) snapshot.lerpY(alpha) + PLAYER_HEIGHT,
+            (float) snapshot.lerpZ(alpha));
     }
 
     private void handleBlockSelection() {
-        for (int i = 1; i <= 7; i++) {
+        for (int i = 1; i <= HOTBAR_SLOTS; i++) {
             if (Gdx.input.isKeyJustPressed(Input.Keys.NUM_0 + i)) {
                 selectedBlock = BlockType.fromSlot(i);
             }
         }
     }
 
-    private void handleBlocks() {
-        BlockPos target = getTargetedBlock(true);
-        if (Gdx.input.isButtonJustPressed(Input.Buttons.LEFT) && target != null) {
-            worldBlocks.remove(target);
-        }
-
-        if (Gdx.input.isButtonJustPressed(Input.Buttons.RIGHT)) {
-            BlockPos placePos = getTargetedBlock(false);
-            if (placePos != null && !intersectsPlayer(placePos)) {
-                worldBlocks.put(placePos, selectedBlock);
-            }
-        }
-    }
-
-    private BlockPos getTargetedBlock(boolean solidBlock) {
-        Vector3 origin = new Vector3(camera.position.x, camera.position.y - (PLAYER_HEIGHT - PLAYER_EYE_OFFSET), camera.position.z);
-        Vector3 dir = new Vector3(camera.direction).nor();
-
-        for (float d = 0.2f; d <= BLOCK_REACH; d += 0.1f) {
-            int x = MathUtils.floor(origin.x + dir.x * d);
-            int y = MathUtils.floor(origin.y + dir.y * d);
-            int z = MathUtils.floor(origin.z + dir.z * d);
-            BlockPos pos = new BlockPos(x, y, z);
-            boolean occupied = worldBlocks.containsKey(pos);
-            if (solidBlock && occupied) {
-                return pos;
-            }
-            if (!solidBlock && !occupied && d > 0.25f) {
-                BlockPos prev = new BlockPos(
-                    MathUtils.floor(origin.x + dir.x * (d - 0.12f)),
-                    MathUtils.floor(origin.y + dir.y * (d - 0.12f)),
-                    MathUtils.floor(origin.z + dir.z * (d - 0.12f))
-                );
-                if (worldBlocks.containsKey(prev)) {
-                    return pos;
-                }
-            }
+    /** Queues the edit for the simulation, which casts the view ray against the world as it is then. */
+    private void handleBlocks(boolean breaking, boolean placing) {
+        if (!breaking && !placing) {
+            return;
         }
-        return null;
-    }
-
-    private boolean intersectsPlayer(BlockPos p) {
-        float px = camera.position.x;
-        float py = camera.position.y;
-        float pz = camera.position.z;
-        return px > p.x - 0.25f && px < p.x + 1.25f
-            && pz > p.z - 0.25f && pz < p.z + 1.25f
-            && py > p.y - 0.05f && py < p.y + 2.1f;
-    }
-
-    private Mesh createCubeMesh() {
-        float[] vertices = {
-            // Front
-            0, 0, 1, 0, 0,
-            1, 0, 1, 1, 0,
-            1, 1, 1, 1, 1,
-            0, 1, 1, 0, 1,
-            // Back
-            1, 0, 0, 0, 0,
-            0, 0, 0, 1, 0,
-            0, 1, 0, 1, 1,
-            1, 1, 0, 0, 1,
-            // Left
-            0, 0, 0, 0, 0,
-            0, 0, 1, 1, 0,
-            0, 1, 1, 1, 1,
-            0, 1, 0, 0, 1,
-            // Right
-            1, 0, 1, 0, 0,
-            1, 0, 0, 1, 0,
-            1, 1, 0, 1, 1,
-            1, 1, 1, 0, 1,
-            // Top
-            0, 1, 1, 0, 0,
-            1, 1, 1, 1, 0,
-            1, 1, 0, 1, 1,
-            0, 1, 0, 0, 1,
-            // Bottom
-            0, 0, 0, 0, 0,
-            1, 0, 0, 1, 0,
-            1, 0, 1, 1, 1,
-            0, 0, 1, 0, 1
-        };
-
-        short[] indices = {
-            0, 1, 2, 2, 3, 0,
-            4, 5, 6, 6, 7, 4,
-            8, 9, 10, 10, 11, 8,
-            12, 13, 14, 14, 15, 12,
-            16, 17, 18, 18, 19, 16,
-            20, 21, 22, 22, 23, 20
-        };
-
-        Mesh mesh = new Mesh(true, vertices.length / 5, indices.length,
-            new VertexAttribute(VertexAttributes.Usage.Position, 3, "a_position"),
-            new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, "a_texCoord0")
-        );
-        mesh.setVertices(vertices);
-        mesh.setIndices(indices);
-        return mesh;
+        eye.set(camera.position.x, camera.position.y - (PLAYER_HEIGHT - PLAYER_EYE_OFFSET), camera.position.z);
+        simulation.submit(breaking ? Simulation.Command.breakBlock(eye, camera.direction)
+            : Simulation.Command.placeBlock(eye, camera.direction, selectedBlock));
     }
 
     @Override
     public void resize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
         camera.viewportWidth = width;
         camera.viewportHeight = height;
         camera.update();
@@ -462,68 +684,47 @@ public class TadjikCraftGame extends ApplicationAdapter {
 
     @Override
     public void dispose() {
-        cubeMesh.dispose();
-        shader.dispose();
-        terrainTexture.dispose();
-        hand.dispose();
-        batch.dispose();
-        font.dispose();
-        shapeRenderer.dispose();
-    }
-
-    private enum BlockType {
-        GRASS(1, new Color(0.62f, 0.82f, 0.55f, 1f)),
-        DIRT(2, new Color(0.70f, 0.54f, 0.41f, 1f)),
-        STONE(3, new Color(0.70f, 0.70f, 0.73f, 1f)),
-        SAND(4, new Color(0.90f, 0.84f, 0.58f, 1f)),
-        WOOD(5, new Color(0.66f, 0.50f, 0.30f, 1f)),
-        LEAVES(6, new Color(0.44f, 0.72f, 0.40f, 1f)),
-        SNOW(7, new Color(0.95f, 0.96f, 1.0f, 1f));
-
-        final int slot;
-        final Color tint;
-
-        BlockType(int slot, Color tint) {
-            this.slot = slot;
-            this.tint = tint;
+        if (recording != null) {
+            try {
+                recording.write(settings.recordFlythrough);
+                Gdx.app.log("TadjikCraft", "Recorded " + recording.getFrameCount() + " frames to " + settings.recordFlythrough);
+            } catch (IOException e) {
+                Gdx.app.error("TadjikCraft", "Cannot write flythrough " + settings.recordFlythrough, e);
+            }
         }
-
-        static BlockType fromSlot(int slot) {
-            for (BlockType value : values()) {
-                if (value.slot == slot) {
-                    return value;
+        // stops the simulation thread; from here on the world belongs to this thread
+        simulation.dispose();
+        if (autosave != null) {
+            autosave.saveAll(world.getChunks());
+            autosave.dispose();
+            // a writer that is still going would fail on closed files; dispose() has reported it
+            if (autosave.isStopped()) {
+                try {
+                    regionStorage.close();
+                } catch (IOException e) {
+                    Gdx.app.error("TadjikCraft", "Failed to close world " + regionStorage.getDirectory(), e);
                 }
             }
-            return GRASS;
         }
-    }
-
-    private static final class BlockPos {
-        final int x;
-        final int y;
-        final int z;
-
-        BlockPos(int x, int y, int z) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
+        meshPipeline.dispose();
+        if (lodTerrain != null) {
+            lodTerrain.dispose();
         }
-
-        @Override
-        public boolean equals(Object other) {
-            if (this == other) return true;
-            if (!(other instanceof BlockPos)) return false;
-            BlockPos pos = (BlockPos) other;
-            return x == pos.x && y == pos.y && z == pos.z;
+        renderChunks.dispose();
+        if (coldCache != null) {
+            coldCache.dispose();
         }
-
-        @Override
-        public int hashCode() {
-            int h = 17;
-            h = 31 * h + x;
-            h = 31 * h + y;
-            h = 31 * h + z;
-            return h;
+        if (slabs != null) {
+            SectionSlabs.install(null);
+        }
+        if (settings.headless) {
+            return;
         }
+        shader.dispose();
+        blockAtlas.dispose();
+        hand.dispose();
+        batch.dispose();
+        font.dispose();
+        shapeRenderer.dispose();
     }
 }
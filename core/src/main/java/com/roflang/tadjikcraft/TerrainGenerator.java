@@ -0,0 +1,305 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.badlogic.gdx.utils.IntArray;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deterministic terrain from a world seed. {@link #generate(int, int)} depends only on the seed and the chunk
+ * coordinate, so chunks can be generated on any thread, in any order, and always come out bit-identical.
+ *
+ * <p>Generation runs in two passes. The base pass lays out terrain: height is layered simplex noise (continents
+ * plus hills) and temperature and humidity noise pick the biome, which sets the surface block and how rugged
+ * the hills are. The decoration pass then plants trees; canopy blocks that fall into a neighbouring chunk are
+ * recorded in a {@link SpillEdits} instead of being written, and {@link PendingEdits} applies them when that
+ * neighbour is in the world. Both passes only read the seed and this chunk, so workers never wait on each other.
+ */
+final class TerrainGenerator {
+
+    private static final float TREE_CHANCE = 0.02f;
+    private static final int MIN_HEIGHT = 2;
+    private static final int MAX_HEIGHT = Chunk.HEIGHT - 12;
+
+    private final long seed;
+    private final SimplexNoise continentNoise;
+    private final SimplexNoise hillNoise;
+    private final SimplexNoise temperatureNoise;
+    private final SimplexNoise humidityNoise;
+
+    private final AtomicLong generatedChunks = new AtomicLong();
+    private final AtomicLong generationNanos = new AtomicLong();
+
+    TerrainGenerator(long seed) {
+        this.seed = seed;
+        continentNoise = new SimplexNoise(mix(seed, 1));
+        hillNoise = new SimplexNoise(mix(seed, 2));
+        temperatureNoise = new SimplexNoise(mix(seed, 3));
+        humidityNoise = new SimplexNoise(mix(seed, 4));
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    Chunk generate(int chunkX, int chunkZ) {
+        return generate(chunkX, chunkZ, null);
+    }
+
+    /** Generates a chunk; decoration that spills over the border goes to {@code spill}, or is dropped if null. */
+    Chunk generate(int chunkX, int chunkZ, SpillEdits spill) {
+        long start = System.nanoTime();
+        Chunk chunk = new Chunk(chunkX, chunkZ);
+        int[] heights = new int[Chunk.SIZE * Chunk.SIZE];
+        BlockType[] surfaces = new BlockType[Chunk.SIZE * Chunk.SIZE];
+
+        generateBase(chunk, heights, surfaces);
+        decorate(chunk, heights, surfaces, spill);
+
+        generationNanos.addAndGet(System.nanoTime() - start);
+        generatedChunks.incrementAndGet();
+        return chunk;
+    }
+
+    /**
+     * Re-emits the decoration a saved chunk spills into its neighbours, without touching the chunk itself.
+     * Only columns that win the tree roll are evaluated, so this is far cheaper than generating the chunk.
+     * The random sequence matches {@link #decorate}, so the trees are the ones the chunk had originally.
+     */
+    void respill(SpillEdits spill) {
+        int chunkX = spill.chunkX;
+        int chunkZ = spill.chunkZ;
+        RandomXS128 random = new RandomXS128(mix(seed, World.chunkKey(chunkX, chunkZ)));
+        for (int localX = 0; localX < Chunk.SIZE; localX++) {
+            for (int localZ = 0; localZ < Chunk.SIZE; localZ++) {
+                if (random.nextFloat() >= TREE_CHANCE) {
+                    continue;
+                }
+                int x = chunkX * Chunk.SIZE + localX;
+                int z = chunkZ * Chunk.SIZE + localZ;
+                double temperature = temperature(x, z);
+                int height = surfaceHeight(x, z, temperature);
+                if (biomeSurface(temperature, humidity(x, z)) == BlockType.GRASS && height + 8 < Chunk.HEIGHT) {
+                    spawnTree(null, spill, random, x, height + 1, z);
+                }
+            }
+        }
+    }
+
+    private void generateBase(Chunk chunk, int[] heights, BlockType[] surfaces) {
+        for (int localX = 0; localX < Chunk.SIZE; localX++) {
+            for (int localZ = 0; localZ < Chunk.SIZE; localZ++) {
+                int x = chunk.chunkX * Chunk.SIZE + localX;
+                int z = chunk.chunkZ * Chunk.SIZE + localZ;
+
+                double temperature = temperature(x, z);
+                BlockType surface = biomeSurface(temperature, humidity(x, z));
+                int height = surfaceHeight(x, z, temperature);
+                heights[localZ * Chunk.SIZE + localX] = height;
+                surfaces[localZ * Chunk.SIZE + localX] = surface;
+
+                for (int y = 0; y <= height; y++) {
+                    BlockType type;
+                    if (y == height) {
+                        type = surface;
+                    } else if (y > height - 3) {
+                        type = surface == BlockType.SAND ? BlockType.SAND : BlockType.DIRT;
+                    } else {
+                        type = BlockType.STONE;
+                    }
+                    chunk.setBlock(localX, y, localZ, type.id);
+                }
+            }
+        }
+    }
+
+    private void decorate(Chunk chunk, int[] heights, BlockType[] surfaces, SpillEdits spill) {
+        RandomXS128 random = new RandomXS128(mix(seed, World.chunkKey(chunk.chunkX, chunk.chunkZ)));
+        for (int localX = 0; localX < Chunk.SIZE; localX++) {
+            for (int localZ = 0; localZ < Chunk.SIZE; localZ++) {
+                int height = heights[localZ * Chunk.SIZE + localX];
+                boolean roll = random.nextFloat() < TREE_CHANCE;
+                if (roll && surfaces[localZ * Chunk.SIZE + localX] == BlockType.GRASS && height + 8 < Chunk.HEIGHT) {
+                    spawnTree(chunk, spill, random,
+                        chunk.chunkX * Chunk.SIZE + localX, height + 1, chunk.chunkZ * Chunk.SIZE + localZ);
+                }
+            }
+        }
+    }
+
+    /** Y of the top terrain block at world column (x, z), ignoring trees. */
+    int surfaceHeight(int x, int z) {
+        return surfaceHeight(x, z, temperature(x, z));
+    }
+
+    BlockType surfaceBlock(int x, int z) {
+        return biomeSurface(temperature(x, z), humidity(x, z));
+    }
+
+    /**
+     * {@link #surfaceHeight(int, int)} and the id of {@link #surfaceBlock(int, int)} in one call, packed as
+     * {@code height << 8 | id}, for {@link LodMesher}, which samples whole regions without generating them.
+     */
+    int surfaceColumn(int x, int z) {
+        double temperature = temperature(x, z);
+        return surfaceHeight(x, z, temperature) << 8 | biomeSurface(temperature, humidity(x, z)).id;
+    }
+
+    /**
+     * Generates a {@code width} x {@code depth} block of chunks starting at (minChunkX, minChunkZ) on
+     * {@code pool}, including decoration spilling between them. The result is indexed {@code [dx * depth + dz]}
+     * and is identical for any parallelism.
+     */
+    Chunk[] generateRegion(ForkJoinPool pool, int minChunkX, int minChunkZ, int width, int depth) {
+        Chunk[] result = new Chunk[width * depth];
+        SpillEdits[] spills = new SpillEdits[result.length];
+        pool.invoke(new RegionTask(result, spills, minChunkX, minChunkZ, depth, 0, result.length));
+
+        for (int i = 0; i < spills.length; i++) {
+            int x = i / depth;
+            int z = i % depth;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    IntArray edits = spills[i].get(dx, dz);
+                    if (edits != null && x + dx >= 0 && x + dx < width && z + dz >= 0 && z + dz < depth) {
+                        SpillEdits.applyTo(result[(x + dx) * depth + z + dz], edits);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    long getGeneratedChunks() {
+        return generatedChunks.get();
+    }
+
+    /** Chunks per second of generator CPU time, i.e. the throughput of a single core. */
+    float getChunksPerSecondPerCore() {
+        long nanos = generationNanos.get();
+        return nanos == 0 ? 0f : generatedChunks.get() * 1_000_000_000f / nanos;
+    }
+
+    private int surfaceHeight(int x, int z, double temperature) {
+        double continent = continentNoise.fractal(x * 0.004, z * 0.004, 4, 0.5);
+        double hills = hillNoise.fractal(x * 0.02, z * 0.02, 3, 0.5);
+
+        // cold regions turn mountainous, hot ones flatten out into dunes
+        double rugged = 5.0 + 10.0 * clamp01((-temperature - 0.1) / 0.4);
+        rugged *= 1.0 - 0.6 * clamp01((temperature - 0.2) / 0.3);
+
+        int height = (int) Math.floor(14.0 + continent * 8.0 + hills * rugged);
+        return Math.max(MIN_HEIGHT, Math.min(MAX_HEIGHT, height));
+    }
+
+    private double temperature(int x, int z) {
+        return temperatureNoise.fractal(x * 0.0025, z * 0.0025, 2, 0.5);
+    }
+
+    private double humidity(int x, int z) {
+        return humidityNoise.fractal(x * 0.003, z * 0.003, 2, 0.5);
+    }
+
+    private static double clamp01(double value) {
+        return value < 0 ? 0 : value > 1 ? 1 : value;
+    }
+
+    private static BlockType biomeSurface(double temperature, double humidity) {
+        if (temperature < -0.35) {
+            return BlockType.SNOW;
+        }
+        if (temperature > 0.3 && humidity < 0.0) {
+            return BlockType.SAND;
+        }
+        return BlockType.GRASS;
+    }
+
+    private static void spawnTree(Chunk chunk, SpillEdits spill, RandomXS128 random, int baseX, int baseY, int baseZ) {
+        int trunkHeight = 3 + random.nextInt(3);
+        for (int i = 0; i < trunkHeight; i++) {
+            place(chunk, spill, baseX, baseY + i, baseZ, BlockType.WOOD.id);
+        }
+
+        int top = baseY + trunkHeight;
+        for (int ox = -2; ox <= 2; ox++) {
+            for (int oy = -1; oy <= 2; oy++) {
+                for (int oz = -2; oz <= 2; oz++) {
+                    int dist = Math.abs(ox) + Math.abs(oz) + Math.abs(oy);
+                    if (dist <= 4) {
+                        place(chunk, spill, baseX + ox, top + oy, baseZ + oz, BlockType.LEAVES.id);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Writes a decoration block, or records it in {@code spill} if it is outside the chunk. */
+    private static void place(Chunk chunk, SpillEdits spill, int x, int y, int z, int id) {
+        if (chunk == null) {
+            // re-spilling a saved chunk: only writes into neighbours matter
+            if ((x >> 4) != spill.chunkX || (z >> 4) != spill.chunkZ) {
+                spill.add(x, y, z, id);
+            }
+            return;
+        }
+        if ((x >> 4) != chunk.chunkX || (z >> 4) != chunk.chunkZ) {
+            if (spill != null) {
+                spill.add(x, y, z, id);
+            }
+            return;
+        }
+        int localX = x & 15;
+        int localZ = z & 15;
+        if (SpillEdits.canReplace(chunk.getBlock(localX, y, localZ), id)) {
+            chunk.setBlock(localX, y, localZ, id);
+        }
+    }
+
+    /** SplitMix64 finaliser over seed and salt; used to derive independent sub-seeds. */
+    static long mix(long seed, long salt) {
+        long z = seed + salt * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private final class RegionTask extends RecursiveAction {
+        private static final int THRESHOLD = 4;
+
+        private final Chunk[] result;
+        private final SpillEdits[] spills;
+        private final int minChunkX;
+        private final int minChunkZ;
+        private final int depth;
+        private final int from;
+        private final int to;
+
+        RegionTask(Chunk[] result, SpillEdits[] spills, int minChunkX, int minChunkZ, int depth, int from, int to) {
+            this.result = result;
+            this.spills = spills;
+            this.minChunkX = minChunkX;
+            this.minChunkZ = minChunkZ;
+            this.depth = depth;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    int chunkX = minChunkX + i / depth;
+                    int chunkZ = minChunkZ + i % depth;
+                    spills[i] = new SpillEdits(chunkX, chunkZ);
+                    result[i] = generate(chunkX, chunkZ, spills[i]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RegionTask(result, spills, minChunkX, minChunkZ, depth, from, mid),
+                new RegionTask(result, spills, minChunkX, minChunkZ, depth, mid, to));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.roflang.tadjikcraft;
+
+/**
+ * Exact voxel ray traversal (Amanatides and Woo): the ray visits every block it passes through, in order, and
+ * stops at the first solid one. Unlike sampling points along the ray it never skips a corner, and it costs
+ * one step per block crossed instead of ten.
+ *
+ * <p>The last result is kept in the instance's fields, so a query allocates nothing. An instance is not
+ * thread safe; give each thread its own.
+ */
+final class VoxelRaycaster {
+
+    /** Ints written per ray by {@link #castAll}: hit x, y, z and the entered face, or -1 for a miss. */
+    static final int HIT_STRIDE = 4;
+    /** Floats read per ray by {@link #castAll}: origin x, y, z and direction x, y, z. */
+    static final int RAY_STRIDE = 6;
+
+    /** Hit block of the last successful {@link #cast}. */
+    int hitX;
+    int hitY;
+    int hitZ;
+    /** Outward normal of the face the ray entered the hit block through; all zero if it started inside it. */
+    int normalX;
+    int normalY;
+    int normalZ;
+    /** Distance along the ray to the hit. */
+    float distance;
+
+    /**
+     * Casts a ray up to {@code maxDistance} and returns whether it hit a solid block. {@code (dirX, dirY, dirZ)}
+     * need not be normalised.
+     */
+    boolean cast(World world, float originX, float originY, float originZ, float dirX, float dirY, float dirZ,
+                 float maxDistance) {
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        if (length == 0f) {
+            return false;
+        }
+        dirX /= length;
+        dirY /= length;
+        dirZ /= length;
+
+        int x = (int) Math.floor(originX);
+        int y = (int) Math.floor(originY);
+        int z = (int) Math.floor(originZ);
+        int stepX = dirX > 0f ? 1 : dirX < 0f ? -1 : 0;
+        int stepY = dirY > 0f ? 1 : dirY < 0f ? -1 : 0;
+        int stepZ = dirZ > 0f ? 1 : dirZ < 0f ? -1 : 0;
+
+        // distance along the ray between two grid lines, and to the next grid line, on each axis
+        float deltaX = stepX == 0 ? Float.POSITIVE_INFINITY : Math.abs(1f / dirX);
+        float deltaY = stepY == 0 ? Float.POSITIVE_INFINITY : Math.abs(1f / dirY);
+        float deltaZ = stepZ == 0 ? Float.POSITIVE_INFINITY : Math.abs(1f / dirZ);
+        float nextX = stepX > 0 ? (x + 1 - originX) * deltaX : stepX < 0 ? (originX - x) * deltaX : Float.POSITIVE_INFINITY;
+        float nextY = stepY > 0 ? (y + 1 - originY) * deltaY : stepY < 0 ? (originY - y) * deltaY : Float.POSITIVE_INFINITY;
+        float nextZ = stepZ > 0 ? (z + 1 - originZ) * deltaZ : stepZ < 0 ? (originZ - z) * deltaZ : Float.POSITIVE_INFINITY;
+
+        int faceX = 0;
+        int faceY = 0;
+        int faceZ = 0;
+        float t = 0f;
+        while (true) {
+            if (world.isSolid(x, y, z)) {
+                hitX = x;
+                hitY = y;
+                hitZ = z;
+                normalX = faceX;
+                normalY = faceY;
+                normalZ = faceZ;
+                distance = t;
+                return true;
+            }
+
+            if (nextX < nextY && nextX < nextZ) {
+                t = nextX;
+                x += stepX;
+                nextX += deltaX;
+                faceX = -stepX;
+                faceY = 0;
+                faceZ = 0;
+            } else if (nextY < nextZ) {
+                t = nextY;
+                y += stepY;
+                nextY += deltaY;
+                faceX = 0;
+                faceY = -stepY;
+                faceZ = 0;
+            } else {
+                t = nextZ;
+                z += stepZ;
+                nextZ += deltaZ;
+                faceX = 0;
+                faceY = 0;
+                faceZ = -stepZ;
+            }
+            if (t > maxDistance) {
+                return false;
+            }
+            // nothing to hit above or below the world once the ray is heading further out
+            if ((y < 0 && stepY <= 0) || (y >= Chunk.HEIGHT && stepY >= 0)) {
+                return false;
+            }
+        }
+    }
+
+    /** Whether no solid block lies between two points. The block containing the end point may be solid. */
+    boolean hasLineOfSight(World world, float fromX, float fromY, float fromZ, float toX, float toY, float toZ) {
+        float dx = toX - fromX;
+        float dy = toY - fromY;
+        float dz = toZ - fromZ;
+        float length = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (!cast(world, fromX, fromY, fromZ, dx, dy, dz, length)) {
+            return true;
+        }
+        return hitX == (int) Math.floor(toX) && hitY == (int) Math.floor(toY) && hitZ == (int) Math.floor(toZ);
+    }
+
+    /**
+     * Casts {@code rayCount} rays packed in {@code rays} ({@link #RAY_STRIDE} floats each) and writes
+     * {@link #HIT_STRIDE} ints per ray to {@code hits}: the hit block and its entered face as a
+     * {@link SectionVisibility} face index, or a face of -1 for a miss. Returns the number of hits.
+     */
+    int castAll(World world, float[] rays, int rayCount, float maxDistance, int[] hits) {
+        int hitCount = 0;
+        for (int i = 0; i < rayCount; i++) {
+            int ray = i * RAY_STRIDE;
+            int out = i * HIT_STRIDE;
+            if (cast(world, rays[ray], rays[ray + 1], rays[ray + 2], rays[ray + 3], rays[ray + 4], rays[ray + 5], maxDistance)) {
+                hits[out] = hitX;
+                hits[out + 1] = hitY;
+                hits[out + 2] = hitZ;
+                hits[out + 3] = getFace();
+                hitCount++;
+            } else {
+                hits[out + 3] = -1;
+            }
+        }
+        return hitCount;
+    }
+
+    /** Entered face of the last hit as a {@link SectionVisibility} face index; -1 if the ray started inside it. */
+    int getFace() {
+        if (normalX != 0) {
+            return normalX < 0 ? SectionVisibility.WEST : SectionVisibility.EAST;
+        }
+        if (normalY != 0) {
+            return normalY < 0 ? SectionVisibility.DOWN : SectionVisibility.UP;
+        }
+        if (normalZ != 0) {
+            return normalZ < 0 ? SectionVisibility.NORTH : SectionVisibility.SOUTH;
+        }
+        return -1;
+    }
+}
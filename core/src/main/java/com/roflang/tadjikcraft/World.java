@@ -0,0 +1,344 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Block store keyed by chunk coordinates. All accessors take primitive world coordinates and never
+ * allocate; reads outside the loaded area or the build height return {@link BlockType#AIR}.
+ *
+ * <p>Every change marks the owning chunk dirty, plus the neighbouring chunk when the block sits on a chunk
+ * border. A chunk is listed once no matter how many of its blocks change before {@link #getDirtyChunks()}
+ * is drained.
+ *
+ * <p>Owned by the simulation thread. Chunks coming and going are reported to a {@link ChunkListener}, which is
+ * how the render thread learns which chunks to draw and when to free their meshes.
+ */
+final class World {
+
+    /** Told about chunks joining and leaving the world, on the thread that changes it. */
+    interface ChunkListener {
+        void chunkAdded(Chunk chunk);
+
+        void chunkRemoved(Chunk chunk);
+    }
+
+    /** Told about every block that changes in a loaded chunk, after the change. */
+    interface BlockListener {
+        void blockChanged(int x, int y, int z, int id);
+
+        /** Many blocks of the chunk changed at once, see {@link WorldEdit}; they are not reported one by one. */
+        void chunkEdited(Chunk chunk);
+    }
+
+    private final LongMap<Chunk> chunks = new LongMap<>();
+    private final Array<Chunk> dirtyChunks = new Array<>(false, 64);
+    /** {@code null} when the world is kept without light. */
+    private final LightEngine light;
+
+    private Chunk lastChunk;
+    private int blockCount;
+    private ChunkListener listener;
+    private final Array<BlockListener> blockListeners = new Array<>(false, 2);
+
+    World() {
+        this(true);
+    }
+
+    /** @param lit whether chunks are lit; a world nobody draws, like a {@link WorldServer}'s, can do without */
+    World(boolean lit) {
+        light = lit ? new LightEngine(this) : null;
+    }
+
+    void setChunkListener(ChunkListener listener) {
+        this.listener = listener;
+    }
+
+    void addBlockListener(BlockListener blockListener) {
+        blockListeners.add(blockListener);
+    }
+
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xffffffffL);
+    }
+
+    static int keyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    static int keyZ(long key) {
+        return (int) key;
+    }
+
+    Chunk getChunk(int chunkX, int chunkZ) {
+        Chunk last = lastChunk;
+        if (last != null && last.chunkX == chunkX && last.chunkZ == chunkZ) {
+            return last;
+        }
+        Chunk chunk = chunks.get(chunkKey(chunkX, chunkZ));
+        if (chunk != null) {
+            lastChunk = chunk;
+        }
+        return chunk;
+    }
+
+    Chunk getOrCreateChunk(int chunkX, int chunkZ) {
+        Chunk chunk = getChunk(chunkX, chunkZ);
+        if (chunk == null) {
+            chunk = new Chunk(chunkX, chunkZ);
+            addChunk(chunk);
+        }
+        return chunk;
+    }
+
+    boolean isChunkLoaded(int chunkX, int chunkZ) {
+        return getChunk(chunkX, chunkZ) != null;
+    }
+
+    /** Adds a chunk built elsewhere, e.g. by a generator thread. Any chunk already at its position is replaced. */
+    void addChunk(Chunk chunk) {
+        Chunk replaced = chunks.put(chunkKey(chunk.chunkX, chunk.chunkZ), chunk);
+        if (replaced != null) {
+            detach(replaced);
+        }
+        blockCount += chunk.getBlockCount();
+        lastChunk = chunk;
+
+        // neighbours meshed their shared border as open air until now, diagonal ones their corner's occlusion
+        markAroundDirty(chunk);
+        if (light != null) {
+            light.stitch(chunk);
+        }
+        if (listener != null) {
+            listener.chunkAdded(chunk);
+        }
+    }
+
+    /**
+     * Removes a chunk and returns it, or {@code null} if it was not loaded. Its mesh is freed by whoever
+     * listens for removed chunks.
+     */
+    Chunk removeChunk(int chunkX, int chunkZ) {
+        Chunk chunk = chunks.remove(chunkKey(chunkX, chunkZ));
+        if (chunk != null) {
+            detach(chunk);
+        }
+        return chunk;
+    }
+
+    private void detach(Chunk chunk) {
+        blockCount -= chunk.getBlockCount();
+        if (lastChunk == chunk) {
+            lastChunk = null;
+        }
+        if (chunk.meshDirty) {
+            chunk.meshDirty = false;
+            dirtyChunks.removeValue(chunk, true);
+        }
+        if (chunk.pendingMeshJob != null) {
+            chunk.pendingMeshJob.cancelled = true;
+            chunk.pendingMeshJob = null;
+        }
+        if (listener != null) {
+            listener.chunkRemoved(chunk);
+        }
+    }
+
+    LongMap.Values<Chunk> getChunks() {
+        return chunks.values();
+    }
+
+    int getBlock(int x, int y, int z) {
+        if (y < 0 || y >= Chunk.HEIGHT) {
+            return BlockType.AIR;
+        }
+        Chunk chunk = getChunk(x >> 4, z >> 4);
+        return chunk == null ? BlockType.AIR : chunk.getBlock(x & 15, y, z & 15);
+    }
+
+    BlockType getBlockType(int x, int y, int z) {
+        return BlockType.byId(getBlock(x, y, z));
+    }
+
+    boolean isSolid(int x, int y, int z) {
+        return getBlock(x, y, z) != BlockType.AIR;
+    }
+
+    /** Y of the top non-air block at column (x, z), or -1 if the column is empty or not loaded. */
+    int getTopBlockY(int x, int z) {
+        Chunk chunk = getChunk(x >> 4, z >> 4);
+        return chunk == null ? -1 : chunk.getTopBlockY(x & 15, z & 15);
+    }
+
+    /**
+     * Copies the top block y of every column in a {@code width} x {@code depth} area starting at (minX, minZ)
+     * into {@code out}, row by row ({@code out[dz * width + dx]}). Empty and unloaded columns read -1. Each
+     * chunk is looked up once, so this is much cheaper than calling {@link #getTopBlockY} per column.
+     */
+    void getHeightmap(int minX, int minZ, int width, int depth, short[] out) {
+        int maxX = minX + width - 1;
+        int maxZ = minZ + depth - 1;
+        for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+            for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+                Chunk chunk = getChunk(chunkX, chunkZ);
+                int fromX = Math.max(minX, chunkX * Chunk.SIZE);
+                int toX = Math.min(maxX, chunkX * Chunk.SIZE + Chunk.SIZE - 1);
+                int fromZ = Math.max(minZ, chunkZ * Chunk.SIZE);
+                int toZ = Math.min(maxZ, chunkZ * Chunk.SIZE + Chunk.SIZE - 1);
+                for (int z = fromZ; z <= toZ; z++) {
+                    int row = (z - minZ) * width - minX;
+                    for (int x = fromX; x <= toX; x++) {
+                        out[row + x] = (short) (chunk == null ? -1 : chunk.getTopBlockY(x & 15, z & 15));
+                    }
+                }
+            }
+        }
+    }
+
+    void setBlock(int x, int y, int z, BlockType type) {
+        setBlock(x, y, z, type == null ? BlockType.AIR : type.id);
+    }
+
+    /** Stores {@code id} and returns the previous id. Writes outside the build height are ignored. */
+    int setBlock(int x, int y, int z, int id) {
+        if (y < 0 || y >= Chunk.HEIGHT) {
+            return BlockType.AIR;
+        }
+        Chunk chunk = id == BlockType.AIR ? getChunk(x >> 4, z >> 4) : getOrCreateChunk(x >> 4, z >> 4);
+        if (chunk == null) {
+            return BlockType.AIR;
+        }
+
+        int localX = x & 15;
+        int localZ = z & 15;
+        int previous = chunk.setBlock(localX, y, localZ, id);
+        if (previous == id) {
+            return previous;
+        }
+        if (previous == BlockType.AIR) {
+            blockCount++;
+        } else if (id == BlockType.AIR) {
+            blockCount--;
+        }
+
+        markDirty(chunk);
+        int borderX = localX == 0 ? -1 : localX == Chunk.SIZE - 1 ? 1 : 0;
+        int borderZ = localZ == 0 ? -1 : localZ == Chunk.SIZE - 1 ? 1 : 0;
+        if (borderX != 0) {
+            markDirty(chunk.chunkX + borderX, chunk.chunkZ);
+        }
+        if (borderZ != 0) {
+            markDirty(chunk.chunkX, chunk.chunkZ + borderZ);
+        }
+        if (borderX != 0 && borderZ != 0) {
+            // a corner block shades the diagonal neighbour's corner faces
+            markDirty(chunk.chunkX + borderX, chunk.chunkZ + borderZ);
+        }
+        if (light != null) {
+            light.onBlockChanged(x, y, z, previous, id);
+        }
+        for (int i = 0; i < blockListeners.size; i++) {
+            blockListeners.get(i).blockChanged(x, y, z, id);
+        }
+        return previous;
+    }
+
+    /**
+     * Finishes a {@link WorldEdit} that wrote straight into the sections of {@code edited}, changing the number
+     * of non-air blocks by {@code blockDelta}: height maps are rebuilt, the chunks and their neighbours are
+     * relit in one go and every affected chunk is queued for meshing once.
+     */
+    void blocksEdited(Array<Chunk> edited, int blockDelta) {
+        blockCount += blockDelta;
+        for (int i = 0; i < edited.size; i++) {
+            Chunk chunk = edited.get(i);
+            chunk.rebuildHeightmap();
+            chunk.needsSave = true;
+            markAroundDirty(chunk);
+        }
+        if (light != null) {
+            light.relight(edited);
+        }
+        for (int i = 0; i < blockListeners.size; i++) {
+            for (int j = 0; j < edited.size; j++) {
+                blockListeners.get(i).chunkEdited(edited.get(j));
+            }
+        }
+    }
+
+    /** Marks a chunk and the eight around it, whose meshes read its border blocks. */
+    private void markAroundDirty(Chunk chunk) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (dx == 0 && dz == 0) {
+                    markDirty(chunk);
+                } else {
+                    markDirty(chunk.chunkX + dx, chunk.chunkZ + dz);
+                }
+            }
+        }
+    }
+
+    void markDirty(int chunkX, int chunkZ) {
+        Chunk chunk = chunks.get(chunkKey(chunkX, chunkZ));
+        if (chunk != null) {
+            markDirty(chunk);
+        }
+    }
+
+    void markDirty(Chunk chunk) {
+        if (!chunk.meshDirty) {
+            chunk.meshDirty = true;
+            chunk.dirtySince = System.nanoTime();
+            dirtyChunks.add(chunk);
+        }
+    }
+
+    /** Chunks changed since the list was last cleared. The caller resets {@link Chunk#meshDirty} and clears it. */
+    Array<Chunk> getDirtyChunks() {
+        return dirtyChunks;
+    }
+
+    /** The world's light engine, or {@code null} if it is kept without light. */
+    LightEngine getLightEngine() {
+        return light;
+    }
+
+    boolean isLit() {
+        return light != null;
+    }
+
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    int getChunkCount() {
+        return chunks.size;
+    }
+
+    void clear() {
+        chunks.clear();
+        dirtyChunks.clear();
+        lastChunk = null;
+        blockCount = 0;
+    }
+
+    long estimateHeapBytes() {
+        // LongMap keeps a long[] of keys and a parallel value array at a 0.8 load factor
+        long bytes = 48 + (long) (chunks.size / 0.8f) * 12L;
+        for (Chunk chunk : chunks.values()) {
+            bytes += chunk.estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Heap cost of the old {@code LinkedHashMap<BlockPos, BlockType>} store for the same number of
+     * blocks: a 40 byte linked entry, a 24 byte boxed key and a table slot per entry.
+     */
+    static long estimateLegacyMapBytes(long blocks) {
+        long needed = (long) Math.ceil(blocks / 0.75);
+        long table = Long.highestOneBit(Math.max(1L, needed - 1)) << 1;
+        return 56 + 16 + table * 4L + blocks * (40L + 24L);
+    }
+}
@@ -0,0 +1,357 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.Arrays;
+
+/**
+ * Bulk edits over a box of blocks: fill, replace one type with another, and copy/paste or clone. They write
+ * straight into the chunks' sections instead of going through {@link World#setBlock} once per block; a
+ * section the box covers completely is swapped for a new one without touching its cells. Each edited chunk
+ * is relit and queued for meshing once per operation, see {@link World#blocksEdited}.
+ *
+ * <p>Boxes are inclusive and may be given corner to corner in any order; y is clamped to the build height.
+ * Chunks that are not loaded are skipped. Every operation returns an {@link Undo} holding, per changed
+ * section, which cells changed and a copy-on-write snapshot of what was there before.
+ *
+ * <p>Runs on the simulation thread, like every other world change.
+ */
+final class WorldEdit {
+
+    private final World world;
+    private final Array<Chunk> edited = new Array<>(false, 64);
+    private final long[] changed = new long[ChunkSection.VOLUME / 64];
+    private int blockDelta;
+
+    WorldEdit(World world) {
+        this.world = world;
+    }
+
+    /** Sets every block in the box to {@code id}. */
+    Undo fill(int x0, int y0, int z0, int x1, int y1, int z1, int id) {
+        return fill(x0, y0, z0, x1, y1, z1, -1, id);
+    }
+
+    /** Turns every {@code from} block in the box into {@code to}. */
+    Undo replace(int x0, int y0, int z0, int x1, int y1, int z1, int from, int to) {
+        if (from == to) {
+            return new Undo();
+        }
+        return fill(x0, y0, z0, x1, y1, z1, from, to);
+    }
+
+    private Undo fill(int x0, int y0, int z0, int x1, int y1, int z1, int match, int id) {
+        Undo undo = new Undo();
+        int minX = Math.min(x0, x1);
+        int maxX = Math.max(x0, x1);
+        int minZ = Math.min(z0, z1);
+        int maxZ = Math.max(z0, z1);
+        int minY = Math.max(0, Math.min(y0, y1));
+        int maxY = Math.min(Chunk.HEIGHT - 1, Math.max(y0, y1));
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                Chunk chunk = world.getChunk(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                int fromX = Math.max(minX - chunkX * Chunk.SIZE, 0);
+                int toX = Math.min(maxX - chunkX * Chunk.SIZE, Chunk.SIZE - 1);
+                int fromZ = Math.max(minZ - chunkZ * Chunk.SIZE, 0);
+                int toZ = Math.min(maxZ - chunkZ * Chunk.SIZE, Chunk.SIZE - 1);
+                for (int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++) {
+                    int fromY = Math.max(minY - sectionY * Chunk.SIZE, 0);
+                    int toY = Math.min(maxY - sectionY * Chunk.SIZE, Chunk.SIZE - 1);
+                    ChunkSection section = chunk.sections[sectionY];
+                    boolean whole = fromX == 0 && fromY == 0 && fromZ == 0
+                        && toX == Chunk.SIZE - 1 && toY == Chunk.SIZE - 1 && toZ == Chunk.SIZE - 1;
+                    if (whole && match < 0) {
+                        replaceSection(undo, chunk, sectionY, id == BlockType.AIR ? null : ChunkSection.filled(id));
+                        continue;
+                    }
+                    if (section == null && (id == BlockType.AIR || (match >= 0 && match != BlockType.AIR))) {
+                        continue;
+                    }
+
+                    ChunkSection before = section == null ? null : section.snapshot();
+                    if (section == null) {
+                        section = new ChunkSection();
+                        chunk.sections[sectionY] = section;
+                    }
+                    Arrays.fill(changed, 0L);
+                    int delta = section.fill(fromX, fromY, fromZ, toX, toY, toZ, match, id, changed);
+                    sectionEdited(undo, chunk, sectionY, before, delta);
+                }
+            }
+        }
+        finish();
+        return undo;
+    }
+
+    /** Copies the blocks in the box; unloaded chunks read as air. Costs a few objects per section. */
+    Clipboard copy(int x0, int y0, int z0, int x1, int y1, int z1) {
+        int minY = Math.max(0, Math.min(y0, y1));
+        int maxY = Math.min(Chunk.HEIGHT - 1, Math.max(y0, y1));
+        Clipboard clipboard = new Clipboard(Math.min(x0, x1), minY, Math.min(z0, z1),
+            Math.max(x0, x1), Math.max(minY, maxY), Math.max(z0, z1));
+        for (int i = 0; i < clipboard.sections.length; i++) {
+            int chunkX = clipboard.firstChunkX + i % clipboard.chunksX;
+            int chunkZ = clipboard.firstChunkZ + i / clipboard.chunksX % clipboard.chunksZ;
+            int sectionY = clipboard.firstSectionY + i / (clipboard.chunksX * clipboard.chunksZ);
+            Chunk chunk = world.getChunk(chunkX, chunkZ);
+            ChunkSection section = chunk == null ? null : chunk.sections[sectionY];
+            clipboard.sections[i] = section == null ? null : section.snapshot();
+        }
+        return clipboard;
+    }
+
+    /**
+     * Writes {@code clipboard} with its lowest corner at (x, y, z). Where the copy lines up with the section
+     * grid, covered sections are shared copy-on-write instead of copied block by block.
+     */
+    Undo paste(Clipboard clipboard, int x, int y, int z) {
+        Undo undo = new Undo();
+        int offsetX = x - clipboard.minX;
+        int offsetY = y - clipboard.minY;
+        int offsetZ = z - clipboard.minZ;
+        boolean aligned = (offsetX & 15) == 0 && (offsetY & 15) == 0 && (offsetZ & 15) == 0;
+        int minX = x;
+        int maxX = x + clipboard.sizeX - 1;
+        int minZ = z;
+        int maxZ = z + clipboard.sizeZ - 1;
+        int minY = Math.max(0, y);
+        int maxY = Math.min(Chunk.HEIGHT - 1, y + clipboard.sizeY - 1);
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                Chunk chunk = world.getChunk(chunkX, chunkZ);
+                if (chunk == null) {
+                    continue;
+                }
+                int baseX = chunkX * Chunk.SIZE;
+                int baseZ = chunkZ * Chunk.SIZE;
+                int fromX = Math.max(minX - baseX, 0);
+                int toX = Math.min(maxX - baseX, Chunk.SIZE - 1);
+                int fromZ = Math.max(minZ - baseZ, 0);
+                int toZ = Math.min(maxZ - baseZ, Chunk.SIZE - 1);
+                for (int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++) {
+                    int baseY = sectionY * Chunk.SIZE;
+                    int fromY = Math.max(minY - baseY, 0);
+                    int toY = Math.min(maxY - baseY, Chunk.SIZE - 1);
+                    boolean whole = fromX == 0 && fromY == 0 && fromZ == 0
+                        && toX == Chunk.SIZE - 1 && toY == Chunk.SIZE - 1 && toZ == Chunk.SIZE - 1;
+                    if (whole && aligned) {
+                        ChunkSection source = clipboard.sectionAt(baseX - offsetX, baseY - offsetY, baseZ - offsetZ);
+                        replaceSection(undo, chunk, sectionY, source == null ? null : source.snapshot());
+                        continue;
+                    }
+
+                    ChunkSection section = chunk.sections[sectionY];
+                    ChunkSection before = section == null ? null : section.snapshot();
+                    if (section == null) {
+                        section = new ChunkSection();
+                        chunk.sections[sectionY] = section;
+                    }
+                    Arrays.fill(changed, 0L);
+                    int nonAir = section.getNonAirCount();
+                    for (int localY = fromY; localY <= toY; localY++) {
+                        for (int localZ = fromZ; localZ <= toZ; localZ++) {
+                            for (int localX = fromX; localX <= toX; localX++) {
+                                int id = clipboard.get(baseX + localX - offsetX, baseY + localY - offsetY,
+                                    baseZ + localZ - offsetZ);
+                                int index = ChunkSection.index(localX, localY, localZ);
+                                if (section.set(index, id) != id) {
+                                    changed[index >>> 6] |= 1L << index;
+                                }
+                            }
+                        }
+                    }
+                    sectionEdited(undo, chunk, sectionY, before, section.getNonAirCount() - nonAir);
+                }
+            }
+        }
+        finish();
+        return undo;
+    }
+
+    /** Copies the box and pastes it with its lowest corner at (x, y, z). The two boxes may overlap. */
+    Undo clone(int x0, int y0, int z0, int x1, int y1, int z1, int x, int y, int z) {
+        return paste(copy(x0, y0, z0, x1, y1, z1), x, y, z);
+    }
+
+    /**
+     * Puts back what {@code undo} recorded, overwriting anything changed in those cells since, and returns
+     * the {@link Undo} that redoes it.
+     */
+    Undo undo(Undo undo) {
+        Undo redo = new Undo();
+        for (int i = undo.diffs.size - 1; i >= 0; i--) {
+            SectionDiff diff = undo.diffs.get(i);
+            Chunk chunk = world.getChunk(diff.chunkX, diff.chunkZ);
+            if (chunk == null) {
+                continue;
+            }
+            if (diff.changed == null) {
+                // a view, so undoing twice still finds the recorded section unchanged
+                replaceSection(redo, chunk, diff.sectionY, diff.before == null ? null : diff.before.snapshot());
+                continue;
+            }
+
+            ChunkSection section = chunk.sections[diff.sectionY];
+            ChunkSection before = section == null ? null : section.snapshot();
+            if (section == null) {
+                section = new ChunkSection();
+                chunk.sections[diff.sectionY] = section;
+            }
+            int nonAir = section.getNonAirCount();
+            for (int word = 0; word < diff.changed.length; word++) {
+                long bits = diff.changed[word];
+                while (bits != 0L) {
+                    int index = word << 6 | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    section.set(index, diff.before == null ? BlockType.AIR : diff.before.get(index));
+                }
+            }
+            System.arraycopy(diff.changed, 0, changed, 0, changed.length);
+            sectionEdited(redo, chunk, diff.sectionY, before, section.getNonAirCount() - nonAir);
+        }
+        finish();
+        return redo;
+    }
+
+    private void replaceSection(Undo undo, Chunk chunk, int sectionY, ChunkSection section) {
+        ChunkSection before = chunk.sections[sectionY];
+        if (before == null && section == null) {
+            return;
+        }
+        chunk.sections[sectionY] = section;
+        blockDelta += (section == null ? 0 : section.getNonAirCount()) - (before == null ? 0 : before.getNonAirCount());
+        undo.diffs.add(new SectionDiff(chunk.chunkX, chunk.chunkZ, sectionY, before, null));
+        touch(chunk);
+    }
+
+    /** Records an edit made through {@link #changed}, unless it changed nothing. */
+    private void sectionEdited(Undo undo, Chunk chunk, int sectionY, ChunkSection before, int delta) {
+        if (chunk.sections[sectionY].isEmpty()) {
+            chunk.sections[sectionY] = null;
+        }
+        boolean any = false;
+        for (long word : changed) {
+            if (word != 0L) {
+                any = true;
+                break;
+            }
+        }
+        if (!any) {
+            return;
+        }
+        blockDelta += delta;
+        undo.diffs.add(new SectionDiff(chunk.chunkX, chunk.chunkZ, sectionY, before, changed.clone()));
+        touch(chunk);
+    }
+
+    private void touch(Chunk chunk) {
+        // sections are visited chunk by chunk, so a chunk is always either the last one added or new
+        if (edited.size == 0 || edited.peek() != chunk) {
+            edited.add(chunk);
+        }
+    }
+
+    private void finish() {
+        if (edited.size > 0) {
+            world.blocksEdited(edited, blockDelta);
+        }
+        edited.clear();
+        blockDelta = 0;
+    }
+
+    /** Blocks copied by {@link #copy}, kept as snapshots of the sections they came from. */
+    static final class Clipboard {
+        final int sizeX;
+        final int sizeY;
+        final int sizeZ;
+        private final int minX;
+        private final int minY;
+        private final int minZ;
+        private final int firstChunkX;
+        private final int firstChunkZ;
+        private final int firstSectionY;
+        private final int chunksX;
+        private final int chunksZ;
+        /** Indexed x fastest, then z, then y; {@code null} for air. */
+        private final ChunkSection[] sections;
+
+        private Clipboard(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            sizeX = maxX - minX + 1;
+            sizeY = maxY - minY + 1;
+            sizeZ = maxZ - minZ + 1;
+            firstChunkX = minX >> 4;
+            firstChunkZ = minZ >> 4;
+            firstSectionY = minY >> 4;
+            chunksX = (maxX >> 4) - firstChunkX + 1;
+            chunksZ = (maxZ >> 4) - firstChunkZ + 1;
+            sections = new ChunkSection[chunksX * chunksZ * ((maxY >> 4) - firstSectionY + 1)];
+        }
+
+        /** The section holding world position (x, y, z) of the source box. */
+        private ChunkSection sectionAt(int x, int y, int z) {
+            return sections[((y >> 4) - firstSectionY) * chunksX * chunksZ
+                + ((z >> 4) - firstChunkZ) * chunksX + (x >> 4) - firstChunkX];
+        }
+
+        /** Block at world position (x, y, z) of the source box. */
+        private int get(int x, int y, int z) {
+            ChunkSection section = sectionAt(x, y, z);
+            return section == null ? BlockType.AIR : section.get(x & 15, y & 15, z & 15);
+        }
+    }
+
+    /** What an edit changed, enough for {@link #undo} to put it back. */
+    static final class Undo {
+        private final Array<SectionDiff> diffs = new Array<>();
+
+        int getSectionCount() {
+            return diffs.size;
+        }
+
+        boolean isEmpty() {
+            return diffs.size == 0;
+        }
+
+        long estimateHeapBytes() {
+            long bytes = 16 + 24 + 16 + diffs.size * 4L;
+            for (int i = 0; i < diffs.size; i++) {
+                SectionDiff diff = diffs.get(i);
+                bytes += 32;
+                if (diff.before != null) {
+                    bytes += diff.before.estimateHeapBytes();
+                }
+                if (diff.changed != null) {
+                    bytes += 16 + diff.changed.length * 8L;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * One section's part of an {@link Undo}: its contents before the edit and a bit per cell that changed, or
+     * {@code null} when the whole section was replaced.
+     */
+    private static final class SectionDiff {
+        final int chunkX;
+        final int chunkZ;
+        final int sectionY;
+        final ChunkSection before;
+        final long[] changed;
+
+        SectionDiff(int chunkX, int chunkZ, int sectionY, ChunkSection before, long[] changed) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.sectionY = sectionY;
+            this.before = before;
+            this.changed = changed;
+        }
+    }
+}
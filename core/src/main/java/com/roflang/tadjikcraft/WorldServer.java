@@ -0,0 +1,778 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+
+/**
+ * Dedicated server: owns the world and replicates it to clients over non-blocking sockets, see {@link Protocol}.
+ * Meant to be run by a headless application at {@link #TICKS_PER_SECOND}; every {@link #render()} is one tick
+ * on a single thread, which reads what clients sent, applies their edits, streams chunks around every player
+ * and then writes each client its new chunks and one batch of the tick's block changes.
+ *
+ * <p>Work per tick is shared between clients where it can be. A chunk is deflated once and the frame reused for
+ * every client until one of its blocks changes, and the tick's changes are coalesced and encoded once per chunk
+ * and copied into each client's batch. A client that stops reading is dropped once its unsent backlog reaches
+ * {@link #MAX_BACKLOG_BYTES} rather than holding memory for it.
+ */
+public class WorldServer extends ApplicationAdapter implements World.ChunkListener, World.BlockListener {
+
+    public static final int TICKS_PER_SECOND = 20;
+
+    private static final int MAX_CHUNKS_PER_CLIENT_TICK = 16;
+    private static final int MAX_BACKLOG_BYTES = 8 << 20;
+    private static final int INITIAL_OUTPUT_BYTES = 64 * 1024;
+    private static final int BLOCKS_FRAME_BYTES = 64 * 1024;
+    private static final long SAVE_SHUTDOWN_TIMEOUT_MILLIS = 5_000L;
+
+    private final GameSettings settings;
+    // clients light the chunks they receive themselves
+    private final World world = new World(false);
+    private TerrainGenerator generator;
+    private ChunkStreamer streamer;
+    private RegionStorage regionStorage;
+    private AutosaveScheduler autosave;
+    private SectionSlabs slabs;
+    private ColdChunkCache coldCache;
+    private long seed;
+    private float spawnX;
+    private float spawnY;
+    private float spawnZ;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private final Array<Client> clients = new Array<>();
+    private final LongArray centers = new LongArray();
+
+    /** dx, dz pairs within the view radius, nearest first, and their squared distances. */
+    private int[] scanOffsets;
+    private int[] scanDistances;
+    private boolean chunksAdded;
+
+    /** CHUNK frames ready to send, until a block of the chunk changes. */
+    private final LongMap<byte[]> chunkFrames = new LongMap<>();
+    private final ByteBuffer encodeBuffer = ByteBuffer.allocate(ChunkCodec.MAX_ENCODED_BYTES);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] deflateBuffer = new byte[ChunkCodec.MAX_ENCODED_BYTES + 64];
+
+    /** This tick's changes per chunk, {@code blockIndex << 8 | id} in the order they happened. */
+    private final LongMap<IntArray> changes = new LongMap<>();
+    private final Array<IntArray> changePool = new Array<>();
+    private final long[] seenBlocks = new long[Chunk.SIZE * Chunk.SIZE * Chunk.HEIGHT / 64];
+    /** The tick's changes encoded once per chunk, ready to copy into every client's BLOCKS frame. */
+    private ByteBuffer changeSegments = ByteBuffer.allocate(4096);
+    private final LongArray segmentKeys = new LongArray();
+    private final IntArray segmentEnds = new IntArray();
+
+    private long tick;
+    private long bytesSent;
+    private long bytesReceived;
+    private long chunksSent;
+    private long blocksSent;
+    private long lastTickNanos;
+    private long totalTickNanos;
+    private long maxTickNanos;
+
+    public WorldServer(GameSettings settings) {
+        this.settings = settings;
+    }
+
+    @Override
+    public void create() {
+        seed = settings.seed;
+        if (settings.worldDirectory != null) {
+            try {
+                regionStorage = new RegionStorage(settings.worldDirectory, seed);
+                seed = regionStorage.getSeed();
+                autosave = new AutosaveScheduler(regionStorage, settings.autosaveSeconds, settings.autosaveSyncMillis,
+                    SAVE_SHUTDOWN_TIMEOUT_MILLIS);
+            } catch (IOException | RuntimeException e) {
+                Gdx.app.error("WorldServer", "Cannot open world " + settings.worldDirectory + ", not saving", e);
+            }
+        }
+        if (settings.offHeapStorage) {
+            slabs = new SectionSlabs();
+            SectionSlabs.install(slabs);
+        }
+        generator = new TerrainGenerator(seed);
+        spawnX = TadjikCraftGame.SPAWN_X + 0.5f;
+        spawnY = generator.surfaceHeight(TadjikCraftGame.SPAWN_X, TadjikCraftGame.SPAWN_Z) + 1;
+        spawnZ = TadjikCraftGame.SPAWN_Z + 0.5f;
+        world.setChunkListener(this);
+        world.addBlockListener(this);
+        if (settings.coldCacheMegabytes > 0) {
+            // not listening for edits: it only does that to know whose stored light went stale
+            coldCache = new ColdChunkCache(settings.coldCacheMegabytes * 1024L * 1024L);
+        }
+        streamer = new ChunkStreamer(world, generator, autosave, coldCache, settings.viewRadius, settings.unloadMargin,
+            settings.activeChunkMegabytes * 1024L * 1024L, ChunkMeshPipeline.defaultThreadCount());
+        buildScanOrder(settings.viewRadius);
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(settings.serverPort));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot listen on port " + settings.serverPort, e);
+        }
+        Gdx.app.log("WorldServer", "Listening on port " + getPort() + ", seed " + seed + ", view distance "
+            + settings.viewRadius + (slabs != null ? ", chunk data off-heap" : ""));
+    }
+
+    private void buildScanOrder(int radius) {
+        IntArray offsets = new IntArray();
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                int distance2 = dx * dx + dz * dz;
+                if (distance2 <= radius * radius) {
+                    // distance in the high bits sorts nearest first; offsets are stored biased to stay positive
+                    offsets.add(distance2 << 16 | (dx + radius) << 8 | (dz + radius));
+                }
+            }
+        }
+        offsets.sort();
+        scanOffsets = new int[offsets.size * 2];
+        scanDistances = new int[offsets.size];
+        for (int i = 0; i < offsets.size; i++) {
+            int packed = offsets.get(i);
+            scanDistances[i] = packed >>> 16;
+            scanOffsets[i * 2] = ((packed >> 8) & 0xff) - radius;
+            scanOffsets[i * 2 + 1] = (packed & 0xff) - radius;
+        }
+    }
+
+    float getSpawnX() {
+        return spawnX;
+    }
+
+    float getSpawnY() {
+        return spawnY;
+    }
+
+    float getSpawnZ() {
+        return spawnZ;
+    }
+
+    /** The port actually listened on, which differs from the setting when that was 0. */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** One tick. */
+    @Override
+    public void render() {
+        long start = System.nanoTime();
+        tick++;
+        pollNetwork();
+
+        updateCenters();
+        streamer.update(centers);
+        if (autosave != null) {
+            autosave.update(1f / TICKS_PER_SECOND, world.getChunks());
+        }
+        // nothing is meshed here
+        Array<Chunk> dirty = world.getDirtyChunks();
+        for (int i = 0; i < dirty.size; i++) {
+            dirty.get(i).meshDirty = false;
+        }
+        dirty.clear();
+
+        encodeChanges();
+        for (int i = clients.size - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (client.joined) {
+                sendChunks(client);
+                sendChanges(client);
+            }
+            flush(client);
+        }
+        clearChanges();
+        chunksAdded = false;
+
+        lastTickNanos = System.nanoTime() - start;
+        totalTickNanos += lastTickNanos;
+        maxTickNanos = Math.max(maxTickNanos, lastTickNanos);
+    }
+
+    private void pollNetwork() {
+        try {
+            selector.selectNow();
+        } catch (IOException e) {
+            Gdx.app.error("WorldServer", "Select failed", e);
+            return;
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+            Client client = (Client) key.attachment();
+            if (key.isReadable()) {
+                read(client);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(client);
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        while (true) {
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Client client = new Client(channel);
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+                clients.add(client);
+            } catch (IOException e) {
+                Gdx.app.error("WorldServer", "Cannot accept a connection", e);
+                return;
+            }
+        }
+    }
+
+    private void read(Client client) {
+        try {
+            int read;
+            while ((read = client.channel.read(client.in)) > 0) {
+                bytesReceived += read;
+                client.in.flip();
+                int length;
+                while ((length = Protocol.completeFrameLength(client.in, Protocol.MAX_CLIENT_FRAME_BYTES)) > 0) {
+                    int end = client.in.position() + length;
+                    client.in.position(client.in.position() + 4);
+                    handleFrame(client, client.in.get());
+                    client.in.position(end);
+                }
+                client.in.compact();
+                if (client.closed) {
+                    return;
+                }
+            }
+            if (read < 0) {
+                disconnect(client, "left");
+            }
+        } catch (IOException | RuntimeException e) {
+            disconnect(client, e.toString());
+        }
+    }
+
+    private void handleFrame(Client client, byte type) throws IOException {
+        ByteBuffer in = client.in;
+        if (!client.joined && type != Protocol.HELLO) {
+            throw new IOException("Expected HELLO, got " + type);
+        }
+        switch (type) {
+            case Protocol.HELLO:
+                int version = in.getInt();
+                if (version != Protocol.VERSION) {
+                    throw new IOException("Protocol version " + version + ", expected " + Protocol.VERSION);
+                }
+                client.viewRadius = Math.max(2, Math.min(settings.viewRadius, in.getInt()));
+                client.joined = true;
+                moveClient(client, spawnX, spawnY, spawnZ);
+                sendWelcome(client);
+                Gdx.app.log("WorldServer", "Client " + client.name + " joined, " + clients.size + " connected");
+                break;
+            case Protocol.POSITION:
+                float x = in.getFloat();
+                float y = in.getFloat();
+                float z = in.getFloat();
+                if (Float.isNaN(x + y + z) || Float.isInfinite(x + y + z)) {
+                    throw new IOException("Invalid position");
+                }
+                moveClient(client, x, y, z);
+                break;
+            case Protocol.EDIT:
+                applyEdit(client, in.getInt(), in.get(), in.getInt(), in.get() & 0xff);
+                break;
+            default:
+                throw new IOException("Unknown frame type " + type);
+        }
+    }
+
+    private void moveClient(Client client, float x, float y, float z) {
+        int chunkX = (int) Math.floor(x) >> 4;
+        int chunkZ = (int) Math.floor(z) >> 4;
+        if (chunkX != client.chunkX || chunkZ != client.chunkZ || !client.positioned) {
+            client.positioned = true;
+            client.chunkX = chunkX;
+            client.chunkZ = chunkZ;
+            client.moved = true;
+        }
+    }
+
+    /** Applies a client's edit if it is inside the world the client was sent, and corrects the client otherwise. */
+    private void applyEdit(Client client, int x, int y, int z, int id) {
+        long key = World.chunkKey(x >> 4, z >> 4);
+        boolean valid = y >= 0 && y < Chunk.HEIGHT && id <= BlockType.values().length && client.sent.containsKey(key);
+        if (valid) {
+            world.setBlock(x, y, z, id);
+        } else if (client.sent.containsKey(key) && y >= 0 && y < Chunk.HEIGHT) {
+            // the client already changed its copy
+            ByteBuffer out = reserve(client, Protocol.HEADER_BYTES + Protocol.BLOCKS_HEADER_BYTES
+                + Protocol.BLOCKS_CHUNK_HEADER_BYTES + Protocol.BLOCK_BYTES);
+            if (out == null) {
+                return;
+            }
+            int start = Protocol.beginFrame(out, Protocol.BLOCKS);
+            out.putLong(tick);
+            out.putShort((short) 1);
+            out.putInt(x >> 4);
+            out.putInt(z >> 4);
+            out.putShort((short) 1);
+            out.putShort((short) Protocol.blockIndex(x, y, z));
+            out.put((byte) world.getBlock(x, y, z));
+            Protocol.endFrame(out, start);
+        }
+    }
+
+    private void sendWelcome(Client client) {
+        ByteBuffer out = reserve(client, Protocol.HEADER_BYTES + 40);
+        int start = Protocol.beginFrame(out, Protocol.WELCOME);
+        out.putInt(Protocol.VERSION);
+        out.putLong(seed);
+        out.putFloat(spawnX);
+        out.putFloat(spawnY);
+        out.putFloat(spawnZ);
+        out.putInt(client.viewRadius);
+        out.putInt(client.viewRadius + settings.unloadMargin);
+        out.putInt(TICKS_PER_SECOND);
+        Protocol.endFrame(out, start);
+    }
+
+    private void updateCenters() {
+        centers.clear();
+        for (int i = 0; i < clients.size; i++) {
+            Client client = clients.get(i);
+            if (client.joined) {
+                centers.add(World.chunkKey(client.chunkX, client.chunkZ));
+            }
+        }
+        centers.sort();
+        // drop duplicates so the streamer sees the same centres while nobody changes chunk
+        int unique = 0;
+        for (int i = 0; i < centers.size; i++) {
+            if (unique == 0 || centers.get(unique - 1) != centers.get(i)) {
+                centers.set(unique++, centers.get(i));
+            }
+        }
+        centers.truncate(unique);
+    }
+
+    /** Unloads what the client left behind and sends the nearest chunks it does not have yet. */
+    private void sendChunks(Client client) {
+        if (client.moved) {
+            client.moved = false;
+            client.scan = true;
+            int unloadRadius = client.viewRadius + settings.unloadMargin;
+            client.scratch.clear();
+            for (LongMap.Entry<Chunk> entry : client.sent.entries()) {
+                int dx = World.keyX(entry.key) - client.chunkX;
+                int dz = World.keyZ(entry.key) - client.chunkZ;
+                if (dx * dx + dz * dz > unloadRadius * unloadRadius) {
+                    client.scratch.add(entry.key);
+                }
+            }
+            for (int i = 0; i < client.scratch.size && !client.closed; i++) {
+                long key = client.scratch.get(i);
+                client.sent.remove(key);
+                sendUnload(client, key);
+            }
+        }
+        if (!client.scan && !chunksAdded) {
+            return;
+        }
+
+        int radius2 = client.viewRadius * client.viewRadius;
+        int sent = 0;
+        client.scan = false;
+        for (int i = 0; i < scanDistances.length && scanDistances[i] <= radius2; i++) {
+            int chunkX = client.chunkX + scanOffsets[i * 2];
+            int chunkZ = client.chunkZ + scanOffsets[i * 2 + 1];
+            long key = World.chunkKey(chunkX, chunkZ);
+            if (client.sent.containsKey(key)) {
+                continue;
+            }
+            Chunk chunk = world.getChunk(chunkX, chunkZ);
+            if (chunk == null) {
+                // still generating; chunksAdded brings the scan back when it arrives
+                continue;
+            }
+            if (sent == MAX_CHUNKS_PER_CLIENT_TICK) {
+                client.scan = true;
+                return;
+            }
+            byte[] frame = chunkFrame(chunk, key);
+            ByteBuffer out = reserve(client, frame.length);
+            if (out == null) {
+                return;
+            }
+            out.put(frame);
+            client.sent.put(key, chunk);
+            chunksSent++;
+            sent++;
+        }
+    }
+
+    private void sendUnload(Client client, long key) {
+        ByteBuffer out = reserve(client, Protocol.HEADER_BYTES + 8);
+        if (out == null) {
+            return;
+        }
+        int start = Protocol.beginFrame(out, Protocol.UNLOAD);
+        out.putInt(World.keyX(key));
+        out.putInt(World.keyZ(key));
+        Protocol.endFrame(out, start);
+    }
+
+    private byte[] chunkFrame(Chunk chunk, long key) {
+        byte[] frame = chunkFrames.get(key);
+        if (frame != null) {
+            return frame;
+        }
+        encodeBuffer.clear();
+        ChunkCodec.encode(chunk, encodeBuffer);
+        deflater.reset();
+        deflater.setInput(encodeBuffer.array(), 0, encodeBuffer.position());
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            compressed += deflater.deflate(deflateBuffer, compressed, deflateBuffer.length - compressed);
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(Protocol.HEADER_BYTES + 12 + compressed);
+        int start = Protocol.beginFrame(out, Protocol.CHUNK);
+        out.putInt(chunk.chunkX);
+        out.putInt(chunk.chunkZ);
+        out.putInt(encodeBuffer.position());
+        out.put(deflateBuffer, 0, compressed);
+        Protocol.endFrame(out, start);
+        frame = out.array();
+        chunkFrames.put(key, frame);
+        return frame;
+    }
+
+    @Override
+    public void blockChanged(int x, int y, int z, int id) {
+        long key = World.chunkKey(x >> 4, z >> 4);
+        chunkFrames.remove(key);
+        IntArray blocks = changes.get(key);
+        if (blocks == null) {
+            blocks = changePool.size > 0 ? changePool.pop() : new IntArray();
+            changes.put(key, blocks);
+        }
+        blocks.add(Protocol.blockIndex(x, y, z) << 8 | id);
+    }
+
+    /** Sends the whole chunk again to everyone who has it; it replaces this tick's block changes so far. */
+    @Override
+    public void chunkEdited(Chunk chunk) {
+        long key = World.chunkKey(chunk.chunkX, chunk.chunkZ);
+        chunkFrames.remove(key);
+        IntArray blocks = changes.remove(key);
+        if (blocks != null) {
+            blocks.clear();
+            changePool.add(blocks);
+        }
+        for (int i = 0; i < clients.size; i++) {
+            Client client = clients.get(i);
+            if (!client.sent.containsKey(key)) {
+                continue;
+            }
+            byte[] frame = chunkFrame(chunk, key);
+            ByteBuffer out = reserve(client, frame.length);
+            if (out != null) {
+                out.put(frame);
+                chunksSent++;
+            }
+        }
+    }
+
+    /** Encodes each changed chunk's blocks once, newest change first and each block only once. */
+    private void encodeChanges() {
+        changeSegments.clear();
+        segmentKeys.clear();
+        segmentEnds.clear();
+        for (LongMap.Entry<IntArray> entry : changes.entries()) {
+            IntArray blocks = entry.value;
+            ByteBuffer out = Protocol.ensureRemaining(changeSegments,
+                Protocol.BLOCKS_CHUNK_HEADER_BYTES + blocks.size * Protocol.BLOCK_BYTES, Integer.MAX_VALUE);
+            changeSegments = out;
+            out.putInt(World.keyX(entry.key));
+            out.putInt(World.keyZ(entry.key));
+            int countAt = out.position();
+            out.putShort((short) 0);
+            int count = 0;
+            for (int i = blocks.size - 1; i >= 0; i--) {
+                int change = blocks.get(i);
+                int index = change >>> 8;
+                long bit = 1L << index;
+                if ((seenBlocks[index >> 6] & bit) != 0) {
+                    continue;
+                }
+                seenBlocks[index >> 6] |= bit;
+                out.putShort((short) index);
+                out.put((byte) change);
+                count++;
+            }
+            out.putShort(countAt, (short) count);
+            for (int i = 0; i < blocks.size; i++) {
+                int index = blocks.get(i) >>> 8;
+                seenBlocks[index >> 6] = 0L;
+            }
+            segmentKeys.add(entry.key);
+            segmentEnds.add(out.position());
+        }
+    }
+
+    /** Copies the encoded changes of every chunk the client has into BLOCKS frames. */
+    private void sendChanges(Client client) {
+        ByteBuffer out = null;
+        int frameStart = -1;
+        int chunkCount = 0;
+        for (int i = 0; i < segmentKeys.size; i++) {
+            if (!client.sent.containsKey(segmentKeys.get(i))) {
+                continue;
+            }
+            int from = i == 0 ? 0 : segmentEnds.get(i - 1);
+            int length = segmentEnds.get(i) - from;
+            if (frameStart >= 0 && out.position() - frameStart + length > BLOCKS_FRAME_BYTES) {
+                endBlocksFrame(out, frameStart, chunkCount);
+                frameStart = -1;
+            }
+            out = reserve(client, Protocol.HEADER_BYTES + Protocol.BLOCKS_HEADER_BYTES + length);
+            if (out == null) {
+                return;
+            }
+            if (frameStart < 0) {
+                frameStart = Protocol.beginFrame(out, Protocol.BLOCKS);
+                out.putLong(tick);
+                out.putShort((short) 0);
+                chunkCount = 0;
+            }
+            out.put(changeSegments.array(), from, length);
+            blocksSent += (length - Protocol.BLOCKS_CHUNK_HEADER_BYTES) / Protocol.BLOCK_BYTES;
+            chunkCount++;
+        }
+        if (frameStart >= 0) {
+            endBlocksFrame(out, frameStart, chunkCount);
+        }
+    }
+
+    private static void endBlocksFrame(ByteBuffer out, int start, int chunkCount) {
+        out.putShort(start + Protocol.HEADER_BYTES + 8, (short) chunkCount);
+        Protocol.endFrame(out, start);
+    }
+
+    private void clearChanges() {
+        for (IntArray blocks : changes.values()) {
+            blocks.clear();
+            changePool.add(blocks);
+        }
+        changes.clear();
+    }
+
+    @Override
+    public void chunkAdded(Chunk chunk) {
+        chunksAdded = true;
+    }
+
+    @Override
+    public void chunkRemoved(Chunk chunk) {
+        long key = World.chunkKey(chunk.chunkX, chunk.chunkZ);
+        chunkFrames.remove(key);
+        for (int i = 0; i < clients.size; i++) {
+            Client client = clients.get(i);
+            if (client.sent.remove(key) != null) {
+                sendUnload(client, key);
+            }
+        }
+    }
+
+    /**
+     * The client's output buffer with room for {@code bytes} more, or {@code null} if the client was dropped
+     * because it fell too far behind.
+     */
+    private ByteBuffer reserve(Client client, int bytes) {
+        if (client.closed) {
+            return null;
+        }
+        ByteBuffer out = Protocol.ensureRemaining(client.out, bytes, MAX_BACKLOG_BYTES);
+        if (out == null) {
+            disconnect(client, "fell " + client.out.position() / 1024 + " KB behind");
+            return null;
+        }
+        client.out = out;
+        return out;
+    }
+
+    private void flush(Client client) {
+        if (client.closed || client.out.position() == 0) {
+            return;
+        }
+        try {
+            client.out.flip();
+            bytesSent += client.channel.write(client.out);
+            boolean backlog = client.out.hasRemaining();
+            client.out.compact();
+            client.key.interestOps(backlog ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException | RuntimeException e) {
+            disconnect(client, e.toString());
+        }
+    }
+
+    private void disconnect(Client client, String reason) {
+        if (client.closed) {
+            return;
+        }
+        client.closed = true;
+        clients.removeValue(client, true);
+        if (client.key != null) {
+            client.key.cancel();
+        }
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+            // closing anyway
+        }
+        if (client.joined) {
+            Gdx.app.log("WorldServer", "Client " + client.name + " disconnected (" + reason + "), "
+                + clients.size + " connected");
+        }
+    }
+
+    public int getClientCount() {
+        return clients.size;
+    }
+
+    public long getTickCount() {
+        return tick;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getChunksSent() {
+        return chunksSent;
+    }
+
+    /** Block changes sent, counted once per client that received them. */
+    public long getBlocksSent() {
+        return blocksSent;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    public long getTotalTickNanos() {
+        return totalTickNanos;
+    }
+
+    /** The slowest tick since the last call. */
+    public long takeMaxTickNanos() {
+        long max = maxTickNanos;
+        maxTickNanos = 0L;
+        return max;
+    }
+
+    public int getLoadedChunkCount() {
+        return world.getChunkCount();
+    }
+
+    @Override
+    public void dispose() {
+        for (int i = clients.size - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            flush(client);
+            disconnect(client, "server stopped");
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            Gdx.app.error("WorldServer", "Cannot close the server socket", e);
+        }
+        streamer.dispose();
+        if (autosave != null) {
+            autosave.saveAll(world.getChunks());
+            autosave.dispose();
+            // a writer that is still going would fail on closed files; dispose() has reported it
+            if (autosave.isStopped()) {
+                try {
+                    regionStorage.close();
+                } catch (IOException e) {
+                    Gdx.app.error("WorldServer", "Failed to close world " + regionStorage.getDirectory(), e);
+                }
+            }
+        }
+        deflater.end();
+        if (coldCache != null) {
+            Gdx.app.log("WorldServer", "Cold cache: " + coldCache.getHits() + " hits, " + coldCache.getMisses()
+                + " misses, " + coldCache.getChunkCount() + " chunks in " + coldCache.getStoredBytes() / 1024 + " KB");
+            coldCache.dispose();
+        }
+        if (slabs != null) {
+            SectionSlabs.install(null);
+        }
+    }
+
+    private static final class Client {
+        final SocketChannel channel;
+        final String name;
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_CLIENT_FRAME_BYTES * 16);
+        /** Frames not written yet, in write mode. */
+        ByteBuffer out = ByteBuffer.allocate(INITIAL_OUTPUT_BYTES);
+        boolean joined;
+        boolean closed;
+        int viewRadius;
+        boolean positioned;
+        int chunkX;
+        int chunkZ;
+        boolean moved;
+        /** Whether chunks within the view radius may still be missing on the client. */
+        boolean scan;
+        /** Chunks the client has, by key. */
+        final LongMap<Chunk> sent = new LongMap<>();
+        final LongArray scratch = new LongArray();
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            this.name = String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+    }
+}
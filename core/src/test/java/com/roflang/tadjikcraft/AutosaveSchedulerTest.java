@@ -0,0 +1,138 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Edits chunks while {@link AutosaveScheduler}'s writer is saving them. Every round sets two marker blocks at
+ * the bottom and top of each chunk to the same block, so a chunk read back with different markers was saved
+ * half old, half new. A region file that cannot be opened for a while must not lose the edits queued for it.
+ */
+public class AutosaveSchedulerTest {
+
+    private static final int ROUNDS = 200;
+    // chunks 31 and 32 lie in different region files
+    private static final int[][] CHUNKS = {{31, 0}, {32, 0}, {31, -1}, {32, -1}};
+    private static final int TOP = Chunk.HEIGHT - 2;
+    private static final long RETRY_TIMEOUT_MILLIS = 30_000L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Application previousApp = Gdx.app;
+
+    @After
+    public void tearDown() {
+        Gdx.app = previousApp;
+    }
+
+    @Test
+    public void editsDuringSavesAreNeitherLostNorTorn() throws IOException {
+        World world = new World(false);
+        for (int[] position : CHUNKS) {
+            world.addChunk(new Chunk(position[0], position[1]));
+        }
+        RegionStorage storage = new RegionStorage(folder.getRoot(), 1L);
+        AutosaveScheduler autosave = new AutosaveScheduler(storage, Float.MAX_VALUE, 50L, 10_000L);
+
+        BlockType[] types = BlockType.values();
+        for (int round = 0; round < ROUNDS; round++) {
+            int id = types[round % types.length].id;
+            for (int[] position : CHUNKS) {
+                int baseX = position[0] * Chunk.SIZE;
+                int baseZ = position[1] * Chunk.SIZE;
+                world.setBlock(baseX + 1, 2, baseZ + 3, id);
+                // somewhere else each round, so the chunks keep growing while they are written
+                world.setBlock(baseX + round % Chunk.SIZE, 20 + round / Chunk.SIZE, baseZ + round * 7 % Chunk.SIZE, id);
+                world.setBlock(baseX + 14, TOP, baseZ + 12, id);
+            }
+            autosave.saveAll(world.getChunks());
+
+            for (int[] position : CHUNKS) {
+                Chunk saved = storage.load(position[0], position[1]);
+                if (saved != null) {
+                    assertEquals("markers of chunk " + position[0] + ", " + position[1] + " in round " + round,
+                        saved.getBlock(1, 2, 3), saved.getBlock(14, TOP, 12));
+                }
+            }
+        }
+
+        autosave.saveAll(world.getChunks());
+        autosave.dispose();
+        assertTrue(autosave.isStopped());
+        storage.close();
+
+        RegionStorage reopened = new RegionStorage(folder.getRoot(), 1L);
+        try {
+            for (int[] position : CHUNKS) {
+                Chunk expected = world.getChunk(position[0], position[1]);
+                Chunk saved = reopened.load(position[0], position[1]);
+                assertNotNull(saved);
+                for (int x = 0; x < Chunk.SIZE; x++) {
+                    for (int z = 0; z < Chunk.SIZE; z++) {
+                        for (int y = 0; y < Chunk.HEIGHT; y++) {
+                            assertEquals("block " + x + ", " + y + ", " + z + " of chunk " + position[0] + ", "
+                                + position[1], expected.getBlock(x, y, z), saved.getBlock(x, y, z));
+                        }
+                    }
+                }
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void failedWritesAreRetriedUntilTheyGoThrough() throws IOException, InterruptedException {
+        // the writer logs failures; there is no backend in these tests
+        Gdx.app = (Application) Proxy.newProxyInstance(Application.class.getClassLoader(),
+            new Class<?>[]{Application.class}, (proxy, method, args) -> null);
+        World world = new World(false);
+        world.addChunk(new Chunk(0, 0));
+        RegionStorage storage = new RegionStorage(folder.getRoot(), 1L);
+        // a directory where the region file belongs cannot be opened as one
+        File blocker = new File(new File(folder.getRoot(), "region"), "r.0.0.tcr");
+        assertTrue(blocker.mkdirs());
+        AutosaveScheduler autosave = new AutosaveScheduler(storage, Float.MAX_VALUE, 50L, 10_000L);
+
+        world.setBlock(3, 40, 5, BlockType.STONE.id);
+        autosave.saveAll(world.getChunks());
+        assertFalse(world.getChunk(0, 0).needsSave);
+        Thread.sleep(500L);
+        assertEquals(0L, autosave.getChunksWritten());
+        // still there for a chunk streamed back in
+        assertEquals(BlockType.STONE.id, autosave.load(0, 0).getBlock(3, 40, 5));
+
+        assertTrue(blocker.delete());
+        long deadline = System.currentTimeMillis() + RETRY_TIMEOUT_MILLIS;
+        while (autosave.getChunksWritten() == 0L && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        autosave.dispose();
+        assertTrue(autosave.isStopped());
+        storage.close();
+
+        RegionStorage reopened = new RegionStorage(folder.getRoot(), 1L);
+        try {
+            Chunk saved = reopened.load(0, 0);
+            assertNotNull(saved);
+            assertEquals(BlockType.STONE.id, saved.getBlock(3, 40, 5));
+        } finally {
+            reopened.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.roflang.tadjikcraft;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Face and vertex counts of {@link ChunkMesher} for block layouts whose greedy meshing is known, and the ambient
+ * occlusion of their corners. The chunks have no neighbours, so their borders face open air, and are unlit, so
+ * light never keeps faces apart.
+ */
+public class ChunkMesherTest {
+
+    private static final int STONE = BlockType.STONE.id;
+    private static final int DIRT = BlockType.DIRT.id;
+
+    private final ChunkMesher mesher = new ChunkMesher();
+
+    @Test
+    public void emptyChunkHasNoFaces() {
+        assertFaces(0, new Chunk(0, 0));
+    }
+
+    @Test
+    public void singleBlockHasSixFaces() {
+        Chunk chunk = new Chunk(0, 0);
+        chunk.setBlock(8, 20, 8, STONE);
+        assertFaces(6, chunk);
+    }
+
+    @Test
+    public void cubeOfOneTypeMergesToSixFaces() {
+        Chunk chunk = new Chunk(0, 0);
+        fill(chunk, 4, 20, 4, 7, 23, 7, STONE);
+        assertFaces(6, chunk);
+    }
+
+    @Test
+    public void differentTypesDoNotMerge() {
+        Chunk chunk = new Chunk(0, 0);
+        chunk.setBlock(8, 20, 8, STONE);
+        chunk.setBlock(9, 20, 8, DIRT);
+        // top, bottom and both long sides twice, the two ends once; the shared face is hidden
+        assertFaces(10, chunk);
+    }
+
+    @Test
+    public void floorHasNoUnderside() {
+        Chunk chunk = new Chunk(0, 0);
+        fill(chunk, 0, 0, 0, 15, 0, 15, STONE);
+        // one top and the four borders, below y = 0 is never visible
+        assertFaces(5, chunk);
+    }
+
+    @Test
+    public void checkerboardCannotMerge() {
+        Chunk chunk = new Chunk(0, 0);
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            for (int z = 0; z < Chunk.SIZE; z++) {
+                chunk.setBlock(x, 10, z, ((x + z) & 1) == 0 ? STONE : DIRT);
+            }
+        }
+        // a top and a bottom per block, and one face per block along each of the four borders
+        assertFaces(2 * 256 + 4 * 16, chunk);
+    }
+
+    @Test
+    public void facesDoNotMergeAcrossSections() {
+        Chunk chunk = new Chunk(0, 0);
+        fill(chunk, 8, 10, 8, 8, 20, 8, STONE);
+        // each side is split where the column crosses from section 0 into section 1
+        assertFaces(2 + 4 * 2, chunk);
+    }
+
+    @Test
+    public void hiddenInteriorFacesAreSkipped() {
+        Chunk chunk = new Chunk(0, 0);
+        fill(chunk, 2, 2, 2, 13, 13, 13, STONE);
+        chunk.setBlock(7, 7, 7, BlockType.AIR);
+        // the hollow inside is enclosed, but its six faces are still next to air
+        assertFaces(6 + 6, chunk);
+    }
+
+    @Test
+    public void cornersAreShadedByTheBlocksNextToThem() {
+        Chunk chunk = new Chunk(0, 0);
+        fill(chunk, 0, 0, 0, 15, 0, 15, STONE);
+        chunk.setBlock(8, 1, 8, STONE);
+        chunk.setBlock(8, 1, 9, STONE);
+        chunk.setBlock(9, 1, 10, STONE);
+        assertFloorOcclusion(chunk, 3, 0, 0);
+        // diagonally across from a block, or next to one along an edge
+        assertFloorOcclusion(chunk, 2, 8, 8);
+        // next to a block along an edge and to another diagonally
+        assertFloorOcclusion(chunk, 1, 9, 9);
+        // in the inner corner between two blocks
+        assertFloorOcclusion(chunk, 0, 9, 10);
+    }
+
+    @Test
+    public void unevenlyShadedFacesDoNotMerge() {
+        Chunk chunk = new Chunk(0, 0);
+        fill(chunk, 0, 0, 0, 15, 0, 15, STONE);
+        fill(chunk, 0, 1, 0, 0, 1, 15, STONE);
+        // the wall's top and ends, the floor's borders with the wall's west side on the west one; the wall's east
+        // side and the floor row along it are shaded towards the corner between them, one face per block; the rest
+        // of the floor merges
+        assertFaces(1 + 2 + 4 + 16 + 16 + 1, chunk);
+    }
+
+    /** Asserts the occlusion of every floor top vertex at (x, 1, z), where the floor is the y = 0 layer. */
+    private void assertFloorOcclusion(Chunk chunk, int level, int x, int z) {
+        World world = new World(false);
+        world.addChunk(chunk);
+        mesher.build(ChunkSnapshot.capture(world, chunk));
+        float[] vertices = mesher.getVertices();
+        int found = 0;
+        for (int i = 0; i < mesher.getFloatCount(); i += ChunkMesher.FLOATS_PER_VERTEX) {
+            int position = Float.floatToRawIntBits(vertices[i]);
+            // face 3 points up
+            if (position == (x | 1 << 8 | z << 16 | 3 << 24)) {
+                assertEquals("occlusion at " + x + ", " + z, level, Float.floatToRawIntBits(vertices[i + 1]) >>> 16 & 0xff);
+                found++;
+            }
+        }
+        assertTrue("no vertex at " + x + ", " + z, found > 0);
+    }
+
+    private void assertFaces(int faces, Chunk chunk) {
+        World world = new World(false);
+        world.addChunk(chunk);
+        mesher.build(ChunkSnapshot.capture(world, chunk));
+        assertEquals("faces", faces, mesher.getFaceCount());
+        assertEquals("vertices", faces * ChunkMesher.VERTICES_PER_FACE, mesher.getVertexCount());
+        assertEquals("floats", mesher.getVertexCount() * ChunkMesher.FLOATS_PER_VERTEX, mesher.getFloatCount());
+    }
+
+    private static void fill(Chunk chunk, int x0, int y0, int z0, int x1, int y1, int z1, int id) {
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    chunk.setBlock(x, y, z, id);
+                }
+            }
+        }
+    }
+}
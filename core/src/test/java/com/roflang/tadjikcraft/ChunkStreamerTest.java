@@ -0,0 +1,170 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.LongArray;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Walks a {@link ChunkStreamer} back and forth so chunks are unloaded and brought back while their neighbours stay
+ * loaded, then checks every chunk loaded along with all its neighbours against the same area generated in one go,
+ * where no spill can be lost. A long flight checks that what the streamer holds does not grow with the distance.
+ */
+public class ChunkStreamerTest {
+
+    private static final long SEED = 1L;
+    private static final int VIEW_RADIUS = 4;
+    private static final int UNLOAD_MARGIN = 2;
+    // far enough to unload the chunks behind, not far enough to unload their neighbours on the way back
+    private static final int WALK = VIEW_RADIUS + UNLOAD_MARGIN + 1;
+    private static final int MIN_X = -VIEW_RADIUS - UNLOAD_MARGIN - 2;
+    private static final int MIN_Z = MIN_X;
+    private static final int WIDTH = WALK - 2 * MIN_X + 1;
+    private static final int DEPTH = -2 * MIN_Z + 1;
+    private static final int FLIGHT_BLOCKS = 10_000;
+    private static final int FLIGHT_STEP_BLOCKS = 4;
+    private static final long FLIGHT_HEAP_GROWTH_BYTES = 32L << 20;
+
+    private final TerrainGenerator generator = new TerrainGenerator(SEED);
+    private final World world = new World();
+    private ChunkStreamer streamer;
+
+    @After
+    public void tearDown() {
+        if (streamer != null) {
+            streamer.dispose();
+        }
+    }
+
+    @Test
+    public void regeneratedChunksKeepTheirNeighboursTrees() throws InterruptedException {
+        streamer = new ChunkStreamer(world, generator, null, null, VIEW_RADIUS, UNLOAD_MARGIN, 0L, 2);
+        walk();
+        assertMatchesRegion();
+    }
+
+    @Test
+    public void promotedChunksKeepTheirNeighboursTrees() throws InterruptedException {
+        streamer = new ChunkStreamer(world, generator, null, new ColdChunkCache(64L << 20), VIEW_RADIUS,
+            UNLOAD_MARGIN, 0L, 2);
+        walk();
+        assertMatchesRegion();
+    }
+
+    @Test
+    public void longFlightKeepsChunksAndMemoryBounded() throws InterruptedException {
+        streamer = new ChunkStreamer(world, generator, null, null, VIEW_RADIUS, UNLOAD_MARGIN, 0L, 2);
+        int maxLoaded = chunksWithin(VIEW_RADIUS + UNLOAD_MARGIN);
+        int maxPending = chunksWithin(VIEW_RADIUS);
+        // parked spills stay while a neighbour of theirs is loaded
+        int maxParked = chunksWithin(VIEW_RADIUS + UNLOAD_MARGIN + 2);
+        Vector3 eye = new Vector3(0f, 64f, 0f);
+        long heapAfterTakeOff = 0L;
+        for (int x = 0; x <= FLIGHT_BLOCKS; x += FLIGHT_STEP_BLOCKS) {
+            eye.x = x;
+            streamer.update(eye);
+            if (x % Chunk.SIZE == 0) {
+                while (streamer.getPendingCount() > 0) {
+                    Thread.sleep(1);
+                    streamer.update(eye);
+                }
+            }
+            assertTrue("loaded " + streamer.getLoadedCount() + " at " + x, streamer.getLoadedCount() <= maxLoaded);
+            assertTrue("pending " + streamer.getPendingCount() + " at " + x, streamer.getPendingCount() <= maxPending);
+            assertTrue("parked " + streamer.getPendingEdits().getChunkCount() + " at " + x,
+                streamer.getPendingEdits().getChunkCount() <= maxParked);
+            if (x == FLIGHT_BLOCKS / 10) {
+                heapAfterTakeOff = usedHeapAfterGc();
+            }
+        }
+        assertTrue(streamer.getEvictedCount() > (long) FLIGHT_BLOCKS / Chunk.SIZE);
+        long growth = usedHeapAfterGc() - heapAfterTakeOff;
+        assertTrue("heap grew by " + growth + " bytes", growth < FLIGHT_HEAP_GROWTH_BYTES);
+    }
+
+    /** Steps one chunk at a time along x and back, twice, letting the streamer settle after each step. */
+    private void walk() throws InterruptedException {
+        for (int lap = 0; lap < 2; lap++) {
+            for (int x = 0; x <= WALK; x++) {
+                settleAt(x);
+            }
+            for (int x = WALK; x >= 0; x--) {
+                settleAt(x);
+            }
+        }
+        assertTrue(streamer.getEvictedCount() > 0);
+    }
+
+    private void settleAt(int chunkX) throws InterruptedException {
+        LongArray centers = new LongArray(1);
+        centers.add(World.chunkKey(chunkX, 0));
+        streamer.update(centers);
+        while (streamer.getPendingCount() > 0) {
+            Thread.sleep(1);
+            streamer.update(centers);
+        }
+    }
+
+    private void assertMatchesRegion() {
+        Chunk[] region = generator.generateRegion(ForkJoinPool.commonPool(), MIN_X, MIN_Z, WIDTH, DEPTH);
+        int compared = 0;
+        for (Chunk chunk : world.getChunks()) {
+            if (!hasAllNeighbours(chunk)) {
+                // a neighbour that was never generated has not spilled yet
+                continue;
+            }
+            int x = chunk.chunkX - MIN_X;
+            int z = chunk.chunkZ - MIN_Z;
+            // chunks on the region's border miss the spills of neighbours outside it
+            assertTrue(x > 0 && x < WIDTH - 1 && z > 0 && z < DEPTH - 1);
+            Chunk expected = region[x * DEPTH + z];
+            for (int bx = 0; bx < Chunk.SIZE; bx++) {
+                for (int bz = 0; bz < Chunk.SIZE; bz++) {
+                    for (int by = 0; by < Chunk.HEIGHT; by++) {
+                        assertEquals("block " + bx + ", " + by + ", " + bz + " of chunk " + chunk.chunkX + ", "
+                            + chunk.chunkZ, expected.getBlock(bx, by, bz), chunk.getBlock(bx, by, bz));
+                    }
+                }
+            }
+            compared++;
+        }
+        assertTrue(compared > 0);
+    }
+
+    private static int chunksWithin(int radius) {
+        int count = 0;
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                if (dx * dx + dz * dz <= radius * radius) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private boolean hasAllNeighbours(Chunk chunk) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                if (!world.isChunkLoaded(chunk.chunkX + dx, chunk.chunkZ + dz)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
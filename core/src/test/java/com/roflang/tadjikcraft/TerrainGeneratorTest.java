@@ -0,0 +1,120 @@
+package com.roflang.tadjikcraft;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TerrainGenerator} output depends only on the seed and the chunk coordinate: a region comes out the same on
+ * any number of threads, the same as its chunks generated one by one in another order, and a saved chunk re-spills
+ * exactly the trees it had.
+ */
+public class TerrainGeneratorTest {
+
+    private static final long SEED = 42L;
+    private static final int MIN_X = -3;
+    private static final int MIN_Z = -2;
+    private static final int WIDTH = 6;
+    private static final int DEPTH = 5;
+
+    @Test
+    public void regionIsIdenticalOnAnyNumberOfThreads() {
+        Chunk[] single = generateRegion(1);
+        assertTrue(countBlocks(single, BlockType.LEAVES.id) > 0);
+        assertSameBlocks(single, generateRegion(2));
+        assertSameBlocks(single, generateRegion(8));
+    }
+
+    @Test
+    public void regionMatchesChunksGeneratedOneByOne() {
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        Chunk[] chunks = new Chunk[WIDTH * DEPTH];
+        SpillEdits[] spills = new SpillEdits[chunks.length];
+        // backwards, so spills reach chunks in another order than in the region
+        for (int i = chunks.length - 1; i >= 0; i--) {
+            spills[i] = new SpillEdits(MIN_X + i / DEPTH, MIN_Z + i % DEPTH);
+            chunks[i] = generator.generate(MIN_X + i / DEPTH, MIN_Z + i % DEPTH, spills[i]);
+        }
+        for (int i = 0; i < chunks.length; i++) {
+            int x = i / DEPTH;
+            int z = i % DEPTH;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    IntArray edits = spills[i].get(dx, dz);
+                    if (edits != null && x + dx >= 0 && x + dx < WIDTH && z + dz >= 0 && z + dz < DEPTH) {
+                        SpillEdits.applyTo(chunks[(x + dx) * DEPTH + z + dz], edits);
+                    }
+                }
+            }
+        }
+        assertSameBlocks(generateRegion(4), chunks);
+    }
+
+    @Test
+    public void respillMatchesTheGeneratedSpill() {
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        for (int chunkX = MIN_X; chunkX < MIN_X + WIDTH; chunkX++) {
+            for (int chunkZ = MIN_Z; chunkZ < MIN_Z + DEPTH; chunkZ++) {
+                SpillEdits generated = new SpillEdits(chunkX, chunkZ);
+                generator.generate(chunkX, chunkZ, generated);
+                SpillEdits respilled = new SpillEdits(chunkX, chunkZ);
+                generator.respill(respilled);
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        assertArrayEquals("spill of chunk " + chunkX + ", " + chunkZ + " towards " + dx + ", " + dz,
+                            toArray(generated.get(dx, dz)), toArray(respilled.get(dx, dz)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Chunk[] generateRegion(int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return new TerrainGenerator(SEED).generateRegion(pool, MIN_X, MIN_Z, WIDTH, DEPTH);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameBlocks(Chunk[] expected, Chunk[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            for (int x = 0; x < Chunk.SIZE; x++) {
+                for (int z = 0; z < Chunk.SIZE; z++) {
+                    for (int y = 0; y < Chunk.HEIGHT; y++) {
+                        assertEquals("block " + x + ", " + y + ", " + z + " of chunk " + actual[i].chunkX + ", "
+                            + actual[i].chunkZ, expected[i].getBlock(x, y, z), actual[i].getBlock(x, y, z));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int countBlocks(Chunk[] chunks, int id) {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            for (int x = 0; x < Chunk.SIZE; x++) {
+                for (int z = 0; z < Chunk.SIZE; z++) {
+                    for (int y = 0; y < Chunk.HEIGHT; y++) {
+                        if (chunk.getBlock(x, y, z) == id) {
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int[] toArray(IntArray edits) {
+        return edits == null ? new int[0] : edits.toArray();
+    }
+}
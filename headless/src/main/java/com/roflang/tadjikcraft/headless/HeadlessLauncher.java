@@ -0,0 +1,32 @@
+package com.roflang.tadjikcraft.headless;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.roflang.tadjikcraft.GameSettings;
+import com.roflang.tadjikcraft.TadjikCraftGame;
+
+/**
+ * Plays a scripted flythrough without a window or GL context and writes its frame timings. Only the CPU side
+ * is measured: streaming, lighting, meshing, culling and block edits. Settings come from the same
+ * {@code TADJIKCRAFT_*} variables as the desktop launcher.
+ */
+public class HeadlessLauncher {
+    private static final int DEFAULT_FRAMES = 3600;
+
+    public static void main(String[] args) {
+        GameSettings settings = GameSettings.fromEnvironment();
+        settings.headless = true;
+        if (settings.flythroughFrames == 0) {
+            settings.flythroughFrames = DEFAULT_FRAMES;
+            if (System.getenv("TADJIKCRAFT_SEED") == null) {
+                settings.seed = GameSettings.DEFAULT_FLYTHROUGH_SEED;
+            }
+            settings.worldDirectory = null;
+        }
+
+        HeadlessApplicationConfiguration configuration = new HeadlessApplicationConfiguration();
+        // 0 runs frames back to back instead of at a fixed rate
+        configuration.updatesPerSecond = 0;
+        new HeadlessApplication(new TadjikCraftGame(settings), configuration);
+    }
+}
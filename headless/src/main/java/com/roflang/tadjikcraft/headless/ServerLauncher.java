@@ -0,0 +1,20 @@
+package com.roflang.tadjikcraft.headless;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.roflang.tadjikcraft.GameSettings;
+import com.roflang.tadjikcraft.WorldServer;
+
+/**
+ * Runs a dedicated server that desktop clients join with {@code TADJIKCRAFT_SERVER=host:port}. The world, seed,
+ * view distance and port come from the same {@code TADJIKCRAFT_*} variables as the desktop launcher.
+ */
+public class ServerLauncher {
+
+    public static void main(String[] args) {
+        GameSettings settings = GameSettings.fromEnvironment();
+        HeadlessApplicationConfiguration configuration = new HeadlessApplicationConfiguration();
+        configuration.updatesPerSecond = WorldServer.TICKS_PER_SECOND;
+        new HeadlessApplication(new WorldServer(settings), configuration);
+    }
+}
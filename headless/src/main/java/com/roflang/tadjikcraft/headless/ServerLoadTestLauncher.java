@@ -0,0 +1,32 @@
+package com.roflang.tadjikcraft.headless;
+
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.roflang.tadjikcraft.GameSettings;
+import com.roflang.tadjikcraft.ServerLoadTest;
+import com.roflang.tadjikcraft.WorldServer;
+
+/**
+ * Ramps simulated players up against an in-process server and prints tick time and traffic per step. Arguments:
+ * maximum clients (default 300), clients added per step (50) and seconds per step (10).
+ */
+public class ServerLoadTestLauncher {
+
+    public static void main(String[] args) {
+        int maxClients = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int clientsPerStep = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        float stepSeconds = args.length > 2 ? Float.parseFloat(args[2]) : 10f;
+
+        GameSettings settings = GameSettings.fromEnvironment();
+        if (System.getenv("TADJIKCRAFT_SEED") == null) {
+            settings.seed = GameSettings.DEFAULT_FLYTHROUGH_SEED;
+        }
+        // a fresh unsaved world on a free port, so runs are comparable and a running server is left alone
+        settings.worldDirectory = null;
+        settings.serverPort = 0;
+
+        HeadlessApplicationConfiguration configuration = new HeadlessApplicationConfiguration();
+        configuration.updatesPerSecond = WorldServer.TICKS_PER_SECOND;
+        new HeadlessApplication(new ServerLoadTest(settings, maxClients, clientsPerStep, stepSeconds), configuration);
+    }
+}
@@ -0,0 +1,170 @@
+package com.roflang.tadjikcraft.headless;
+
+import com.badlogic.gdx.ApplicationListener;
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.backends.headless.HeadlessApplication;
+import com.badlogic.gdx.backends.headless.HeadlessApplicationConfiguration;
+import com.roflang.tadjikcraft.GameSettings;
+import com.roflang.tadjikcraft.TadjikCraftGame;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fails when a steady-state frame allocates more than {@link #BUDGET_BYTES_PER_FRAME} on the render thread. The
+ * game runs headless with the player standing at spawn and the simulation stepped between frames, so its ticks
+ * are measured too; after a warm-up that lets the view distance stream and mesh in, frames are measured in
+ * windows and every window has to stay within the budget.
+ *
+ * <p>The headless backend has no GL, so the render branch that draws is not measured: HUD text is built but
+ * neither laid out into its {@code GlyphLayout}s nor drawn, and nothing goes through the sprite batch or the
+ * shape renderer.
+ */
+public class FrameAllocationTest {
+    private static final long BUDGET_BYTES_PER_FRAME = 512L;
+    private static final long WARMUP_NANOS = 5_000_000_000L;
+    private static final int WARMUP_FRAMES = 600;
+    private static final int WINDOW_FRAMES = 600;
+    private static final int WINDOWS = 3;
+    private static final long TIMEOUT_MINUTES = 5L;
+
+    @Test
+    public void steadyStateFramesStayWithinBudget() throws Throwable {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("This JVM cannot measure thread allocation",
+            threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported());
+
+        GameSettings settings = new GameSettings();
+        settings.headless = true;
+        settings.seed = GameSettings.DEFAULT_FLYTHROUGH_SEED;
+        settings.worldDirectory = null;
+        // step the simulation between frames so its ticks count against the frame
+        settings.simulationThread = false;
+
+        HeadlessApplicationConfiguration configuration = new HeadlessApplicationConfiguration();
+        configuration.updatesPerSecond = 0;
+        Measured measured = new Measured(new TadjikCraftGame(settings), (com.sun.management.ThreadMXBean) threads);
+        new HeadlessApplication(measured, configuration);
+
+        assertTrue("Timed out", measured.done.await(TIMEOUT_MINUTES, TimeUnit.MINUTES));
+        if (measured.failure != null) {
+            throw measured.failure;
+        }
+        for (int i = 0; i < WINDOWS; i++) {
+            long bytesPerFrame = measured.bytesPerFrame[i];
+            System.out.println("[TadjikCraft] Window " + (i + 1) + ": " + bytesPerFrame + " bytes per frame");
+            assertTrue("Window " + (i + 1) + " allocates " + bytesPerFrame + " bytes per frame, budget "
+                + BUDGET_BYTES_PER_FRAME, bytesPerFrame <= BUDGET_BYTES_PER_FRAME);
+        }
+    }
+
+    /** Passes every call on to the game and measures what {@code render()} allocates. */
+    private static final class Measured implements ApplicationListener {
+        private final ApplicationListener game;
+        private final com.sun.management.ThreadMXBean threads;
+        final long[] bytesPerFrame = new long[WINDOWS];
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable failure;
+        private long warmupStart;
+        private int frames;
+        private int window;
+        private long windowStartBytes;
+
+        Measured(ApplicationListener game, com.sun.management.ThreadMXBean threads) {
+            this.game = game;
+            this.threads = threads;
+        }
+
+        @Override
+        public void create() {
+            try {
+                game.create();
+            } catch (Throwable e) {
+                fail(e);
+            }
+            warmupStart = System.nanoTime();
+        }
+
+        @Override
+        public void render() {
+            if (failure != null) {
+                return;
+            }
+            try {
+                measure();
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+
+        private void measure() {
+            if (window == 0) {
+                if (frames < WARMUP_FRAMES || System.nanoTime() - warmupStart < WARMUP_NANOS) {
+                    game.render();
+                    frames++;
+                    return;
+                }
+                window = 1;
+                frames = 0;
+                windowStartBytes = allocatedBytes();
+            }
+
+            game.render();
+            frames++;
+            if (frames == WINDOW_FRAMES) {
+                bytesPerFrame[window - 1] = (allocatedBytes() - windowStartBytes) / WINDOW_FRAMES;
+                if (window == WINDOWS) {
+                    Gdx.app.exit();
+                    return;
+                }
+                window++;
+                frames = 0;
+                windowStartBytes = allocatedBytes();
+            }
+        }
+
+        private void fail(Throwable e) {
+            failure = e;
+            Gdx.app.exit();
+        }
+
+        private long allocatedBytes() {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        @Override
+        public void resize(int width, int height) {
+            game.resize(width, height);
+        }
+
+        @Override
+        public void pause() {
+            game.pause();
+        }
+
+        @Override
+        public void resume() {
+            game.resume();
+        }
+
+        @Override
+        public void dispose() {
+            try {
+                game.dispose();
+            } catch (Throwable e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            done.countDown();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.roflang.tadjikcraft.lwjgl3;
 
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
+import com.roflang.tadjikcraft.GameSettings;
 import com.roflang.tadjikcraft.TadjikCraftGame;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWVulkan;
@@ -14,14 +15,22 @@ public class Lwjgl3Launcher {
     }
 
     private static Lwjgl3Application createApplication() {
-        return new Lwjgl3Application(new TadjikCraftGame(), getDefaultConfiguration());
+        GameSettings settings = GameSettings.fromEnvironment();
+        return new Lwjgl3Application(new TadjikCraftGame(settings), getDefaultConfiguration(settings));
     }
 
-    private static Lwjgl3ApplicationConfiguration getDefaultConfiguration() {
+    private static Lwjgl3ApplicationConfiguration getDefaultConfiguration(GameSettings settings) {
         Lwjgl3ApplicationConfiguration configuration = new Lwjgl3ApplicationConfiguration();
         configuration.setTitle("TadjikCraft");
-        configuration.useVsync(true);
-        configuration.setForegroundFPS(Lwjgl3ApplicationConfiguration.getDisplayMode().refreshRate + 1);
+        if (settings.flythroughFrames > 0) {
+            // measure how fast frames can be made, not the display's refresh rate
+            configuration.useVsync(false);
+            configuration.setForegroundFPS(0);
+            configuration.setIdleFPS(0);
+        } else {
+            configuration.useVsync(true);
+            configuration.setForegroundFPS(Lwjgl3ApplicationConfiguration.getDisplayMode().refreshRate + 1);
+        }
         configuration.setWindowedMode(1280, 720);
         configuration.setWindowIcon("libgdx128.png", "libgdx64.png", "libgdx32.png", "libgdx16.png");
 